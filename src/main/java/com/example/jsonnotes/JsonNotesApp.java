@@ -79,6 +79,8 @@ public class JsonNotesApp extends Application {
     @Override
     public void stop() throws Exception {
         super.stop();
+        //Write any changes that are still waiting in memory before the app exits
+        flushNotes();
         //Remove all event handlers when the app UI stops
         controller.btnSelectDirectory.removeEventHandler(MouseEvent.MOUSE_CLICKED, handler_btnSelect_Clicked);
         controller.btnRefresh.removeEventHandler(MouseEvent.MOUSE_CLICKED, handler_btnRefresh_Clicked);
@@ -177,6 +179,18 @@ public class JsonNotesApp extends Application {
         return mb;
     }
 
+    /**
+     * Write any {@link Note} changes the data service is holding in memory, and push batched writes to disk
+     */
+    private void flushNotes() {
+        if (noteDataService instanceof SingleFileNoteDataService singleFileNoteDataService) {
+            if (!singleFileNoteDataService.flush()) {
+                System.out.println("Error while writing notes. Recent changes may be lost.");
+            }
+            singleFileNoteDataService.getFileSyncer().syncPending();
+        }
+    }
+
     /**
      * Updates the displayed directory text so it shows the current target directory
      */
@@ -188,8 +202,13 @@ public class JsonNotesApp extends Application {
      * Set the configured directory to the selected target directory and then refreshes the data in the table
      */
     private void setNoteDirectory() {
+        //Changes in the previous directory must be written before it is let go
+        flushNotes();
         try {
-            noteDataService = JsonFileNotesDataService.getInstance(targetDirectory.getPath());
+            var dataService = JsonFileNotesDataService.getInstance(targetDirectory.getPath());
+            //Batch bursts of changes into a single rewrite of the notes file
+            dataService.setWriteBehind(SingleFileNoteDataService.DEFAULT_WRITE_BEHIND_DELAY_MILLIS, SingleFileNoteDataService.DEFAULT_WRITE_BEHIND_MAX_CHANGES);
+            noteDataService = dataService;
         } catch (Exception exception) {
             exception.printStackTrace();
             System.out.println("There was an error while trying to create a note data service. Reverting to cache only.");
@@ -1,51 +1,187 @@
 package com.example.jsonnotes.notes;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonSyntaxException;
-import com.google.gson.annotations.Expose;
-import com.google.gson.annotations.SerializedName;
-
 import java.util.*;
 
+/**
+ * The contents of a file containing many {@link Note notes}. Version 2 files store each {@link Note} as a nested JSON
+ *  object keyed by its ID. Version 1 files stored each {@link Note} as an escaped JSON string - these are still read
+ *  and are written back as version 2. Files are read and written by {@link JsonNotesFileTypeAdapter}.
+ * <p>
+ * A file read with {@link JsonNotesFile#readLazily(String, int)} keeps the raw JSON of each {@link Note} and decodes a
+ *  {@link Note} the first time it is asked for, so counting the {@link Note notes} or getting one of them costs time
+ *  in proportion to what is touched rather than the size of the file.
+ */
 public class JsonNotesFile {
 
-    private Map<String, Note> notes = new HashMap<>();
+    /**
+     * The version of files that stored each {@link Note} as an escaped JSON string
+     */
+    public static final int LEGACY_VERSION = 1;
+    /**
+     * The version of files that store each {@link Note} as a nested JSON object
+     */
+    public static final int CURRENT_VERSION = 2;
+    /**
+     * The default number of decoded {@link Note notes} a lazily read file keeps
+     */
+    public static final int DEFAULT_CACHE_SIZE = 256;
 
-    @Expose
-    @SerializedName(value = "notes", alternate = {"noteJsonStrings"})
-    private Map<String, String> noteJsonStrings = new HashMap<>();
+    /**
+     * The version of the file format. Legacy files have no version, so they keep the {@link JsonNotesFile#LEGACY_VERSION}.
+     */
+    private int version = LEGACY_VERSION;
+
+    private Map<String, Note> notes = new HashMap<>();
 
-    @Expose
-    @SerializedName("writeDate")
     private Date writeDate = Calendar.getInstance().getTime();
 
+    /**
+     * The undecoded {@link Note notes} of a file that was read lazily. NULL when the {@link Note notes} are held in
+     *  {@link JsonNotesFile#notes}.
+     */
+    private LazyNoteMap _lazyNotes;
+
     public JsonNotesFile() {}
 
+    /**
+     * Read a file lazily with the {@link JsonNotesFile#DEFAULT_CACHE_SIZE default cache size}
+     * @param json The file data
+     * @return A {@link JsonNotesFile} that decodes each {@link Note} on first access
+     */
+    public static JsonNotesFile readLazily(String json) {
+        return readLazily(json, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Read a file lazily. The file data is scanned once to find where each {@link Note} starts and ends, but no
+     *  {@link Note} is decoded until it is asked for. Decoded {@link Note notes} are cached up to a limit - a
+     *  {@link Note} that has dropped out of the cache is decoded again as a new instance, so changes to a returned
+     *  {@link Note} are not kept by the file.
+     * @param json The file data
+     * @param cacheSize The largest number of decoded {@link Note notes} to keep
+     * @return A {@link JsonNotesFile} that decodes each {@link Note} on first access
+     * @throws com.google.gson.JsonParseException Thrown when the data is not a notes file
+     */
+    public static JsonNotesFile readLazily(String json, int cacheSize) {
+        if (json == null) {
+            throw new IllegalArgumentException("json cannot be null");
+        }
+        return NoteJson.getNotesFileAdapter().readLazily(json, cacheSize);
+    }
+
+    /**
+     * Check if the {@link Note notes} are decoded on first access
+     * @return TRUE if the file was read lazily
+     */
+    public boolean isLazy() {
+        return _lazyNotes != null;
+    }
+
+    /**
+     * Get the version of the file format
+     * @return {@link JsonNotesFile#LEGACY_VERSION} or {@link JsonNotesFile#CURRENT_VERSION}
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the date the file was written
+     * @return A {@link Date}. NULL if the file did not contain a readable date.
+     */
+    public Date getWriteDate() {
+        return writeDate;
+    }
+
     public List<Note> getNotes() {
-        var gson = new Gson();
-        var noteMap = new HashMap<String, Note>();
-        noteJsonStrings.forEach((key, value) -> {
-            try {
-                noteMap.put(key, gson.fromJson(value, Note.class));
-            } catch (JsonSyntaxException exception) {
-                System.out.printf("Error while deserializing the note with ID of %s/n", key);
-                noteMap.put(key, new Note(UUID.fromString(key), value));
-            }
-        });
-        this.notes = noteMap;
+        if (_lazyNotes != null) {
+            //Every note is needed - decode them all
+            var decoded = new ArrayList<Note>(_lazyNotes.size());
+            _lazyNotes.forEach(decoded::add);
+            return decoded;
+        }
         return notes.values().stream().toList();
     }
 
+    /**
+     * Get the number of {@link Note notes} in the file. Nothing is decoded.
+     * @return The number of {@link Note notes}
+     */
+    public int getNoteCount() {
+        return _lazyNotes != null ? _lazyNotes.size() : notes.size();
+    }
+
+    /**
+     * Get the IDs of the {@link Note notes} in the file. Nothing is decoded.
+     * @return An unmodifiable {@link Set} of IDs
+     */
+    public Set<String> getNoteIds() {
+        return _lazyNotes != null ? _lazyNotes.ids() : Collections.unmodifiableSet(notes.keySet());
+    }
+
+    /**
+     * Get a single {@link Note}. Only that {@link Note} is decoded.
+     * @param id The ID of the {@link Note}
+     * @return A {@link Note}. NULL if the file has no {@link Note} with the ID.
+     */
+    public Note getNoteById(String id) {
+        if (id == null || id.equals("")) {
+            throw new IllegalArgumentException("id cannot be blank");
+        }
+        return _lazyNotes != null ? _lazyNotes.get(id) : notes.get(id);
+    }
+
+    /**
+     * Iterate over the {@link Note notes} in the file. A lazily read file decodes each {@link Note} as it is reached,
+     *  so stopping early skips decoding the rest.
+     * @return An {@link Iterable} of {@link Note notes}
+     */
+    public Iterable<Note> iterateNotes() {
+        return _lazyNotes != null ? _lazyNotes : Collections.unmodifiableCollection(notes.values());
+    }
+
     public void setNotes(List<Note> notes) {
-        var gson = new Gson();
-        var noteJsonMap = new HashMap<String, String>();
         var noteMap = new HashMap<String, Note>();
         for (var note : notes) {
             noteMap.put(note.getId(), note);
-            noteJsonMap.put(note.getId(), gson.toJson(note));
         }
-        noteJsonMap.put("null entry", null);
-        this.noteJsonStrings = noteJsonMap;
         this.notes = noteMap;
+        this._lazyNotes = null;
+        //Files are always written in the current format
+        this.version = CURRENT_VERSION;
+    }
+
+    /**
+     * Set the version read from a file
+     * @param version The version of the file format
+     */
+    void setVersion(int version) {
+        this.version = version;
+    }
+
+    /**
+     * Set the write date read from a file
+     * @param writeDate The date the file was written
+     */
+    void setWriteDate(Date writeDate) {
+        this.writeDate = writeDate;
+    }
+
+    /**
+     * Set the {@link Note notes} read from a file, keyed by the ID they were stored under
+     * @param notes The {@link Note notes} of the file
+     */
+    void setNoteMap(Map<String, Note> notes) {
+        this.notes = notes;
+        this._lazyNotes = null;
+    }
+
+    /**
+     * Set the undecoded {@link Note notes} of a file that was read lazily
+     * @param lazyNotes The undecoded {@link Note notes} of the file
+     */
+    void setLazyNotes(LazyNoteMap lazyNotes) {
+        this.notes = new HashMap<>();
+        this._lazyNotes = lazyNotes;
     }
 }
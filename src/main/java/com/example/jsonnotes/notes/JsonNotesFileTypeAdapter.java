@@ -0,0 +1,408 @@
+package com.example.jsonnotes.notes;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Reads and writes {@link JsonNotesFile JsonNotesFiles} without reflection. Version 2 files store each {@link Note}
+ *  as a nested JSON object keyed by its ID. Legacy files stored each {@link Note} as an escaped JSON string - these
+ *  are decoded as well, and null entries are skipped. Files are always written in the current version.
+ */
+public class JsonNotesFileTypeAdapter extends TypeAdapter<JsonNotesFile> {
+
+    /**
+     * Used to read and write each {@link Note}
+     */
+    private final TypeAdapter<Note> _noteAdapter;
+    /**
+     * Used to read and write the write date of the file
+     */
+    private final TypeAdapter<Date> _dateAdapter;
+
+    /**
+     * Create a new instance of a {@link JsonNotesFileTypeAdapter}
+     * @param noteAdapter Used to read and write each {@link Note}
+     * @param dateAdapter Used to read and write the write date of the file
+     */
+    public JsonNotesFileTypeAdapter(TypeAdapter<Note> noteAdapter, TypeAdapter<Date> dateAdapter) {
+        if (noteAdapter == null) {
+            throw new IllegalArgumentException("noteAdapter cannot be null");
+        }
+        if (dateAdapter == null) {
+            throw new IllegalArgumentException("dateAdapter cannot be null");
+        }
+        _noteAdapter = noteAdapter;
+        _dateAdapter = dateAdapter;
+    }
+
+    @Override
+    public void write(JsonWriter out, JsonNotesFile notesFile) throws IOException {
+        if (notesFile == null) {
+            out.nullValue();
+            return;
+        }
+        _write(out, notesFile.getNotes(), notesFile.getWriteDate());
+    }
+
+    @Override
+    public JsonNotesFile read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        var notesFile = new JsonNotesFile();
+        var notes = new HashMap<String, Note>();
+        _read(in, notesFile, notes::put);
+        notesFile.setNoteMap(notes);
+        return notesFile;
+    }
+
+    /**
+     * Read the {@link Note notes} in a file one at a time without building a {@link JsonNotesFile}. Each {@link Note}
+     *  is handed to the consumer as soon as it is decoded, so only one {@link Note} is held by the reader at a time.
+     * @param in The {@link JsonReader} positioned at the start of the file
+     * @param noteConsumer Receives each {@link Note}
+     * @throws IOException Thrown when the file cannot be read
+     */
+    public void readNotes(JsonReader in, Consumer<Note> noteConsumer) throws IOException {
+        _read(in, null, (id, note) -> noteConsumer.accept(note));
+    }
+
+    /**
+     * Read a file without decoding its {@link Note notes}. The data is scanned once to find the span of each
+     *  {@link Note} - each one is decoded from its span the first time it is asked for.
+     * @param json The file data
+     * @param cacheSize The largest number of decoded {@link Note notes} the file keeps
+     * @return A lazily read {@link JsonNotesFile}
+     * @throws JsonParseException Thrown when the data is not a notes file
+     */
+    public JsonNotesFile readLazily(String json, int cacheSize) {
+        var notesFile = new JsonNotesFile();
+        var spans = new LinkedHashMap<String, Long>();
+        var position = _skipWhitespace(json, 0);
+        position = _expect(json, position, '{');
+        while (true) {
+            position = _skipWhitespace(json, position);
+            if (_charAt(json, position) == '}') {
+                break;
+            }
+            var nameEnd = _skipString(json, position);
+            var name = _readString(json, position, nameEnd);
+            position = _expect(json, _skipWhitespace(json, nameEnd), ':');
+            position = _skipWhitespace(json, position);
+            int valueEnd;
+            try {
+                switch (name) {
+                    case "notes", "noteJsonStrings" -> valueEnd = _scanNoteEntries(json, position, spans);
+                    case "version" -> {
+                        valueEnd = _skipValue(json, position);
+                        notesFile.setVersion(Integer.parseInt(json.substring(position, valueEnd)));
+                    }
+                    case "writeDate" -> {
+                        valueEnd = _skipValue(json, position);
+                        notesFile.setWriteDate(_readDate(new JsonReader(new StringReader(json.substring(position, valueEnd)))));
+                    }
+                    default -> valueEnd = _skipValue(json, position);
+                }
+            } catch (IOException | NumberFormatException exception) {
+                throw new JsonParseException(String.format("Cannot read %s at offset %d", name, position), exception);
+            }
+            position = _skipWhitespace(json, valueEnd);
+            if (_charAt(json, position) == ',') {
+                position++;
+            }
+        }
+        notesFile.setLazyNotes(new LazyNoteMap(json, spans, cacheSize, this::_decodeNote));
+        return notesFile;
+    }
+
+    /**
+     * Write {@link Note notes} as a file one at a time without building a {@link JsonNotesFile}. The output is
+     *  identical to writing a {@link JsonNotesFile} containing the same {@link Note notes}.
+     * @param out The {@link JsonWriter} to write the file to
+     * @param notes The {@link Note notes} to write
+     * @throws IOException Thrown when the file cannot be written
+     */
+    public void writeNotes(JsonWriter out, Collection<Note> notes) throws IOException {
+        _write(out, notes, Calendar.getInstance().getTime());
+    }
+
+    /**
+     * Read a file
+     * @param in The {@link JsonReader} positioned at the start of the file
+     * @param notesFile Receives the version and write date of the file. NULL if they are not needed.
+     * @param noteConsumer Receives the ID and {@link Note} of each entry
+     * @throws IOException Thrown when the file cannot be read
+     */
+    private void _read(JsonReader in, JsonNotesFile notesFile, BiConsumer<String, Note> noteConsumer) throws IOException {
+        in.beginObject();
+        while (in.hasNext()) {
+            var name = in.nextName();
+            switch (name) {
+                case "notes", "noteJsonStrings" -> _readNoteEntries(in, noteConsumer);
+                case "version" -> {
+                    var version = in.nextInt();
+                    if (notesFile != null) {
+                        notesFile.setVersion(version);
+                    }
+                }
+                case "writeDate" -> {
+                    var writeDate = _readDate(in);
+                    if (notesFile != null) {
+                        notesFile.setWriteDate(writeDate);
+                    }
+                }
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+    }
+
+    /**
+     * Write a file in the current version
+     * @param out The {@link JsonWriter} to write the file to
+     * @param notes The {@link Note notes} to write
+     * @param writeDate The write date of the file
+     * @throws IOException Thrown when the file cannot be written
+     */
+    private void _write(JsonWriter out, Collection<Note> notes, Date writeDate) throws IOException {
+        out.beginObject();
+        out.name("version").value(JsonNotesFile.CURRENT_VERSION);
+        out.name("notes");
+        out.beginObject();
+        for (var note : notes) {
+            out.name(note.getId());
+            _noteAdapter.write(out, note);
+        }
+        out.endObject();
+        out.name("writeDate");
+        _dateAdapter.write(out, writeDate);
+        out.endObject();
+    }
+
+    /**
+     * Read an object of {@link Note notes} keyed by ID
+     * @param in The {@link JsonReader} positioned at the start of the object
+     * @param noteConsumer Receives the ID and {@link Note} of each entry
+     * @throws IOException Thrown when the object cannot be read
+     */
+    private void _readNoteEntries(JsonReader in, BiConsumer<String, Note> noteConsumer) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return;
+        }
+        in.beginObject();
+        while (in.hasNext()) {
+            var id = in.nextName();
+            switch (in.peek()) {
+                //Legacy files contain a "null entry" - there is no note to read
+                case NULL -> in.nextNull();
+                case STRING -> noteConsumer.accept(id, _readLegacyNote(id, in.nextString()));
+                default -> noteConsumer.accept(id, _noteAdapter.read(in));
+            }
+        }
+        in.endObject();
+    }
+
+    /**
+     * Record the span of each entry in an object of {@link Note notes} keyed by ID. NULL entries are skipped.
+     * @param json The file data
+     * @param position The index of the start of the object
+     * @param spans Receives the span of each entry, keyed by ID
+     * @return The index after the end of the object
+     */
+    private int _scanNoteEntries(String json, int position, Map<String, Long> spans) {
+        if (json.startsWith("null", position)) {
+            return position + 4;
+        }
+        position = _expect(json, position, '{');
+        while (true) {
+            position = _skipWhitespace(json, position);
+            if (_charAt(json, position) == '}') {
+                return position + 1;
+            }
+            var idEnd = _skipString(json, position);
+            var id = _readString(json, position, idEnd);
+            position = _skipWhitespace(json, _expect(json, _skipWhitespace(json, idEnd), ':'));
+            var valueEnd = _skipValue(json, position);
+            //Legacy files contain a "null entry" - there is no note to read
+            if (!json.startsWith("null", position)) {
+                spans.put(id, LazyNoteMap.span(position, valueEnd));
+            }
+            position = _skipWhitespace(json, valueEnd);
+            if (_charAt(json, position) == ',') {
+                position++;
+            }
+        }
+    }
+
+    /**
+     * Decode the raw JSON of a single entry of a lazily read file
+     * @param id The ID the {@link Note} is stored under
+     * @param rawJson A nested {@link Note} object, or an escaped JSON string in a legacy file
+     * @return A {@link Note}
+     */
+    private Note _decodeNote(String id, String rawJson) {
+        try {
+            var reader = new JsonReader(new StringReader(rawJson));
+            if (reader.peek() == JsonToken.STRING) {
+                return _readLegacyNote(id, reader.nextString());
+            }
+            return _noteAdapter.read(reader);
+        } catch (IOException | IllegalStateException exception) {
+            throw new JsonParseException(String.format("Cannot decode the note with ID of %s", id), exception);
+        }
+    }
+
+    /**
+     * Decode a JSON string literal. Literals without escapes are copied as they are.
+     * @param json The file data
+     * @param start The index of the opening quote
+     * @param end The index after the closing quote
+     * @return The decoded string
+     */
+    private static String _readString(String json, int start, int end) {
+        var escaped = false;
+        for (int i = start + 1; i < end - 1 && !escaped; i++) {
+            escaped = json.charAt(i) == '\\';
+        }
+        if (!escaped) {
+            return json.substring(start + 1, end - 1);
+        }
+        var literal = json.substring(start, end);
+        try {
+            var reader = new JsonReader(new StringReader(literal));
+            if (reader.peek() == JsonToken.STRING) {
+                return reader.nextString();
+            }
+        } catch (IOException e) {
+            throw new JsonParseException(String.format("Cannot read the string %s", literal), e);
+        }
+        throw new JsonParseException(String.format("Expected a string but found %s", literal));
+    }
+
+    /**
+     * Find the end of the JSON value starting at an index without decoding it. Strings are skipped with their escapes,
+     *  and objects and arrays are skipped by counting brackets outside of strings.
+     * @param json The file data
+     * @param position The index of the first character of the value
+     * @return The index after the last character of the value
+     */
+    private static int _skipValue(String json, int position) {
+        var first = _charAt(json, position);
+        if (first == '"') {
+            return _skipString(json, position);
+        }
+        if (first != '{' && first != '[') {
+            //A number, boolean, or null runs until the next delimiter
+            var end = position;
+            while (end < json.length() && ",}] \t\r\n".indexOf(json.charAt(end)) < 0) {
+                end++;
+            }
+            if (end == position) {
+                throw new JsonParseException(String.format("Expected a value at offset %d", position));
+            }
+            return end;
+        }
+        var depth = 0;
+        var end = position;
+        while (true) {
+            var c = _charAt(json, end);
+            if (c == '"') {
+                end = _skipString(json, end);
+                continue;
+            }
+            if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+                if (depth == 0) {
+                    return end + 1;
+                }
+            }
+            end++;
+        }
+    }
+
+    /**
+     * Find the end of the string literal starting at an index
+     * @param json The file data
+     * @param position The index of the opening quote
+     * @return The index after the closing quote
+     */
+    private static int _skipString(String json, int position) {
+        _expect(json, position, '"');
+        var end = position + 1;
+        while (true) {
+            var c = _charAt(json, end);
+            if (c == '\\') {
+                end += 2;
+                continue;
+            }
+            if (c == '"') {
+                return end + 1;
+            }
+            end++;
+        }
+    }
+
+    private static int _skipWhitespace(String json, int position) {
+        while (position < json.length() && Character.isWhitespace(json.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static int _expect(String json, int position, char expected) {
+        if (_charAt(json, position) != expected) {
+            throw new JsonParseException(String.format("Expected '%s' at offset %d", expected, position));
+        }
+        return position + 1;
+    }
+
+    private static char _charAt(String json, int position) {
+        if (position >= json.length()) {
+            throw new JsonParseException("Unexpected end of notes file");
+        }
+        return json.charAt(position);
+    }
+
+    /**
+     * Decode a {@link Note} stored as an escaped JSON string by a legacy file
+     * @param id The ID the {@link Note} is stored under
+     * @param noteJson The escaped JSON of the {@link Note}
+     * @return A {@link Note}. If the JSON cannot be decoded, a {@link Note} with the raw string as its content.
+     */
+    private Note _readLegacyNote(String id, String noteJson) {
+        try {
+            return _noteAdapter.fromJson(noteJson);
+        } catch (JsonParseException | IOException | IllegalStateException exception) {
+            System.out.printf("Error while deserializing the note with ID of %s%n", id);
+            return new Note(UUID.fromString(id), noteJson);
+        }
+    }
+
+    /**
+     * Read the write date of a file. The write date is informational, so a date that cannot be parsed is ignored.
+     * @param in The {@link JsonReader} positioned at the date
+     * @return The write date, or NULL if it cannot be parsed
+     * @throws IOException Thrown when the value cannot be read
+     */
+    private Date _readDate(JsonReader in) throws IOException {
+        try {
+            return _dateAdapter.read(in);
+        } catch (JsonParseException exception) {
+            System.out.println("Cannot parse the write date of a notes file - ignoring it.");
+            return null;
+        }
+    }
+}
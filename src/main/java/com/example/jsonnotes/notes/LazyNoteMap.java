@@ -0,0 +1,134 @@
+package com.example.jsonnotes.notes;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+
+/**
+ * The {@link Note notes} of a {@link JsonNotesFile} that was read lazily. The raw JSON of each {@link Note} is kept as a
+ *  span of the file data and only decoded when the {@link Note} is asked for. A bounded number of decoded
+ *  {@link Note notes} are cached, least recently used first out.
+ */
+final class LazyNoteMap implements Iterable<Note> {
+
+    /**
+     * The file data the spans point into
+     */
+    private final String _source;
+    /**
+     * The span of each {@link Note} in the {@link LazyNoteMap#_source}, in file order. The start is kept in the high
+     *  32 bits and the end in the low 32 bits.
+     */
+    private final Map<String, Long> _spans;
+    /**
+     * Decodes the raw JSON of a {@link Note} given its ID
+     */
+    private final BiFunction<String, String, Note> _decoder;
+    /**
+     * Recently decoded {@link Note notes}, in access order
+     */
+    private final LinkedHashMap<String, Note> _cache;
+
+    /**
+     * Create a new instance of a {@link LazyNoteMap}
+     * @param source The file data
+     * @param spans The span of each {@link Note} in the file data, packed by {@link LazyNoteMap#span(int, int)}
+     * @param cacheSize The largest number of decoded {@link Note notes} kept
+     * @param decoder Decodes the raw JSON of a {@link Note} given its ID
+     */
+    LazyNoteMap(String source, Map<String, Long> spans, int cacheSize, BiFunction<String, String, Note> decoder) {
+        if (cacheSize < 1) {
+            throw new IllegalArgumentException("cacheSize must be at least 1");
+        }
+        _source = source;
+        _spans = spans;
+        _decoder = decoder;
+        _cache = new LinkedHashMap<>(Math.min(cacheSize, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Note> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Pack the start and end of a span into a single value
+     * @param start The index of the first character of the span
+     * @param end The index after the last character of the span
+     * @return The packed span
+     */
+    static long span(int start, int end) {
+        return ((long) start << 32) | (end & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Get the number of {@link Note notes}. Nothing is decoded.
+     * @return The number of {@link Note notes}
+     */
+    int size() {
+        return _spans.size();
+    }
+
+    /**
+     * Get the IDs of the {@link Note notes} in file order. Nothing is decoded.
+     * @return An unmodifiable {@link Set} of IDs
+     */
+    Set<String> ids() {
+        return Collections.unmodifiableSet(_spans.keySet());
+    }
+
+    /**
+     * Get the raw JSON of a {@link Note} as it appears in the file
+     * @param id The ID of the {@link Note}
+     * @return The raw JSON. NULL if there is no {@link Note} with the ID.
+     */
+    String getRawJson(String id) {
+        var span = _spans.get(id);
+        if (span == null) {
+            return null;
+        }
+        return _source.substring((int) (span >>> 32), (int) (long) span);
+    }
+
+    /**
+     * Get a {@link Note}, decoding it if it is not cached
+     * @param id The ID of the {@link Note}
+     * @return A {@link Note}. NULL if there is no {@link Note} with the ID.
+     */
+    synchronized Note get(String id) {
+        var note = _cache.get(id);
+        if (note != null) {
+            return note;
+        }
+        var rawJson = getRawJson(id);
+        if (rawJson == null) {
+            return null;
+        }
+        note = _decoder.apply(id, rawJson);
+        _cache.put(id, note);
+        return note;
+    }
+
+    /**
+     * Iterate over the {@link Note notes} in file order, decoding each one as it is reached
+     * @return An {@link Iterator} of {@link Note notes}
+     */
+    @Override
+    public Iterator<Note> iterator() {
+        var ids = _spans.keySet().iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return ids.hasNext();
+            }
+
+            @Override
+            public Note next() {
+                return get(ids.next());
+            }
+        };
+    }
+}
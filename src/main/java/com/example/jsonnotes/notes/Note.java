@@ -1,5 +1,7 @@
 package com.example.jsonnotes.notes;
 
+import com.google.gson.annotations.Expose;
+
 import java.util.UUID;
 
 /**
@@ -9,12 +11,15 @@ public class Note {
     /**
      * The unique ID of the {@link Note}
      */
+    @Expose
     private final String id;
     /**
      * The content of the {@link Note}
      */
+    @Expose
     private String content = "";
 
+    @Expose
     private String summary = "";
 
     public String getSummary() {
@@ -58,6 +63,19 @@ public class Note {
         this.summary = summary;
     }
 
+    /**
+     * Create a new instance of a {@link Note} from stored data without validating or normalizing the {@link Note#id}.
+     *  Used by {@link NoteTypeAdapter} to rebuild {@link Note Notes} exactly as they were written.
+     * @param id The {@link Note#id} of the {@link Note}
+     * @param content {@link Note#content Content} of the {@link Note}
+     * @param summary Summary of the {@link Note}
+     */
+    Note(String id, String content, String summary) {
+        this.id = id;
+        this.content = content;
+        this.summary = summary;
+    }
+
     /**
      * Get the {@link Note#id} of the {@link Note}
      * @return The {@link Note#id} as a String
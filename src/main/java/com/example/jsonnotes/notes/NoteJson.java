@@ -0,0 +1,121 @@
+package com.example.jsonnotes.notes;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Date;
+
+/**
+ * The shared JSON configuration for {@link Note Notes}. {@link Gson} and its adapters are thread-safe, so they are
+ *  built once and reused by every data service instead of being created for each read or write.
+ */
+public final class NoteJson {
+
+    /**
+     * The format of the write date stored in {@link JsonNotesFile JsonNotesFiles}
+     */
+    public static final String DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ssz";
+
+    /**
+     * Reads and writes {@link Note Notes} without reflection
+     */
+    private static final NoteTypeAdapter _noteAdapter = new NoteTypeAdapter();
+    /**
+     * Reads and writes {@link JsonNotesFile JsonNotesFiles} without reflection
+     */
+    private static final JsonNotesFileTypeAdapter _notesFileAdapter = new JsonNotesFileTypeAdapter(_noteAdapter,
+            new GsonBuilder().setDateFormat(DATE_FORMAT).create().getAdapter(Date.class));
+    /**
+     * {@link Gson} configured for {@link JsonNotesFile JsonNotesFiles}, with the hand-written adapters registered
+     */
+    private static final Gson _gson = new GsonBuilder()
+            .registerTypeAdapter(Note.class, _noteAdapter)
+            .registerTypeAdapter(JsonNotesFile.class, _notesFileAdapter)
+            .excludeFieldsWithoutExposeAnnotation()
+            .serializeNulls()
+            .setDateFormat(DATE_FORMAT)
+            .create();
+
+    private NoteJson() {}
+
+    /**
+     * Get the shared {@link Gson} configured for {@link JsonNotesFile JsonNotesFiles}
+     * @return A {@link Gson}
+     */
+    public static Gson getGson() {
+        return _gson;
+    }
+
+    /**
+     * Get the shared adapter for {@link Note Notes}
+     * @return A {@link NoteTypeAdapter}
+     */
+    public static NoteTypeAdapter getNoteAdapter() {
+        return _noteAdapter;
+    }
+
+    /**
+     * Get the shared adapter for {@link JsonNotesFile JsonNotesFiles}
+     * @return A {@link JsonNotesFileTypeAdapter}
+     */
+    public static JsonNotesFileTypeAdapter getNotesFileAdapter() {
+        return _notesFileAdapter;
+    }
+
+    /**
+     * Create a {@link JsonWriter} configured for writing {@link JsonNotesFile JsonNotesFiles}
+     * @param writer The {@link Writer} to write to
+     * @return A {@link JsonWriter}
+     */
+    public static JsonWriter newNotesFileWriter(Writer writer) {
+        var jsonWriter = new JsonWriter(writer);
+        jsonWriter.setSerializeNulls(true);
+        jsonWriter.setHtmlSafe(true);
+        return jsonWriter;
+    }
+
+    /**
+     * Convert a single {@link Note} to JSON. Null fields are left out, matching a default {@link Gson}.
+     * @param note The {@link Note} to convert
+     * @return A JSON String
+     */
+    public static String toJson(Note note) {
+        var output = new StringWriter();
+        var jsonWriter = new JsonWriter(output);
+        jsonWriter.setSerializeNulls(false);
+        jsonWriter.setHtmlSafe(true);
+        try {
+            _noteAdapter.write(jsonWriter, note);
+        } catch (IOException e) {
+            //Writing to a String cannot fail
+            throw new IllegalStateException(e);
+        }
+        return output.toString();
+    }
+
+    /**
+     * Convert JSON to a single {@link Note}
+     * @param json A JSON String describing a {@link Note}
+     * @return A {@link Note}. NULL if the JSON is blank or null.
+     * @throws JsonParseException Thrown when the JSON is not a valid {@link Note}
+     */
+    public static Note fromJson(String json) {
+        if (json == null || json.isBlank()) {
+            return null;
+        }
+        try {
+            var jsonReader = new JsonReader(new StringReader(json));
+            jsonReader.setLenient(true);
+            return _noteAdapter.read(jsonReader);
+        } catch (IOException | IllegalStateException exception) {
+            throw new JsonParseException(exception);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.jsonnotes.notes;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Reads and writes {@link Note Notes} as JSON objects by accessing their fields directly, without reflection. The
+ *  output is identical to Gson's reflective serialization of a {@link Note}: fields are written in declaration order
+ *  and null fields follow the {@link JsonWriter#getSerializeNulls() serializeNulls} setting of the writer.
+ */
+public class NoteTypeAdapter extends TypeAdapter<Note> {
+
+    @Override
+    public void write(JsonWriter out, Note note) throws IOException {
+        if (note == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("id").value(note.getId());
+        out.name("content").value(note.getContent());
+        out.name("summary").value(note.getSummary());
+        out.endObject();
+    }
+
+    @Override
+    public Note read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        String id = null;
+        var content = "";
+        var summary = "";
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id" -> id = _nextStringOrNull(in);
+                case "content" -> content = _nextStringOrNull(in);
+                case "summary" -> summary = _nextStringOrNull(in);
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        if (id == null) {
+            //Stored data without an ID gets a new one - the same as creating a new Note
+            id = UUID.randomUUID().toString();
+        }
+        return new Note(id, content, summary);
+    }
+
+    /**
+     * Read a string value that may be null
+     * @param in The {@link JsonReader} positioned at the value
+     * @return The string value, or NULL if the value is null
+     * @throws IOException Thrown when the value cannot be read
+     */
+    private static String _nextStringOrNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+}
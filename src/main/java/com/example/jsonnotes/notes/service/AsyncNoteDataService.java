@@ -0,0 +1,214 @@
+package com.example.jsonnotes.notes.service;
+
+import com.example.jsonnotes.notes.Note;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Runs the requests of an {@link INoteDataService} on a pool of threads so the caller is never blocked by a slow disk,
+ *  and many requests can be in flight at once. With more than one thread, the file-per-note services overlap the I/O
+ *  of requests for different {@link Note notes}, so a large batch of reads takes about as long as its slowest reads
+ *  rather than the sum of them.
+ * <p>
+ * The wrapped service must be safe to use from many threads - {@link FileNoteDataService}, {@link CacheNoteDataService},
+ *  {@link PackfileNoteDataService} and {@link CachingNoteDataService} over one of them are. Wrap any other service with
+ *  a concurrency of 1, which also runs the requests one at a time in the order they were made.
+ */
+public class AsyncNoteDataService implements IAsyncNoteDataService, AutoCloseable {
+
+    /**
+     * The default number of requests run at once. Most requests wait on the disk rather than the CPU, so this is more
+     *  than the number of processors.
+     */
+    public final static int DEFAULT_CONCURRENCY = 16;
+
+    /**
+     * The service the requests are run on
+     */
+    private final INoteDataService _dataService;
+    /**
+     * The executor the requests are run on
+     */
+    private final Executor _executor;
+    /**
+     * The thread pool created by this service. NULL when the executor was supplied by the caller.
+     */
+    private final ExecutorService _ownedExecutor;
+
+    /**
+     * Create a new instance of an {@link AsyncNoteDataService} running up to {@link AsyncNoteDataService#DEFAULT_CONCURRENCY}
+     *  requests at once
+     * @param dataService The {@link INoteDataService} to run the requests on. Must be safe to use from many threads.
+     */
+    public AsyncNoteDataService(INoteDataService dataService) {
+        this(dataService, DEFAULT_CONCURRENCY);
+    }
+
+    /**
+     * Create a new instance of an {@link AsyncNoteDataService} with its own pool of threads
+     * @param dataService The {@link INoteDataService} to run the requests on
+     * @param concurrency The number of requests run at once. 1 runs them one at a time in the order they were made.
+     */
+    public AsyncNoteDataService(INoteDataService dataService, int concurrency) {
+        if (dataService == null) {
+            throw new IllegalArgumentException("dataService cannot be null");
+        }
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1");
+        }
+        _dataService = dataService;
+        _ownedExecutor = Executors.newFixedThreadPool(concurrency, runnable -> {
+            var thread = new Thread(runnable, "note-async");
+            thread.setDaemon(true);
+            return thread;
+        });
+        _executor = _ownedExecutor;
+    }
+
+    /**
+     * Create a new instance of an {@link AsyncNoteDataService} that runs the requests on an executor owned by the
+     *  caller. {@link AsyncNoteDataService#close()} does not shut the executor down.
+     * @param dataService The {@link INoteDataService} to run the requests on
+     * @param executor The {@link Executor} to run the requests on
+     */
+    public AsyncNoteDataService(INoteDataService dataService, Executor executor) {
+        if (dataService == null) {
+            throw new IllegalArgumentException("dataService cannot be null");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor cannot be null");
+        }
+        _dataService = dataService;
+        _executor = executor;
+        _ownedExecutor = null;
+    }
+
+    /**
+     * Get the {@link INoteDataService} the requests are run on
+     * @return The wrapped {@link INoteDataService}
+     */
+    public INoteDataService getDataService() {
+        return _dataService;
+    }
+
+    @Override
+    public CompletableFuture<String> createNote() {
+        return _run(_dataService::createNote);
+    }
+
+    @Override
+    public CompletableFuture<String> createNote(String content) {
+        return _run(() -> _dataService.createNote(content));
+    }
+
+    @Override
+    public CompletableFuture<String> createNote(Note note) {
+        if (note == null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("note cannot be null"));
+        }
+        //Copy now so changes the caller makes after this call are not saved
+        var noteCopy = note.duplicate();
+        return _run(() -> _dataService.createNote(noteCopy));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> createNotes(Collection<Note> notes) {
+        try {
+            NoteBatch.checkNotes(notes);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        //Copy now so changes the caller makes after this call are not saved
+        var noteCopies = notes.stream().map(Note::duplicate).toList();
+        return _run(() -> _dataService.createNotes(noteCopies));
+    }
+
+    @Override
+    public CompletableFuture<List<Note>> getAllNotes() {
+        return _run(_dataService::getAllNotes);
+    }
+
+    @Override
+    public CompletableFuture<NotePage> getNotes(String cursor, int limit) {
+        return _run(() -> _dataService.getNotes(cursor, limit));
+    }
+
+    @Override
+    public CompletableFuture<Integer> getNoteCount() {
+        return _run(_dataService::getNoteCount);
+    }
+
+    @Override
+    public CompletableFuture<Note> getNoteById(String id) {
+        return _run(() -> _dataService.getNoteById(id));
+    }
+
+    @Override
+    public CompletableFuture<Note> updateNote(Note note) {
+        if (note == null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("note cannot be null"));
+        }
+        //Copy now so changes the caller makes after this call are not saved
+        var noteCopy = note.duplicate();
+        return _run(() -> _dataService.updateNote(noteCopy));
+    }
+
+    @Override
+    public CompletableFuture<List<Note>> updateNotes(Collection<Note> notes) {
+        try {
+            NoteBatch.checkNotes(notes);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        //Copy now so changes the caller makes after this call are not saved
+        var noteCopies = notes.stream().map(Note::duplicate).toList();
+        return _run(() -> _dataService.updateNotes(noteCopies));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteNoteById(String id) {
+        return _run(() -> _dataService.deleteNoteById(id));
+    }
+
+    @Override
+    public CompletableFuture<List<Boolean>> deleteNotesByIds(Collection<String> ids) {
+        try {
+            NoteBatch.checkIds(ids);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        var idCopies = List.copyOf(ids);
+        return _run(() -> _dataService.deleteNotesByIds(idCopies));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAllNotes() {
+        return CompletableFuture.runAsync(_dataService::deleteAllNotes, _executor);
+    }
+
+    /**
+     * Stop accepting requests and let the ones already made finish. Only a thread pool created by this service is
+     *  shut down.
+     */
+    @Override
+    public void close() {
+        if (_ownedExecutor != null) {
+            _ownedExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Run a request on the executor
+     * @param request The request to run
+     * @return A {@link CompletableFuture} completed with the result of the request
+     */
+    private <T> CompletableFuture<T> _run(Supplier<T> request) {
+        return CompletableFuture.supplyAsync(request, _executor);
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.jsonnotes.notes.service;
+
+import com.example.jsonnotes.notes.Note;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A data service for {@link Note Notes} that stores all data in a single binary file. IDs are stored as raw UUID bytes
+ *  and text as length-prefixed UTF-8, so the file is smaller than the JSON equivalent and loads without parsing text.
+ *  See {@link NoteBinaryFormat} for the layout of the file.
+ */
+public class BinaryFileNotesDataService extends SingleFileNoteDataService {
+
+    /**
+     * The name of the file that contains binary {@link Note notes}
+     */
+    protected final static String _BINARY_NOTES_FILE_NAME = "notes.dat";
+
+    /**
+     * Single instance of {@link BinaryFileNotesDataService}
+     */
+    private static BinaryFileNotesDataService _instance;
+
+    /**
+     * Create a new single instance of {@link BinaryFileNotesDataService}
+     * @param dataPath Absolute path to the directory where the {@link SingleFileNoteDataService#_notesFile} will be located
+     * @return {@link BinaryFileNotesDataService}
+     * @throws IllegalArgumentException Thrown when no dataPath is specified and no {@link BinaryFileNotesDataService#_instance} is available
+     */
+    public static BinaryFileNotesDataService getInstance(String dataPath) throws IllegalArgumentException {
+        if (dataPath != null) {
+            //When a dataPath is provided, generate a new instance
+            _instance = new BinaryFileNotesDataService(dataPath);
+        }
+        if (_instance == null) {
+            //When no dataPath is specified and there is no current instance, we cannot continue.
+            throw new IllegalArgumentException("No instance available and no dataPath specified. Cannot proceed.");
+        }
+        return _instance;
+    }
+
+    /**
+     * Create a new instance of a {@link BinaryFileNotesDataService} pointing at a specific path
+     */
+    public BinaryFileNotesDataService(String dataPath) throws RuntimeException {
+        this(dataPath, false);
+    }
+
+    /**
+     * Create a new instance of a {@link BinaryFileNotesDataService} pointing at a specific path
+     * @param dataPath Absolute path to the directory where the {@link SingleFileNoteDataService#_notesFile} will be located
+     * @param journaled When TRUE, changes are appended to a journal instead of rewriting the whole file
+     */
+    public BinaryFileNotesDataService(String dataPath, boolean journaled) throws RuntimeException {
+        super(dataPath, _BINARY_NOTES_FILE_NAME, journaled);
+    }
+
+    /**
+     * Convert file data to {@link Note notes}. Binary data has no natural String form - each character of the String
+     *  holds one byte of the file (ISO-8859-1), matching {@link BinaryFileNotesDataService#getFileDataFromNotes(List)}.
+     */
+    @Override
+    protected List<Note> getNotesFromFileData(String fileData) {
+        var notes = new ArrayList<Note>();
+        if (fileData == null || fileData.equals("")) {
+            return notes;
+        }
+        try {
+            _readNotes(ByteBuffer.wrap(fileData.getBytes(StandardCharsets.ISO_8859_1)), notes::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return notes;
+    }
+
+    /**
+     * Convert {@link Note notes} to file data. Each character of the String holds one byte of the file (ISO-8859-1).
+     */
+    @Override
+    protected String getFileDataFromNotes(List<Note> notes) {
+        var output = new ByteArrayOutputStream();
+        try {
+            writeNotes(output, notes == null ? List.of() : notes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    protected void readNotes(InputStream input, Consumer<Note> noteConsumer) throws IOException {
+        //Decode a record at a time as the file streams in - the file is never held in memory as a whole
+        NoteBinaryFormat.readHeader(ByteBuffer.wrap(input.readNBytes(NoteBinaryFormat.HEADER_SIZE)));
+        var notes = new LinkedHashMap<String, Note>();
+        var damaged = NoteBinaryFormat.readRecords(input, note -> notes.put(note.getId(), note), notes::remove);
+        _reportDamaged(damaged);
+        notes.values().forEach(noteConsumer);
+    }
+
+    @Override
+    protected void writeNotes(OutputStream output, List<Note> notes) throws IOException {
+        NoteBinaryFormat.writeHeader(output, notes.size());
+        for (var note : notes) {
+            NoteBinaryFormat.writeRecord(output, note);
+        }
+    }
+
+    /**
+     * Decode the {@link Note notes} in a buffer holding a whole binary notes file
+     * @param buffer The file data
+     * @param noteConsumer Receives each {@link Note}
+     * @throws IOException Thrown when the data is not a binary notes file
+     */
+    private void _readNotes(ByteBuffer buffer, Consumer<Note> noteConsumer) throws IOException {
+        NoteBinaryFormat.readHeader(buffer);
+        //Later records replace earlier ones and tombstones remove them - keep file order for the survivors
+        var notes = new LinkedHashMap<String, Note>();
+        var damaged = NoteBinaryFormat.readRecords(buffer, note -> notes.put(note.getId(), note), notes::remove);
+        _reportDamaged(damaged);
+        notes.values().forEach(noteConsumer);
+    }
+
+    private void _reportDamaged(int damaged) {
+        if (damaged > 0) {
+            System.out.printf("Skipped %d damaged record(s) in %s.%n", damaged, _notesFile.getAbsolutePath());
+        }
+    }
+}
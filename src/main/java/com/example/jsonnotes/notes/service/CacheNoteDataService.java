@@ -2,42 +2,51 @@ package com.example.jsonnotes.notes.service;
 
 import com.example.jsonnotes.notes.Note;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A data service for {@link Note Notes} that stores all data in a collection in memory.
+ * <p>
+ * The service is safe to use from many threads at once. Reads never block, and writes to different {@link Note notes}
+ *  rarely contend with each other. {@link Note notes} are kept in order of ID, so a page of them is found without
+ *  looking at the rest. A stored {@link Note} is never changed in place - an update stores a new copy - so
+ *  a {@link Note} returned by the service always holds the values of a single update.
  */
 public class CacheNoteDataService implements INoteDataService {
 
     /**
-     * Single instance of {@link CacheNoteDataService}
+     * Single instance of {@link CacheNoteDataService}. Created when the class is initialized, so every thread gets the
+     *  same instance.
      */
-    private static CacheNoteDataService _instance = new CacheNoteDataService();
+    private static final CacheNoteDataService _instance = new CacheNoteDataService();
 
     /**
      * Get the single instance of {@link CacheNoteDataService}
      * @return {@link CacheNoteDataService}
      */
     public static CacheNoteDataService getInstance() {
-        if (_instance == null) {
-            _instance = new CacheNoteDataService();
-        }
         return _instance;
     }
 
     /**
-     * Collection of {@link Note Notes}
+     * Collection of {@link Note Notes}, in order of ID
+     */
+    private final ConcurrentSkipListMap<String, Note> _cache;
+    /**
+     * The number of {@link Note Notes} in the {@link CacheNoteDataService#_cache}, kept alongside so the count is a
+     *  single read on every JDK. Older JDKs count a {@link ConcurrentSkipListMap} by walking all of it.
      */
-    private Map<String, Note> _cache;
+    private final AtomicInteger _noteCount = new AtomicInteger();
 
     /**
      * Create a new instance of a {@link CacheNoteDataService}
      */
     public CacheNoteDataService() {
-        _cache = new HashMap<>();
+        _cache = new ConcurrentSkipListMap<>();
     }
 
     @Override
@@ -45,7 +54,7 @@ public class CacheNoteDataService implements INoteDataService {
         //Create new note
         var note = new Note();
         //Store note in cache
-        _cache.put(note.getId(), note);
+        _putNote(note);
         //Return note ID
         return note.getId();
     }
@@ -55,7 +64,7 @@ public class CacheNoteDataService implements INoteDataService {
         //Create new note
         var note = new Note(content);
         //Store note in cache
-        _cache.put(note.getId(), note);
+        _putNote(note);
         //Return note ID
         return note.getId();
     }
@@ -66,14 +75,30 @@ public class CacheNoteDataService implements INoteDataService {
         var trueNote = new Note();
         trueNote.copyValues(note);
         //Store note in cache
-        _cache.put(trueNote.getId(), trueNote);
+        _putNote(trueNote);
         //Return note ID
         return trueNote.getId();
     }
 
+    /**
+     * Get a {@link List} of all {@link Note Notes}. The list is weakly consistent - it reflects every change finished
+     *  before the call, and may or may not reflect changes made while it is being built.
+     * @return A {@link List} of {@link Note Notes}
+     */
     @Override
     public List<Note> getAllNotes() {
-        return _cache.values().stream().toList();
+        return List.copyOf(_cache.values());
+    }
+
+    @Override
+    public NotePage getNotes(String cursor, int limit) {
+        var after = NotePage.startAfter(cursor, limit);
+        var notes = new ArrayList<Note>(Math.min(limit, 1024));
+        var remaining = (after == null ? _cache : _cache.tailMap(after, false)).values().iterator();
+        while (notes.size() < limit && remaining.hasNext()) {
+            notes.add(remaining.next());
+        }
+        return new NotePage(notes, remaining.hasNext());
     }
 
     @Override
@@ -81,31 +106,40 @@ public class CacheNoteDataService implements INoteDataService {
         if (id == null || id.equals("")) {
             throw new IllegalArgumentException("id cannot be blank");
         }
-        if (!_cache.containsKey(id)) {
+        var note = _cache.get(id);
+        if (note == null) {
             throw new NoSuchElementException(String.format("Note with id %s not found", id));
         }
-        return _cache.get(id);
+        return note;
     }
 
     @Override
     public int getNoteCount() {
-        if (_cache == null) {
-            return 0;
-        }
-        return _cache.size();
+        return _noteCount.get();
     }
 
+    /**
+     * Update a {@link Note}. The update is atomic - concurrent updates to the same {@link Note} are applied one after
+     *  another, and none of them is lost or mixed with another.
+     * @param upNote The {@link Note} to update
+     * @return The updated {@link Note}
+     */
     @Override
     public Note updateNote(Note upNote) {
         if (upNote == null) {
             throw new IllegalArgumentException("upNote cannot be null");
         }
         var id = upNote.getId();
-        var curNote = getNoteById(id);
-        curNote.copyValues(upNote);
-        //Save the updated note to the cache
-        _cache.put(id, curNote);
-        return curNote;
+        //Copy rather than change the stored note, so readers never see a note half way through an update
+        var updated = _cache.computeIfPresent(id, (noteId, curNote) -> {
+            var newNote = curNote.duplicate();
+            newNote.copyValues(upNote);
+            return newNote;
+        });
+        if (updated == null) {
+            throw new NoSuchElementException(String.format("Note with id %s not found", id));
+        }
+        return updated;
     }
 
     @Override
@@ -113,12 +147,29 @@ public class CacheNoteDataService implements INoteDataService {
         if (id == null || id.equals("")) {
             throw new IllegalArgumentException("id cannot be blank");
         }
-        _cache.remove(id);
+        if (_cache.remove(id) == null) {
+            return false;
+        }
+        _noteCount.decrementAndGet();
         return true;
     }
 
     @Override
     public void deleteAllNotes() {
-        _cache = new HashMap<>();
+        //Remove in place - replacing the map would lose notes created by other threads in the meantime, and each
+        // removal is counted so the count stays exact
+        for (var id : _cache.keySet()) {
+            deleteNoteById(id);
+        }
+    }
+
+    /**
+     * Store a new {@link Note} in the {@link CacheNoteDataService#_cache} and count it
+     * @param note The {@link Note} to store
+     */
+    private void _putNote(Note note) {
+        if (_cache.put(note.getId(), note) == null) {
+            _noteCount.incrementAndGet();
+        }
     }
 }
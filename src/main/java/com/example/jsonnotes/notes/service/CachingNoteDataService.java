@@ -0,0 +1,392 @@
+package com.example.jsonnotes.notes.service;
+
+import com.example.jsonnotes.notes.Note;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToLongFunction;
+
+/**
+ * A data service for {@link Note Notes} that keeps the most requested {@link Note notes} of another
+ *  {@link INoteDataService} in memory. {@link Note notes} are read through the cache and changes are written through
+ *  it to the wrapped service, so the wrapped service always holds every change.
+ * <p>
+ * The cache is bounded by the number of {@link Note notes} or by an estimate of the heap they take up, and evicts with
+ *  a frequency-aware policy (W-TinyLFU) so a scan of {@link Note notes} that are read once does not push out the
+ *  {@link Note notes} read all the time. Hit, miss, and eviction counts show how well the cache is working.
+ * <p>
+ * The {@link Note notes} returned are copies, so changing one changes neither the cache nor the wrapped service. Only
+ *  {@link CachingNoteDataService#getNoteById(String)} reads through the cache - {@link CachingNoteDataService#getAllNotes()}
+ *  and {@link CachingNoteDataService#getNotes(String, int)} go straight to the wrapped service. An update caches the
+ *  updated {@link Note} unless another change was made while it was being written, in which case the {@link Note} is
+ *  dropped and the next read caches whichever version was written last. The wrapped service must not be changed other
+ *  than through this service.
+ * <p>
+ * Hits do not wait for the lock that guards the cache. They are served from a concurrent map, and the bookkeeping the
+ *  eviction policy needs is buffered and applied under the lock in batches.
+ */
+public class CachingNoteDataService implements INoteDataService {
+
+    /**
+     * The default maximum number of cached {@link Note notes}
+     */
+    public final static int DEFAULT_MAX_NOTES = 10_000;
+    /**
+     * The estimated heap taken up by a {@link Note} besides its Strings, in bytes
+     */
+    private final static long _NOTE_OVERHEAD_BYTES = 160;
+    /**
+     * The number of buffered hits at which a reader applies them to the cache
+     */
+    private final static int _READ_BUFFER_SIZE = 64;
+
+    /**
+     * The service {@link Note notes} are read from and written to
+     */
+    private final INoteDataService _dataService;
+    /**
+     * The cached {@link Note notes}. Guarded by this.
+     */
+    private final NoteCache _cache;
+    /**
+     * Counts the changes made to the cache by writes. A read that started before a write does not cache what it read,
+     *  since it may be out of date. Guarded by this.
+     */
+    private long _writeCount = 0;
+    /**
+     * The IDs of the {@link Note notes} served from the cache since the hits were last applied to it
+     */
+    private final Queue<String> _readBuffer = new ConcurrentLinkedQueue<>();
+    /**
+     * The number of IDs in the {@link CachingNoteDataService#_readBuffer}, kept alongside since counting a
+     *  {@link ConcurrentLinkedQueue} walks all of it
+     */
+    private final AtomicInteger _bufferedReads = new AtomicInteger();
+    /**
+     * TRUE while a reader is applying buffered hits, so other readers do not queue up behind it
+     */
+    private final AtomicBoolean _draining = new AtomicBoolean(false);
+
+    /**
+     * Create a new instance of a {@link CachingNoteDataService} that caches up to {@link CachingNoteDataService#DEFAULT_MAX_NOTES}
+     *  {@link Note notes}
+     * @param dataService The {@link INoteDataService} to cache
+     */
+    public CachingNoteDataService(INoteDataService dataService) {
+        this(dataService, DEFAULT_MAX_NOTES);
+    }
+
+    /**
+     * Create a new instance of a {@link CachingNoteDataService} bounded by the number of cached {@link Note notes}
+     * @param dataService The {@link INoteDataService} to cache
+     * @param maxNotes The maximum number of cached {@link Note notes}
+     */
+    public CachingNoteDataService(INoteDataService dataService, int maxNotes) {
+        this(dataService, maxNotes, note -> 1, maxNotes);
+    }
+
+    /**
+     * Create a new instance of a {@link CachingNoteDataService} bounded by the total weight of the cached
+     *  {@link Note notes}. Pass {@link CachingNoteDataService#estimateSize(Note)} as the weigher to bound the heap the
+     *  cache takes up.
+     * @param dataService The {@link INoteDataService} to cache
+     * @param maxWeight The maximum total weight of the cached {@link Note notes}
+     * @param weigher Gets the weight of a {@link Note}
+     */
+    public CachingNoteDataService(INoteDataService dataService, long maxWeight, ToLongFunction<Note> weigher) {
+        //The number of notes that fit is not known yet - the frequency sketch grows with the cache
+        this(dataService, maxWeight, weigher, Math.min(maxWeight, 1024));
+    }
+
+    private CachingNoteDataService(INoteDataService dataService, long maxWeight, ToLongFunction<Note> weigher, long expectedNotes) {
+        if (dataService == null) {
+            throw new IllegalArgumentException("dataService cannot be null");
+        }
+        if (weigher == null) {
+            throw new IllegalArgumentException("weigher cannot be null");
+        }
+        if (maxWeight < 1) {
+            throw new IllegalArgumentException("maxWeight must be at least 1");
+        }
+        _dataService = dataService;
+        _cache = new NoteCache(maxWeight, weigher, expectedNotes);
+    }
+
+    /**
+     * Estimate the heap taken up by a {@link Note}, in bytes. Characters are counted at 2 bytes, which overestimates
+     *  Strings that only hold Latin-1 characters.
+     * @param note The {@link Note}
+     * @return The estimated size in bytes
+     */
+    public static long estimateSize(Note note) {
+        var characters = note.getId().length();
+        characters += note.getContent() == null ? 0 : note.getContent().length();
+        characters += note.getSummary() == null ? 0 : note.getSummary().length();
+        return _NOTE_OVERHEAD_BYTES + 2L * characters;
+    }
+
+    /**
+     * Get the {@link INoteDataService} this service caches
+     * @return The wrapped {@link INoteDataService}
+     */
+    public INoteDataService getDataService() {
+        return _dataService;
+    }
+
+    /**
+     * Get the number of {@link Note notes} served from the cache
+     * @return The hit count
+     */
+    public synchronized long getHitCount() {
+        _drainReads();
+        return _cache.getHitCount();
+    }
+
+    /**
+     * Get the number of {@link Note notes} that had to be read from the wrapped service
+     * @return The miss count
+     */
+    public synchronized long getMissCount() {
+        _drainReads();
+        return _cache.getMissCount();
+    }
+
+    /**
+     * Get the number of {@link Note notes} removed from the cache to stay within its bound
+     * @return The eviction count
+     */
+    public synchronized long getEvictionCount() {
+        _drainReads();
+        return _cache.getEvictionCount();
+    }
+
+    /**
+     * Get the share of reads served from the cache
+     * @return The hit rate from 0 to 1. 0 when nothing has been read.
+     */
+    public synchronized double getHitRate() {
+        _drainReads();
+        var requests = _cache.getHitCount() + _cache.getMissCount();
+        return requests == 0 ? 0 : (double) _cache.getHitCount() / requests;
+    }
+
+    /**
+     * Get the number of {@link Note notes} in the cache
+     * @return The number of cached {@link Note notes}
+     */
+    public synchronized int getCachedNoteCount() {
+        _drainReads();
+        return _cache.size();
+    }
+
+    /**
+     * Get the total weight of the {@link Note notes} in the cache
+     * @return The cached weight. Never more than the maximum weight.
+     */
+    public synchronized long getCachedWeight() {
+        _drainReads();
+        return _cache.getWeight();
+    }
+
+    /**
+     * Remove every {@link Note} from the cache. The wrapped service is not changed.
+     */
+    public synchronized void invalidateAll() {
+        _drainReads();
+        _writeCount++;
+        _cache.clear();
+    }
+
+    @Override
+    public String createNote() {
+        //New notes are cached when they are first read, so notes that are written and never read take no room
+        return _dataService.createNote();
+    }
+
+    @Override
+    public String createNote(String content) {
+        return _dataService.createNote(content);
+    }
+
+    @Override
+    public String createNote(Note note) {
+        return _dataService.createNote(note);
+    }
+
+    @Override
+    public List<String> createNotes(Collection<Note> notes) {
+        return _dataService.createNotes(notes);
+    }
+
+    @Override
+    public List<Note> getAllNotes() {
+        return _dataService.getAllNotes();
+    }
+
+    @Override
+    public NotePage getNotes(String cursor, int limit) {
+        return _dataService.getNotes(cursor, limit);
+    }
+
+    @Override
+    public int getNoteCount() {
+        return _dataService.getNoteCount();
+    }
+
+    @Override
+    public String getFingerprint() {
+        return _dataService.getFingerprint();
+    }
+
+    @Override
+    public Note getNoteById(String id) {
+        if (id == null || id.equals("")) {
+            throw new IllegalArgumentException("id cannot be blank");
+        }
+        var hit = _cache.peek(id);
+        if (hit != null) {
+            _bufferRead(id);
+            return hit.duplicate();
+        }
+        long writeCount;
+        synchronized (this) {
+            _drainReads();
+            var cached = _cache.get(id);
+            if (cached != null) {
+                return cached.duplicate();
+            }
+            writeCount = _writeCount;
+        }
+        //Read outside the lock so a slow read does not hold up hits
+        var note = _dataService.getNoteById(id);
+        if (note == null) {
+            //The wrapped service could not read the note - try again next time
+            return null;
+        }
+        var copy = note.duplicate();
+        synchronized (this) {
+            if (writeCount == _writeCount) {
+                _cache.put(copy);
+            }
+        }
+        return copy.duplicate();
+    }
+
+    @Override
+    public Note updateNote(Note upNote) {
+        if (upNote == null) {
+            throw new IllegalArgumentException("upNote cannot be null");
+        }
+        long writeCount;
+        synchronized (this) {
+            writeCount = _writeCount;
+        }
+        var updated = _dataService.updateNote(upNote);
+        synchronized (this) {
+            if (updated != null && writeCount == _writeCount) {
+                _cache.put(updated.duplicate());
+            } else {
+                //Another change was made while this one was written, and may have been written after it - caching
+                //this version could put an older one back
+                _cache.remove(upNote.getId());
+            }
+            _writeCount++;
+        }
+        return updated;
+    }
+
+    /**
+     * Count the hits served without the lock, applying them to the cache once enough have been buffered. Only one
+     *  reader applies them at a time - the others carry on.
+     * @param id The ID of the {@link Note} that was served from the cache
+     */
+    private void _bufferRead(String id) {
+        _readBuffer.add(id);
+        if (_bufferedReads.incrementAndGet() < _READ_BUFFER_SIZE || !_draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            synchronized (this) {
+                _drainReads();
+            }
+        } finally {
+            _draining.set(false);
+        }
+    }
+
+    /**
+     * Apply the buffered hits to the cache, in the order they were served. Must be called while holding this.
+     */
+    private void _drainReads() {
+        //Only the reads buffered so far, so a steady stream of hits cannot keep the caller here
+        for (int count = _bufferedReads.get(); count > 0; count--) {
+            var id = _readBuffer.poll();
+            if (id == null) {
+                break;
+            }
+            _bufferedReads.decrementAndGet();
+            _cache.recordHit(id);
+        }
+    }
+
+    @Override
+    public List<Note> updateNotes(Collection<Note> notes) {
+        NoteBatch.checkNotes(notes);
+        //Keep the IDs in case the wrapped service changes the notes it was given
+        var ids = notes.stream().map(Note::getId).toList();
+        long writeCount;
+        synchronized (this) {
+            writeCount = _writeCount;
+        }
+        var updated = _dataService.updateNotes(notes);
+        synchronized (this) {
+            for (int i = 0; i < ids.size(); i++) {
+                var note = updated.get(i);
+                //Cached or dropped for the same reasons as a single update
+                if (note != null && writeCount == _writeCount) {
+                    _cache.put(note.duplicate());
+                } else {
+                    _cache.remove(ids.get(i));
+                }
+            }
+            _writeCount++;
+        }
+        return updated;
+    }
+
+    @Override
+    public boolean deleteNoteById(String id) {
+        if (id == null || id.equals("")) {
+            throw new IllegalArgumentException("id cannot be blank");
+        }
+        var deleted = _dataService.deleteNoteById(id);
+        synchronized (this) {
+            _writeCount++;
+            _cache.remove(id);
+        }
+        return deleted;
+    }
+
+    @Override
+    public List<Boolean> deleteNotesByIds(Collection<String> ids) {
+        NoteBatch.checkIds(ids);
+        var idList = new ArrayList<>(ids);
+        var deleted = _dataService.deleteNotesByIds(idList);
+        synchronized (this) {
+            _writeCount++;
+            idList.forEach(_cache::remove);
+        }
+        return deleted;
+    }
+
+    @Override
+    public void deleteAllNotes() {
+        _dataService.deleteAllNotes();
+        invalidateAll();
+    }
+}
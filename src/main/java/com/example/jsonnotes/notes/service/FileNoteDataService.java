@@ -2,12 +2,31 @@ package com.example.jsonnotes.notes.service;
 
 import com.example.jsonnotes.notes.Note;
 import com.example.jsonnotes.util.FileHelper;
+import com.example.jsonnotes.util.FileSyncer;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 
 /**
  * A data service for {@link Note Notes} that stores all data in individual text files - one file per {@link Note}.
+ *  Files may be compressed with a dictionary shared by the store - see {@link FileNoteDataService#setCompressed(boolean)} -
+ *  and content repeated across {@link Note notes} may be stored once - see {@link FileNoteDataService#setDeduplicated(boolean)}.
+ * <p>
+ * The service is safe to use from many threads. Each {@link Note} is guarded by one of a fixed set of locks chosen by
+ *  its ID, so changes to the same {@link Note} are made one after another while changes to different {@link Note notes}
+ *  run in parallel.
  */
 public abstract class FileNoteDataService implements INoteDataService {
 
@@ -15,23 +34,436 @@ public abstract class FileNoteDataService implements INoteDataService {
      * The file extension used by files that contain {@link Note notes}
      */
     protected final static String _FILE_EXTENSION = ".txt";
+    /**
+     * The name of the file that lists the IDs of the {@link Note notes} in the data directory
+     */
+    protected final static String _MANIFEST_FILE_NAME = ".note-ids";
+    /**
+     * The name of the directory that holds the content shared by {@link Note notes}
+     */
+    protected final static String _BODIES_DIRECTORY_NAME = ".bodies";
+    /**
+     * The default number of {@link Note notes} a compression dictionary is trained from
+     */
+    public final static int DEFAULT_DICTIONARY_SAMPLE_SIZE = 1000;
+    /**
+     * The number of locks shared by the {@link Note notes}. A power of 2.
+     */
+    private final static int _LOCK_STRIPES = 256;
     /**
      * The absolute path to the directory containing {@link Note notes}
      */
     protected final String _dataPath;
     /**
-     * A collection of IDs for the {@link Note notes} managed by this service
+     * A collection of IDs for the {@link Note notes} managed by this service, in order. Safe to read and change from any
+     *  thread. Changes are made while holding the {@link FileNoteDataService#_manifest} so a rewrite of the manifest
+     *  sees every change that has finished.
+     */
+    protected NavigableSet<String> _noteIds = new ConcurrentSkipListSet<>();
+    /**
+     * The number of IDs in {@link FileNoteDataService#_noteIds}, kept alongside so the count is a single read on every
+     *  JDK. Older JDKs count a {@link ConcurrentSkipListSet} by walking all of it. Changed while holding the
+     *  {@link FileNoteDataService#_manifest}.
+     */
+    private volatile int _noteCount = 0;
+    /**
+     * Keeps a list of the {@link Note} IDs on disk so they can be loaded without listing the data directory
+     */
+    protected final NoteIdManifest _manifest;
+    /**
+     * The IDs recorded in the {@link FileNoteDataService#_manifest} whose files are still being written or deleted,
+     *  with the number of changes in progress for each. Guarded by the {@link FileNoteDataService#_manifest}.
+     */
+    private final Map<String, Integer> _pendingIds = new HashMap<>();
+    /**
+     * The maximum number of {@link Note} files read at the same time by {@link FileNoteDataService#getAllNotes()}.
+     *  1 reads the files one after another. Changed while holding this, and read without it.
+     */
+    private volatile int _readConcurrency = 1;
+    /**
+     * Reads {@link Note} files in parallel. NULL until a parallel read is needed.
+     */
+    private ExecutorService _readExecutor;
+    /**
+     * Where new {@link Note} files are written. Files are found in either layout.
+     */
+    private volatile NoteFileLayout _layout = NoteFileLayout.FLAT;
+    /**
+     * Compresses {@link Note} files with the dictionaries stored in the data directory
      */
-    protected Set<String> _noteIds = new HashSet<>();
+    private final NoteDictionaryCodec _codec;
+    /**
+     * When TRUE, {@link Note} files are written compressed. Files are read in either form.
+     */
+    private volatile boolean _compressed = false;
+    /**
+     * Stores long {@link Note} content once for every {@link Note} that has it
+     */
+    private final NoteBodyStore _bodies;
+    /**
+     * When TRUE, long content is written to the {@link FileNoteDataService#_bodies} and {@link Note} files refer to it.
+     *  Files are read in either form.
+     */
+    private volatile boolean _deduplicated;
+    /**
+     * The body reference held by each {@link Note} file that has one, keyed by {@link Note} ID. NULL until the
+     *  references are counted by {@link FileNoteDataService#_countBodyReferences()}.
+     */
+    private volatile Map<String, String> _bodyReferences;
+    /**
+     * The locks guarding the {@link Note notes}. The lock for a {@link Note} is held while its file is read or written.
+     */
+    private final Object[] _noteLocks = new Object[_LOCK_STRIPES];
+    /**
+     * Pushes the files written by this service to disk
+     */
+    private final FileSyncer _syncer = new FileSyncer();
 
     /**
      * Create a new instance of a {@link FileNoteDataService} pointing at a specific path
      */
     FileNoteDataService(String dataPath) {
+        this(dataPath, 1);
+    }
+
+    /**
+     * Create a new instance of a {@link FileNoteDataService} pointing at a specific path
+     * @param dataPath Absolute path to the directory where {@link Note notes} are stored
+     * @param readConcurrency The maximum number of {@link Note} files read at the same time when getting all
+     *                        {@link Note notes}. 1 reads the files one after another.
+     */
+    FileNoteDataService(String dataPath, int readConcurrency) {
         _dataPath = dataPath;
+        _manifest = new NoteIdManifest(new File(dataPath), _MANIFEST_FILE_NAME);
+        _codec = new NoteDictionaryCodec(new File(dataPath), _syncer);
+        _bodies = new NoteBodyStore(new File(dataPath, _BODIES_DIRECTORY_NAME), _syncer);
+        //A store that already shares content keeps sharing it
+        _deduplicated = _bodies.hasBodies();
+        for (int i = 0; i < _noteLocks.length; i++) {
+            _noteLocks[i] = new Object();
+        }
+        setReadConcurrency(readConcurrency);
         _loadNoteIds();
     }
 
+    /**
+     * Get the maximum number of {@link Note} files read at the same time when getting all {@link Note notes}, and
+     *  written at the same time by the batch methods
+     * @return The read concurrency. 1 means files are read one after another.
+     */
+    public int getReadConcurrency() {
+        return _readConcurrency;
+    }
+
+    /**
+     * Set the maximum number of {@link Note} files read at the same time when getting all {@link Note notes}, and
+     *  written at the same time by the batch methods. Working in parallel keeps more requests in flight on devices
+     *  that can serve them concurrently, such as SSDs.
+     * @param readConcurrency The read concurrency. 1 reads the files one after another.
+     */
+    public synchronized void setReadConcurrency(int readConcurrency) {
+        if (readConcurrency < 1) {
+            throw new IllegalArgumentException("readConcurrency must be at least 1");
+        }
+        if (readConcurrency == _readConcurrency) {
+            return;
+        }
+        _readConcurrency = readConcurrency;
+        if (_readExecutor != null) {
+            //Running reads finish on the old executor - the next read uses an executor of the new size
+            _readExecutor.shutdown();
+            _readExecutor = null;
+        }
+    }
+
+    /**
+     * Get the {@link FileSyncer} that pushes the files written by this service to disk. Set its
+     *  {@link FileSyncer.Durability} to choose how much recent work a crash can lose.
+     * @return A {@link FileSyncer}
+     */
+    public FileSyncer getFileSyncer() {
+        return _syncer;
+    }
+
+    /**
+     * Get the layout new {@link Note} files are written in
+     * @return A {@link NoteFileLayout}
+     */
+    public NoteFileLayout getLayout() {
+        return _layout;
+    }
+
+    /**
+     * Set the layout new {@link Note} files are written in. {@link Note} files are found, read, and deleted in either
+     *  layout, so a directory can be switched at any time and migrated with {@link FileNoteDataService#migrateLayout()}
+     *  while it is in use.
+     * <p>
+     * Changes made through this service are recorded in the ID manifest before the files change, so they are found
+     *  in either layout after a crash. Otherwise the manifest only notices changes to the data directory itself. Files
+     *  added to or removed from {@link NoteFileLayout#SHARDED shard directories} by anything other than this service
+     *  are not picked up until the manifest is deleted.
+     * @param layout The {@link NoteFileLayout} to write new files in
+     */
+    public void setLayout(NoteFileLayout layout) {
+        if (layout == null) {
+            throw new IllegalArgumentException("layout cannot be null");
+        }
+        _layout = layout;
+    }
+
+    /**
+     * Move every {@link Note} file that is not in the current {@link FileNoteDataService#getLayout() layout} into it.
+     *  Files are moved one at a time with a rename, so every {@link Note} stays readable while the migration runs. When
+     *  a {@link Note} already has a file in the current layout, that file is the newer one and the old file is deleted.
+     *  Shard directories left empty are removed.
+     * @return The number of {@link Note} files moved
+     */
+    public int migrateLayout() {
+        var layout = _layout;
+        var dataDir = new File(_dataPath);
+        var moved = 0;
+        for (var id : new ArrayList<>(_noteIds)) {
+            if (_migrateNoteFile(layout, dataDir, id)) {
+                moved++;
+            }
+        }
+        if (layout == NoteFileLayout.FLAT) {
+            _deleteEmptyShardDirectories(dataDir);
+        }
+        //Moving files changed the directory - keep the manifest current
+        _manifest.touch();
+        System.out.printf("Moved %d note file(s) to the %s layout%n", moved, layout);
+        return moved;
+    }
+
+    /**
+     * Move the file of one {@link Note} into a layout while holding the {@link Note}'s lock
+     * @param layout The layout to move the file into
+     * @param dataDir The data directory
+     * @param id The ID of the {@link Note}
+     * @return TRUE if the file was moved
+     */
+    private boolean _migrateNoteFile(NoteFileLayout layout, File dataDir, String id) {
+        synchronized (_getNoteLock(id)) {
+            var source = layout.other().getNoteFile(dataDir, id, _FILE_EXTENSION);
+            var target = layout.getNoteFile(dataDir, id, _FILE_EXTENSION);
+            if (source.equals(target) || !source.exists()) {
+                return false;
+            }
+            if (target.exists()) {
+                //The file in the current layout was written after the layout changed - the old file is stale
+                if (!source.delete()) {
+                    System.out.printf("Cannot delete %s%n", source.getAbsolutePath());
+                }
+                return false;
+            }
+            try {
+                _createParentDirectory(target);
+                //A plain move is still a rename within the data directory, but unlike an atomic move it refuses to
+                // replace a file written in the current layout since the check above
+                Files.move(source.toPath(), target.toPath());
+                _syncer.syncDirectory(target.getAbsoluteFile().getParentFile());
+                _syncer.syncDirectory(source.getAbsoluteFile().getParentFile());
+                return true;
+            } catch (FileAlreadyExistsException exception) {
+                //The note was rewritten in the current layout while it was being moved
+                if (!source.delete()) {
+                    System.out.printf("Cannot delete %s%n", source.getAbsolutePath());
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.out.printf("Cannot move %s to %s%n", source.getAbsolutePath(), target.getAbsolutePath());
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Check if {@link Note} files are written compressed
+     * @return TRUE if files are compressed, FALSE if they are written as plain text
+     */
+    public boolean isCompressed() {
+        return _compressed;
+    }
+
+    /**
+     * Turn compression of {@link Note} files on or off. Each file is compressed on its own with a preset dictionary
+     *  shared by the store, so the keys and common text repeated in every {@link Note} take almost no space. When
+     *  compression is turned on and the store has no dictionary, one is trained from a sample of the existing
+     *  {@link Note notes}.
+     * <p>
+     * Only files written after the change are affected. Files are read in either form, so existing files can be
+     *  converted later with {@link FileNoteDataService#recompressNotes()}. Like the {@link FileNoteDataService#setLayout(NoteFileLayout) layout},
+     *  the setting is not stored - the dictionaries are, so turning compression back on reuses the newest one.
+     * @param compressed TRUE to compress {@link Note} files, FALSE to write them as plain text
+     */
+    public void setCompressed(boolean compressed) {
+        if (compressed && _codec.getVersion() == 0 && !_noteIds.isEmpty()) {
+            trainDictionary(DEFAULT_DICTIONARY_SAMPLE_SIZE);
+        }
+        _compressed = compressed;
+    }
+
+    /**
+     * Train a new compression dictionary from a random sample of the {@link Note notes} in the store and use it for
+     *  every file written from now on. Files written with earlier dictionaries can still be read.
+     * @param sampleSize The largest number of {@link Note notes} to train from
+     * @return The version of the new dictionary. 0 if there were no {@link Note notes} to train from.
+     */
+    public int trainDictionary(int sampleSize) {
+        if (sampleSize < 1) {
+            throw new IllegalArgumentException("sampleSize must be at least 1");
+        }
+        var noteIds = new ArrayList<>(_noteIds);
+        Collections.shuffle(noteIds);
+        var samples = new ArrayList<byte[]>();
+        for (var id : noteIds.subList(0, Math.min(sampleSize, noteIds.size()))) {
+            var fileData = _readNoteData(_findNoteFile(id));
+            if (fileData != null) {
+                samples.add(fileData.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        if (samples.isEmpty()) {
+            return 0;
+        }
+        try {
+            var version = _codec.addDictionary(NoteDictionaryCodec.train(samples, NoteDictionaryCodec.DEFAULT_DICTIONARY_SIZE));
+            //The dictionary file changed the directory - keep the manifest current
+            _manifest.touch();
+            System.out.printf("Trained dictionary version %d from %d note(s)%n", version, samples.size());
+            return version;
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Cannot save the compression dictionary. Notes will be written without it.");
+            return 0;
+        }
+    }
+
+    /**
+     * Rewrite every {@link Note} file that is not in the current form - plain text when compression is off, or
+     *  compressed with the newest dictionary when it is on
+     * @return The number of {@link Note} files rewritten
+     */
+    public int recompressNotes() {
+        var rewritten = 0;
+        for (var id : new ArrayList<>(_noteIds)) {
+            if (_recompressNoteFile(id)) {
+                rewritten++;
+            }
+        }
+        //Rewriting files changed the directory - keep the manifest current
+        _manifest.touch();
+        System.out.printf("Rewrote %d note file(s)%n", rewritten);
+        return rewritten;
+    }
+
+    /**
+     * Rewrite the file of one {@link Note} if it is not in the current form, while holding the {@link Note}'s lock
+     * @param id The ID of the {@link Note}
+     * @return TRUE if the file was rewritten
+     */
+    private boolean _recompressNoteFile(String id) {
+        synchronized (_getNoteLock(id)) {
+            if (!_noteIds.contains(id)) {
+                //Deleted since the IDs were listed
+                return false;
+            }
+            var noteFile = _findNoteFile(id);
+            byte[] data;
+            try {
+                data = Files.readAllBytes(noteFile.toPath());
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.out.printf("Cannot read %s%n", noteFile.getAbsolutePath());
+                return false;
+            }
+            var encoded = NoteDictionaryCodec.isEncoded(data);
+            var current = _compressed
+                    ? encoded && NoteDictionaryCodec.getDictionaryVersion(data) == _codec.getVersion()
+                    : !encoded;
+            if (current) {
+                return false;
+            }
+            var note = _readNoteFromFile(id);
+            return note != null && _writeNoteToFile(note);
+        }
+    }
+
+    /**
+     * Check if content repeated across {@link Note notes} is stored once
+     * @return TRUE if long content is stored once and {@link Note} files refer to it
+     */
+    public boolean isDeduplicated() {
+        return _deduplicated;
+    }
+
+    /**
+     * Turn deduplication of {@link Note} content on or off. With deduplication on, content of at least
+     *  {@link NoteBodyStore#MIN_BODY_LENGTH} characters is stored once in the {@code .bodies} directory, keyed by its
+     *  SHA-256 hash, and each {@link Note} file holds only the hash. Each stored body counts the {@link Note notes} that
+     *  refer to it and is deleted when the last of them is updated or deleted. {@link Note notes} read from the store
+     *  share a single String for each body, so both disk and heap use grow with the distinct content rather than the
+     *  number of {@link Note notes}.
+     * <p>
+     * Only files written after the change are affected. Files are read in either form, so existing files can be
+     *  converted with {@link FileNoteDataService#deduplicateNotes()}. A store that holds bodies when it is opened has
+     *  deduplication on. The references are counted by reading every {@link Note} file the first time a
+     *  {@link Note} is written or deleted with deduplication on.
+     * @param deduplicated TRUE to store repeated content once, FALSE to write content into every {@link Note} file
+     */
+    public void setDeduplicated(boolean deduplicated) {
+        _deduplicated = deduplicated;
+    }
+
+    /**
+     * Rewrite every {@link Note} file that is not in the current form - holding its content when deduplication is off,
+     *  or referring to a stored body when it is on and the content is long enough. Bodies no longer referred to by any
+     *  {@link Note} are deleted.
+     * @return The number of {@link Note} files rewritten
+     */
+    public int deduplicateNotes() {
+        var bodyReferences = _countBodyReferences();
+        var rewritten = 0;
+        for (var id : new ArrayList<>(_noteIds)) {
+            if (_deduplicateNoteFile(id, bodyReferences)) {
+                rewritten++;
+            }
+        }
+        //Bodies left behind by an interrupted change are not referred to by any note
+        _bodies.deleteUnreferenced(_bodies.getUnreferenced());
+        //Rewriting files changed the directory - keep the manifest current
+        _manifest.touch();
+        System.out.printf("Rewrote %d note file(s)%n", rewritten);
+        return rewritten;
+    }
+
+    /**
+     * Rewrite the file of one {@link Note} if it is not in the current form, while holding the {@link Note}'s lock
+     * @param id The ID of the {@link Note}
+     * @param bodyReferences The body reference of each {@link Note} file that has one
+     * @return TRUE if the file was rewritten
+     */
+    private boolean _deduplicateNoteFile(String id, Map<String, String> bodyReferences) {
+        synchronized (_getNoteLock(id)) {
+            if (!_noteIds.contains(id)) {
+                //Deleted since the IDs were listed
+                return false;
+            }
+            var note = _readNoteFromFile(id);
+            if (note == null) {
+                return false;
+            }
+            boolean referenced;
+            synchronized (bodyReferences) {
+                referenced = bodyReferences.containsKey(id);
+            }
+            if (referenced == (_deduplicated && NoteBodyStore.isStorable(note.getContent()))) {
+                return false;
+            }
+            return _writeNoteToFile(note);
+        }
+    }
+
     @Override
     public String createNote() {
         return createNote("");
@@ -41,10 +473,8 @@ public abstract class FileNoteDataService implements INoteDataService {
     public String createNote(String content) {
         //Create new note
         var note = new Note(content);
-        //Store note ID in cache
-        _noteIds.add(note.getId());
-        //Write note to file
-        if (_writeNoteToFile(note)) {
+        //Write the note to file and record its ID
+        if (_addNote(note)) {
             //Success - return the note ID
             return note.getId();
         } else {
@@ -58,10 +488,8 @@ public abstract class FileNoteDataService implements INoteDataService {
         //Create new note
         var trueNote = new Note();
         trueNote.copyValues(note);
-        //Store note in cache
-        _noteIds.add(trueNote.getId());
-        //Return note ID
-        if (_writeNoteToFile(trueNote)) {
+        //Write the note to file and record its ID
+        if (_addNote(trueNote)) {
             //Success - return the note ID
             return trueNote.getId();
         } else {
@@ -70,12 +498,66 @@ public abstract class FileNoteDataService implements INoteDataService {
         }
     }
 
+    /**
+     * Create several {@link Note Notes} at once. The files are written in one wave of up to
+     *  {@link FileNoteDataService#_readConcurrency} writes at a time, and every new ID is recorded in the
+     *  {@link FileNoteDataService#_manifest} with a single append.
+     * @param notes The {@link Note} data to save
+     * @return The ID of each new {@link Note}, in the order they were given. NULL for a {@link Note} whose file could
+     *  not be written.
+     */
+    @Override
+    public List<String> createNotes(Collection<Note> notes) {
+        NoteBatch.checkNotes(notes);
+        var created = new ArrayList<Note>(notes.size());
+        for (var note : notes) {
+            var trueNote = new Note();
+            trueNote.copyValues(note);
+            created.add(trueNote);
+        }
+        var createdIds = created.stream().map(Note::getId).toList();
+        _recordChange(createdIds, true);
+        List<Boolean> written;
+        try {
+            written = _runBatch(created, this::_storeNote, false);
+        } finally {
+            _finishChange(createdIds);
+        }
+        var ids = new ArrayList<String>(created.size());
+        for (int i = 0; i < created.size(); i++) {
+            ids.add(written.get(i) ? createdIds.get(i) : null);
+        }
+        return ids;
+    }
+
+    /**
+     * Add {@link Note notes} keeping their IDs, replacing any {@link Note} with the same ID. Used to move
+     *  {@link Note notes} from another data service, such as a {@link PackfileNoteDataService}.
+     * @param notes The {@link Note notes} to add
+     * @return The number of {@link Note notes} added
+     */
+    public int importNotes(List<Note> notes) {
+        if (notes == null) {
+            throw new IllegalArgumentException("notes cannot be null");
+        }
+        var imported = 0;
+        for (var note : notes) {
+            if (_addNote(note)) {
+                imported++;
+            }
+        }
+        return imported;
+    }
+
     @Override
     public List<Note> getAllNotes() {
+        if (_readConcurrency > 1 && _noteCount > 1) {
+            return _readAllNotesInParallel();
+        }
         var notes = new ArrayList<Note>();
         //Scan the list of known notes and get all the data from the corresponding files
         for (String noteId : _noteIds) {
-            var note = _readNoteFromFile(noteId);
+            var note = _readNote(noteId);
             if (note != null) {
                 notes.add(note);
             }
@@ -83,23 +565,43 @@ public abstract class FileNoteDataService implements INoteDataService {
         return notes;
     }
 
+    /**
+     * Get a page of {@link Note Notes} in order of ID. Only the files of the {@link Note notes} on the page are read.
+     * @param cursor The cursor from {@link NotePage#getNextCursor()} of the previous page. NULL for the first page.
+     * @param limit The largest number of {@link Note Notes} on the page. Must be at least 1.
+     * @return A {@link NotePage}
+     */
+    @Override
+    public NotePage getNotes(String cursor, int limit) {
+        var after = NotePage.startAfter(cursor, limit);
+        var notes = new ArrayList<Note>(Math.min(limit, 1024));
+        var remaining = (after == null ? _noteIds : _noteIds.tailSet(after, false)).iterator();
+        while (notes.size() < limit && remaining.hasNext()) {
+            //NULL when the note was deleted after the IDs were listed
+            var note = _readNote(remaining.next());
+            if (note != null) {
+                notes.add(note);
+            }
+        }
+        return new NotePage(notes, remaining.hasNext());
+    }
+
     @Override
     public Note getNoteById(String id) {
         if (id == null || id.equals("")) {
             throw new IllegalArgumentException("id cannot be blank");
         }
-        if (!_noteIds.contains(id)) {
-            throw new NoSuchElementException(String.format("Note with id %s not found", id));
+        synchronized (_getNoteLock(id)) {
+            if (!_noteIds.contains(id)) {
+                throw new NoSuchElementException(String.format("Note with id %s not found", id));
+            }
+            return _readNoteFromFile(id);
         }
-        return _readNoteFromFile(id);
     }
 
     @Override
     public int getNoteCount() {
-        if (_noteIds == null) {
-            return 0;
-        }
-        return _noteIds.size();
+        return _noteCount;
     }
 
     @Override
@@ -108,33 +610,88 @@ public abstract class FileNoteDataService implements INoteDataService {
             throw new IllegalArgumentException("upNote cannot be null");
         }
         var id = upNote.getId();
-        var curNote = getNoteById(id);
-        curNote.copyValues(upNote);
-        if (!_writeNoteToFile(curNote)) {
-            System.out.printf("Failed to update note %s", id);
-            return null;
+        Note curNote;
+        //Hold the lock from the read to the write so concurrent updates to the note are not lost
+        synchronized (_getNoteLock(id)) {
+            curNote = getNoteById(id);
+            curNote.copyValues(upNote);
+            if (!_writeNoteToFile(curNote)) {
+                System.out.printf("Failed to update note %s", id);
+                return null;
+            }
         }
+        //Rewriting the file changed the directory - keep the manifest current
+        _manifest.touch();
         return curNote;
     }
 
+    /**
+     * Update several {@link Note Notes} at once. The files are rewritten in one wave of up to
+     *  {@link FileNoteDataService#_readConcurrency} writes at a time, and the {@link FileNoteDataService#_manifest}
+     *  is touched once.
+     * @param notes The {@link Note Notes} to update
+     * @return The updated {@link Note Notes}, in the order they were given. NULL for a {@link Note} that does not
+     *  exist or could not be updated.
+     */
+    @Override
+    public List<Note> updateNotes(Collection<Note> notes) {
+        NoteBatch.checkNotes(notes);
+        var updated = _runBatch(new ArrayList<>(notes), this::_updateNote, null);
+        if (updated.stream().anyMatch(Objects::nonNull)) {
+            //Rewriting the files changed the directory - keep the manifest current
+            _manifest.touch();
+        }
+        return updated;
+    }
+
     @Override
     public boolean deleteNoteById(String id) {
         if (id == null || id.equals("")) {
             throw new IllegalArgumentException("id cannot be blank");
         }
-        var noteFile = _getNoteFile(id);
-        if (noteFile.delete()) {
-            //The file was successfully deleted
-            _noteIds.remove(id);
-            return true;
+        var ids = Collections.singletonList(id);
+        synchronized (_getNoteLock(id)) {
+            _recordChange(ids, false);
+            try {
+                if (!_deleteNoteFiles(id)) {
+                    //The file was not deleted
+                    return false;
+                }
+                synchronized (_manifest) {
+                    if (_noteIds.remove(id)) {
+                        _noteCount--;
+                    }
+                }
+                _replaceBodyReference(id, null);
+                return true;
+            } finally {
+                _finishChange(ids);
+            }
+        }
+    }
+
+    /**
+     * Delete several {@link Note Notes} at once. The files are deleted in one wave of up to
+     *  {@link FileNoteDataService#_readConcurrency} deletes at a time, and every removed ID is recorded in the
+     *  {@link FileNoteDataService#_manifest} with a single append.
+     * @param ids The IDs of the {@link Note Notes} to delete
+     * @return For each ID, in the order they were given, TRUE if the note was deleted and FALSE if it wasn't
+     */
+    @Override
+    public List<Boolean> deleteNotesByIds(Collection<String> ids) {
+        NoteBatch.checkIds(ids);
+        var idList = new ArrayList<>(ids);
+        _recordChange(idList, false);
+        try {
+            return _runBatch(idList, this::_removeNote, false);
+        } finally {
+            _finishChange(idList);
         }
-        //The file was not deleted
-        return false;
     }
 
     @Override
     public void deleteAllNotes() {
-        var upNoteIdList = new HashSet<>(_noteIds);
+        var upNoteIdList = new ArrayList<>(_noteIds);
         for (var id : upNoteIdList) {
             if (!deleteNoteById(id)) {
                 System.out.printf("Error while deleting note %s. It may still be in memory.", id);
@@ -157,38 +714,386 @@ public abstract class FileNoteDataService implements INoteDataService {
     protected abstract String getFileDataFromNote(Note note);
 
     /**
-     * Load all {@link Note} IDs from the configured data directory. This scans the directory for text files and
-     *  uses the file names as the IDs.
+     * Read every {@link Note} file using up to {@link FileNoteDataService#_readConcurrency} reads at a time. The
+     *  {@link Note notes} are returned in the same order as a sequential read. A file that cannot be read is logged
+     *  and skipped without stopping the other reads.
+     * @return A {@link List} of {@link Note notes}
+     */
+    private List<Note> _readAllNotesInParallel() {
+        var noteIds = new ArrayList<>(_noteIds);
+        var executor = _getReadExecutor();
+        var reads = new ArrayList<Future<Note>>(noteIds.size());
+        for (var noteId : noteIds) {
+            reads.add(executor.submit(() -> _readNote(noteId)));
+        }
+        var notes = new ArrayList<Note>(noteIds.size());
+        for (int i = 0; i < reads.size(); i++) {
+            try {
+                var note = reads.get(i).get();
+                if (note != null) {
+                    notes.add(note);
+                }
+            } catch (ExecutionException exception) {
+                exception.getCause().printStackTrace();
+                System.out.printf("Error while reading note %s. It will be skipped.%n", noteIds.get(i));
+            } catch (InterruptedException exception) {
+                //Stop waiting and leave the remaining reads to finish on their own
+                reads.forEach(read -> read.cancel(true));
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return notes;
+    }
+
+    /**
+     * Get the executor used to read {@link Note} files in parallel, creating it if needed
+     * @return An {@link ExecutorService} with {@link FileNoteDataService#_readConcurrency} threads
+     */
+    private synchronized ExecutorService _getReadExecutor() {
+        if (_readExecutor == null) {
+            _readExecutor = Executors.newFixedThreadPool(_readConcurrency, runnable -> {
+                var thread = new Thread(runnable, "note-file-reader");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return _readExecutor;
+    }
+
+    /**
+     * Load all {@link Note} IDs from the configured data directory. The IDs are read from the {@link FileNoteDataService#_manifest}
+     *  when it is current. Otherwise the directory is scanned for text files, the file names are used as the IDs, and
+     *  the manifest is rebuilt.
      */
     private void _loadNoteIds() {
-        var noteIds = new HashSet<String>();
         var dataDir = new File(_dataPath);
-        if (dataDir.isDirectory()) {
-            var files = dataDir.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    if (!file.getAbsolutePath().contains(_FILE_EXTENSION)) {
-                        continue;
+        if (!dataDir.isDirectory()) {
+            _noteIds = new ConcurrentSkipListSet<>();
+            _noteCount = 0;
+            return;
+        }
+        var noteIds = _manifest.load(id -> _findNoteFile(id).exists());
+        if (noteIds == null) {
+            //The manifest is missing or out of date - fall back to scanning the directory
+            noteIds = _scanNoteIds(dataDir);
+            _manifest.rewrite(noteIds);
+        }
+        _noteIds = new ConcurrentSkipListSet<>(noteIds);
+        _noteCount = noteIds.size();
+    }
+
+    /**
+     * Scan a directory for {@link Note} files in either {@link NoteFileLayout layout}. Entries are streamed rather
+     *  than listed all at once.
+     * @param dataDir The directory to scan
+     * @return A {@link Set} of {@link Note} IDs
+     */
+    private static Set<String> _scanNoteIds(File dataDir) {
+        var noteIds = new HashSet<String>();
+        _scanNoteIds(dataDir.toPath(), 0, noteIds);
+        return noteIds;
+    }
+
+    /**
+     * Add the IDs of the {@link Note} files in a directory to a {@link Set}, descending into shard directories
+     * @param directory The directory to scan
+     * @param depth The number of shard directories between the data directory and this directory
+     * @param noteIds The {@link Set} to add IDs to
+     */
+    private static void _scanNoteIds(Path directory, int depth, Set<String> noteIds) {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (var entry : entries) {
+                var fileName = entry.getFileName().toString();
+                if (fileName.endsWith(_FILE_EXTENSION)) {
+                    if (Files.isRegularFile(entry)) {
+                        noteIds.add(fileName.substring(0, fileName.length() - _FILE_EXTENSION.length()));
                     }
-                    noteIds.add(_getIdFromFileName(file));
+                } else if (depth < 2 && NoteFileLayout.isShardName(fileName) && Files.isDirectory(entry)) {
+                    _scanNoteIds(entry, depth + 1, noteIds);
                 }
             }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.printf("Cannot scan note directory %s%n", directory.toAbsolutePath());
         }
-        _noteIds = noteIds;
     }
 
     /**
-     * Get a {@link File} for a {@link Note} with a specific ID
+     * Get a {@link File} for a {@link Note} with a specific ID in the current {@link NoteFileLayout layout}
      * @param id The ID of the {@link Note} to get
      * @return A {@link File}
      */
     private File _getNoteFile(String id) {
-        if (id == null || id.equals("")) {
-            throw new IllegalArgumentException("id cannot be blank");
+        return _layout.getNoteFile(new File(_dataPath), id, _FILE_EXTENSION);
+    }
+
+    /**
+     * Find the {@link File} holding a {@link Note}. The current {@link NoteFileLayout layout} is checked first, then
+     *  the other layout for files that have not been migrated yet.
+     * @param id The ID of the {@link Note} to find
+     * @return A {@link File}. The file in the current layout if the {@link Note} is in neither.
+     */
+    private File _findNoteFile(String id) {
+        var noteFile = _getNoteFile(id);
+        if (noteFile.exists()) {
+            return noteFile;
+        }
+        var otherFile = _layout.other().getNoteFile(new File(_dataPath), id, _FILE_EXTENSION);
+        return otherFile.exists() ? otherFile : noteFile;
+    }
+
+    /**
+     * Create the directory a {@link File} will be written to if it does not exist yet
+     * @param file The {@link File} about to be written
+     * @throws IOException The directory could not be created
+     */
+    private void _createParentDirectory(File file) throws IOException {
+        var parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory()) {
+            Files.createDirectories(parent.toPath());
+            //The new shard directories must be durable along with the first file written into them
+            _syncer.syncDirectory(parent.getParentFile());
+            _syncer.syncDirectory(parent.getParentFile().getParentFile());
+        }
+    }
+
+    /**
+     * Remove the shard directories under a data directory that no longer hold any files
+     * @param dataDir The data directory
+     */
+    private static void _deleteEmptyShardDirectories(File dataDir) {
+        var shardDirs = dataDir.listFiles(file -> file.isDirectory() && NoteFileLayout.isShardName(file.getName()));
+        if (shardDirs == null) {
+            return;
+        }
+        for (var shardDir : shardDirs) {
+            var leafDirs = shardDir.listFiles(file -> file.isDirectory() && NoteFileLayout.isShardName(file.getName()));
+            if (leafDirs != null) {
+                for (var leafDir : leafDirs) {
+                    //Only succeeds if the directory is empty
+                    leafDir.delete();
+                }
+            }
+            shardDir.delete();
+        }
+    }
+
+    /**
+     * Get the lock guarding a {@link Note}. {@link Note notes} share a fixed set of locks, so the locks take the same
+     *  memory however many {@link Note notes} there are, and {@link Note notes} that share a lock rarely contend.
+     * @param id The ID of the {@link Note}
+     * @return The lock to synchronize on
+     */
+    private Object _getNoteLock(String id) {
+        var hash = id.hashCode();
+        return _noteLocks[(hash ^ (hash >>> 16)) & (_noteLocks.length - 1)];
+    }
+
+    /**
+     * Write a new or imported {@link Note} to its file and record its ID, while holding the {@link Note}'s lock
+     * @param note The {@link Note} to add
+     * @return TRUE if the {@link Note} was added, FALSE if its file could not be written
+     */
+    private boolean _addNote(Note note) {
+        var id = note.getId();
+        var ids = Collections.singletonList(id);
+        synchronized (_getNoteLock(id)) {
+            _recordChange(ids, true);
+            try {
+                if (!_writeNoteToFile(note)) {
+                    return false;
+                }
+                synchronized (_manifest) {
+                    if (_noteIds.add(id)) {
+                        _noteCount++;
+                    }
+                }
+                return true;
+            } finally {
+                _finishChange(ids);
+            }
+        }
+    }
+
+    /**
+     * Write a new {@link Note} to its file and add its ID to {@link FileNoteDataService#_noteIds}, while holding the
+     *  {@link Note}'s lock. The ID has already been recorded in the {@link FileNoteDataService#_manifest} along with
+     *  the rest of its batch.
+     * @param note The {@link Note} to add
+     * @return TRUE if the {@link Note} was added, FALSE if its file could not be written
+     */
+    private boolean _storeNote(Note note) {
+        var id = note.getId();
+        synchronized (_getNoteLock(id)) {
+            if (!_writeNoteToFile(note)) {
+                return false;
+            }
+            synchronized (_manifest) {
+                if (_noteIds.add(id)) {
+                    _noteCount++;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Copy the values of a {@link Note} into its saved copy and rewrite its file, while holding the {@link Note}'s lock
+     * @param upNote The {@link Note} to update
+     * @return The updated {@link Note}. NULL if it does not exist or could not be written.
+     */
+    private Note _updateNote(Note upNote) {
+        var id = upNote.getId();
+        synchronized (_getNoteLock(id)) {
+            var curNote = _readNote(id);
+            if (curNote == null) {
+                return null;
+            }
+            curNote.copyValues(upNote);
+            if (!_writeNoteToFile(curNote)) {
+                System.out.printf("Failed to update note %s%n", id);
+                return null;
+            }
+            return curNote;
+        }
+    }
+
+    /**
+     * Delete a {@link Note}'s file and remove its ID from {@link FileNoteDataService#_noteIds}, while holding the
+     *  {@link Note}'s lock. The ID has already been recorded in the {@link FileNoteDataService#_manifest} along with
+     *  the rest of its batch.
+     * @param id The ID of the {@link Note} to delete
+     * @return TRUE if the {@link Note} was deleted, FALSE if it wasn't
+     */
+    private boolean _removeNote(String id) {
+        synchronized (_getNoteLock(id)) {
+            if (!_deleteNoteFiles(id)) {
+                return false;
+            }
+            synchronized (_manifest) {
+                if (_noteIds.remove(id)) {
+                    _noteCount--;
+                }
+            }
+            _replaceBodyReference(id, null);
+            return true;
+        }
+    }
+
+    /**
+     * Delete a {@link Note}'s file in the current layout, and in the other layout if it has not been migrated yet.
+     *  The caller holds the {@link Note}'s lock.
+     * @param id The ID of the {@link Note}
+     * @return TRUE if a file was deleted, FALSE if there was none or it could not be deleted
+     */
+    private boolean _deleteNoteFiles(String id) {
+        var noteFile = _getNoteFile(id);
+        var deleted = noteFile.delete();
+        if (deleted) {
+            _syncer.syncDirectory(noteFile.getAbsoluteFile().getParentFile());
+        }
+        //A file that has not been migrated yet is still in the other layout
+        var otherFile = _layout.other().getNoteFile(new File(_dataPath), id, _FILE_EXTENSION);
+        if (otherFile.exists() && otherFile.delete()) {
+            _syncer.syncDirectory(otherFile.getAbsoluteFile().getParentFile());
+            deleted = true;
+        }
+        return deleted;
+    }
+
+    /**
+     * Record in the {@link FileNoteDataService#_manifest} that {@link Note notes} are being added or removed, before
+     *  their files change, so a crash cannot leave a file the manifest does not know about. The IDs stay pending until
+     *  {@link FileNoteDataService#_finishChange(Collection)}. When the change cannot be recorded the manifest is
+     *  deleted, so the directory is scanned on the next start.
+     * @param ids The IDs of the {@link Note notes} being changed
+     * @param added TRUE if the {@link Note notes} are being added, FALSE if they are being removed
+     */
+    private void _recordChange(Collection<String> ids, boolean added) {
+        synchronized (_manifest) {
+            if (!(added ? _manifest.recordAdds(ids) : _manifest.recordRemoves(ids))) {
+                _manifest.invalidate();
+            }
+            for (var id : ids) {
+                _pendingIds.merge(id, 1, Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * Finish a change started with {@link FileNoteDataService#_recordChange(Collection, boolean)}, whether or not the
+     *  files were changed, and rewrite the {@link FileNoteDataService#_manifest} if it has grown too large
+     * @param ids The IDs of the changed {@link Note notes}
+     */
+    private void _finishChange(Collection<String> ids) {
+        synchronized (_manifest) {
+            for (var id : ids) {
+                _pendingIds.computeIfPresent(id, (key, count) -> count == 1 ? null : count - 1);
+            }
+            if (_manifest.needsRewrite(_noteCount)) {
+                _manifest.rewrite(_noteIds, _pendingIds.keySet());
+            }
+        }
+        //Writing or deleting the files changed the directory - keep the manifest current
+        _manifest.touch();
+    }
+
+    /**
+     * Run a task for every item of a batch using up to {@link FileNoteDataService#_readConcurrency} threads. The
+     *  results are returned in the same order as the items. A task that throws is logged and given the failed result
+     *  without stopping the others. Every task is waited for even if the caller is interrupted, so the batch is never
+     *  recorded while some of its files are still changing - the interrupt is kept for the caller.
+     * @param items The items of the batch
+     * @param task The task to run for each item
+     * @param failed The result of a task that threw
+     * @return The result for each item
+     */
+    private <T, R> List<R> _runBatch(List<T> items, Function<T, R> task, R failed) {
+        var results = new ArrayList<R>(items.size());
+        if (_readConcurrency == 1 || items.size() < 2) {
+            for (var item : items) {
+                results.add(task.apply(item));
+            }
+            return results;
+        }
+        var executor = _getReadExecutor();
+        var runs = new ArrayList<Future<R>>(items.size());
+        for (var item : items) {
+            runs.add(executor.submit(() -> task.apply(item)));
+        }
+        var interrupted = false;
+        for (int i = 0; i < runs.size(); i++) {
+            try {
+                results.add(runs.get(i).get());
+            } catch (ExecutionException exception) {
+                exception.getCause().printStackTrace();
+                System.out.printf("Error in batch item %d. It was not changed.%n", i);
+                results.add(failed);
+            } catch (InterruptedException exception) {
+                //Wait for the same task again
+                interrupted = true;
+                i--;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return results;
+    }
+
+    /**
+     * Read a {@link Note} while holding its lock
+     * @param id The ID of the {@link Note} to get
+     * @return A {@link Note}. NULL if it was deleted or there was a problem reading the data from file
+     */
+    private Note _readNote(String id) {
+        synchronized (_getNoteLock(id)) {
+            if (!_noteIds.contains(id)) {
+                return null;
+            }
+            return _readNoteFromFile(id);
         }
-        var fileName = String.format("%s%s", id, _FILE_EXTENSION);
-        var filePath = String.format("%s/%s", _dataPath, fileName);
-        return new File(filePath);
     }
 
     /**
@@ -200,8 +1105,8 @@ public abstract class FileNoteDataService implements INoteDataService {
         if (id == null || id.equals("")) {
             throw new IllegalArgumentException("id cannot be blank");
         }
-        var noteFile = _getNoteFile(id);
-        var fileData = FileHelper.getFileAsString(noteFile);
+        var noteFile = _findNoteFile(id);
+        var fileData = _readNoteData(noteFile);
         if (fileData == null) {
             //Received null from file content - there was an error while reading the file
             return null;
@@ -214,28 +1119,150 @@ public abstract class FileNoteDataService implements INoteDataService {
         //Construct the note
         var returnNote = new Note(UUID.fromString(id), "");
         returnNote.copyValues(noteFromFile);
+        if (NoteBodyStore.isReference(returnNote.getContent())) {
+            try {
+                returnNote.setContent(_bodies.resolve(returnNote.getContent()));
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.out.printf("Cannot read the content of note %s%n", id);
+                return null;
+            }
+        }
         return returnNote;
     }
 
+    /**
+     * Read the data of a {@link Note} file, decompressing it if needed. Line breaks are dropped, matching
+     *  {@link FileHelper#getFileAsString(File)}.
+     * @param noteFile The {@link File} to read
+     * @return The file data. NULL if the file could not be read.
+     */
+    private String _readNoteData(File noteFile) {
+        byte[] data;
+        try {
+            data = Files.readAllBytes(noteFile.toPath());
+            if (NoteDictionaryCodec.isEncoded(data)) {
+                data = _codec.decode(data);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.printf("Cannot read file %s%n", noteFile.getAbsolutePath());
+            return null;
+        }
+        var fileData = new StringBuilder(data.length);
+        var scanner = new Scanner(new String(data, StandardCharsets.UTF_8));
+        while (scanner.hasNextLine()) {
+            fileData.append(scanner.nextLine());
+        }
+        return fileData.toString();
+    }
+
     /**
      * Write a {@link Note} to a {@link File}
      * @param note The {@link Note} to write
      * @return TRUE if the file was written, FALSE if it wasn't
      */
     private boolean _writeNoteToFile(Note note) {
-        var fileData = getFileDataFromNote(note);
-        return FileHelper.replaceFileData(_getNoteFile(note.getId()), fileData);
+        String reference = null;
+        if (_deduplicated && NoteBodyStore.isStorable(note.getContent())) {
+            _countBodyReferences();
+            try {
+                reference = _bodies.acquire(note.getContent());
+                note = note.duplicate();
+                note.setContent(reference);
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.out.printf("Cannot store the content of note %s. It will be written in full.%n", note.getId());
+            }
+        }
+        if (!_writeNoteFileData(note)) {
+            if (reference != null && _bodies.release(reference)) {
+                _bodies.deleteUnreferenced(Set.of(reference));
+            }
+            return false;
+        }
+        _replaceBodyReference(note.getId(), reference);
+        return true;
     }
 
     /**
-     * Get the ID of a {@link Note} from a {@link File} path
-     * @param noteFile The {@link File} to get the ID from
-     * @return The ID of the {@link Note}
+     * Record the body a {@link Note} file now refers to, and delete the body it referred to before if no other
+     *  {@link Note} refers to it. Call only once the file has been written or deleted, so no file on disk refers to a
+     *  deleted body.
+     * @param id The ID of the {@link Note}
+     * @param reference The body reference the file holds. NULL if it holds its content or was deleted.
      */
-    private static String _getIdFromFileName(File noteFile) {
-        if (noteFile == null) {
-            throw new IllegalArgumentException("noteFile cannot be null");
+    private void _replaceBodyReference(String id, String reference) {
+        //Count the references now if they are needed - a count made from the files already sees this change
+        var bodyReferences = _deduplicated ? _countBodyReferences() : _bodyReferences;
+        if (bodyReferences == null) {
+            //Not counted yet - bodies left behind are deleted when the references are counted
+            return;
+        }
+        String previous;
+        synchronized (bodyReferences) {
+            previous = reference == null ? bodyReferences.remove(id) : bodyReferences.put(id, reference);
+        }
+        if (previous != null && _bodies.release(previous)) {
+            _bodies.deleteUnreferenced(Set.of(previous));
+        }
+    }
+
+    /**
+     * Count the {@link Note} files that refer to each stored body by reading every file, the first time it is needed.
+     *  Bodies that no file refers to, left behind by an interrupted change, are deleted.
+     * @return The body reference of each {@link Note} file that has one, keyed by {@link Note} ID
+     */
+    private synchronized Map<String, String> _countBodyReferences() {
+        if (_bodyReferences != null) {
+            return _bodyReferences;
+        }
+        var bodyReferences = new HashMap<String, String>();
+        for (var id : new ArrayList<>(_noteIds)) {
+            var noteFile = _findNoteFile(id);
+            if (!noteFile.exists()) {
+                //A new note whose file is about to be written
+                continue;
+            }
+            var fileData = _readNoteData(noteFile);
+            var note = fileData == null ? null : getNoteFromFileData(fileData);
+            if (note != null && NoteBodyStore.isReference(note.getContent())) {
+                bodyReferences.put(id, note.getContent());
+            }
+        }
+        _bodies.recount(bodyReferences.values());
+        var deleted = _bodies.deleteUnreferenced(_bodies.getUnreferenced());
+        if (deleted > 0) {
+            System.out.printf("Deleted %d unreferenced note bod(ies)%n", deleted);
+        }
+        _bodyReferences = bodyReferences;
+        return bodyReferences;
+    }
+
+    /**
+     * Write the data of a {@link Note} to its {@link File}, compressing it if needed
+     * @param note The {@link Note} to write, holding either its content or a body reference
+     * @return TRUE if the file was written, FALSE if it wasn't
+     */
+    private boolean _writeNoteFileData(Note note) {
+        var fileData = getFileDataFromNote(note).getBytes(StandardCharsets.UTF_8);
+        if (_compressed) {
+            try {
+                fileData = _codec.encode(fileData);
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.out.printf("Cannot compress note %s. It will be written as plain text.%n", note.getId());
+            }
+        }
+        var noteFile = _getNoteFile(note.getId());
+        try {
+            _createParentDirectory(noteFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.printf("Cannot create directory for %s%n", noteFile.getAbsolutePath());
+            return false;
         }
-        return noteFile.getName().replace(_FILE_EXTENSION, "");
+        var data = fileData;
+        return FileHelper.replaceFileData(noteFile, output -> output.write(data), _syncer);
     }
 }
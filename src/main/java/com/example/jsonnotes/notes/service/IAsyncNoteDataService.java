@@ -0,0 +1,107 @@
+package com.example.jsonnotes.notes.service;
+
+import com.example.jsonnotes.notes.Note;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An interface for managing {@link Note Notes} without blocking the caller. Each method starts the work and returns a
+ *  {@link CompletableFuture} that completes with the same result as the matching {@link INoteDataService} method, or
+ *  completes exceptionally with the exception it would have thrown.
+ * <p>
+ * Requests are not ordered with respect to each other - chain them with
+ *  {@link CompletableFuture#thenCompose(java.util.function.Function)} when one must finish before the next starts.
+ */
+public interface IAsyncNoteDataService {
+
+    /**
+     * Create a new {@link Note}
+     * @return The ID of the new {@link Note} or NULL if it could not be created.
+     */
+    CompletableFuture<String> createNote();
+
+    /**
+     * Create a new {@link Note}
+     * @param content The content of the new {@link Note}
+     * @return The ID of the new {@link Note}
+     */
+    CompletableFuture<String> createNote(String content);
+
+    /**
+     * Create a new {@link Note}. The ID of the supplied {@link Note} is not used and will be ignored.
+     * @param note The {@link Note} data to save. The {@link Note} ID is ignored.
+     * @return The ID of the new {@link Note} according to the data service. This ID should be considered the correct one.
+     */
+    CompletableFuture<String> createNote(Note note);
+
+    /**
+     * Create several {@link Note Notes} at once. The IDs of the supplied {@link Note Notes} are ignored.
+     * @param notes The {@link Note} data to save
+     * @return The ID of each new {@link Note}, in the order they were given. NULL for a {@link Note} that could not be created.
+     */
+    CompletableFuture<List<String>> createNotes(Collection<Note> notes);
+
+    /**
+     * Get a {@link List} of all {@link Note Notes}
+     * @return A {@link List} of {@link Note Notes}
+     */
+    CompletableFuture<List<Note>> getAllNotes();
+
+    /**
+     * Get a page of {@link Note Notes} in order of ID
+     * @param cursor The cursor from {@link NotePage#getNextCursor()} of the previous page. NULL for the first page.
+     * @param limit The largest number of {@link Note Notes} on the page. Must be at least 1.
+     * @return A {@link NotePage}
+     */
+    CompletableFuture<NotePage> getNotes(String cursor, int limit);
+
+    /**
+     * Get the number of {@link Note Notes} stored in the data service
+     * @return The number of {@link Note Notes} as an integer
+     */
+    CompletableFuture<Integer> getNoteCount();
+
+    /**
+     * Get the {@link Note} with the specific ID
+     * @param id The ID of the {@link Note} to get
+     * @return A {@link Note}
+     */
+    CompletableFuture<Note> getNoteById(String id);
+
+    /**
+     * Update a {@link Note}
+     * @param note The {@link Note} to update
+     * @return The updated {@link Note}
+     */
+    CompletableFuture<Note> updateNote(Note note);
+
+    /**
+     * Update several {@link Note Notes} at once
+     * @param notes The {@link Note Notes} to update
+     * @return The updated {@link Note Notes}, in the order they were given. NULL for a {@link Note} that does not
+     *  exist or could not be updated.
+     */
+    CompletableFuture<List<Note>> updateNotes(Collection<Note> notes);
+
+    /**
+     * Delete the {@link Note} with the specific ID
+     * @param id The ID of the {@link Note} to delete
+     * @return TRUE if the note was deleted, FALSE if it wasn't
+     */
+    CompletableFuture<Boolean> deleteNoteById(String id);
+
+    /**
+     * Delete several {@link Note Notes} at once
+     * @param ids The IDs of the {@link Note Notes} to delete
+     * @return For each ID, in the order they were given, TRUE if the note was deleted and FALSE if it wasn't
+     */
+    CompletableFuture<List<Boolean>> deleteNotesByIds(Collection<String> ids);
+
+    /**
+     * Delete all {@link Note Notes}
+     * @return Completes when every {@link Note} is deleted
+     */
+    CompletableFuture<Void> deleteAllNotes();
+}
@@ -2,7 +2,11 @@ package com.example.jsonnotes.notes.service;
 
 import com.example.jsonnotes.notes.Note;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Flow;
 
 /**
  * An interface for managing {@link Note Notes}
@@ -30,18 +34,62 @@ public interface INoteDataService {
      */
     String createNote(Note note);
 
+    /**
+     * Create several {@link Note Notes} at once. The IDs of the supplied {@link Note Notes} are ignored. Data services
+     *  that can persist the whole batch together override this - the default creates them one at a time.
+     * @param notes The {@link Note} data to save
+     * @return The ID of each new {@link Note}, in the order they were given. NULL for a {@link Note} that could not be created.
+     */
+    default List<String> createNotes(Collection<Note> notes) {
+        NoteBatch.checkNotes(notes);
+        var ids = new ArrayList<String>(notes.size());
+        for (var note : notes) {
+            ids.add(createNote(note));
+        }
+        return ids;
+    }
+
     /**
      * Get a {@link List} of all {@link Note Notes}
      * @return A {@link List} of {@link Note Notes}
      */
     List<Note> getAllNotes();
 
+    /**
+     * Get a page of {@link Note Notes} in order of ID. Only the {@link Note notes} on the page are read, so the first
+     *  page of a large store costs about as much as the first page of a small one.
+     * @param cursor The cursor from {@link NotePage#getNextCursor()} of the previous page. NULL for the first page.
+     * @param limit The largest number of {@link Note Notes} on the page. Must be at least 1.
+     * @return A {@link NotePage}
+     */
+    NotePage getNotes(String cursor, int limit);
+
+    /**
+     * Get a {@link Flow.Publisher} of every {@link Note}, in order of ID. {@link Note Notes} are read a page at a time
+     *  as the subscriber requests them, so consuming every {@link Note} never holds more than a page in memory.
+     * @return A {@link NotePublisher} over this data service
+     */
+    default Flow.Publisher<Note> getNotePublisher() {
+        return new NotePublisher(this);
+    }
+
     /**
      * Get the number of {@link Note Notes} stored in the {@link INoteDataService}
      * @return The number of {@link Note Notes} as an integer
      */
     int getNoteCount();
 
+    /**
+     * Get a value that describes the stored {@link Note Notes} and changes whenever they change, including changes made
+     *  by another instance of the service. Data derived from the {@link Note notes} and saved, like a search index, is
+     *  only trusted while the fingerprint it was saved with still matches. The default is NULL - services that can tell
+     *  when their files change override it.
+     * @return The fingerprint of the stored {@link Note notes}, or NULL if the service cannot tell when they change
+     */
+    default String getFingerprint() {
+        return null;
+    }
+
     /**
      * Get the {@link Note} with the specific ID
      * @param id The ID of the {@link Note} to get
@@ -56,6 +104,26 @@ public interface INoteDataService {
      */
     Note updateNote(Note note);
 
+    /**
+     * Update several {@link Note Notes} at once. Data services that can persist the whole batch together override
+     *  this - the default updates them one at a time.
+     * @param notes The {@link Note Notes} to update
+     * @return The updated {@link Note Notes}, in the order they were given. NULL for a {@link Note} that does not
+     *  exist or could not be updated.
+     */
+    default List<Note> updateNotes(Collection<Note> notes) {
+        NoteBatch.checkNotes(notes);
+        var updated = new ArrayList<Note>(notes.size());
+        for (var note : notes) {
+            try {
+                updated.add(updateNote(note));
+            } catch (NoSuchElementException e) {
+                updated.add(null);
+            }
+        }
+        return updated;
+    }
+
     /**
      * Delete the {@link Note} with the specific ID
      * @param id The ID of the {@link Note} to delete
@@ -63,6 +131,25 @@ public interface INoteDataService {
      */
     boolean deleteNoteById(String id);
 
+    /**
+     * Delete several {@link Note Notes} at once. Data services that can persist the whole batch together override
+     *  this - the default deletes them one at a time.
+     * @param ids The IDs of the {@link Note Notes} to delete
+     * @return For each ID, in the order they were given, TRUE if the note was deleted and FALSE if it wasn't
+     */
+    default List<Boolean> deleteNotesByIds(Collection<String> ids) {
+        NoteBatch.checkIds(ids);
+        var deleted = new ArrayList<Boolean>(ids.size());
+        for (var id : ids) {
+            try {
+                deleted.add(deleteNoteById(id));
+            } catch (NoSuchElementException e) {
+                deleted.add(false);
+            }
+        }
+        return deleted;
+    }
+
     /**
      * Delete all {@link Note Notes}
      */
@@ -2,14 +2,19 @@ package com.example.jsonnotes.notes.service;
 
 import com.example.jsonnotes.notes.JsonNotesFile;
 import com.example.jsonnotes.notes.Note;
-import com.example.jsonnotes.util.NoteHelper;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
+import com.example.jsonnotes.notes.NoteJson;
+import com.google.gson.stream.JsonReader;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Consumer;
 
 public class JsonFileNotesDataService extends SingleFileNoteDataService {
 
@@ -43,6 +48,15 @@ public class JsonFileNotesDataService extends SingleFileNoteDataService {
         super(dataPath);
     }
 
+    /**
+     * Create a new instance of a {@link JsonFileNotesDataService} pointing at a specific path
+     * @param dataPath Absolute path to the directory where the {@link SingleFileNoteDataService#_notesFile} will be located
+     * @param journaled When TRUE, changes are appended to a journal instead of rewriting the whole file
+     */
+    public JsonFileNotesDataService(String dataPath, boolean journaled) throws RuntimeException {
+        super(dataPath, journaled);
+    }
+
     @Override
     protected List<Note> getNotesFromFileData(String fileData) {
         //Initialize a new list of Notes
@@ -53,12 +67,7 @@ public class JsonFileNotesDataService extends SingleFileNoteDataService {
             return notes;
         }
         //Convert the string to a list of Notes
-        var gson = new GsonBuilder()
-                .excludeFieldsWithoutExposeAnnotation()
-                .serializeNulls()
-                .setDateFormat("yyyy-MM-dd'T'HH:mm:ssz")
-                .create();
-        var jsonNotes = gson.fromJson(fileData, JsonNotesFile.class);
+        var jsonNotes = NoteJson.getGson().fromJson(fileData, JsonNotesFile.class);
         return jsonNotes.getNotes();
     }
 
@@ -72,13 +81,29 @@ public class JsonFileNotesDataService extends SingleFileNoteDataService {
             return noteString;
         }
         //Convert the list of Notes to a data string that can be saved to file
-        var gson = new GsonBuilder()
-                .excludeFieldsWithoutExposeAnnotation()
-                .serializeNulls()
-                .setDateFormat("yyyy-MM-dd'T'HH:mm:ssz")
-                .create();
         var jsonNotes = new JsonNotesFile();
         jsonNotes.setNotes(notes);
-        return gson.toJson(jsonNotes);
+        return NoteJson.getGson().toJson(jsonNotes);
+    }
+
+    @Override
+    protected void readNotes(InputStream input, Consumer<Note> noteConsumer) throws IOException {
+        //Decode the notes straight from the stream - only one note is materialized by the reader at a time
+        var reader = new JsonReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        NoteJson.getNotesFileAdapter().readNotes(reader, noteConsumer);
+    }
+
+    @Override
+    protected void writeNotes(OutputStream output, List<Note> notes) throws IOException {
+        //Check if there is any data to convert
+        if (notes == null || notes.size() == 0) {
+            //Leave the file empty if there is nothing to convert - matches getFileDataFromNotes
+            return;
+        }
+        //Encode the notes straight to the stream - the file is never built in memory
+        var writer = NoteJson.newNotesFileWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        NoteJson.getNotesFileAdapter().writeNotes(writer, notes);
+        //Flush the writer without closing the stream - the stream is owned by the caller
+        writer.flush();
     }
 }
@@ -1,7 +1,7 @@
 package com.example.jsonnotes.notes.service;
 
 import com.example.jsonnotes.notes.Note;
-import com.google.gson.Gson;
+import com.example.jsonnotes.notes.NoteJson;
 
 /**
  * A data service for {@link Note Notes} that stores all data in individual text files that only contain the content of the {@link Note}.
@@ -37,15 +37,23 @@ public class JsonNoteDataService extends FileNoteDataService {
         super(dataPath);
     }
 
+    /**
+     * Create a new instance of a {@link JsonNoteDataService} pointing at a specific path
+     * @param dataPath Absolute path to the directory where {@link Note notes} are stored
+     * @param readConcurrency The maximum number of {@link Note} files read at the same time when getting all
+     *                        {@link Note notes}. 1 reads the files one after another.
+     */
+    public JsonNoteDataService(String dataPath, int readConcurrency) {
+        super(dataPath, readConcurrency);
+    }
+
     @Override
     protected Note getNoteFromFileData(String fileData) {
-        var gson = new Gson();
-        return gson.fromJson(fileData, Note.class);
+        return NoteJson.fromJson(fileData);
     }
 
     @Override
     protected String getFileDataFromNote(Note note) {
-        var gson = new Gson();
-        return gson.toJson(note);
+        return NoteJson.toJson(note);
     }
 }
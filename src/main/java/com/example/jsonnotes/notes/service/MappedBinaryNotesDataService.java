@@ -0,0 +1,740 @@
+package com.example.jsonnotes.notes.service;
+
+import com.example.jsonnotes.notes.Note;
+import com.example.jsonnotes.util.FileHelper;
+import com.example.jsonnotes.util.FileSyncer;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+/**
+ * A data service for {@link Note Notes} that reads a binary notes file through a memory map instead of loading it.
+ *  Only a compact index of record offsets is kept on the heap - a {@link Note} is decoded from the mapped file when it
+ *  is asked for. Changes are appended to the end of the file, and the file is compacted once most of it is made of
+ *  replaced or deleted records.
+ * <p>
+ * The file has the same format as the one written by {@link BinaryFileNotesDataService} (see {@link NoteBinaryFormat}),
+ *  so either service can open it. The index is saved next to the file by {@link MappedBinaryNotesDataService#flush()}
+ *  and {@link MappedBinaryNotesDataService#close()}, so the next start does not have to walk the file. An index that
+ *  is older than the file is ignored and rebuilt by walking the record headers.
+ */
+public class MappedBinaryNotesDataService implements INoteDataService {
+
+    /**
+     * The name of the file that contains binary {@link Note notes}
+     */
+    protected final static String _NOTES_FILE_NAME = BinaryFileNotesDataService._BINARY_NOTES_FILE_NAME;
+    /**
+     * The name of the file the offset index is saved to
+     */
+    protected final static String _INDEX_FILE_NAME = "notes.dat.idx";
+    /**
+     * The default number of bytes of replaced and deleted records at which the file is compacted
+     */
+    public final static long DEFAULT_COMPACTION_THRESHOLD = 1024 * 1024;
+    /**
+     * The first bytes of a saved offset index
+     */
+    private final static int _INDEX_MAGIC = 0x4A4E4249;
+    /**
+     * The largest region mapped by a single buffer
+     */
+    private final static long _SEGMENT_SIZE = 1L << 30;
+
+    /**
+     * Single instance of {@link MappedBinaryNotesDataService}
+     */
+    private static MappedBinaryNotesDataService _instance;
+
+    /**
+     * The file that contains the {@link Note notes}
+     */
+    protected final File _notesFile;
+    /**
+     * The file the offset index is saved to
+     */
+    private final File _indexFile;
+    /**
+     * Pushes the files written by this service to disk
+     */
+    private final FileSyncer _syncer = new FileSyncer();
+    /**
+     * Open channel for reading and appending to the {@link MappedBinaryNotesDataService#_notesFile}
+     */
+    private FileChannel _channel;
+    /**
+     * Read-only maps of the file as it was when it was opened, one per {@link MappedBinaryNotesDataService#_SEGMENT_SIZE}
+     */
+    private MappedByteBuffer[] _segments;
+    /**
+     * The number of bytes covered by the {@link MappedBinaryNotesDataService#_segments}. Records appended after that
+     *  are read through the {@link MappedBinaryNotesDataService#_channel}.
+     */
+    private long _mappedLength;
+    /**
+     * The length of the file - where the next record is appended
+     */
+    private long _fileLength;
+    /**
+     * The offset of the live record for each {@link Note}
+     */
+    private NoteOffsetIndex _index;
+    /**
+     * The number of bytes taken up by records that were replaced or deleted
+     */
+    private long _garbageBytes;
+    /**
+     * The number of garbage bytes at which the file is compacted
+     */
+    private long _compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+
+    /**
+     * Create a new single instance of {@link MappedBinaryNotesDataService}
+     * @param dataPath Absolute path to the directory where the {@link MappedBinaryNotesDataService#_notesFile} will be located
+     * @return {@link MappedBinaryNotesDataService}
+     * @throws IllegalArgumentException Thrown when no dataPath is specified and no {@link MappedBinaryNotesDataService#_instance} is available
+     */
+    public static MappedBinaryNotesDataService getInstance(String dataPath) throws IllegalArgumentException {
+        if (dataPath != null) {
+            //When a dataPath is provided, generate a new instance
+            if (_instance != null) {
+                _instance.close();
+            }
+            _instance = new MappedBinaryNotesDataService(dataPath);
+        }
+        if (_instance == null) {
+            //When no dataPath is specified and there is no current instance, we cannot continue.
+            throw new IllegalArgumentException("No instance available and no dataPath specified. Cannot proceed.");
+        }
+        return _instance;
+    }
+
+    /**
+     * Create a new instance of a {@link MappedBinaryNotesDataService} pointing at a specific path
+     * @param dataPath Absolute path to the directory where the {@link MappedBinaryNotesDataService#_notesFile} will be located
+     * @exception RuntimeException thrown when the MappedBinaryNotesDataService cannot be created
+     */
+    public MappedBinaryNotesDataService(String dataPath) throws RuntimeException {
+        _notesFile = Path.of(dataPath, _NOTES_FILE_NAME).toFile();
+        _indexFile = Path.of(dataPath, _INDEX_FILE_NAME).toFile();
+        try {
+            _open();
+        } catch (IOException | SecurityException exception) {
+            exception.printStackTrace();
+            System.out.printf("Error while creating/accessing new instance of MappedBinaryNotesDataService. %s is not accessible.%n", _notesFile.getAbsolutePath());
+            throw new RuntimeException(String.format("Cannot access file %s", _notesFile.getAbsolutePath()));
+        }
+    }
+
+    /**
+     * Get the number of bytes of replaced and deleted records at which the file is compacted
+     * @return The compaction threshold in bytes
+     */
+    public synchronized long getCompactionThreshold() {
+        return _compactionThreshold;
+    }
+
+    /**
+     * Set the number of bytes of replaced and deleted records at which the file is compacted. The file is only
+     *  compacted once those records also make up at least half of it.
+     * @param compactionThreshold The compaction threshold in bytes
+     */
+    public synchronized void setCompactionThreshold(long compactionThreshold) {
+        if (compactionThreshold <= 0) {
+            throw new IllegalArgumentException("compactionThreshold must be greater than 0");
+        }
+        _compactionThreshold = compactionThreshold;
+    }
+
+    @Override
+    public String createNote() {
+        return createNote("");
+    }
+
+    @Override
+    public String createNote(String content) {
+        return createNote(new Note(content));
+    }
+
+    @Override
+    public synchronized String createNote(Note note) {
+        //Create new note
+        var trueNote = new Note();
+        trueNote.copyValues(note);
+        //Append the note and point the index at it
+        if (!_appendNote(trueNote)) {
+            return null;
+        }
+        return trueNote.getId();
+    }
+
+    /**
+     * Create several {@link Note Notes} at once. The records are appended one after another and made durable with a
+     *  single sync.
+     * @param notes The {@link Note} data to save
+     * @return The ID of each new {@link Note}, in the order they were given. NULL for a {@link Note} that could not
+     *  be written.
+     */
+    @Override
+    public synchronized List<String> createNotes(Collection<Note> notes) {
+        NoteBatch.checkNotes(notes);
+        var ids = new ArrayList<String>(notes.size());
+        for (var note : notes) {
+            var trueNote = new Note();
+            trueNote.copyValues(note);
+            ids.add(_appendNote(trueNote, false) ? trueNote.getId() : null);
+        }
+        _syncer.sync(_channel, _notesFile);
+        return ids;
+    }
+
+    @Override
+    public synchronized List<Note> getAllNotes() {
+        //Read the records front to back so the map is walked in order
+        var offsets = _index.sortedOffsets();
+        var notes = new ArrayList<Note>(offsets.length);
+        for (var offset : offsets) {
+            var note = _readNote(offset);
+            if (note != null) {
+                notes.add(note);
+            }
+        }
+        return notes;
+    }
+
+    /**
+     * Get a page of {@link Note Notes} in order of ID. The IDs on the page are found in the index's sorted copy of the
+     *  IDs, and only their records are read.
+     * @param cursor The cursor from {@link NotePage#getNextCursor()} of the previous page. NULL for the first page.
+     * @param limit The largest number of {@link Note Notes} on the page. Must be at least 1.
+     * @return A {@link NotePage}
+     */
+    @Override
+    public synchronized NotePage getNotes(String cursor, int limit) {
+        var after = NotePage.startAfter(cursor, limit);
+        //One ID more than fits on the page shows whether there is another page
+        var ids = _index.idsAfter(after == null ? null : UUID.fromString(after), Math.min(limit, _index.size()) + 1);
+        var notes = new ArrayList<Note>(Math.min(limit, ids.size()));
+        for (int i = 0; i < ids.size() && notes.size() < limit; i++) {
+            var note = _readNote(_index.get(ids.get(i)));
+            if (note != null) {
+                notes.add(note);
+            }
+        }
+        return new NotePage(notes, ids.size() > limit);
+    }
+
+    @Override
+    public synchronized int getNoteCount() {
+        return _index.size();
+    }
+
+    /**
+     * Describe the notes file
+     */
+    @Override
+    public synchronized String getFingerprint() {
+        return FileHelper.getFingerprint(_notesFile);
+    }
+
+    @Override
+    public synchronized Note getNoteById(String id) {
+        if (id == null || id.equals("")) {
+            throw new IllegalArgumentException("id cannot be blank");
+        }
+        var offset = _index.get(_parseId(id));
+        if (offset == NoteOffsetIndex.NOT_FOUND) {
+            throw new NoSuchElementException(String.format("Note with id %s not found", id));
+        }
+        return _readNote(offset);
+    }
+
+    @Override
+    public synchronized Note updateNote(Note upNote) {
+        if (upNote == null) {
+            throw new IllegalArgumentException("upNote cannot be null");
+        }
+        //Get the currently saved note
+        var curNote = getNoteById(upNote.getId());
+        if (curNote == null) {
+            return null;
+        }
+        //copy the values from the updated note into the current note
+        curNote.copyValues(upNote);
+        if (!_appendNote(curNote)) {
+            System.out.printf("Failed to update note %s%n", upNote.getId());
+            return null;
+        }
+        return curNote;
+    }
+
+    /**
+     * Update several {@link Note Notes} at once. The records are appended one after another and made durable with a
+     *  single sync.
+     * @param notes The {@link Note Notes} to update
+     * @return The updated {@link Note Notes}, in the order they were given. NULL for a {@link Note} that does not
+     *  exist or could not be written.
+     */
+    @Override
+    public synchronized List<Note> updateNotes(Collection<Note> notes) {
+        NoteBatch.checkNotes(notes);
+        var updated = new ArrayList<Note>(notes.size());
+        for (var upNote : notes) {
+            Note curNote;
+            try {
+                curNote = getNoteById(upNote.getId());
+            } catch (NoSuchElementException e) {
+                curNote = null;
+            }
+            if (curNote != null) {
+                curNote.copyValues(upNote);
+                if (!_appendNote(curNote, false)) {
+                    System.out.printf("Failed to update note %s%n", upNote.getId());
+                    curNote = null;
+                }
+            }
+            updated.add(curNote);
+        }
+        _syncer.sync(_channel, _notesFile);
+        return updated;
+    }
+
+    @Override
+    public synchronized boolean deleteNoteById(String id) {
+        if (id == null || id.equals("")) {
+            throw new IllegalArgumentException("id cannot be blank");
+        }
+        return _deleteNote(_parseId(id), true);
+    }
+
+    /**
+     * Delete several {@link Note Notes} at once. The tombstones are appended one after another and made durable with
+     *  a single sync.
+     * @param ids The IDs of the {@link Note Notes} to delete
+     * @return For each ID, in the order they were given, TRUE if the note was deleted and FALSE if it wasn't
+     */
+    @Override
+    public synchronized List<Boolean> deleteNotesByIds(Collection<String> ids) {
+        NoteBatch.checkIds(ids);
+        var deleted = new ArrayList<Boolean>(ids.size());
+        for (var id : ids) {
+            try {
+                deleted.add(_deleteNote(_parseId(id), false));
+            } catch (NoSuchElementException e) {
+                deleted.add(false);
+            }
+        }
+        _syncer.sync(_channel, _notesFile);
+        return deleted;
+    }
+
+    @Override
+    public synchronized void deleteAllNotes() {
+        try {
+            //Cut the file back to its header - all records go at once
+            _writeHeaderAndTruncate();
+            _map();
+            _index = new NoteOffsetIndex(0);
+            _garbageBytes = 0;
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Error while deleting notes. They may still be in the file.");
+        }
+    }
+
+    /**
+     * Rewrite the {@link MappedBinaryNotesDataService#_notesFile} with only the live records, dropping replaced and
+     *  deleted ones, and map the new file
+     * @return TRUE if the file was compacted, FALSE if it wasn't
+     */
+    public synchronized boolean compact() {
+        var offsets = _index.sortedOffsets();
+        var compacted = new NoteOffsetIndex(offsets.length);
+        var written = FileHelper.replaceFileData(_notesFile, output -> {
+            NoteBinaryFormat.writeHeader(output, offsets.length);
+            long position = NoteBinaryFormat.HEADER_SIZE;
+            for (var offset : offsets) {
+                var record = _readRecord(offset);
+                compacted.put(NoteBinaryFormat.readId(record, 0), position);
+                output.write(_toArray(record));
+                position += record.remaining();
+            }
+        }, _syncer);
+        if (!written) {
+            System.out.println("Error while compacting notes file. The uncompacted file is still in use.");
+            return false;
+        }
+        try {
+            _closeChannel();
+            _channel = FileChannel.open(_notesFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            _fileLength = _channel.size();
+            _map();
+            _index = compacted;
+            _garbageBytes = 0;
+            _writeIndex();
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException(String.format("Cannot reopen file %s", _notesFile.getAbsolutePath()));
+        }
+    }
+
+    /**
+     * Save the offset index so the next start can skip walking the file
+     * @return TRUE if the index was saved, FALSE if it wasn't
+     */
+    public synchronized boolean flush() {
+        return _writeIndex();
+    }
+
+    /**
+     * Get the {@link FileSyncer} that pushes the files written by this service to disk. Set its
+     *  {@link FileSyncer.Durability} to choose how much recent work a crash can lose.
+     * @return A {@link FileSyncer}
+     */
+    public FileSyncer getFileSyncer() {
+        return _syncer;
+    }
+
+    /**
+     * Save the offset index and close the {@link MappedBinaryNotesDataService#_notesFile}, syncing any writes still
+     *  waiting for a batched sync. The service cannot be used after it is closed.
+     */
+    public synchronized void close() {
+        if (_channel == null) {
+            return;
+        }
+        _writeIndex();
+        _syncer.close();
+        _closeChannel();
+        _segments = new MappedByteBuffer[0];
+        _mappedLength = 0;
+    }
+
+    /**
+     * Open the {@link MappedBinaryNotesDataService#_notesFile}, creating it if needed, map it, and load or rebuild the
+     *  offset index
+     * @throws IOException Thrown when the file cannot be opened or is not a binary notes file
+     */
+    private void _open() throws IOException {
+        _channel = FileChannel.open(_notesFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        _fileLength = _channel.size();
+        if (_fileLength == 0) {
+            _writeHeaderAndTruncate();
+        }
+        _map();
+        var header = _read(0, NoteBinaryFormat.HEADER_SIZE);
+        NoteBinaryFormat.readHeader(header);
+        if (!_readIndex()) {
+            _rebuildIndex();
+        }
+    }
+
+    /**
+     * Map the whole {@link MappedBinaryNotesDataService#_notesFile} as it is now
+     * @throws IOException Thrown when the file cannot be mapped
+     */
+    private void _map() throws IOException {
+        var segmentCount = (int) ((_fileLength + _SEGMENT_SIZE - 1) / _SEGMENT_SIZE);
+        var segments = new MappedByteBuffer[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            var start = i * _SEGMENT_SIZE;
+            segments[i] = _channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(_SEGMENT_SIZE, _fileLength - start));
+        }
+        _segments = segments;
+        _mappedLength = _fileLength;
+    }
+
+    /**
+     * Build the offset index by walking the record headers of the file. Record bodies are skipped, not decoded. A
+     *  record cut short by an interrupted write ends the walk and is cut off the file.
+     * @throws IOException Thrown when the file cannot be read
+     */
+    private void _rebuildIndex() throws IOException {
+        var index = new NoteOffsetIndex(0);
+        long garbage = 0;
+        long offset = NoteBinaryFormat.HEADER_SIZE;
+        while (offset + NoteBinaryFormat.RECORD_PREFIX_SIZE <= _fileLength) {
+            var prefix = _read(offset, NoteBinaryFormat.RECORD_PREFIX_SIZE);
+            var size = NoteBinaryFormat.recordSize(prefix, 0);
+            if (size < NoteBinaryFormat.MIN_BODY_SIZE + NoteBinaryFormat.RECORD_OVERHEAD || offset + size > _fileLength) {
+                break;
+            }
+            var id = NoteBinaryFormat.readId(prefix, 0);
+            long previous;
+            if (NoteBinaryFormat.isTombstone(prefix, 0)) {
+                previous = index.remove(id);
+                garbage += size;
+            } else {
+                previous = index.put(id, offset);
+            }
+            if (previous != NoteOffsetIndex.NOT_FOUND) {
+                garbage += _readRecordSize(previous);
+            }
+            offset += size;
+        }
+        if (offset < _fileLength) {
+            System.out.printf("Ignoring %d damaged byte(s) at the end of %s.%n", _fileLength - offset, _notesFile.getAbsolutePath());
+            _channel.truncate(offset);
+            _fileLength = offset;
+            _map();
+        }
+        _index = index;
+        _garbageBytes = garbage;
+        _writeIndex();
+    }
+
+    /**
+     * Load the saved offset index. The index is only used if it was saved after the last change to the file and
+     *  covers all of it.
+     * @return TRUE if the index was loaded, FALSE if it is missing, out of date, or damaged
+     */
+    private boolean _readIndex() {
+        if (!_indexFile.isFile()) {
+            return false;
+        }
+        try {
+            var indexTime = Files.getLastModifiedTime(_indexFile.toPath());
+            var notesTime = Files.getLastModifiedTime(_notesFile.toPath());
+            if (indexTime.compareTo(notesTime) < 0) {
+                return false;
+            }
+            try (var input = new DataInputStream(new BufferedInputStream(FileHelper.openInputStream(_indexFile), FileHelper.STREAM_BUFFER_SIZE))) {
+                if (input.readInt() != _INDEX_MAGIC || input.readLong() != _fileLength) {
+                    return false;
+                }
+                var garbage = input.readLong();
+                _index = NoteOffsetIndex.read(input);
+                _garbageBytes = garbage;
+                return true;
+            }
+        } catch (IOException e) {
+            System.out.printf("Cannot read note offset index %s - rebuilding it.%n", _indexFile.getAbsolutePath());
+            return false;
+        }
+    }
+
+    /**
+     * Save the offset index along with the length of the file it describes
+     * @return TRUE if the index was saved, FALSE if it wasn't
+     */
+    private boolean _writeIndex() {
+        var index = _index;
+        var fileLength = _fileLength;
+        var garbage = _garbageBytes;
+        return FileHelper.replaceFileData(_indexFile, output -> {
+            var dataOutput = new DataOutputStream(output);
+            dataOutput.writeInt(_INDEX_MAGIC);
+            dataOutput.writeLong(fileLength);
+            dataOutput.writeLong(garbage);
+            index.write(dataOutput);
+            dataOutput.flush();
+        }, _syncer);
+    }
+
+    /**
+     * Append a tombstone for a {@link Note} and drop it from the index
+     * @param uuid The ID of the {@link Note}
+     * @param sync TRUE to make the tombstone durable now, FALSE when the caller syncs after a batch
+     * @return TRUE if the {@link Note} was deleted, FALSE if it does not exist or the tombstone could not be written
+     */
+    private boolean _deleteNote(UUID uuid, boolean sync) {
+        var offset = _index.get(uuid);
+        if (offset == NoteOffsetIndex.NOT_FOUND) {
+            return false;
+        }
+        var tombstone = NoteBinaryFormat.encodeTombstone(uuid);
+        var tombstoneSize = tombstone.remaining();
+        if (!_append(tombstone, sync)) {
+            return false;
+        }
+        _index.remove(uuid);
+        _garbageBytes += _readRecordSize(offset) + tombstoneSize;
+        _compactIfNeeded();
+        return true;
+    }
+
+    /**
+     * Append a {@link Note} record, make it durable, and point the index at it
+     * @param note The {@link Note} to append
+     * @return TRUE if the record was written, FALSE if it wasn't
+     */
+    private boolean _appendNote(Note note) {
+        return _appendNote(note, true);
+    }
+
+    /**
+     * Append a {@link Note} record and point the index at it
+     * @param note The {@link Note} to append
+     * @param sync TRUE to make the record durable now, FALSE when the caller syncs after a batch
+     * @return TRUE if the record was written, FALSE if it wasn't
+     */
+    private boolean _appendNote(Note note, boolean sync) {
+        var offset = _fileLength;
+        if (!_append(NoteBinaryFormat.encodeRecord(note), sync)) {
+            return false;
+        }
+        var previous = _index.put(_parseId(note.getId()), offset);
+        if (previous != NoteOffsetIndex.NOT_FOUND) {
+            _garbageBytes += _readRecordSize(previous);
+            _compactIfNeeded();
+        }
+        return true;
+    }
+
+    /**
+     * Append a complete record to the end of the file
+     * @param record The record
+     * @param sync TRUE to make the record durable now, FALSE when the caller syncs after a batch
+     * @return TRUE if the record was written, FALSE if it wasn't
+     */
+    private boolean _append(ByteBuffer record, boolean sync) {
+        try {
+            var position = _fileLength;
+            while (record.hasRemaining()) {
+                position += _channel.write(record, position);
+            }
+            if (sync) {
+                _syncer.sync(_channel, _notesFile);
+            }
+            _fileLength = position;
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.printf("Cannot append to %s%n", _notesFile.getAbsolutePath());
+            return false;
+        }
+    }
+
+    /**
+     * Compact the file once replaced and deleted records pass the {@link MappedBinaryNotesDataService#_compactionThreshold}
+     *  and make up at least half of the file
+     */
+    private void _compactIfNeeded() {
+        if (_garbageBytes >= _compactionThreshold && _garbageBytes * 2 >= _fileLength) {
+            compact();
+        }
+    }
+
+    /**
+     * Decode the {@link Note} in the record at an offset
+     * @param offset The offset of the record
+     * @return A {@link Note}. NULL if the record is damaged.
+     */
+    private Note _readNote(long offset) {
+        var note = NoteBinaryFormat.decodeRecord(_readRecord(offset));
+        if (note == null) {
+            System.out.printf("Damaged note record at offset %d in %s%n", offset, _notesFile.getAbsolutePath());
+        }
+        return note;
+    }
+
+    /**
+     * Get the complete record at an offset
+     * @param offset The offset of the record
+     * @return A {@link ByteBuffer} holding just the record
+     */
+    private ByteBuffer _readRecord(long offset) {
+        return _read(offset, _readRecordSize(offset));
+    }
+
+    /**
+     * Get the total size of the record at an offset
+     * @param offset The offset of the record
+     * @return The size in bytes
+     */
+    private int _readRecordSize(long offset) {
+        return NoteBinaryFormat.recordSize(_read(offset, 4), 0);
+    }
+
+    /**
+     * Get a range of the file. Ranges inside a single mapped segment are returned as a view of the map without
+     *  copying. Ranges in the append region, or across two segments, are read through the channel.
+     * @param offset The offset of the range
+     * @param length The length of the range
+     * @return A {@link ByteBuffer} holding the range, positioned at its start
+     */
+    private ByteBuffer _read(long offset, int length) {
+        if (offset + length <= _mappedLength) {
+            var segment = (int) (offset / _SEGMENT_SIZE);
+            var segmentOffset = (int) (offset % _SEGMENT_SIZE);
+            if (segmentOffset + length <= _segments[segment].capacity()) {
+                return _segments[segment].slice(segmentOffset, length);
+            }
+        }
+        var buffer = ByteBuffer.allocate(length);
+        try {
+            var position = offset;
+            while (buffer.hasRemaining()) {
+                var read = _channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException(String.format("Unexpected end of file at %d", position));
+                }
+                position += read;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException(String.format("Cannot read file %s", _notesFile.getAbsolutePath()));
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Write an empty header and cut the file off after it
+     * @throws IOException Thrown when the file cannot be written
+     */
+    private void _writeHeaderAndTruncate() throws IOException {
+        var header = ByteBuffer.allocate(NoteBinaryFormat.HEADER_SIZE);
+        header.put(NoteBinaryFormat.MAGIC).putShort(NoteBinaryFormat.VERSION).putShort((short) 0).putInt(0).flip();
+        _channel.truncate(0);
+        while (header.hasRemaining()) {
+            _channel.write(header, header.position());
+        }
+        _syncer.sync(_channel, _notesFile);
+        _fileLength = NoteBinaryFormat.HEADER_SIZE;
+    }
+
+    private void _closeChannel() {
+        try {
+            _channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.printf("Cannot close %s%n", _notesFile.getAbsolutePath());
+        }
+        _channel = null;
+    }
+
+    /**
+     * Parse a {@link Note} ID. IDs that are not UUIDs cannot be in the file.
+     * @param id The ID
+     * @return A {@link UUID}
+     * @throws NoSuchElementException Thrown when the ID is not a UUID
+     */
+    private static UUID _parseId(String id) {
+        try {
+            return UUID.fromString(id);
+        } catch (IllegalArgumentException exception) {
+            throw new NoSuchElementException(String.format("Note with id %s not found", id));
+        }
+    }
+
+    private static byte[] _toArray(ByteBuffer buffer) {
+        var bytes = new byte[buffer.remaining()];
+        buffer.get(buffer.position(), bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.jsonnotes.notes.service;
+
+import com.example.jsonnotes.notes.Note;
+
+import java.util.Collection;
+
+/**
+ * Argument checks shared by the batch methods of {@link INoteDataService}. A batch is checked in full before any of it
+ *  is applied, so a bad argument never leaves a batch half done.
+ */
+final class NoteBatch {
+
+    private NoteBatch() {
+    }
+
+    /**
+     * Check the {@link Note notes} passed to {@link INoteDataService#createNotes(Collection)} or
+     *  {@link INoteDataService#updateNotes(Collection)}
+     * @param notes The {@link Note notes} in the batch
+     */
+    static void checkNotes(Collection<Note> notes) {
+        if (notes == null) {
+            throw new IllegalArgumentException("notes cannot be null");
+        }
+        for (var note : notes) {
+            if (note == null) {
+                throw new IllegalArgumentException("notes cannot contain null");
+            }
+        }
+    }
+
+    /**
+     * Check the IDs passed to {@link INoteDataService#deleteNotesByIds(Collection)}
+     * @param ids The IDs in the batch
+     */
+    static void checkIds(Collection<String> ids) {
+        if (ids == null) {
+            throw new IllegalArgumentException("ids cannot be null");
+        }
+        for (var id : ids) {
+            if (id == null || id.equals("")) {
+                throw new IllegalArgumentException("ids cannot contain a blank id");
+            }
+        }
+    }
+}
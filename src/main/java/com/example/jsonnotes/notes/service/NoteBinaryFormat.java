@@ -0,0 +1,352 @@
+package com.example.jsonnotes.notes.service;
+
+import com.example.jsonnotes.notes.Note;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads and writes the binary notes file format used by {@link BinaryFileNotesDataService}.
+ * <p>
+ * A file starts with a header - the magic bytes {@code JNBF}, a 2 byte format version, 2 reserved bytes, and a 4 byte
+ *  record count. Each {@link Note} follows as a record - a 4 byte body length, the body, and a 4 byte CRC32C checksum
+ *  of the body. The body holds the ID as 16 raw UUID bytes followed by the content and summary, each as a 4 byte
+ *  length and that many UTF-8 bytes. A length of -1 marks a NULL string. All numbers are big-endian.
+ * <p>
+ * A file may hold more than one record for an ID - the last one wins. A record whose content length is
+ *  {@link NoteBinaryFormat#TOMBSTONE} deletes its ID. The record count in the header is the number of records the file
+ *  was created with - records appended later are not counted.
+ */
+final class NoteBinaryFormat {
+
+    /**
+     * The first bytes of every binary notes file
+     */
+    static final byte[] MAGIC = { 'J', 'N', 'B', 'F' };
+    /**
+     * The format version written by this class
+     */
+    static final short VERSION = 1;
+    /**
+     * The size of the file header in bytes
+     */
+    static final int HEADER_SIZE = MAGIC.length + 2 + 2 + 4;
+    /**
+     * The bytes in a record that are not part of the body - the body length and the checksum
+     */
+    static final int RECORD_OVERHEAD = 4 + 4;
+    /**
+     * The content length that marks a record as a deletion of its ID
+     */
+    static final int TOMBSTONE = -2;
+    /**
+     * The size of a body that holds only an ID and two NULL strings
+     */
+    static final int MIN_BODY_SIZE = 16 + 4 + 4;
+    /**
+     * The number of bytes at the start of a record needed to find its size, ID, and whether it is a tombstone
+     */
+    static final int RECORD_PREFIX_SIZE = 4 + MIN_BODY_SIZE - 4;
+
+    private NoteBinaryFormat() {
+    }
+
+    /**
+     * Write a file header
+     * @param output The stream to write to
+     * @param recordCount The number of records that follow the header
+     * @throws IOException Thrown when the header cannot be written
+     */
+    static void writeHeader(OutputStream output, int recordCount) throws IOException {
+        var header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(MAGIC).putShort(VERSION).putShort((short) 0).putInt(recordCount);
+        output.write(header.array());
+    }
+
+    /**
+     * Encode a {@link Note} as a complete record, including its length and checksum
+     * @param note The {@link Note} to encode
+     * @return A {@link ByteBuffer} holding the record, positioned at its start
+     */
+    static ByteBuffer encodeRecord(Note note) {
+        var id = UUID.fromString(note.getId());
+        var content = _encodeString(note.getContent());
+        var summary = _encodeString(note.getSummary());
+        var bodySize = MIN_BODY_SIZE + _length(content) + _length(summary);
+        var record = ByteBuffer.allocate(bodySize + RECORD_OVERHEAD);
+        record.putInt(bodySize);
+        record.putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits());
+        _putString(record, content);
+        _putString(record, summary);
+        return _finishRecord(record, bodySize);
+    }
+
+    /**
+     * Encode a record that deletes an ID
+     * @param id The ID of the deleted {@link Note}
+     * @return A {@link ByteBuffer} holding the record, positioned at its start
+     */
+    static ByteBuffer encodeTombstone(UUID id) {
+        var record = ByteBuffer.allocate(MIN_BODY_SIZE + RECORD_OVERHEAD);
+        record.putInt(MIN_BODY_SIZE);
+        record.putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits());
+        record.putInt(TOMBSTONE).putInt(-1);
+        return _finishRecord(record, MIN_BODY_SIZE);
+    }
+
+    /**
+     * Append the checksum to a record whose body has been written
+     * @param record The record, positioned after its body
+     * @param bodySize The size of the body
+     * @return The record, positioned at its start
+     */
+    private static ByteBuffer _finishRecord(ByteBuffer record, int bodySize) {
+        var checksum = new CRC32C();
+        checksum.update(record.array(), 4, bodySize);
+        record.putInt((int) checksum.getValue());
+        return record.flip();
+    }
+
+    /**
+     * Write a {@link Note} as a record
+     * @param output The stream to write to
+     * @param note The {@link Note} to write
+     * @throws IOException Thrown when the record cannot be written
+     */
+    static void writeRecord(OutputStream output, Note note) throws IOException {
+        var record = encodeRecord(note);
+        output.write(record.array(), 0, record.limit());
+    }
+
+    /**
+     * Check a file header and move the buffer past it
+     * @param buffer A {@link ByteBuffer} positioned at the start of the file
+     * @return The number of records the header announces
+     * @throws IOException Thrown when the data is not a binary notes file or uses an unknown version
+     */
+    static int readHeader(ByteBuffer buffer) throws IOException {
+        if (!hasMagic(buffer)) {
+            throw new IOException("Not a binary notes file");
+        }
+        buffer.position(buffer.position() + MAGIC.length);
+        var version = buffer.getShort();
+        if (version != VERSION) {
+            throw new IOException(String.format("Unsupported binary notes file version %d", version));
+        }
+        buffer.getShort();
+        return buffer.getInt();
+    }
+
+    /**
+     * Check if a buffer starts with the {@link NoteBinaryFormat#MAGIC} bytes, without moving it
+     * @param buffer A {@link ByteBuffer} positioned at the start of the data
+     * @return TRUE if the data looks like a binary notes file
+     */
+    static boolean hasMagic(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.get(buffer.position() + i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read every record from a buffer positioned after the header, in a single sequential pass. A record with a bad
+     *  checksum is logged and skipped. Reading stops at the first record that runs past the end of the data, such as
+     *  one cut short by an interrupted write.
+     * @param buffer A {@link ByteBuffer} positioned at the first record
+     * @param noteConsumer Receives each {@link Note}
+     * @param deletionConsumer Receives the ID of each tombstone
+     * @return The number of records that were skipped or cut short
+     */
+    static int readRecords(ByteBuffer buffer, Consumer<Note> noteConsumer, Consumer<String> deletionConsumer) {
+        var damaged = 0;
+        var checksum = new CRC32C();
+        while (buffer.remaining() >= RECORD_OVERHEAD) {
+            var bodySize = buffer.getInt();
+            if (bodySize < MIN_BODY_SIZE || bodySize > buffer.remaining() - 4) {
+                damaged++;
+                break;
+            }
+            var bodyStart = buffer.position();
+            checksum.reset();
+            checksum.update(buffer.slice(bodyStart, bodySize));
+            var expected = buffer.getInt(bodyStart + bodySize);
+            if ((int) checksum.getValue() != expected) {
+                System.out.printf("Skipping damaged note record at offset %d%n", bodyStart - 4);
+                damaged++;
+                buffer.position(bodyStart + bodySize + 4);
+                continue;
+            }
+            if (buffer.getInt(bodyStart + 16) == TOMBSTONE) {
+                deletionConsumer.accept(new UUID(buffer.getLong(bodyStart), buffer.getLong(bodyStart + 8)).toString());
+            } else {
+                noteConsumer.accept(_readBody(buffer));
+            }
+            buffer.position(bodyStart + bodySize + 4);
+        }
+        if (buffer.hasRemaining()) {
+            damaged++;
+        }
+        return damaged;
+    }
+
+    /**
+     * Read every record from a stream positioned after the header, one record at a time, so only a single record is
+     *  held in memory besides the decoded {@link Note notes}. Damaged records are handled as in
+     *  {@link NoteBinaryFormat#readRecords(ByteBuffer, Consumer, Consumer)}.
+     * @param input An {@link InputStream} positioned at the first record
+     * @param noteConsumer Receives each {@link Note}
+     * @param deletionConsumer Receives the ID of each tombstone
+     * @return The number of records that were skipped or cut short
+     * @throws IOException Thrown when the stream cannot be read
+     */
+    static int readRecords(InputStream input, Consumer<Note> noteConsumer, Consumer<String> deletionConsumer) throws IOException {
+        var damaged = 0;
+        var prefix = new byte[4];
+        while (true) {
+            var prefixRead = input.readNBytes(prefix, 0, prefix.length);
+            if (prefixRead < prefix.length) {
+                return prefixRead > 0 ? damaged + 1 : damaged;
+            }
+            var bodySize = ByteBuffer.wrap(prefix).getInt();
+            if (bodySize < MIN_BODY_SIZE || bodySize > Integer.MAX_VALUE - RECORD_OVERHEAD) {
+                return damaged + 1;
+            }
+            //Read in chunks instead of allocating the whole size up front - a damaged size can be far larger than the file
+            var rest = input.readNBytes(bodySize + 4);
+            if (rest.length < bodySize + 4) {
+                return damaged + 1;
+            }
+            var record = ByteBuffer.allocate(prefix.length + rest.length).put(prefix).put(rest).flip();
+            damaged += readRecords(record, noteConsumer, deletionConsumer);
+        }
+    }
+
+    /**
+     * Get the total size of the record starting at a position, including its length and checksum
+     * @param buffer A {@link ByteBuffer} holding at least the first 4 bytes of the record
+     * @param position The position of the record in the buffer
+     * @return The size in bytes. Less than {@link NoteBinaryFormat#MIN_BODY_SIZE} plus the overhead for a damaged record.
+     */
+    static int recordSize(ByteBuffer buffer, int position) {
+        return buffer.getInt(position) + RECORD_OVERHEAD;
+    }
+
+    /**
+     * Read the ID of the record starting at a position without decoding or checking the rest of it
+     * @param buffer A {@link ByteBuffer} holding at least the first {@link NoteBinaryFormat#RECORD_PREFIX_SIZE} bytes of the record
+     * @param position The position of the record in the buffer
+     * @return The ID
+     */
+    static UUID readId(ByteBuffer buffer, int position) {
+        return new UUID(buffer.getLong(position + 4), buffer.getLong(position + 12));
+    }
+
+    /**
+     * Check if the record starting at a position is a tombstone, without decoding or checking the rest of it
+     * @param buffer A {@link ByteBuffer} holding at least the first {@link NoteBinaryFormat#RECORD_PREFIX_SIZE} bytes of the record
+     * @param position The position of the record in the buffer
+     * @return TRUE if the record deletes its ID
+     */
+    static boolean isTombstone(ByteBuffer buffer, int position) {
+        return buffer.getInt(position + 20) == TOMBSTONE;
+    }
+
+    /**
+     * Decode a single complete record, checking its checksum
+     * @param record A {@link ByteBuffer} positioned at the start of the record
+     * @return A {@link Note}. NULL if the record is damaged or is a tombstone.
+     */
+    static Note decodeRecord(ByteBuffer record) {
+        var start = record.position();
+        var bodySize = record.getInt(start);
+        if (bodySize < MIN_BODY_SIZE || bodySize + RECORD_OVERHEAD > record.remaining()) {
+            return null;
+        }
+        var checksum = new CRC32C();
+        checksum.update(record.slice(start + 4, bodySize));
+        if ((int) checksum.getValue() != record.getInt(start + 4 + bodySize) || record.getInt(start + 20) == TOMBSTONE) {
+            return null;
+        }
+        record.position(start + 4);
+        var note = _readBody(record);
+        record.position(start + bodySize + RECORD_OVERHEAD);
+        return note;
+    }
+
+    /**
+     * Decode the body of a record whose checksum has already been checked
+     * @param buffer A {@link ByteBuffer} positioned at the start of the body
+     * @return A {@link Note}
+     */
+    private static Note _readBody(ByteBuffer buffer) {
+        var id = new UUID(buffer.getLong(), buffer.getLong());
+        var note = new Note(id, _getString(buffer));
+        note.setSummary(_getString(buffer));
+        return note;
+    }
+
+    /**
+     * Encode a string as UTF-8
+     * @param value The string to encode. May be NULL.
+     * @return The UTF-8 bytes. NULL if the string was NULL.
+     */
+    private static byte[] _encodeString(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get the number of bytes an encoded string takes up after its length
+     * @param bytes The encoded string. May be NULL.
+     * @return The number of bytes
+     */
+    private static int _length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    /**
+     * Write a length-prefixed encoded string
+     * @param buffer The {@link ByteBuffer} to write to
+     * @param bytes The encoded string. NULL is written as a length of -1.
+     */
+    private static void _putString(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    /**
+     * Read a length-prefixed UTF-8 string
+     * @param buffer The {@link ByteBuffer} to read from
+     * @return The string. NULL if the length was -1.
+     */
+    private static String _getString(ByteBuffer buffer) {
+        var length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        } else {
+            var bytes = new byte[length];
+            buffer.get(buffer.position(), bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
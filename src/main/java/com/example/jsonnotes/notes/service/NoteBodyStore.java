@@ -0,0 +1,310 @@
+package com.example.jsonnotes.notes.service;
+
+import com.example.jsonnotes.notes.Note;
+import com.example.jsonnotes.util.FileHelper;
+import com.example.jsonnotes.util.FileSyncer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stores the content of {@link Note notes} once per distinct value, keyed by its SHA-256 hash. A {@link Note} whose
+ *  content is stored here keeps a reference to it in place of the content - see {@link NoteBodyStore#acquire(String)}.
+ * <p>
+ * Each body is kept in its own file, named by its hash, in a directory owned by one data service, and counts the
+ *  {@link Note notes} that refer to it. A body that is no longer referred to is deleted once the data that referred to it is gone. Every
+ *  body that has been read or stored is held as a single String, so {@link Note notes} with the same content share one
+ *  String on the heap.
+ * <p>
+ * Content shorter than {@link NoteBodyStore#MIN_BODY_LENGTH} is not worth a file of its own and is never stored.
+ */
+final class NoteBodyStore {
+
+    /**
+     * The shortest content that is stored as a body
+     */
+    static final int MIN_BODY_LENGTH = 128;
+    /**
+     * The start of a reference to a body. Content that refers to a body is this followed by the hash of the body.
+     */
+    private static final String _REFERENCE_PREFIX = "\u0000body:";
+    /**
+     * The length of a hash in hexadecimal
+     */
+    private static final int _HASH_LENGTH = 64;
+
+    /**
+     * A single stored body
+     */
+    private static final class Body {
+        private final String _hash;
+        private final String _content;
+        /**
+         * The number of {@link Note notes} that refer to the body
+         */
+        private int _references;
+
+        private Body(String hash, String content) {
+            _hash = hash;
+            _content = content;
+        }
+    }
+
+    /**
+     * The directory the bodies are stored in
+     */
+    private final File _directory;
+    /**
+     * Pushes the stored bodies to disk
+     */
+    private final FileSyncer _syncer;
+    /**
+     * The bodies that have been read or stored, keyed by hash
+     */
+    private final Map<String, Body> _bodiesByHash = new HashMap<>();
+    /**
+     * The same bodies keyed by content, so storing content that is already known does not hash it again
+     */
+    private final Map<String, Body> _bodiesByContent = new HashMap<>();
+
+    /**
+     * Create a new instance of a {@link NoteBodyStore} for a directory of bodies. The directory is created when the
+     *  first body is stored.
+     * @param directory The directory the bodies are stored in
+     * @param syncer The {@link FileSyncer} of the service that owns the bodies
+     */
+    NoteBodyStore(File directory, FileSyncer syncer) {
+        _directory = directory;
+        _syncer = syncer;
+    }
+
+    /**
+     * Check if the data directory holds any bodies
+     * @return TRUE if at least one body is stored
+     */
+    boolean hasBodies() {
+        var files = _directory.list();
+        return files != null && files.length > 0;
+    }
+
+    /**
+     * Check if content is a reference to a body
+     * @param content The content of a {@link Note}
+     * @return TRUE if the content refers to a body
+     */
+    static boolean isReference(String content) {
+        return content != null && content.length() == _REFERENCE_PREFIX.length() + _HASH_LENGTH && content.startsWith(_REFERENCE_PREFIX);
+    }
+
+    /**
+     * Check if content is long enough to be stored as a body
+     * @param content The content of a {@link Note}
+     * @return TRUE if the content should be stored
+     */
+    static boolean isStorable(String content) {
+        return content != null && content.length() >= MIN_BODY_LENGTH && !isReference(content);
+    }
+
+    /**
+     * Get the content a {@link Note} refers to
+     * @param content The content of a {@link Note}, which may be a reference to a body
+     * @return The shared content of the body, or the content itself when it is not a reference
+     * @throws IOException Thrown when the body cannot be read
+     */
+    synchronized String resolve(String content) throws IOException {
+        if (!isReference(content)) {
+            return content;
+        }
+        var hash = _getHash(content);
+        var body = _bodiesByHash.get(hash);
+        if (body == null) {
+            var bodyContent = Files.readString(_getBodyFile(hash).toPath(), StandardCharsets.UTF_8);
+            body = _remember(hash, bodyContent);
+        }
+        return body._content;
+    }
+
+    /**
+     * Get the shared String for content, so {@link Note notes} with the same content hold the same String
+     * @param content The content of a {@link Note}
+     * @return The shared content if the content is stored, otherwise the content itself
+     */
+    synchronized String share(String content) {
+        var body = content == null ? null : _bodiesByContent.get(content);
+        return body == null ? content : body._content;
+    }
+
+    /**
+     * Add a reference to content, storing it as a body if it is not stored yet
+     * @param content The content of a {@link Note}. Must be {@link NoteBodyStore#isStorable(String) storable}.
+     * @return The reference to store in place of the content
+     * @throws IOException Thrown when the body cannot be written
+     */
+    synchronized String acquire(String content) throws IOException {
+        var body = _bodiesByContent.get(content);
+        if (body == null) {
+            var hash = hash(content);
+            var bodyFile = _getBodyFile(hash);
+            if (!bodyFile.exists()) {
+                if (!_directory.isDirectory()) {
+                    Files.createDirectories(_directory.toPath());
+                    _syncer.syncDirectory(_directory.getAbsoluteFile().getParentFile());
+                }
+                if (!FileHelper.replaceFileData(bodyFile, content, _syncer)) {
+                    throw new IOException(String.format("Cannot write body %s", bodyFile.getAbsolutePath()));
+                }
+            }
+            body = _remember(hash, content);
+        }
+        body._references++;
+        return reference(body._hash);
+    }
+
+    /**
+     * Remove a reference to a body. A body with no references is not deleted until
+     *  {@link NoteBodyStore#deleteUnreferenced(Set)} is called, since data on disk may still refer to it.
+     * @param reference A reference returned by {@link NoteBodyStore#acquire(String)}
+     * @return TRUE if no {@link Note} refers to the body any more
+     */
+    synchronized boolean release(String reference) {
+        var body = _bodiesByHash.get(_getHash(reference));
+        if (body == null) {
+            return false;
+        }
+        if (body._references > 0) {
+            body._references--;
+        }
+        return body._references == 0;
+    }
+
+    /**
+     * Get the reference that content would be stored under, without adding a reference
+     * @param content The content of a {@link Note}
+     * @return The reference. NULL if the content is not stored.
+     */
+    synchronized String getReference(String content) {
+        var body = content == null ? null : _bodiesByContent.get(content);
+        return body == null ? null : reference(body._hash);
+    }
+
+    /**
+     * Forget every reference and count them again
+     * @param references The reference of every {@link Note} that refers to a body
+     */
+    synchronized void recount(Iterable<String> references) {
+        _bodiesByHash.values().forEach(body -> body._references = 0);
+        for (var reference : references) {
+            var hash = _getHash(reference);
+            var body = _bodiesByHash.get(hash);
+            if (body == null) {
+                try {
+                    resolve(reference);
+                    body = _bodiesByHash.get(hash);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    System.out.printf("Cannot read body %s%n", hash);
+                    continue;
+                }
+            }
+            body._references++;
+        }
+    }
+
+    /**
+     * Get the bodies on disk that no {@link Note} refers to, including bodies left behind by an interrupted change.
+     *  Pass them to {@link NoteBodyStore#deleteUnreferenced(Set)} once no data on disk refers to them.
+     * @return A {@link Set} of references
+     */
+    synchronized Set<String> getUnreferenced() {
+        var unreferenced = new HashSet<String>();
+        var names = _directory.list();
+        if (names != null) {
+            for (var name : names) {
+                var body = _bodiesByHash.get(name);
+                if (body == null || body._references == 0) {
+                    unreferenced.add(reference(name));
+                }
+            }
+        }
+        return unreferenced;
+    }
+
+    /**
+     * Delete bodies that are still not referred to by any {@link Note}
+     * @param references References to the bodies, such as those returned by {@link NoteBodyStore#getUnreferenced()}
+     * @return The number of bodies deleted
+     */
+    synchronized int deleteUnreferenced(Set<String> references) {
+        var deleted = 0;
+        for (var reference : references) {
+            var hash = _getHash(reference);
+            var body = _bodiesByHash.get(hash);
+            if (body != null && body._references > 0) {
+                //Referred to again since it was found
+                continue;
+            }
+            if (body != null) {
+                _bodiesByHash.remove(hash);
+                _bodiesByContent.remove(body._content);
+            }
+            var bodyFile = _getBodyFile(hash);
+            if (bodyFile.exists() && !bodyFile.delete()) {
+                System.out.printf("Cannot delete body %s%n", bodyFile.getAbsolutePath());
+                continue;
+            }
+            deleted++;
+        }
+        if (deleted > 0) {
+            _syncer.syncDirectory(_directory);
+        }
+        return deleted;
+    }
+
+    /**
+     * Get the reference to a body
+     * @param hash The hash of the body
+     * @return The reference
+     */
+    static String reference(String hash) {
+        return _REFERENCE_PREFIX + hash;
+    }
+
+    /**
+     * Hash content with SHA-256
+     * @param content The content to hash
+     * @return The hash in hexadecimal
+     */
+    static String hash(String content) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException exception) {
+            //Every Java platform is required to support SHA-256
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    private Body _remember(String hash, String content) {
+        var body = new Body(hash, content);
+        _bodiesByHash.put(hash, body);
+        _bodiesByContent.put(content, body);
+        return body;
+    }
+
+    private static String _getHash(String reference) {
+        return reference.substring(_REFERENCE_PREFIX.length());
+    }
+
+    private File _getBodyFile(String hash) {
+        return new File(_directory, hash);
+    }
+}
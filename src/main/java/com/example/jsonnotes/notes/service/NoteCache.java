@@ -0,0 +1,387 @@
+package com.example.jsonnotes.notes.service;
+
+import com.example.jsonnotes.notes.Note;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * A bounded cache of {@link Note notes} with a W-TinyLFU eviction policy. New entries go into a small LRU window. Entries
+ *  pushed out of the window compete with the least recently used entry of the main cache, and whichever has been asked
+ *  for more often recently stays. The main cache is split into a probation segment and a protected segment for entries
+ *  that have been hit at least twice, so a scan of many notes read once cannot push out the notes that are read all
+ *  the time.
+ * <p>
+ * How often each ID has been asked for is estimated with a count-min sketch of 4 bit counters that are halved
+ *  periodically, so old popularity fades. The cache is bounded by the total weight of its entries - 1 per entry to
+ *  bound the number of entries, or an estimate of their size to bound the heap they take up.
+ * <p>
+ * Not thread safe - callers synchronize. The one exception is {@link NoteCache#peek(String)}, which can be called from
+ *  any thread at any time, so hits can be served without waiting for the lock.
+ */
+final class NoteCache {
+
+    /**
+     * The share of the maximum weight given to the window, in percent
+     */
+    private static final int _WINDOW_PERCENT = 1;
+    /**
+     * The share of the main cache given to the protected segment, in percent
+     */
+    private static final int _PROTECTED_PERCENT = 80;
+
+    /**
+     * A cached {@link Note} and where it is in the cache
+     */
+    private static final class Entry {
+        private final String _id;
+        private volatile Note _note;
+        private long _weight;
+        private Map<String, Entry> _segment;
+
+        private Entry(String id) {
+            _id = id;
+        }
+    }
+
+    /**
+     * Estimates how often IDs have been asked for recently. Each ID has a 4 bit counter in each of 4 rows, and its
+     *  estimate is the smallest of them. Every counter is halved once the sketch has counted 10 times as many requests
+     *  as it has counters in a row.
+     */
+    private static final class FrequencySketch {
+        private static final int _ROWS = 4;
+        private static final int _MAX_COUNT = 15;
+        private static final long[] _SEEDS = { 0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L };
+        private static final int _MAX_WIDTH = 1 << 24;
+
+        private byte[] _counters;
+        private int _width;
+        private int _additions;
+
+        private FrequencySketch(long expectedEntries) {
+            _resize(expectedEntries);
+        }
+
+        /**
+         * Grow the sketch when the cache holds more entries than it has counters in a row. Growing forgets the counts.
+         */
+        private void ensureCapacity(int entries) {
+            if (entries > _width && _width < _MAX_WIDTH) {
+                _resize(entries * 2L);
+            }
+        }
+
+        private int frequency(String id) {
+            var hash = _spread(id.hashCode());
+            var frequency = _MAX_COUNT;
+            for (int row = 0; row < _ROWS; row++) {
+                frequency = Math.min(frequency, _counters[_index(hash, row)]);
+            }
+            return frequency;
+        }
+
+        private void increment(String id) {
+            var hash = _spread(id.hashCode());
+            for (int row = 0; row < _ROWS; row++) {
+                var index = _index(hash, row);
+                if (_counters[index] < _MAX_COUNT) {
+                    _counters[index]++;
+                }
+            }
+            if (++_additions >= _width * 10) {
+                //Age every count so notes that were popular a long time ago do not stay cached forever
+                for (int i = 0; i < _counters.length; i++) {
+                    _counters[i] >>= 1;
+                }
+                _additions /= 2;
+            }
+        }
+
+        private void _resize(long entries) {
+            var width = 16;
+            while (width < entries && width < _MAX_WIDTH) {
+                width <<= 1;
+            }
+            _width = width;
+            _counters = new byte[_ROWS * width];
+            _additions = 0;
+        }
+
+        private int _index(int hash, int row) {
+            var mixed = (hash + _SEEDS[row]) * _SEEDS[(row + 1) % _ROWS];
+            return row * _width + ((int) (mixed >>> 32) & (_width - 1));
+        }
+
+        private static int _spread(int hash) {
+            hash ^= hash >>> 16;
+            hash *= 0x45d9f3b;
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    private final long _maxWeight;
+    private final long _maxWindowWeight;
+    private final long _maxProtectedWeight;
+    private final ToLongFunction<Note> _weigher;
+    private final FrequencySketch _sketch;
+    /**
+     * Every entry, keyed by ID. Concurrent so {@link NoteCache#peek(String)} can read it while it is changed.
+     */
+    private final Map<String, Entry> _entries = new ConcurrentHashMap<>();
+    /**
+     * The segments, each in order from least to most recently used
+     */
+    private final LinkedHashMap<String, Entry> _window = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Entry> _probation = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Entry> _protected = new LinkedHashMap<>();
+    private long _windowWeight;
+    private long _probationWeight;
+    private long _protectedWeight;
+    private long _hitCount;
+    private long _missCount;
+    private long _evictionCount;
+
+    /**
+     * Create a new instance of a {@link NoteCache}
+     * @param maxWeight The largest total weight of the cached {@link Note notes}
+     * @param weigher Gets the weight of a {@link Note}
+     * @param expectedEntries The number of entries the cache is expected to hold when full
+     */
+    NoteCache(long maxWeight, ToLongFunction<Note> weigher, long expectedEntries) {
+        _maxWeight = maxWeight;
+        _maxWindowWeight = Math.max(1, maxWeight * _WINDOW_PERCENT / 100);
+        _maxProtectedWeight = (maxWeight - _maxWindowWeight) * _PROTECTED_PERCENT / 100;
+        _weigher = weigher;
+        _sketch = new FrequencySketch(expectedEntries);
+    }
+
+    /**
+     * Get a cached {@link Note}, counting the request towards how popular the ID is
+     * @param id The ID of the {@link Note}
+     * @return The cached {@link Note}. NULL if it is not cached.
+     */
+    Note get(String id) {
+        _sketch.increment(id);
+        var entry = _entries.get(id);
+        if (entry == null) {
+            _missCount++;
+            return null;
+        }
+        _hitCount++;
+        _onHit(entry);
+        return entry._note;
+    }
+
+    /**
+     * Get a cached {@link Note} without counting the request or changing the cache. Safe to call from any thread
+     *  without holding the caller's lock. The request should be counted later with {@link NoteCache#recordHit(String)}.
+     * @param id The ID of the {@link Note}
+     * @return The cached {@link Note}. NULL if it is not cached.
+     */
+    Note peek(String id) {
+        var entry = _entries.get(id);
+        return entry == null ? null : entry._note;
+    }
+
+    /**
+     * Count a request served by {@link NoteCache#peek(String)} as a hit, and move the entry as if it had been read with
+     *  {@link NoteCache#get(String)}. An entry that was removed since is only counted towards how popular the ID is.
+     * @param id The ID of the {@link Note}
+     */
+    void recordHit(String id) {
+        _sketch.increment(id);
+        _hitCount++;
+        var entry = _entries.get(id);
+        if (entry != null) {
+            _onHit(entry);
+        }
+    }
+
+    /**
+     * Add or replace a cached {@link Note}. A {@link Note} heavier than the whole cache is not cached.
+     * @param note The {@link Note} to cache
+     */
+    void put(Note note) {
+        var weight = _weigher.applyAsLong(note);
+        if (weight > _maxWeight) {
+            remove(note.getId());
+            return;
+        }
+        var entry = _entries.get(note.getId());
+        if (entry != null) {
+            _addWeight(entry._segment, weight - entry._weight);
+            entry._note = note;
+            entry._weight = weight;
+            _onHit(entry);
+        } else {
+            entry = new Entry(note.getId());
+            entry._note = note;
+            entry._weight = weight;
+            _entries.put(entry._id, entry);
+            _sketch.ensureCapacity(_entries.size());
+            _add(entry, _window);
+        }
+        _evict();
+    }
+
+    /**
+     * Check if a {@link Note} is cached, without counting it as a request
+     * @param id The ID of the {@link Note}
+     * @return TRUE if it is cached
+     */
+    boolean contains(String id) {
+        return _entries.containsKey(id);
+    }
+
+    /**
+     * Remove a {@link Note} from the cache
+     * @param id The ID of the {@link Note}
+     */
+    void remove(String id) {
+        var entry = _entries.remove(id);
+        if (entry != null) {
+            _unlink(entry);
+        }
+    }
+
+    /**
+     * Remove every {@link Note} from the cache. The statistics and popularity estimates are kept.
+     */
+    void clear() {
+        _entries.clear();
+        _window.clear();
+        _probation.clear();
+        _protected.clear();
+        _windowWeight = 0;
+        _probationWeight = 0;
+        _protectedWeight = 0;
+    }
+
+    int size() {
+        return _entries.size();
+    }
+
+    long getWeight() {
+        return _windowWeight + _probationWeight + _protectedWeight;
+    }
+
+    long getMaxWeight() {
+        return _maxWeight;
+    }
+
+    long getHitCount() {
+        return _hitCount;
+    }
+
+    long getMissCount() {
+        return _missCount;
+    }
+
+    long getEvictionCount() {
+        return _evictionCount;
+    }
+
+    /**
+     * Move an entry that was asked for to the most recently used end of its segment. An entry hit while on probation
+     *  is protected, which may push the least recently used protected entry back onto probation.
+     */
+    private void _onHit(Entry entry) {
+        if (entry._segment == _probation) {
+            _unlink(entry);
+            _add(entry, _protected);
+            while (_protectedWeight > _maxProtectedWeight && _protected.size() > 1) {
+                var demoted = _protected.values().iterator().next();
+                _unlink(demoted);
+                _add(demoted, _probation);
+            }
+        } else {
+            var segment = entry._segment;
+            _unlink(entry);
+            _add(entry, segment);
+        }
+    }
+
+    /**
+     * Move entries out of the window while it is too heavy, then evict until the cache is within its maximum weight.
+     *  Each entry leaving the window is kept only if it is more popular than the entry it would push out of the main
+     *  cache.
+     */
+    private void _evict() {
+        var candidates = new ArrayDeque<Entry>();
+        while (_windowWeight > _maxWindowWeight && _window.size() > 1) {
+            var candidate = _window.values().iterator().next();
+            _unlink(candidate);
+            _add(candidate, _probation);
+            candidates.add(candidate);
+        }
+        while (getWeight() > _maxWeight) {
+            var candidate = candidates.pollFirst();
+            var victim = _findVictim(candidates, candidate);
+            if (candidate == null || victim == null) {
+                _evictEntry(victim != null ? victim : candidate != null ? candidate : _findAny());
+            } else if (_sketch.frequency(candidate._id) > _sketch.frequency(victim._id)) {
+                _evictEntry(victim);
+                //The candidate may need more room yet
+                candidates.addFirst(candidate);
+            } else {
+                _evictEntry(candidate);
+            }
+        }
+    }
+
+    /**
+     * Find the least recently used entry of the main cache that did not just leave the window
+     */
+    private Entry _findVictim(ArrayDeque<Entry> candidates, Entry candidate) {
+        for (var segment : List.of(_probation, _protected)) {
+            for (var entry : segment.values()) {
+                if (entry != candidate && !candidates.contains(entry)) {
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find any entry to evict when the main cache has nothing to offer
+     */
+    private Entry _findAny() {
+        if (!_window.isEmpty()) {
+            return _window.values().iterator().next();
+        }
+        return _entries.values().iterator().next();
+    }
+
+    private void _evictEntry(Entry entry) {
+        _entries.remove(entry._id);
+        _unlink(entry);
+        _evictionCount++;
+    }
+
+    private void _add(Entry entry, Map<String, Entry> segment) {
+        segment.put(entry._id, entry);
+        entry._segment = segment;
+        _addWeight(segment, entry._weight);
+    }
+
+    private void _unlink(Entry entry) {
+        entry._segment.remove(entry._id);
+        _addWeight(entry._segment, -entry._weight);
+    }
+
+    private void _addWeight(Map<String, Entry> segment, long weight) {
+        if (segment == _window) {
+            _windowWeight += weight;
+        } else if (segment == _probation) {
+            _probationWeight += weight;
+        } else {
+            _protectedWeight += weight;
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package com.example.jsonnotes.notes.service;
+
+import com.example.jsonnotes.notes.Note;
+import com.example.jsonnotes.util.FileHelper;
+import com.example.jsonnotes.util.FileSyncer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the data of single {@link Note} files with a preset Deflate dictionary shared by the whole store. A
+ *  {@link Note} file is too small for Deflate to find much to reuse within it, but the keys, punctuation, and common
+ *  words it shares with every other {@link Note} can be referenced from the dictionary instead.
+ * <p>
+ * Dictionaries are trained from a sample of the store with {@link NoteDictionaryCodec#train(List, int)} and saved next
+ *  to the {@link Note} files as {@code .note-dictionary.<version>}. A new dictionary gets the next version, and older
+ *  dictionaries are kept so the files written with them can still be read. An encoded file starts with the
+ *  {@link NoteDictionaryCodec#MAGIC} bytes, the 2 byte dictionary version (0 for no dictionary), and the 4 byte length
+ *  of the uncompressed data, followed by raw Deflate data. All numbers are big-endian.
+ */
+final class NoteDictionaryCodec {
+
+    /**
+     * The first bytes of every encoded file. 0xFF never appears in UTF-8, so no plain text file starts with it.
+     */
+    static final byte[] MAGIC = { (byte) 0xFF, 'D' };
+    /**
+     * The size of the header of an encoded file
+     */
+    static final int HEADER_SIZE = MAGIC.length + 2 + 4;
+    /**
+     * The default largest size of a trained dictionary. Deflate can only reference the last 32KiB before the data.
+     */
+    static final int DEFAULT_DICTIONARY_SIZE = 16 * 1024;
+    /**
+     * The most a byte of deflated data can expand to. A 258 byte match coded in as little as 2 bits sets the limit.
+     */
+    private static final int _MAX_EXPANSION = 1032;
+    /**
+     * The start of the name of every dictionary file. The version follows it.
+     */
+    private static final String _DICTIONARY_FILE_PREFIX = ".note-dictionary.";
+    /**
+     * The length of the substrings counted while training
+     */
+    private static final int _GRAM_SIZE = 6;
+    /**
+     * The length of the segments of the samples a dictionary is built from
+     */
+    private static final int _SEGMENT_SIZE = 64;
+
+    /**
+     * The directory the dictionaries are stored in
+     */
+    private final File _directory;
+    /**
+     * Pushes saved dictionaries to disk
+     */
+    private final FileSyncer _syncer;
+    /**
+     * Every dictionary that has been loaded, keyed by version
+     */
+    private final Map<Integer, byte[]> _dictionaries = new ConcurrentHashMap<>();
+    /**
+     * The version of the dictionary new data is encoded with. 0 when there is no dictionary.
+     */
+    private volatile int _version;
+
+    /**
+     * Create a new instance of a {@link NoteDictionaryCodec} for the dictionaries in a directory
+     * @param directory The directory the dictionaries are stored in
+     * @param syncer The {@link FileSyncer} of the service that owns the dictionaries
+     */
+    NoteDictionaryCodec(File directory, FileSyncer syncer) {
+        _directory = directory;
+        _syncer = syncer;
+        _version = 0;
+        var dictionaryFiles = directory.listFiles(file -> file.getName().startsWith(_DICTIONARY_FILE_PREFIX));
+        if (dictionaryFiles == null) {
+            return;
+        }
+        for (var dictionaryFile : dictionaryFiles) {
+            try {
+                var version = Integer.parseInt(dictionaryFile.getName().substring(_DICTIONARY_FILE_PREFIX.length()));
+                _version = Math.max(_version, version);
+            } catch (NumberFormatException exception) {
+                System.out.printf("Ignoring unexpected dictionary file %s%n", dictionaryFile.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * Get the version of the dictionary new data is encoded with
+     * @return The dictionary version. 0 when there is no dictionary.
+     */
+    int getVersion() {
+        return _version;
+    }
+
+    /**
+     * Save a dictionary as the next version and encode new data with it
+     * @param dictionary The dictionary
+     * @return The version of the saved dictionary
+     * @throws IOException Thrown when the dictionary cannot be saved
+     */
+    synchronized int addDictionary(byte[] dictionary) throws IOException {
+        var version = _version + 1;
+        if (version > Short.MAX_VALUE) {
+            throw new IOException("No dictionary versions left");
+        }
+        if (!FileHelper.replaceFileData(_getDictionaryFile(version), output -> output.write(dictionary), _syncer)) {
+            throw new IOException(String.format("Cannot save dictionary version %d", version));
+        }
+        _dictionaries.put(version, dictionary);
+        _version = version;
+        return version;
+    }
+
+    /**
+     * Check if data was written by {@link NoteDictionaryCodec#encode(byte[])}
+     * @param data The data of a file
+     * @return TRUE if the data is encoded, FALSE if it is plain
+     */
+    static boolean isEncoded(byte[] data) {
+        return data.length >= HEADER_SIZE && data[0] == MAGIC[0] && data[1] == MAGIC[1];
+    }
+
+    /**
+     * Get the version of the dictionary encoded data was written with
+     * @param data Encoded data
+     * @return The dictionary version. 0 if no dictionary was used.
+     */
+    static int getDictionaryVersion(byte[] data) {
+        return ByteBuffer.wrap(data).getShort(MAGIC.length);
+    }
+
+    /**
+     * Compress data with the current dictionary
+     * @param data The data to compress
+     * @return The encoded data, including its header
+     * @throws IOException Thrown when the current dictionary cannot be loaded
+     */
+    byte[] encode(byte[] data) throws IOException {
+        var version = _version;
+        var deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            if (version > 0) {
+                deflater.setDictionary(_getDictionary(version));
+            }
+            deflater.setInput(data);
+            deflater.finish();
+            //Deflate can grow incompressible data by a few bytes per block - leave room for it
+            var output = new byte[HEADER_SIZE + data.length + data.length / 1000 + 64];
+            ByteBuffer.wrap(output).put(MAGIC).putShort((short) version).putInt(data.length);
+            var length = HEADER_SIZE;
+            while (!deflater.finished()) {
+                if (length == output.length) {
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+                length += deflater.deflate(output, length, output.length - length);
+            }
+            return Arrays.copyOf(output, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decompress data written by {@link NoteDictionaryCodec#encode(byte[])}, with whichever dictionary it was written with
+     * @param data The encoded data, including its header
+     * @return The original data
+     * @throws IOException Thrown when the data is damaged or its dictionary cannot be loaded
+     */
+    byte[] decode(byte[] data) throws IOException {
+        if (data.length < HEADER_SIZE) {
+            throw new IOException("Damaged note data");
+        }
+        var header = ByteBuffer.wrap(data);
+        var version = header.getShort(MAGIC.length);
+        var length = header.getInt(MAGIC.length + 2);
+        //Check the length before allocating for it - a damaged header cannot claim more than the data could inflate to
+        if (length < 0 || length > (long) (data.length - HEADER_SIZE) * _MAX_EXPANSION) {
+            throw new IOException("Damaged note data");
+        }
+        var inflater = new Inflater(true);
+        try {
+            inflater.setInput(data, HEADER_SIZE, data.length - HEADER_SIZE);
+            if (version > 0) {
+                //A raw stream does not ask for its dictionary - it must be set before inflating
+                inflater.setDictionary(_getDictionary(version));
+            }
+            var output = new byte[length];
+            var read = 0;
+            while (read < length) {
+                var count = inflater.inflate(output, read, length - read);
+                if (count == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("Damaged note data");
+                }
+                read += count;
+            }
+            return output;
+        } catch (DataFormatException exception) {
+            throw new IOException("Damaged note data", exception);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Build a dictionary from sample {@link Note} files. Every short substring is scored by the number of samples it
+     *  appears in, and fixed size segments of the samples are picked greedily by the score of the substrings they add
+     *  to the dictionary - keys, punctuation, and common words are picked first and nothing is picked twice. The most
+     *  valuable segments are placed at the end of the dictionary where Deflate references them most cheaply.
+     * @param samples The data of sample {@link Note} files
+     * @param maxSize The largest size of the dictionary in bytes
+     * @return The dictionary. Empty if the samples have nothing in common.
+     */
+    static byte[] train(List<byte[]> samples, int maxSize) {
+        //Work on ISO-8859-1 strings so every character is exactly one byte of the samples
+        var texts = new ArrayList<String>(samples.size());
+        for (var sample : samples) {
+            texts.add(new String(sample, StandardCharsets.ISO_8859_1));
+        }
+        //Count the samples each short substring appears in - substrings found in only a few are not worth keeping
+        var gramCounts = new HashMap<String, Integer>();
+        for (var text : texts) {
+            for (var gram : _grams(text, 0, text.length())) {
+                gramCounts.merge(gram, 1, Integer::sum);
+            }
+        }
+        var minCount = Math.max(2, samples.size() / 100);
+        gramCounts.values().removeIf(count -> count < minCount);
+        //Every segment of every sample is a candidate, best score first. Scores only fall as substrings are covered,
+        // so a candidate whose score is still the best after rescoring can be taken without rescoring the rest.
+        var candidates = new PriorityQueue<long[]>((a, b) -> Long.compare(b[0], a[0]));
+        for (int i = 0; i < texts.size(); i++) {
+            var text = texts.get(i);
+            for (int start = 0; start + _GRAM_SIZE <= text.length(); start += _SEGMENT_SIZE / 2) {
+                var end = Math.min(start + _SEGMENT_SIZE, text.length());
+                candidates.add(new long[] { _score(text, start, end, gramCounts), i, start, end });
+            }
+        }
+        var picked = new ArrayList<String>();
+        var size = 0;
+        while (!candidates.isEmpty() && size < maxSize) {
+            var candidate = candidates.poll();
+            var text = texts.get((int) candidate[1]);
+            var start = (int) candidate[2];
+            var end = (int) candidate[3];
+            var score = _score(text, start, end, gramCounts);
+            if (score == 0) {
+                continue;
+            }
+            if (!candidates.isEmpty() && score < candidates.peek()[0]) {
+                candidate[0] = score;
+                candidates.add(candidate);
+                continue;
+            }
+            var segment = text.substring(start, Math.min(end, start + maxSize - size));
+            picked.add(segment);
+            size += segment.length();
+            //The substrings of the segment are in the dictionary now - they add nothing to other segments
+            gramCounts.keySet().removeAll(_grams(segment, 0, segment.length()));
+        }
+        //The most valuable segment goes last, closest to the data
+        var dictionary = new StringBuilder(size);
+        for (int i = picked.size() - 1; i >= 0; i--) {
+            dictionary.append(picked.get(i));
+        }
+        return dictionary.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Get the distinct substrings of {@link NoteDictionaryCodec#_GRAM_SIZE} characters in part of a string
+     */
+    private static Set<String> _grams(String text, int start, int end) {
+        var grams = new HashSet<String>();
+        for (int i = start; i + _GRAM_SIZE <= end; i++) {
+            grams.add(text.substring(i, i + _GRAM_SIZE));
+        }
+        return grams;
+    }
+
+    /**
+     * Score part of a string by the sample counts of the distinct substrings in it that are not in the dictionary yet
+     */
+    private static long _score(String text, int start, int end, Map<String, Integer> gramCounts) {
+        var score = 0L;
+        for (var gram : _grams(text, start, end)) {
+            score += gramCounts.getOrDefault(gram, 0);
+        }
+        return score;
+    }
+
+    /**
+     * Get a dictionary, loading it from its file the first time it is needed
+     * @param version The dictionary version
+     * @return The dictionary
+     * @throws IOException Thrown when the dictionary file cannot be read
+     */
+    private byte[] _getDictionary(int version) throws IOException {
+        var dictionary = _dictionaries.get(version);
+        if (dictionary == null) {
+            dictionary = Files.readAllBytes(_getDictionaryFile(version).toPath());
+            _dictionaries.put(version, dictionary);
+        }
+        return dictionary;
+    }
+
+    private File _getDictionaryFile(int version) {
+        return new File(_directory, _DICTIONARY_FILE_PREFIX + version);
+    }
+}
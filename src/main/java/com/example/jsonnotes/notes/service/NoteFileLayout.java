@@ -0,0 +1,63 @@
+package com.example.jsonnotes.notes.service;
+
+import com.example.jsonnotes.notes.Note;
+
+import java.io.File;
+
+/**
+ * How {@link Note} files are arranged in the data directory of a {@link FileNoteDataService}
+ */
+public enum NoteFileLayout {
+
+    /**
+     * Every {@link Note} file is stored directly in the data directory - {@code <dataPath>/<id>.txt}
+     */
+    FLAT,
+    /**
+     * {@link Note} files are spread over two levels of subdirectories named after the first four characters of the
+     *  ID - {@code <dataPath>/ab/cd/<id>.txt}. {@link Note} IDs are random UUIDs, so the files are spread evenly and
+     *  no single directory grows large enough to slow down directory operations.
+     */
+    SHARDED;
+
+    /**
+     * The number of characters of the ID used to name each level of subdirectory
+     */
+    static final int SHARD_NAME_LENGTH = 2;
+
+    /**
+     * Get the {@link File} a {@link Note} is stored in under this layout
+     * @param dataDir The data directory
+     * @param id The ID of the {@link Note}
+     * @param extension The file extension of {@link Note} files
+     * @return A {@link File}
+     */
+    public File getNoteFile(File dataDir, String id, String extension) {
+        if (id == null || id.equals("")) {
+            throw new IllegalArgumentException("id cannot be blank");
+        }
+        var fileName = id + extension;
+        if (this == FLAT || id.length() < SHARD_NAME_LENGTH * 2) {
+            return new File(dataDir, fileName);
+        }
+        var shardDir = new File(new File(dataDir, id.substring(0, SHARD_NAME_LENGTH)), id.substring(SHARD_NAME_LENGTH, SHARD_NAME_LENGTH * 2));
+        return new File(shardDir, fileName);
+    }
+
+    /**
+     * Get the other layout. Used to find files that have not been migrated yet.
+     * @return {@link NoteFileLayout#SHARDED} for {@link NoteFileLayout#FLAT} and {@link NoteFileLayout#FLAT} for {@link NoteFileLayout#SHARDED}
+     */
+    public NoteFileLayout other() {
+        return this == FLAT ? SHARDED : FLAT;
+    }
+
+    /**
+     * Check if a directory name could be a subdirectory of the {@link NoteFileLayout#SHARDED} layout
+     * @param name The name of the directory
+     * @return TRUE if the name is a shard directory name
+     */
+    static boolean isShardName(String name) {
+        return name.length() == SHARD_NAME_LENGTH && !name.startsWith(".");
+    }
+}
@@ -0,0 +1,406 @@
+package com.example.jsonnotes.notes.service;
+
+import com.example.jsonnotes.notes.Note;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * A compact list of the IDs of the {@link Note notes} stored in a directory, so a data service can start without
+ *  listing the directory. Additions and removals are appended to the manifest before the {@link Note} files change,
+ *  so a change that is interrupted by a crash is always recorded.
+ * <p>
+ * A record therefore only says a change was started. A line holding just "=" marks the records above it as checked
+ *  against the directory. When the manifest is loaded, the IDs named after the last mark are checked against their
+ *  files, and a new mark is appended. Only the IDs changed since the manifest was last loaded are checked, however
+ *  many IDs there are.
+ * <p>
+ * The manifest is only trusted while it is at least as new as the directory. Every change made through the data
+ *  service touches the manifest after touching the directory, so a directory that is newer than the manifest has
+ *  been changed by something else and must be scanned again.
+ */
+public class NoteIdManifest {
+
+    /**
+     * The first line of every manifest. Identifies the file and its format version.
+     */
+    private static final String _HEADER = "#note-id-manifest 1";
+    /**
+     * Prefix of a line recording an ID that was added
+     */
+    private static final char _ADD = '+';
+    /**
+     * Prefix of a line recording an ID that was removed
+     */
+    private static final char _REMOVE = '-';
+    /**
+     * A line marking every record above it as checked against the directory
+     */
+    private static final String _VERIFIED = "=";
+    /**
+     * The number of records a manifest may hold beyond twice its live IDs before it is rewritten
+     */
+    private static final int _REWRITE_SLACK = 1024;
+
+    /**
+     * The directory the manifest describes
+     */
+    private final File _directory;
+    /**
+     * The manifest file
+     */
+    private final File _manifestFile;
+    /**
+     * Open stream for appending to the {@link NoteIdManifest#_manifestFile}. NULL until the first record is appended.
+     */
+    private OutputStream _output;
+    /**
+     * The number of ID records in the {@link NoteIdManifest#_manifestFile}
+     */
+    private int _records;
+
+    /**
+     * Create a new instance of a {@link NoteIdManifest}
+     * @param directory The directory the manifest describes
+     * @param fileName The name of the manifest file within the directory
+     */
+    public NoteIdManifest(File directory, String fileName) {
+        if (directory == null) {
+            throw new IllegalArgumentException("directory cannot be null");
+        }
+        if (fileName == null || fileName.equals("")) {
+            throw new IllegalArgumentException("fileName cannot be blank");
+        }
+        _directory = directory;
+        _manifestFile = new File(directory, fileName);
+    }
+
+    /**
+     * Load the IDs in the manifest. The IDs named by records after the last mark are checked against the directory,
+     *  and a mark is appended once they have been.
+     * @param noteExists Checks whether the file of a {@link Note} exists
+     * @return A mutable {@link Set} of IDs. NULL if the manifest is missing, damaged, or older than the directory.
+     */
+    public synchronized Set<String> load(Predicate<String> noteExists) {
+        if (noteExists == null) {
+            throw new IllegalArgumentException("noteExists cannot be null");
+        }
+        if (!_manifestFile.isFile() || !_isCurrent() || !_endsWithNewLine()) {
+            return null;
+        }
+        var ids = new HashSet<String>();
+        var unverified = new HashSet<String>();
+        var records = 0;
+        try (BufferedReader reader = Files.newBufferedReader(_manifestFile.toPath(), StandardCharsets.UTF_8)) {
+            if (!_HEADER.equals(reader.readLine())) {
+                System.out.printf("Unrecognized note ID manifest %s%n", _manifestFile.getAbsolutePath());
+                return null;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.equals(_VERIFIED)) {
+                    unverified.clear();
+                    continue;
+                }
+                if (line.length() < 2) {
+                    continue;
+                }
+                var id = line.substring(1);
+                switch (line.charAt(0)) {
+                    case _ADD -> ids.add(id);
+                    case _REMOVE -> ids.remove(id);
+                    default -> {
+                        System.out.printf("Damaged note ID manifest %s%n", _manifestFile.getAbsolutePath());
+                        return null;
+                    }
+                }
+                unverified.add(id);
+                records++;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.printf("Cannot read note ID manifest %s%n", _manifestFile.getAbsolutePath());
+            return null;
+        }
+        _records = records;
+        if (!unverified.isEmpty()) {
+            _verify(ids, unverified, noteExists);
+        }
+        return ids;
+    }
+
+    /**
+     * Replace the manifest with a specific set of IDs
+     * @param ids The IDs of every {@link Note} in the directory
+     * @return TRUE if the manifest was written, FALSE if it wasn't
+     */
+    public synchronized boolean rewrite(Set<String> ids) {
+        return rewrite(ids, Collections.emptySet());
+    }
+
+    /**
+     * Replace the manifest with a specific set of IDs, some of which have changes in progress. The IDs with changes
+     *  in progress are written after the mark, so they are checked against the directory when the manifest is next
+     *  loaded.
+     * @param ids The IDs of every {@link Note} in the directory
+     * @param unverifiedIds The IDs whose {@link Note} files are being written or deleted
+     * @return TRUE if the manifest was written, FALSE if it wasn't
+     */
+    public synchronized boolean rewrite(Set<String> ids, Set<String> unverifiedIds) {
+        close();
+        var tempFile = new File(_directory, _manifestFile.getName() + ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+                writer.write(_HEADER);
+                writer.write('\n');
+                for (var id : ids) {
+                    if (!unverifiedIds.contains(id)) {
+                        writer.write(_ADD);
+                        writer.write(id);
+                        writer.write('\n');
+                    }
+                }
+                writer.write(_VERIFIED);
+                writer.write('\n');
+                for (var id : unverifiedIds) {
+                    writer.write(_ADD);
+                    writer.write(id);
+                    writer.write('\n');
+                }
+            }
+            try {
+                Files.move(tempFile.toPath(), _manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException exception) {
+                Files.move(tempFile.toPath(), _manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            _records = ids.size() + unverifiedIds.size();
+            //Moving the manifest into place changed the directory - the manifest must still be the newer of the two
+            return touch();
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.printf("Cannot write note ID manifest %s%n", _manifestFile.getAbsolutePath());
+            if (tempFile.exists() && !tempFile.delete()) {
+                System.out.printf("Cannot delete %s%n", tempFile.getAbsolutePath());
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Record that a {@link Note} is being added to the directory. Called before its file is written.
+     * @param id The ID of the {@link Note}
+     * @return TRUE if the record was written, FALSE if it wasn't
+     */
+    public synchronized boolean recordAdd(String id) {
+        return _append(_ADD, Collections.singletonList(id));
+    }
+
+    /**
+     * Record that several {@link Note notes} are being added to the directory, with a single write. Called before
+     *  their files are written.
+     * @param ids The IDs of the {@link Note notes}
+     * @return TRUE if the records were written or there were none, FALSE if they weren't
+     */
+    public synchronized boolean recordAdds(Collection<String> ids) {
+        return _append(_ADD, ids);
+    }
+
+    /**
+     * Record that a {@link Note} is being removed from the directory. Called before its file is deleted.
+     * @param id The ID of the {@link Note}
+     * @return TRUE if the record was written, FALSE if it wasn't
+     */
+    public synchronized boolean recordRemove(String id) {
+        return _append(_REMOVE, Collections.singletonList(id));
+    }
+
+    /**
+     * Record that several {@link Note notes} are being removed from the directory, with a single write. Called
+     *  before their files are deleted.
+     * @param ids The IDs of the {@link Note notes}
+     * @return TRUE if the records were written or there were none, FALSE if they weren't
+     */
+    public synchronized boolean recordRemoves(Collection<String> ids) {
+        return _append(_REMOVE, ids);
+    }
+
+    /**
+     * Mark the manifest as up to date with the directory. Called after the directory changes without the set of IDs
+     *  changing, such as when a {@link Note} file is rewritten.
+     * @return TRUE if the manifest was marked, FALSE if it wasn't
+     */
+    public synchronized boolean touch() {
+        if (!_manifestFile.exists()) {
+            return false;
+        }
+        try {
+            Files.setLastModifiedTime(_manifestFile.toPath(), FileTime.from(Instant.now()));
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.printf("Cannot update note ID manifest %s%n", _manifestFile.getAbsolutePath());
+            return false;
+        }
+    }
+
+    /**
+     * Delete the manifest, so the directory is scanned when it is next loaded. Used when a change cannot be recorded.
+     */
+    public synchronized void invalidate() {
+        close();
+        if (_manifestFile.exists() && !_manifestFile.delete()) {
+            System.out.printf("Cannot delete note ID manifest %s%n", _manifestFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Check if the manifest holds enough superseded records that it should be rewritten
+     * @param liveIds The number of IDs currently in the directory
+     * @return TRUE if the manifest should be rewritten
+     */
+    public synchronized boolean needsRewrite(int liveIds) {
+        return _records > liveIds * 2 + _REWRITE_SLACK;
+    }
+
+    /**
+     * Close the open stream for the manifest, if there is one. The manifest is reopened on the next append.
+     */
+    public synchronized void close() {
+        if (_output == null) {
+            return;
+        }
+        try {
+            _output.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.printf("Cannot close note ID manifest %s%n", _manifestFile.getAbsolutePath());
+        }
+        _output = null;
+    }
+
+    /**
+     * Check the IDs named after the last mark against the directory, record the result, and append a new mark
+     * @param ids The IDs loaded from the manifest. IDs whose files are missing are removed, and IDs whose files
+     *            exist are added.
+     * @param unverified The IDs named after the last mark
+     * @param noteExists Checks whether the file of a {@link Note} exists
+     */
+    private void _verify(Set<String> ids, Set<String> unverified, Predicate<String> noteExists) {
+        var records = new StringBuilder();
+        var count = 0;
+        for (var id : unverified) {
+            var exists = noteExists.test(id);
+            if (exists != ids.contains(id)) {
+                //The change was recorded but the file was never written or deleted
+                if (exists) {
+                    ids.add(id);
+                } else {
+                    ids.remove(id);
+                }
+                records.append(exists ? _ADD : _REMOVE).append(id).append('\n');
+                count++;
+            }
+        }
+        if (count > 0) {
+            System.out.printf("Corrected %d interrupted change(s) in note ID manifest %s%n", count, _manifestFile.getAbsolutePath());
+        }
+        records.append(_VERIFIED).append('\n');
+        //A mark that cannot be written only means the same IDs are checked again next time
+        _write(records.toString(), count);
+    }
+
+    /**
+     * Append ID records of one type to the manifest. Nothing is written if the manifest does not exist yet - a missing
+     *  manifest is rebuilt by scanning the directory.
+     * @param type The record type
+     * @param ids The IDs of the {@link Note notes}
+     * @return TRUE if the records were written or there were none, FALSE if they weren't
+     */
+    private boolean _append(char type, Collection<String> ids) {
+        if (ids == null) {
+            throw new IllegalArgumentException("ids cannot be null");
+        }
+        var records = new StringBuilder();
+        for (var id : ids) {
+            if (id == null || id.equals("")) {
+                throw new IllegalArgumentException("id cannot be blank");
+            }
+            records.append(type).append(id).append('\n');
+        }
+        return ids.isEmpty() || _write(records.toString(), ids.size());
+    }
+
+    /**
+     * Append lines to the manifest, if it exists
+     * @param lines The lines to append, each ending with a line break
+     * @param records The number of ID records in the lines
+     * @return TRUE if the lines were written, FALSE if they weren't
+     */
+    private boolean _write(String lines, int records) {
+        if (_output == null && !_manifestFile.exists()) {
+            return false;
+        }
+        try {
+            if (_output == null) {
+                _output = new BufferedOutputStream(Files.newOutputStream(_manifestFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+            }
+            _output.write(lines.getBytes(StandardCharsets.UTF_8));
+            _output.flush();
+            _records += records;
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.printf("Cannot append to note ID manifest %s%n", _manifestFile.getAbsolutePath());
+            close();
+            return false;
+        }
+    }
+
+    /**
+     * Check if the manifest is at least as new as the directory
+     * @return TRUE if the manifest is current, FALSE if the directory has changed since the manifest was written
+     */
+    private boolean _isCurrent() {
+        try {
+            var manifestTime = Files.getLastModifiedTime(_manifestFile.toPath());
+            var directoryTime = Files.getLastModifiedTime(_directory.toPath());
+            return manifestTime.compareTo(directoryTime) >= 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Check if the last record in the manifest was completely written
+     * @return TRUE if the manifest ends with a line break, FALSE if it doesn't
+     */
+    private boolean _endsWithNewLine() {
+        try (var file = new RandomAccessFile(_manifestFile, "r")) {
+            var length = file.length();
+            if (length == 0) {
+                return false;
+            }
+            file.seek(length - 1);
+            return file.read() == '\n';
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
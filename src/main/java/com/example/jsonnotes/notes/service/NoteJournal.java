@@ -0,0 +1,439 @@
+package com.example.jsonnotes.notes.service;
+
+import com.example.jsonnotes.notes.Note;
+import com.example.jsonnotes.notes.NoteJson;
+import com.example.jsonnotes.util.FileHelper;
+import com.example.jsonnotes.util.FileSyncer;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * An append-only log of the changes made to a collection of {@link Note notes}. Every change is written as a single
+ *  line of JSON, so the cost of recording a change depends on the size of the change rather than the number of
+ *  {@link Note notes} in the store. The log is replayed on top of the last full snapshot when a store is loaded.
+ */
+public class NoteJournal {
+
+    /**
+     * Record type for a {@link Note} that was created or updated
+     */
+    private static final String _OP_PUT = "put";
+    /**
+     * Record type for a {@link Note} that was deleted
+     */
+    private static final String _OP_DELETE = "delete";
+    /**
+     * Record type for all {@link Note notes} being deleted
+     */
+    private static final String _OP_CLEAR = "clear";
+
+    /**
+     * The file the journal records are appended to
+     */
+    private final File _journalFile;
+    /**
+     * Pushes the appended records to disk
+     */
+    private final FileSyncer _syncer;
+    /**
+     * Open stream for the {@link NoteJournal#_journalFile}. NULL until the first record is appended.
+     */
+    private OutputStream _output;
+    /**
+     * The channel underneath {@link NoteJournal#_output}. Kept so appended records can be forced to disk.
+     */
+    private FileChannel _channel;
+    /**
+     * The number of bytes in the {@link NoteJournal#_journalFile}. Tracked here so checking the size does not touch the disk.
+     */
+    private long _size;
+
+    /**
+     * Create a new instance of a {@link NoteJournal} that appends to a specific file
+     * @param journalFile The {@link File} to append journal records to
+     */
+    public NoteJournal(File journalFile) {
+        this(journalFile, new FileSyncer());
+    }
+
+    /**
+     * Create a new instance of a {@link NoteJournal} that appends to a specific file and pushes it to disk with the
+     *  {@link FileSyncer} of the service that owns it
+     * @param journalFile The {@link File} to append journal records to
+     * @param syncer The {@link FileSyncer} that pushes the appended records to disk
+     */
+    public NoteJournal(File journalFile, FileSyncer syncer) {
+        if (journalFile == null) {
+            throw new IllegalArgumentException("journalFile cannot be null");
+        }
+        if (syncer == null) {
+            throw new IllegalArgumentException("syncer cannot be null");
+        }
+        _journalFile = journalFile;
+        _syncer = syncer;
+        _size = journalFile.length();
+    }
+
+    /**
+     * Get the {@link File} the journal records are appended to
+     * @return A {@link File}
+     */
+    public File getFile() {
+        return _journalFile;
+    }
+
+    /**
+     * Record that a {@link Note} was created or updated
+     * @param note The new state of the {@link Note}
+     * @return TRUE if the record was written, FALSE if it wasn't
+     */
+    public synchronized boolean appendPut(Note note) {
+        if (note == null) {
+            throw new IllegalArgumentException("note cannot be null");
+        }
+        return _append(_OP_PUT, null, note);
+    }
+
+    /**
+     * Record that a {@link Note} was deleted
+     * @param id The ID of the deleted {@link Note}
+     * @return TRUE if the record was written, FALSE if it wasn't
+     */
+    public synchronized boolean appendDelete(String id) {
+        if (id == null || id.equals("")) {
+            throw new IllegalArgumentException("id cannot be blank");
+        }
+        return _append(_OP_DELETE, id, null);
+    }
+
+    /**
+     * Record that several {@link Note notes} were created or updated. The records are written together and made
+     *  durable with a single sync.
+     * @param notes The new state of each {@link Note}
+     * @return TRUE if the records were written, FALSE if they weren't
+     */
+    public synchronized boolean appendPuts(Collection<Note> notes) {
+        if (notes == null) {
+            throw new IllegalArgumentException("notes cannot be null");
+        }
+        var records = new StringBuilder();
+        for (var note : notes) {
+            if (note == null) {
+                throw new IllegalArgumentException("notes cannot contain null");
+            }
+            if (!_buildRecord(records, _OP_PUT, null, note)) {
+                return false;
+            }
+        }
+        return _write(records);
+    }
+
+    /**
+     * Record that several {@link Note notes} were deleted. The records are written together and made durable with a
+     *  single sync.
+     * @param ids The IDs of the deleted {@link Note notes}
+     * @return TRUE if the records were written, FALSE if they weren't
+     */
+    public synchronized boolean appendDeletes(Collection<String> ids) {
+        if (ids == null) {
+            throw new IllegalArgumentException("ids cannot be null");
+        }
+        var records = new StringBuilder();
+        for (var id : ids) {
+            if (id == null || id.equals("")) {
+                throw new IllegalArgumentException("ids cannot contain a blank id");
+            }
+            if (!_buildRecord(records, _OP_DELETE, id, null)) {
+                return false;
+            }
+        }
+        return _write(records);
+    }
+
+    /**
+     * Record that all {@link Note notes} were deleted
+     * @return TRUE if the record was written, FALSE if it wasn't
+     */
+    public synchronized boolean appendClear() {
+        return _append(_OP_CLEAR, null, null);
+    }
+
+    /**
+     * Get the current size of the journal
+     * @return The size of the {@link NoteJournal#_journalFile} in bytes
+     */
+    public synchronized long size() {
+        return _size;
+    }
+
+    /**
+     * Move the current journal to another file and start a new, empty journal. Records appended after this call are
+     *  written to the new journal.
+     * @param target The {@link File} to move the current journal to. If it already contains records, the current
+     *               journal is appended to them so no records are lost.
+     * @return TRUE if the journal was moved, FALSE if it wasn't
+     */
+    public synchronized boolean roll(File target) {
+        close();
+        if (!_journalFile.exists()) {
+            return true;
+        }
+        var journalPath = _journalFile.toPath();
+        try {
+            if (target.exists()) {
+                //A previous roll was never folded into a snapshot - keep its records ahead of the current ones
+                try (var output = Files.newOutputStream(target.toPath(), StandardOpenOption.APPEND)) {
+                    Files.copy(journalPath, output);
+                }
+                Files.delete(journalPath);
+            } else {
+                Files.move(journalPath, target.toPath());
+            }
+            _syncer.sync(target);
+            _size = 0;
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.printf("Cannot move journal %s to %s%n", _journalFile.getAbsolutePath(), target.getAbsolutePath());
+            return false;
+        }
+    }
+
+    /**
+     * Close the journal and delete all of its records
+     * @return TRUE if the journal no longer exists, FALSE if it does
+     */
+    public synchronized boolean reset() {
+        close();
+        _size = 0;
+        return !_journalFile.exists() || _journalFile.delete();
+    }
+
+    /**
+     * Close the open stream for the journal, if there is one. The journal is reopened on the next append.
+     */
+    public synchronized void close() {
+        if (_output == null) {
+            return;
+        }
+        try {
+            _output.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.printf("Cannot close journal %s%n", _journalFile.getAbsolutePath());
+        }
+        _output = null;
+        _channel = null;
+    }
+
+    /**
+     * Apply every record in a journal file to a collection of {@link Note notes}. Records are only ever appended, so an
+     *  interrupted write can only leave a partly written record at the end of the journal. That record is cut off the
+     *  file, so the next append starts on a fresh line. An unreadable record followed by more records means the journal
+     *  was damaged some other way - replaying around it could bring back deleted {@link Note notes} or drop changes,
+     *  so the load fails instead.
+     * @param journalFile The journal {@link File} to replay
+     * @param notes The {@link Note notes} to apply the records to, keyed by ID
+     * @return The number of records that were applied
+     * @exception RuntimeException thrown when an unreadable record is followed by more records
+     */
+    public static int replay(File journalFile, Map<String, Note> notes) throws RuntimeException {
+        if (journalFile == null || !journalFile.exists()) {
+            return 0;
+        }
+        var applied = 0;
+        //The position of the first unreadable record. -1 while every record has been read.
+        long tornOffset = -1;
+        try (var input = new BufferedInputStream(Files.newInputStream(journalFile.toPath()), FileHelper.STREAM_BUFFER_SIZE)) {
+            var lineBytes = new ByteArrayOutputStream();
+            long offset = 0;
+            while (true) {
+                var terminated = _readLine(input, lineBytes);
+                if (!terminated && lineBytes.size() == 0) {
+                    break;
+                }
+                var lineOffset = offset;
+                offset += lineBytes.size() + (terminated ? 1 : 0);
+                var line = lineBytes.toString(StandardCharsets.UTF_8);
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (tornOffset >= 0) {
+                    throw new RuntimeException(String.format("Journal %s has an unreadable record at byte %d followed by more records", journalFile.getAbsolutePath(), tornOffset));
+                }
+                if (!terminated) {
+                    //Every complete record ends with a line break
+                    tornOffset = lineOffset;
+                    continue;
+                }
+                try {
+                    var record = JsonParser.parseString(line).getAsJsonObject();
+                    _apply(record, notes);
+                    applied++;
+                } catch (JsonParseException | IllegalStateException exception) {
+                    tornOffset = lineOffset;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.printf("Cannot read journal %s%n", journalFile.getAbsolutePath());
+            return applied;
+        }
+        if (tornOffset >= 0) {
+            _truncate(journalFile, tornOffset);
+        }
+        return applied;
+    }
+
+    /**
+     * Read the next line from a stream
+     * @param input The stream to read from
+     * @param line Receives the bytes of the line, without the line break. Emptied first.
+     * @return TRUE if the line ended with a line break, FALSE if the stream ended first
+     * @throws IOException Thrown when the stream cannot be read
+     */
+    private static boolean _readLine(InputStream input, ByteArrayOutputStream line) throws IOException {
+        line.reset();
+        int next;
+        while ((next = input.read()) != -1) {
+            if (next == '\n') {
+                return true;
+            }
+            line.write(next);
+        }
+        return false;
+    }
+
+    /**
+     * Cut a partly written record off the end of a journal
+     * @param journalFile The journal {@link File}
+     * @param length The length to cut the journal to - the position of the partly written record
+     */
+    private static void _truncate(File journalFile, long length) {
+        System.out.printf("Dropping a partly written record at the end of journal %s%n", journalFile.getAbsolutePath());
+        try (var channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+            //Records appended after this must not end up behind the partly written one if the truncate is lost
+            channel.force(true);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.printf("Cannot truncate journal %s%n", journalFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Apply a single journal record to a collection of {@link Note notes}
+     * @param record The journal record
+     * @param notes The {@link Note notes} to apply the record to, keyed by ID
+     */
+    private static void _apply(JsonObject record, Map<String, Note> notes) {
+        var op = record.get("op").getAsString();
+        switch (op) {
+            case _OP_PUT -> {
+                var note = NoteJson.getNoteAdapter().fromJsonTree(record.get("note"));
+                notes.put(note.getId(), note);
+            }
+            case _OP_DELETE -> notes.remove(record.get("id").getAsString());
+            case _OP_CLEAR -> notes.clear();
+            default -> System.out.printf("Unknown journal record type %s%n", op);
+        }
+    }
+
+    /**
+     * Append a single record to the journal
+     * @param op The record type
+     * @param id The ID of the affected {@link Note}, if any
+     * @param note The affected {@link Note}, if any
+     * @return TRUE if the record was written, FALSE if it wasn't
+     */
+    private boolean _append(String op, String id, Note note) {
+        var record = new StringBuilder();
+        if (!_buildRecord(record, op, id, note)) {
+            return false;
+        }
+        return _write(record);
+    }
+
+    /**
+     * Add a record to the end of a set of records
+     * @param records The records to add to
+     * @param op The record type
+     * @param id The ID of the affected {@link Note}, if any
+     * @param note The affected {@link Note}, if any
+     * @return TRUE if the record was built, FALSE if it wasn't
+     */
+    private static boolean _buildRecord(StringBuilder records, String op, String id, Note note) {
+        //Build the record on a single line - JSON escapes any line breaks in the note content
+        var record = new StringWriter();
+        try (var jsonWriter = new JsonWriter(record)) {
+            jsonWriter.beginObject();
+            jsonWriter.name("op").value(op);
+            if (id != null) {
+                jsonWriter.name("id").value(id);
+            }
+            if (note != null) {
+                jsonWriter.name("note");
+                NoteJson.getNoteAdapter().write(jsonWriter, note);
+            }
+            jsonWriter.endObject();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        records.append(record).append('\n');
+        return true;
+    }
+
+    /**
+     * Append complete records to the journal and make them durable
+     * @param records One or more records, each ending with a line break
+     * @return TRUE if the records were written, FALSE if they weren't
+     */
+    private boolean _write(CharSequence records) {
+        if (records.length() == 0) {
+            return true;
+        }
+        var recordBytes = records.toString().getBytes(StandardCharsets.UTF_8);
+        try {
+            var created = false;
+            if (_output == null) {
+                created = !_journalFile.exists();
+                _channel = FileChannel.open(_journalFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                _output = new BufferedOutputStream(Channels.newOutputStream(_channel));
+            }
+            _output.write(recordBytes);
+            _output.flush();
+            if (created) {
+                //The journal's directory entry must be durable along with its first record
+                _syncer.sync(_journalFile);
+            } else {
+                _syncer.sync(_channel, _journalFile);
+            }
+            _size += recordBytes.length;
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.printf("Cannot append to journal %s%n", _journalFile.getAbsolutePath());
+            close();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,493 @@
+package com.example.jsonnotes.notes.service;
+
+import com.example.jsonnotes.notes.Note;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A compact map from {@link Note} IDs to the offsets of their records in a file. Entries are kept in three parallel
+ *  arrays with open addressing, so each {@link Note} costs 24 bytes of heap and no objects - a fraction of a
+ *  {@link java.util.HashMap} of {@link UUID} keys and boxed offsets.
+ * <p>
+ * Once the IDs are first asked for in order, a sorted copy of them is kept as well, for another 16 bytes per
+ *  {@link Note}. The copy is a large sorted run and a small sorted run of the IDs added since. A removed ID stays in
+ *  the large run, and is skipped, until the runs are merged. Each change costs a binary search and a short array
+ *  copy, and a page of IDs costs a binary search however many IDs there are.
+ */
+final class NoteOffsetIndex {
+
+    /**
+     * Marks an empty slot in {@link NoteOffsetIndex#_offsets}. Also returned when an ID is not in the index.
+     */
+    static final long NOT_FOUND = -1;
+    /**
+     * The fraction of slots that may be used before the arrays grow
+     */
+    private static final double _LOAD_FACTOR = 0.7;
+    /**
+     * The smallest number of IDs the small sorted run may hold before the runs are merged
+     */
+    private static final int _MIN_ADDED_RUN = 1024;
+
+    private long[] _mostSignificantBits;
+    private long[] _leastSignificantBits;
+    private long[] _offsets;
+    private int _size;
+    /**
+     * The large sorted run of IDs, in the order of their String form. May hold IDs that have since been removed. NULL
+     *  until the IDs are first asked for in order.
+     */
+    private long[] _runMostSignificantBits;
+    private long[] _runLeastSignificantBits;
+    /**
+     * The number of IDs in the large sorted run that have been removed from the index
+     */
+    private int _removedFromRun;
+    /**
+     * The IDs added since the large sorted run was built, in the order of their String form. None of them are in the
+     *  large run.
+     */
+    private long[] _addedMostSignificantBits = new long[0];
+    private long[] _addedLeastSignificantBits = new long[0];
+    private int _addedCount;
+
+    /**
+     * Create a new, empty instance of a {@link NoteOffsetIndex}
+     * @param expectedSize The number of entries to make room for
+     */
+    NoteOffsetIndex(int expectedSize) {
+        _allocate(_capacityFor(expectedSize));
+    }
+
+    /**
+     * Get the number of entries in the index
+     * @return The number of entries
+     */
+    int size() {
+        return _size;
+    }
+
+    /**
+     * Get the offset of the record for an ID
+     * @param id The ID of the {@link Note}
+     * @return The offset. {@link NoteOffsetIndex#NOT_FOUND} if the ID is not in the index.
+     */
+    long get(UUID id) {
+        var slot = _find(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        return slot < 0 ? NOT_FOUND : _offsets[slot];
+    }
+
+    /**
+     * Set the offset of the record for an ID
+     * @param id The ID of the {@link Note}
+     * @param offset The offset of the record
+     * @return The previous offset. {@link NoteOffsetIndex#NOT_FOUND} if the ID was not in the index.
+     */
+    long put(UUID id, long offset) {
+        return put(id.getMostSignificantBits(), id.getLeastSignificantBits(), offset);
+    }
+
+    /**
+     * Set the offset of the record for an ID given as its two halves
+     * @param mostSignificantBits The most significant bits of the ID
+     * @param leastSignificantBits The least significant bits of the ID
+     * @param offset The offset of the record
+     * @return The previous offset. {@link NoteOffsetIndex#NOT_FOUND} if the ID was not in the index.
+     */
+    long put(long mostSignificantBits, long leastSignificantBits, long offset) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset cannot be negative");
+        }
+        if (_size + 1 > _offsets.length * _LOAD_FACTOR) {
+            _resize(_offsets.length * 2);
+        }
+        var previous = _insert(mostSignificantBits, leastSignificantBits, offset);
+        if (previous == NOT_FOUND && _runMostSignificantBits != null) {
+            _addSorted(mostSignificantBits, leastSignificantBits);
+        }
+        return previous;
+    }
+
+    /**
+     * Set the offset of the record for an ID in the hash arrays, which have room for it
+     * @return The previous offset. {@link NoteOffsetIndex#NOT_FOUND} if the ID was not in the index.
+     */
+    private long _insert(long mostSignificantBits, long leastSignificantBits, long offset) {
+        var mask = _offsets.length - 1;
+        var slot = _hash(mostSignificantBits, leastSignificantBits) & mask;
+        while (_offsets[slot] != NOT_FOUND) {
+            if (_mostSignificantBits[slot] == mostSignificantBits && _leastSignificantBits[slot] == leastSignificantBits) {
+                var previous = _offsets[slot];
+                _offsets[slot] = offset;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        _mostSignificantBits[slot] = mostSignificantBits;
+        _leastSignificantBits[slot] = leastSignificantBits;
+        _offsets[slot] = offset;
+        _size++;
+        return NOT_FOUND;
+    }
+
+    /**
+     * Remove the entry for an ID
+     * @param id The ID of the {@link Note}
+     * @return The removed offset. {@link NoteOffsetIndex#NOT_FOUND} if the ID was not in the index.
+     */
+    long remove(UUID id) {
+        var slot = _find(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        if (slot < 0) {
+            return NOT_FOUND;
+        }
+        var removed = _offsets[slot];
+        //Shift the following entries of the probe sequence back so no lookup stops early at the gap
+        var mask = _offsets.length - 1;
+        var gap = slot;
+        var next = (gap + 1) & mask;
+        while (_offsets[next] != NOT_FOUND) {
+            var home = _hash(_mostSignificantBits[next], _leastSignificantBits[next]) & mask;
+            //Move the entry into the gap unless its home slot lies cyclically between the gap and its current slot
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                _mostSignificantBits[gap] = _mostSignificantBits[next];
+                _leastSignificantBits[gap] = _leastSignificantBits[next];
+                _offsets[gap] = _offsets[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        _offsets[gap] = NOT_FOUND;
+        _size--;
+        if (_runMostSignificantBits != null) {
+            _removeSorted(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        }
+        return removed;
+    }
+
+    /**
+     * Get every offset in the index in ascending order, so records can be read front to back
+     * @return A sorted array of offsets
+     */
+    long[] sortedOffsets() {
+        var offsets = new long[_size];
+        var count = 0;
+        for (var offset : _offsets) {
+            if (offset != NOT_FOUND) {
+                offsets[count++] = offset;
+            }
+        }
+        Arrays.sort(offsets);
+        return offsets;
+    }
+
+    /**
+     * Get the IDs that come after an ID, in the order of their String form. The first call sorts the IDs, and every
+     *  call after that finds the start with a binary search of each sorted run and walks the two runs together.
+     * @param after The ID to start after. NULL to start at the first ID.
+     * @param count The largest number of IDs to return
+     * @return Up to {@code count} IDs in ascending order
+     */
+    List<UUID> idsAfter(UUID after, int count) {
+        if (_runMostSignificantBits == null) {
+            _sortIds();
+        }
+        var runLength = _runMostSignificantBits.length;
+        var run = after == null ? 0 : _firstAfter(_runMostSignificantBits, _runLeastSignificantBits, runLength, after);
+        var added = after == null ? 0 : _firstAfter(_addedMostSignificantBits, _addedLeastSignificantBits, _addedCount, after);
+        var ids = new ArrayList<UUID>(Math.min(count, _size));
+        while (ids.size() < count && (run < runLength || added < _addedCount)) {
+            if (added == _addedCount || (run < runLength && _compare(_runMostSignificantBits[run], _runLeastSignificantBits[run],
+                    _addedMostSignificantBits[added], _addedLeastSignificantBits[added]) < 0)) {
+                //An ID removed since the run was built is skipped
+                if (_find(_runMostSignificantBits[run], _runLeastSignificantBits[run]) >= 0) {
+                    ids.add(new UUID(_runMostSignificantBits[run], _runLeastSignificantBits[run]));
+                }
+                run++;
+            } else {
+                ids.add(new UUID(_addedMostSignificantBits[added], _addedLeastSignificantBits[added]));
+                added++;
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Build the large sorted run from the hash arrays
+     */
+    private void _sortIds() {
+        var mostSignificantBits = new long[_size];
+        var leastSignificantBits = new long[_size];
+        var count = 0;
+        for (int slot = 0; slot < _offsets.length; slot++) {
+            if (_offsets[slot] != NOT_FOUND) {
+                mostSignificantBits[count] = _mostSignificantBits[slot];
+                leastSignificantBits[count++] = _leastSignificantBits[slot];
+            }
+        }
+        _sort(mostSignificantBits, leastSignificantBits, 0, count - 1);
+        _runMostSignificantBits = mostSignificantBits;
+        _runLeastSignificantBits = leastSignificantBits;
+        _removedFromRun = 0;
+        _addedCount = 0;
+    }
+
+    /**
+     * Record a new ID in the sorted runs
+     */
+    private void _addSorted(long mostSignificantBits, long leastSignificantBits) {
+        if (_search(_runMostSignificantBits, _runLeastSignificantBits, _runMostSignificantBits.length, mostSignificantBits, leastSignificantBits) >= 0) {
+            //The ID was removed and is back - its place in the large run is live again
+            _removedFromRun--;
+            return;
+        }
+        var position = -_search(_addedMostSignificantBits, _addedLeastSignificantBits, _addedCount, mostSignificantBits, leastSignificantBits) - 1;
+        if (_addedCount == _addedMostSignificantBits.length) {
+            var capacity = Math.max(16, _addedCount * 2);
+            _addedMostSignificantBits = Arrays.copyOf(_addedMostSignificantBits, capacity);
+            _addedLeastSignificantBits = Arrays.copyOf(_addedLeastSignificantBits, capacity);
+        }
+        System.arraycopy(_addedMostSignificantBits, position, _addedMostSignificantBits, position + 1, _addedCount - position);
+        System.arraycopy(_addedLeastSignificantBits, position, _addedLeastSignificantBits, position + 1, _addedCount - position);
+        _addedMostSignificantBits[position] = mostSignificantBits;
+        _addedLeastSignificantBits[position] = leastSignificantBits;
+        _addedCount++;
+        _mergeIfNeeded();
+    }
+
+    /**
+     * Record a removed ID in the sorted runs
+     */
+    private void _removeSorted(long mostSignificantBits, long leastSignificantBits) {
+        var position = _search(_addedMostSignificantBits, _addedLeastSignificantBits, _addedCount, mostSignificantBits, leastSignificantBits);
+        if (position < 0) {
+            //The ID is in the large run, where it is skipped until the runs are merged
+            _removedFromRun++;
+            _mergeIfNeeded();
+            return;
+        }
+        System.arraycopy(_addedMostSignificantBits, position + 1, _addedMostSignificantBits, position, _addedCount - position - 1);
+        System.arraycopy(_addedLeastSignificantBits, position + 1, _addedLeastSignificantBits, position, _addedCount - position - 1);
+        _addedCount--;
+    }
+
+    /**
+     * Merge the small sorted run into the large one once inserting into the small run, or skipping the removed IDs of
+     *  the large run, would cost more than the merge spread over the changes since the last one. The small run is
+     *  kept to about the square root of the large run.
+     */
+    private void _mergeIfNeeded() {
+        var runLength = _runMostSignificantBits.length;
+        var addedLimit = Math.max(_MIN_ADDED_RUN, (int) Math.sqrt(runLength));
+        if (_addedCount <= addedLimit && _removedFromRun <= Math.max(addedLimit, runLength / 8)) {
+            return;
+        }
+        var mostSignificantBits = new long[_size];
+        var leastSignificantBits = new long[_size];
+        var count = 0;
+        var run = 0;
+        var added = 0;
+        while (run < runLength || added < _addedCount) {
+            if (added == _addedCount || (run < runLength && _compare(_runMostSignificantBits[run], _runLeastSignificantBits[run],
+                    _addedMostSignificantBits[added], _addedLeastSignificantBits[added]) < 0)) {
+                if (_find(_runMostSignificantBits[run], _runLeastSignificantBits[run]) >= 0) {
+                    mostSignificantBits[count] = _runMostSignificantBits[run];
+                    leastSignificantBits[count++] = _runLeastSignificantBits[run];
+                }
+                run++;
+            } else {
+                mostSignificantBits[count] = _addedMostSignificantBits[added];
+                leastSignificantBits[count++] = _addedLeastSignificantBits[added++];
+            }
+        }
+        _runMostSignificantBits = mostSignificantBits;
+        _runLeastSignificantBits = leastSignificantBits;
+        _removedFromRun = 0;
+        _addedCount = 0;
+    }
+
+    /**
+     * Find an ID in sorted parallel arrays of ID halves
+     * @return The position of the ID. When it is not there, -(the position it would be inserted at) - 1.
+     */
+    private static int _search(long[] mostSignificantBits, long[] leastSignificantBits, int length, long keyMost, long keyLeast) {
+        var low = 0;
+        var high = length - 1;
+        while (low <= high) {
+            var middle = (low + high) >>> 1;
+            var compared = _compare(mostSignificantBits[middle], leastSignificantBits[middle], keyMost, keyLeast);
+            if (compared < 0) {
+                low = middle + 1;
+            } else if (compared > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Find the position of the first ID greater than an ID in sorted parallel arrays of ID halves
+     */
+    private static int _firstAfter(long[] mostSignificantBits, long[] leastSignificantBits, int length, UUID after) {
+        var position = _search(mostSignificantBits, leastSignificantBits, length, after.getMostSignificantBits(), after.getLeastSignificantBits());
+        return position >= 0 ? position + 1 : -position - 1;
+    }
+
+    /**
+     * Sort parallel arrays of ID halves in the order of their String form, without making an object per ID
+     */
+    private static void _sort(long[] mostSignificantBits, long[] leastSignificantBits, int first, int last) {
+        while (last - first > 16) {
+            //Quicksort around the middle ID, recursing into the smaller side so the stack stays shallow
+            var middle = (first + last) >>> 1;
+            var pivotMost = mostSignificantBits[middle];
+            var pivotLeast = leastSignificantBits[middle];
+            var low = first;
+            var high = last;
+            while (low <= high) {
+                while (_compare(mostSignificantBits[low], leastSignificantBits[low], pivotMost, pivotLeast) < 0) {
+                    low++;
+                }
+                while (_compare(mostSignificantBits[high], leastSignificantBits[high], pivotMost, pivotLeast) > 0) {
+                    high--;
+                }
+                if (low <= high) {
+                    _swap(mostSignificantBits, leastSignificantBits, low++, high--);
+                }
+            }
+            if (high - first < last - low) {
+                _sort(mostSignificantBits, leastSignificantBits, first, high);
+                first = low;
+            } else {
+                _sort(mostSignificantBits, leastSignificantBits, low, last);
+                last = high;
+            }
+        }
+        //Insertion sort for short ranges
+        for (int i = first + 1; i <= last; i++) {
+            for (int j = i; j > first && _compare(mostSignificantBits[j - 1], leastSignificantBits[j - 1], mostSignificantBits[j], leastSignificantBits[j]) > 0; j--) {
+                _swap(mostSignificantBits, leastSignificantBits, j - 1, j);
+            }
+        }
+    }
+
+    private static void _swap(long[] mostSignificantBits, long[] leastSignificantBits, int first, int second) {
+        var most = mostSignificantBits[first];
+        mostSignificantBits[first] = mostSignificantBits[second];
+        mostSignificantBits[second] = most;
+        var least = leastSignificantBits[first];
+        leastSignificantBits[first] = leastSignificantBits[second];
+        leastSignificantBits[second] = least;
+    }
+
+    private static int _compare(long firstMost, long firstLeast, long secondMost, long secondLeast) {
+        var compared = Long.compareUnsigned(firstMost, secondMost);
+        return compared != 0 ? compared : Long.compareUnsigned(firstLeast, secondLeast);
+    }
+
+    /**
+     * Compare two IDs in the order of their String form. {@link UUID#compareTo(UUID)} compares the halves as signed
+     *  numbers, which puts IDs starting with 8 to f before the others.
+     * @return A negative number, zero, or a positive number as the first ID comes before, is equal to, or comes after the second
+     */
+    static int compareIds(UUID first, UUID second) {
+        return _compare(first.getMostSignificantBits(), first.getLeastSignificantBits(), second.getMostSignificantBits(), second.getLeastSignificantBits());
+    }
+
+    /**
+     * Write the entries of the index
+     * @param output The {@link DataOutput} to write to
+     * @throws IOException Thrown when the entries cannot be written
+     */
+    void write(DataOutput output) throws IOException {
+        output.writeInt(_size);
+        for (int slot = 0; slot < _offsets.length; slot++) {
+            if (_offsets[slot] != NOT_FOUND) {
+                output.writeLong(_mostSignificantBits[slot]);
+                output.writeLong(_leastSignificantBits[slot]);
+                output.writeLong(_offsets[slot]);
+            }
+        }
+    }
+
+    /**
+     * Read entries written by {@link NoteOffsetIndex#write(DataOutput)}
+     * @param input The {@link DataInput} to read from
+     * @return A {@link NoteOffsetIndex}
+     * @throws IOException Thrown when the entries cannot be read
+     */
+    static NoteOffsetIndex read(DataInput input) throws IOException {
+        var size = input.readInt();
+        if (size < 0) {
+            throw new IOException("Damaged note offset index");
+        }
+        var index = new NoteOffsetIndex(size);
+        for (int i = 0; i < size; i++) {
+            index.put(input.readLong(), input.readLong(), input.readLong());
+        }
+        return index;
+    }
+
+    /**
+     * Find the slot holding an ID
+     * @return The slot. -1 if the ID is not in the index.
+     */
+    private int _find(long mostSignificantBits, long leastSignificantBits) {
+        var mask = _offsets.length - 1;
+        var slot = _hash(mostSignificantBits, leastSignificantBits) & mask;
+        while (_offsets[slot] != NOT_FOUND) {
+            if (_mostSignificantBits[slot] == mostSignificantBits && _leastSignificantBits[slot] == leastSignificantBits) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void _resize(int capacity) {
+        var mostSignificantBits = _mostSignificantBits;
+        var leastSignificantBits = _leastSignificantBits;
+        var offsets = _offsets;
+        _allocate(capacity);
+        _size = 0;
+        for (int slot = 0; slot < offsets.length; slot++) {
+            if (offsets[slot] != NOT_FOUND) {
+                _insert(mostSignificantBits[slot], leastSignificantBits[slot], offsets[slot]);
+            }
+        }
+    }
+
+    private void _allocate(int capacity) {
+        _mostSignificantBits = new long[capacity];
+        _leastSignificantBits = new long[capacity];
+        _offsets = new long[capacity];
+        Arrays.fill(_offsets, NOT_FOUND);
+    }
+
+    /**
+     * Get the smallest power of two that holds a number of entries without passing the load factor
+     */
+    private static int _capacityFor(int size) {
+        var capacity = 16;
+        while (capacity * _LOAD_FACTOR < size + 1) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    /**
+     * Spread the bits of an ID so neighbouring IDs land in different slots
+     */
+    private static int _hash(long mostSignificantBits, long leastSignificantBits) {
+        var hash = mostSignificantBits * 0x9E3779B97F4A7C15L ^ leastSignificantBits;
+        hash ^= hash >>> 32;
+        return (int) (hash ^ (hash >>> 16));
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.jsonnotes.notes.service;
+
+import com.example.jsonnotes.notes.Note;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * One page of {@link Note notes} returned by {@link INoteDataService#getNotes(String, int)}, with the cursor to pass
+ *  back for the next page.
+ * <p>
+ * Pages are in order of {@link Note} ID and the cursor marks the last ID returned, so a cursor stays valid while
+ *  {@link Note notes} are created and deleted - no {@link Note} is returned twice, and every {@link Note} that exists
+ *  from the first page to the last is returned once. Cursors are opaque and should only be passed back to the service
+ *  that returned them.
+ */
+public final class NotePage {
+
+    /**
+     * The prefix of every cursor, so a cursor can be told apart from a bare ID
+     */
+    private static final String _CURSOR_PREFIX = "after:";
+
+    private final List<Note> _notes;
+    private final String _nextCursor;
+
+    /**
+     * Create a new instance of a {@link NotePage}
+     * @param notes The {@link Note notes} on the page, in order of ID
+     * @param hasMore TRUE if there are {@link Note notes} after the last one on the page
+     */
+    NotePage(List<Note> notes, boolean hasMore) {
+        _notes = List.copyOf(notes);
+        _nextCursor = hasMore && !notes.isEmpty() ? _encode(notes.get(notes.size() - 1).getId()) : null;
+    }
+
+    /**
+     * Get the {@link Note notes} on the page
+     * @return An unmodifiable {@link List} of {@link Note notes} in order of ID
+     */
+    public List<Note> getNotes() {
+        return _notes;
+    }
+
+    /**
+     * Get the cursor for the next page
+     * @return The cursor to pass to {@link INoteDataService#getNotes(String, int)}. NULL if this is the last page.
+     */
+    public String getNextCursor() {
+        return _nextCursor;
+    }
+
+    /**
+     * Check if there is another page
+     * @return TRUE if there are {@link Note notes} after this page
+     */
+    public boolean hasMore() {
+        return _nextCursor != null;
+    }
+
+    /**
+     * Check the arguments of {@link INoteDataService#getNotes(String, int)} and get the ID the page starts after
+     * @param cursor The cursor from the previous page. NULL for the first page.
+     * @param limit The largest number of {@link Note notes} on the page
+     * @return The ID of the last {@link Note} on the previous page. NULL for the first page.
+     */
+    static String startAfter(String cursor, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be at least 1");
+        }
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            var decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (decoded.startsWith(_CURSOR_PREFIX) && decoded.length() > _CURSOR_PREFIX.length()) {
+                return decoded.substring(_CURSOR_PREFIX.length());
+            }
+        } catch (IllegalArgumentException e) {
+            //Not Base64 - reported below
+        }
+        throw new IllegalArgumentException(String.format("cursor %s is not valid", cursor));
+    }
+
+    private static String _encode(String id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((_CURSOR_PREFIX + id).getBytes(StandardCharsets.UTF_8));
+    }
+}
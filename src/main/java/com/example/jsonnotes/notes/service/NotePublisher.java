@@ -0,0 +1,172 @@
+package com.example.jsonnotes.notes.service;
+
+import com.example.jsonnotes.notes.Note;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes every {@link Note} of an {@link INoteDataService} in order of ID, reading them a page at a time with
+ *  {@link INoteDataService#getNotes(String, int)} as the subscriber asks for them. No more than one page of
+ *  {@link Note notes} is held at once, however large the store is, and nothing is read until the subscriber requests
+ *  it.
+ * <p>
+ * Each subscriber gets its own pass over the {@link Note notes}. {@link Note notes} are delivered on the thread that
+ *  calls {@link Flow.Subscription#request(long)} - a request made from {@link Flow.Subscriber#onNext(Object)} is
+ *  added to the demand and served once that call returns, so the stack does not grow with the number of
+ *  {@link Note notes}.
+ */
+public final class NotePublisher implements Flow.Publisher<Note> {
+
+    /**
+     * The default largest number of {@link Note notes} read at once
+     */
+    public final static int DEFAULT_PAGE_SIZE = 100;
+
+    private final INoteDataService _dataService;
+    private final int _pageSize;
+
+    /**
+     * Create a new instance of a {@link NotePublisher} reading up to {@link NotePublisher#DEFAULT_PAGE_SIZE}
+     *  {@link Note notes} at once
+     * @param dataService The {@link INoteDataService} to publish the {@link Note notes} of
+     */
+    public NotePublisher(INoteDataService dataService) {
+        this(dataService, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Create a new instance of a {@link NotePublisher}
+     * @param dataService The {@link INoteDataService} to publish the {@link Note notes} of
+     * @param pageSize The largest number of {@link Note notes} read at once. Fewer are read when fewer are requested.
+     */
+    public NotePublisher(INoteDataService dataService, int pageSize) {
+        if (dataService == null) {
+            throw new IllegalArgumentException("dataService cannot be null");
+        }
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize must be at least 1");
+        }
+        _dataService = dataService;
+        _pageSize = pageSize;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Note> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber cannot be null");
+        }
+        subscriber.onSubscribe(new NoteSubscription(subscriber));
+    }
+
+    /**
+     * One subscriber's pass over the {@link Note notes}
+     */
+    private final class NoteSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super Note> _subscriber;
+        /**
+         * The number of {@link Note notes} requested and not yet delivered. {@link Long#MAX_VALUE} means no limit.
+         */
+        private final AtomicLong _requested = new AtomicLong();
+        /**
+         * Counts the calls to {@link NoteSubscription#_drain()} - only the call that raises it from 0 delivers
+         *  {@link Note notes}, and it keeps going until every other call has been served
+         */
+        private final AtomicInteger _drains = new AtomicInteger();
+        private volatile boolean _cancelled = false;
+        private volatile IllegalArgumentException _badRequest;
+        //Only used by the thread delivering notes
+        private Iterator<Note> _page = Collections.emptyIterator();
+        private String _cursor = null;
+        private boolean _lastPage = false;
+        private boolean _done = false;
+
+        private NoteSubscription(Flow.Subscriber<? super Note> subscriber) {
+            _subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                _badRequest = new IllegalArgumentException(String.format("A subscriber must request at least 1 note, not %d", n));
+            } else {
+                _requested.getAndUpdate(requested -> requested + n < 0 ? Long.MAX_VALUE : requested + n);
+            }
+            _drain();
+        }
+
+        @Override
+        public void cancel() {
+            _cancelled = true;
+            _drain();
+        }
+
+        /**
+         * Deliver {@link Note notes} while there is demand, reading the next page when the current one runs out
+         */
+        private void _drain() {
+            if (_drains.getAndIncrement() != 0) {
+                //Another call is delivering - it serves this request before it stops
+                return;
+            }
+            var missed = 1;
+            do {
+                _deliver();
+                missed = _drains.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void _deliver() {
+            while (!_done) {
+                if (_cancelled) {
+                    _finish();
+                    return;
+                }
+                if (_badRequest != null) {
+                    _finish();
+                    _subscriber.onError(_badRequest);
+                    return;
+                }
+                if (!_page.hasNext() && _lastPage) {
+                    _finish();
+                    _subscriber.onComplete();
+                    return;
+                }
+                var requested = _requested.get();
+                if (requested == 0) {
+                    //Nothing is read ahead of demand
+                    return;
+                }
+                if (!_page.hasNext()) {
+                    NotePage page;
+                    try {
+                        page = _dataService.getNotes(_cursor, (int) Math.min(requested, _pageSize));
+                    } catch (RuntimeException e) {
+                        _finish();
+                        _subscriber.onError(e);
+                        return;
+                    }
+                    _cursor = page.getNextCursor();
+                    _lastPage = !page.hasMore();
+                    _page = page.getNotes().iterator();
+                    continue;
+                }
+                if (requested != Long.MAX_VALUE) {
+                    _requested.decrementAndGet();
+                }
+                _subscriber.onNext(_page.next());
+            }
+        }
+
+        /**
+         * Stop delivering and let go of the current page
+         */
+        private void _finish() {
+            _done = true;
+            _page = Collections.emptyIterator();
+        }
+    }
+}
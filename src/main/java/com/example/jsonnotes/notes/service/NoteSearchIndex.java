@@ -0,0 +1,590 @@
+package com.example.jsonnotes.notes.service;
+
+import com.example.jsonnotes.notes.Note;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * An inverted index of the words in the content and summary of {@link Note notes}, ranked with BM25.
+ * <p>
+ * Each {@link Note} is given a document number when it is indexed. Every term keeps a posting list of the documents
+ *  containing it and how often, in order of document number, so a query only reads the lists of its own terms: an
+ *  {@link NoteSearchMode#ALL} query walks the shortest list and skips ahead in the others, and an
+ *  {@link NoteSearchMode#ANY} query merges the lists. Only the best hits are kept while scoring.
+ * <p>
+ * An updated {@link Note} gets a new document number and the old one is left in the posting lists as a dead entry that
+ *  queries skip. Once dead entries outnumber live ones, the lists are compacted and the documents renumbered.
+ * <p>
+ * Not thread safe - callers synchronize.
+ */
+final class NoteSearchIndex {
+
+    /**
+     * Words longer than this, such as encoded data, are not indexed
+     */
+    private static final int _MAX_TERM_LENGTH = 64;
+    /**
+     * How many times a word in the summary counts compared to a word in the content
+     */
+    private static final int _SUMMARY_WEIGHT = 2;
+    /**
+     * How quickly repeating a term stops raising the score
+     */
+    private static final double _K1 = 1.2;
+    /**
+     * How much longer {@link Note notes} are penalized, from 0 (not at all) to 1 (in full proportion to their length)
+     */
+    private static final double _B = 0.75;
+    /**
+     * The fewest dead documents worth compacting the posting lists for
+     */
+    private static final int _MIN_COMPACTION_DOCUMENTS = 1024;
+
+    private final Map<String, Integer> _termIds = new HashMap<>();
+    private String[] _terms = new String[16];
+    /**
+     * The posting list of each term: pairs of document number and term frequency, in order of document number
+     */
+    private int[][] _postings = new int[16][];
+    /**
+     * The number of ints used in each posting list - twice the number of entries
+     */
+    private int[] _postingSizes = new int[16];
+    /**
+     * The number of live documents containing each term
+     */
+    private int[] _documentFrequencies = new int[16];
+    private int _termCount = 0;
+
+    /**
+     * The live document number of each {@link Note} ID
+     */
+    private final Map<String, Integer> _documentNumbers = new HashMap<>();
+    /**
+     * The {@link Note} ID of each document. NULL for a dead document.
+     */
+    private String[] _documentIds = new String[16];
+    private int[] _documentLengths = new int[16];
+    /**
+     * The IDs of the distinct terms in each document, so removing it can update the document frequencies. NULL for a
+     *  dead document.
+     */
+    private int[][] _documentTerms = new int[16][];
+    /**
+     * The number of document numbers given out, live or dead
+     */
+    private int _documentCount = 0;
+    private int _deadDocuments = 0;
+    private long _totalLength = 0;
+
+    /**
+     * Get the number of {@link Note notes} in the index
+     * @return The number of {@link Note notes}
+     */
+    int size() {
+        return _documentNumbers.size();
+    }
+
+    /**
+     * Check if a {@link Note} is in the index
+     * @param id The ID of the {@link Note}
+     * @return TRUE if the {@link Note} is indexed
+     */
+    boolean contains(String id) {
+        return _documentNumbers.containsKey(id);
+    }
+
+    /**
+     * Index a {@link Note}, replacing what was indexed for it before
+     * @param id The ID of the {@link Note}
+     * @param content The content of the {@link Note}
+     * @param summary The summary of the {@link Note}
+     */
+    void put(String id, String content, String summary) {
+        remove(id);
+        var frequencies = new HashMap<String, int[]>();
+        for (var term : tokenize(content)) {
+            frequencies.computeIfAbsent(term, key -> new int[1])[0]++;
+        }
+        for (var term : tokenize(summary)) {
+            frequencies.computeIfAbsent(term, key -> new int[1])[0] += _SUMMARY_WEIGHT;
+        }
+        var document = _documentCount;
+        _ensureDocumentCapacity(document + 1);
+        _documentCount++;
+        var terms = new int[frequencies.size()];
+        var length = 0;
+        var i = 0;
+        for (var entry : frequencies.entrySet()) {
+            var termId = _getOrAddTerm(entry.getKey());
+            var frequency = entry.getValue()[0];
+            _addPosting(termId, document, frequency);
+            _documentFrequencies[termId]++;
+            terms[i++] = termId;
+            length += frequency;
+        }
+        _documentIds[document] = id;
+        _documentLengths[document] = length;
+        _documentTerms[document] = terms;
+        _documentNumbers.put(id, document);
+        _totalLength += length;
+    }
+
+    /**
+     * Remove a {@link Note} from the index
+     * @param id The ID of the {@link Note}
+     * @return TRUE if the {@link Note} was indexed
+     */
+    boolean remove(String id) {
+        var document = _documentNumbers.remove(id);
+        if (document == null) {
+            return false;
+        }
+        for (var termId : _documentTerms[document]) {
+            _documentFrequencies[termId]--;
+        }
+        _totalLength -= _documentLengths[document];
+        _documentIds[document] = null;
+        _documentTerms[document] = null;
+        _deadDocuments++;
+        if (_deadDocuments >= _MIN_COMPACTION_DOCUMENTS && _deadDocuments > _documentNumbers.size()) {
+            _compact();
+        }
+        return true;
+    }
+
+    /**
+     * Remove every {@link Note} from the index
+     */
+    void clear() {
+        _termIds.clear();
+        _terms = new String[16];
+        _postings = new int[16][];
+        _postingSizes = new int[16];
+        _documentFrequencies = new int[16];
+        _termCount = 0;
+        _documentNumbers.clear();
+        _documentIds = new String[16];
+        _documentLengths = new int[16];
+        _documentTerms = new int[16][];
+        _documentCount = 0;
+        _deadDocuments = 0;
+        _totalLength = 0;
+    }
+
+    /**
+     * Find the {@link Note notes} that best match a query
+     * @param query The words to search for. Split into terms the same way as the indexed text.
+     * @param mode How the terms are combined
+     * @param limit The largest number of IDs to return
+     * @return The IDs of the matching {@link Note notes}, best match first
+     */
+    List<String> search(String query, NoteSearchMode mode, int limit) {
+        var cursors = new ArrayList<Cursor>();
+        for (var term : new LinkedHashSet<>(tokenize(query))) {
+            var termId = _termIds.get(term);
+            if (termId == null || _documentFrequencies[termId] == 0) {
+                if (mode == NoteSearchMode.ALL) {
+                    return List.of();
+                }
+                continue;
+            }
+            cursors.add(new Cursor(_postings[termId], _postingSizes[termId], _idf(_documentFrequencies[termId])));
+        }
+        if (cursors.isEmpty()) {
+            return List.of();
+        }
+        //The head of the queue is the worst hit kept - lowest score, then the newest document
+        var hits = new PriorityQueue<Hit>(limit + 1, Comparator.comparingDouble((Hit hit) -> hit._score).thenComparingInt(hit -> -hit._document));
+        var averageLength = (double) _totalLength / size();
+        if (mode == NoteSearchMode.ALL) {
+            _matchAll(cursors, hits, limit, averageLength);
+        } else {
+            _matchAny(cursors, hits, limit, averageLength);
+        }
+        var ids = new ArrayList<String>(hits.size());
+        while (!hits.isEmpty()) {
+            ids.add(_documentIds[hits.poll()._document]);
+        }
+        Collections.reverse(ids);
+        return ids;
+    }
+
+    /**
+     * Split text into lowercase terms made of letters and digits
+     * @param text The text to split. NULL is treated as empty.
+     * @return The terms in the order they appear, including repeats
+     */
+    static List<String> tokenize(String text) {
+        var terms = new ArrayList<String>();
+        if (text == null) {
+            return terms;
+        }
+        var term = new StringBuilder();
+        for (int i = 0; i < text.length(); ) {
+            var codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (Character.isLetterOrDigit(codePoint)) {
+                term.appendCodePoint(Character.toLowerCase(codePoint));
+            } else {
+                _addTerm(terms, term);
+            }
+        }
+        _addTerm(terms, term);
+        return terms;
+    }
+
+    /**
+     * Write the index. Dead documents are compacted away first, so the written documents are numbered from 0.
+     * @param output The {@link DataOutput} to write to
+     * @throws IOException Thrown when the index cannot be written
+     */
+    void write(DataOutput output) throws IOException {
+        if (_deadDocuments > 0) {
+            _compact();
+        }
+        output.writeInt(_documentCount);
+        for (int document = 0; document < _documentCount; document++) {
+            output.writeUTF(_documentIds[document]);
+            output.writeInt(_documentLengths[document]);
+        }
+        var liveTerms = 0;
+        for (int termId = 0; termId < _termCount; termId++) {
+            if (_documentFrequencies[termId] > 0) {
+                liveTerms++;
+            }
+        }
+        output.writeInt(liveTerms);
+        for (int termId = 0; termId < _termCount; termId++) {
+            if (_documentFrequencies[termId] == 0) {
+                continue;
+            }
+            output.writeUTF(_terms[termId]);
+            output.writeInt(_postingSizes[termId] / 2);
+            var postings = _postings[termId];
+            for (int i = 0; i < _postingSizes[termId]; i++) {
+                output.writeInt(postings[i]);
+            }
+        }
+    }
+
+    /**
+     * Read an index written by {@link NoteSearchIndex#write(DataOutput)}
+     * @param input The {@link DataInput} to read from
+     * @return A {@link NoteSearchIndex}
+     * @throws IOException Thrown when the index cannot be read or is damaged
+     */
+    static NoteSearchIndex read(DataInput input) throws IOException {
+        var index = new NoteSearchIndex();
+        var documentCount = input.readInt();
+        if (documentCount < 0) {
+            throw new IOException("Damaged note search index");
+        }
+        index._ensureDocumentCapacity(documentCount);
+        for (int document = 0; document < documentCount; document++) {
+            var id = input.readUTF();
+            var length = input.readInt();
+            index._documentIds[document] = id;
+            index._documentLengths[document] = length;
+            index._documentNumbers.put(id, document);
+            index._totalLength += length;
+        }
+        index._documentCount = documentCount;
+        var termCount = input.readInt();
+        if (termCount < 0) {
+            throw new IOException("Damaged note search index");
+        }
+        var termsPerDocument = new int[documentCount];
+        for (int i = 0; i < termCount; i++) {
+            var termId = index._getOrAddTerm(input.readUTF());
+            var entries = input.readInt();
+            if (entries < 1 || entries > documentCount) {
+                throw new IOException("Damaged note search index");
+            }
+            var postings = new int[entries * 2];
+            for (int entry = 0; entry < postings.length; entry += 2) {
+                var document = input.readInt();
+                if (document < 0 || document >= documentCount || (entry > 0 && document <= postings[entry - 2])) {
+                    throw new IOException("Damaged note search index");
+                }
+                postings[entry] = document;
+                postings[entry + 1] = input.readInt();
+                termsPerDocument[document]++;
+            }
+            index._postings[termId] = postings;
+            index._postingSizes[termId] = postings.length;
+            index._documentFrequencies[termId] = entries;
+        }
+        //Rebuild the terms of each document from the posting lists
+        for (int document = 0; document < documentCount; document++) {
+            index._documentTerms[document] = new int[termsPerDocument[document]];
+        }
+        var filled = new int[documentCount];
+        for (int termId = 0; termId < index._termCount; termId++) {
+            var postings = index._postings[termId];
+            for (int entry = 0; entry < index._postingSizes[termId]; entry += 2) {
+                var document = postings[entry];
+                index._documentTerms[document][filled[document]++] = termId;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Score the documents containing every term. The shortest posting list leads, and the others skip ahead to each
+     *  document it holds.
+     */
+    private void _matchAll(List<Cursor> cursors, PriorityQueue<Hit> hits, int limit, double averageLength) {
+        cursors.sort(Comparator.comparingInt(cursor -> cursor._size));
+        var lead = cursors.get(0);
+        outer:
+        while (lead._position < lead._size) {
+            var document = lead._postings[lead._position];
+            for (int i = 1; i < cursors.size(); i++) {
+                var cursor = cursors.get(i);
+                cursor.advanceTo(document);
+                if (cursor._position >= cursor._size) {
+                    return;
+                }
+                var next = cursor._postings[cursor._position];
+                if (next != document) {
+                    //This term skips past the document - the lead catches up with it
+                    lead.advanceTo(next);
+                    continue outer;
+                }
+            }
+            if (_documentIds[document] != null) {
+                var score = 0.0;
+                for (var cursor : cursors) {
+                    score += _score(cursor, document, averageLength);
+                }
+                _offer(hits, limit, document, score);
+            }
+            lead._position += 2;
+        }
+    }
+
+    /**
+     * Score the documents containing any of the terms by merging the posting lists
+     */
+    private void _matchAny(List<Cursor> cursors, PriorityQueue<Hit> hits, int limit, double averageLength) {
+        while (true) {
+            var document = Integer.MAX_VALUE;
+            for (var cursor : cursors) {
+                if (cursor._position < cursor._size) {
+                    document = Math.min(document, cursor._postings[cursor._position]);
+                }
+            }
+            if (document == Integer.MAX_VALUE) {
+                return;
+            }
+            var live = _documentIds[document] != null;
+            var score = 0.0;
+            for (var cursor : cursors) {
+                if (cursor._position < cursor._size && cursor._postings[cursor._position] == document) {
+                    if (live) {
+                        score += _score(cursor, document, averageLength);
+                    }
+                    cursor._position += 2;
+                }
+            }
+            if (live) {
+                _offer(hits, limit, document, score);
+            }
+        }
+    }
+
+    /**
+     * Get the BM25 score of one term for the document a cursor is on
+     */
+    private double _score(Cursor cursor, int document, double averageLength) {
+        var frequency = cursor._postings[cursor._position + 1];
+        var lengthNorm = _K1 * (1 - _B + _B * _documentLengths[document] / averageLength);
+        return cursor._idf * frequency * (_K1 + 1) / (frequency + lengthNorm);
+    }
+
+    /**
+     * Get the inverse document frequency of a term - rare terms count for more than common ones
+     * @param documentFrequency The number of live documents containing the term
+     */
+    private double _idf(int documentFrequency) {
+        return Math.log(1 + (size() - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+
+    /**
+     * Keep a hit if it is among the best {@code limit} so far. On equal scores the older document wins.
+     */
+    private static void _offer(PriorityQueue<Hit> hits, int limit, int document, double score) {
+        if (hits.size() < limit) {
+            hits.add(new Hit(document, score));
+            return;
+        }
+        var worst = hits.peek();
+        if (score > worst._score || (score == worst._score && document < worst._document)) {
+            hits.poll();
+            hits.add(new Hit(document, score));
+        }
+    }
+
+    private static void _addTerm(List<String> terms, StringBuilder term) {
+        if (term.length() > 0 && term.length() <= _MAX_TERM_LENGTH) {
+            terms.add(term.toString());
+        }
+        term.setLength(0);
+    }
+
+    private int _getOrAddTerm(String term) {
+        var termId = _termIds.get(term);
+        if (termId != null) {
+            return termId;
+        }
+        if (_termCount == _terms.length) {
+            var capacity = _termCount * 2;
+            _terms = Arrays.copyOf(_terms, capacity);
+            _postings = Arrays.copyOf(_postings, capacity);
+            _postingSizes = Arrays.copyOf(_postingSizes, capacity);
+            _documentFrequencies = Arrays.copyOf(_documentFrequencies, capacity);
+        }
+        _terms[_termCount] = term;
+        _postings[_termCount] = new int[4];
+        _termIds.put(term, _termCount);
+        return _termCount++;
+    }
+
+    /**
+     * Append an entry to a posting list. Documents are numbered in the order they are indexed, so appending keeps the
+     *  list in order.
+     */
+    private void _addPosting(int termId, int document, int frequency) {
+        var postings = _postings[termId];
+        var size = _postingSizes[termId];
+        if (size + 2 > postings.length) {
+            postings = Arrays.copyOf(postings, postings.length * 2);
+            _postings[termId] = postings;
+        }
+        postings[size] = document;
+        postings[size + 1] = frequency;
+        _postingSizes[termId] = size + 2;
+    }
+
+    private void _ensureDocumentCapacity(int capacity) {
+        if (capacity <= _documentIds.length) {
+            return;
+        }
+        var newCapacity = Math.max(capacity, _documentIds.length * 2);
+        _documentIds = Arrays.copyOf(_documentIds, newCapacity);
+        _documentLengths = Arrays.copyOf(_documentLengths, newCapacity);
+        _documentTerms = Arrays.copyOf(_documentTerms, newCapacity);
+    }
+
+    /**
+     * Drop the dead documents from every posting list and renumber the live documents from 0, keeping their order so
+     *  the posting lists stay sorted
+     */
+    private void _compact() {
+        var numbers = new int[_documentCount];
+        var live = 0;
+        for (int document = 0; document < _documentCount; document++) {
+            var id = _documentIds[document];
+            if (id == null) {
+                numbers[document] = -1;
+                continue;
+            }
+            numbers[document] = live;
+            _documentIds[live] = id;
+            _documentLengths[live] = _documentLengths[document];
+            _documentTerms[live] = _documentTerms[document];
+            _documentNumbers.put(id, live);
+            live++;
+        }
+        Arrays.fill(_documentIds, live, _documentCount, null);
+        Arrays.fill(_documentTerms, live, _documentCount, null);
+        for (int termId = 0; termId < _termCount; termId++) {
+            var postings = _postings[termId];
+            var kept = 0;
+            for (int entry = 0; entry < _postingSizes[termId]; entry += 2) {
+                var number = numbers[postings[entry]];
+                if (number >= 0) {
+                    postings[kept] = number;
+                    postings[kept + 1] = postings[entry + 1];
+                    kept += 2;
+                }
+            }
+            _postingSizes[termId] = kept;
+            if (kept * 4 < postings.length && postings.length > 4) {
+                //Give back the room of a list that shrank a lot
+                _postings[termId] = Arrays.copyOf(postings, Math.max(4, kept));
+            }
+        }
+        _documentCount = live;
+        _deadDocuments = 0;
+    }
+
+    /**
+     * A position in the posting list of one query term
+     */
+    private static final class Cursor {
+        private final int[] _postings;
+        private final int _size;
+        private final double _idf;
+        private int _position = 0;
+
+        private Cursor(int[] postings, int size, double idf) {
+            _postings = postings;
+            _size = size;
+            _idf = idf;
+        }
+
+        /**
+         * Move to the first entry at or after a document, galloping ahead and then searching back, so skipping far
+         *  costs the logarithm of the distance
+         * @param document The document number to move to
+         */
+        private void advanceTo(int document) {
+            var count = _size / 2;
+            var low = _position / 2;
+            if (low >= count || _postings[low * 2] >= document) {
+                return;
+            }
+            var step = 1;
+            var high = low + 1;
+            while (high < count && _postings[high * 2] < document) {
+                low = high;
+                step <<= 1;
+                high = low + step;
+            }
+            high = Math.min(high, count);
+            //The entry at low is before the document, and the one at high (if any) is not
+            while (low + 1 < high) {
+                var middle = (low + high) >>> 1;
+                if (_postings[middle * 2] < document) {
+                    low = middle;
+                } else {
+                    high = middle;
+                }
+            }
+            _position = high * 2;
+        }
+    }
+
+    private static final class Hit {
+        private final int _document;
+        private final double _score;
+
+        private Hit(int document, double score) {
+            _document = document;
+            _score = score;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.jsonnotes.notes.service;
+
+import com.example.jsonnotes.notes.Note;
+
+/**
+ * How the terms of a search query are combined when matching {@link Note notes}
+ */
+public enum NoteSearchMode {
+    /**
+     * A {@link Note} matches when it contains every term of the query
+     */
+    ALL,
+    /**
+     * A {@link Note} matches when it contains at least one term of the query. {@link Note Notes} with more of the terms
+     *  rank higher.
+     */
+    ANY
+}
@@ -0,0 +1,979 @@
+package com.example.jsonnotes.notes.service;
+
+import com.example.jsonnotes.notes.Note;
+import com.example.jsonnotes.util.FileHelper;
+import com.example.jsonnotes.util.FileSyncer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A data service for {@link Note Notes} that packs many {@link Note notes} into each file. Changes are appended to the
+ *  newest segment file, and a new segment is started once it passes the {@link PackfileNoteDataService#getSegmentSize() segment size}.
+ *  An index in memory maps each {@link Note} to the segment and offset of its live record, so a read is a single
+ *  positioned read and a write is a single append - no file is created, opened, or closed per {@link Note}.
+ * <p>
+ * Updates and deletions leave the old record behind. Once enough of the sealed segments - every segment but the newest -
+ *  is made of old records, they are merged into one segment in the background and the old records are dropped.
+ * <p>
+ * Each segment has the format written by {@link BinaryFileNotesDataService} (see {@link NoteBinaryFormat}). Segments
+ *  are named {@code segment-<number>.pack} and read in number order, so a later record for an ID replaces an earlier
+ *  one. A segment written by a merge is flagged in the reserved header bytes, and any lower numbered segment still
+ *  there when the service opens was left behind by an interrupted merge and is deleted. {@link Note Notes} can be moved to and from a {@link FileNoteDataService} with
+ *  {@link PackfileNoteDataService#importNotes(List)} and {@link FileNoteDataService#importNotes(List)}.
+ */
+public class PackfileNoteDataService implements INoteDataService {
+
+    /**
+     * The default size, in bytes, at which the newest segment is sealed and a new one started
+     */
+    public final static long DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+    /**
+     * The default number of bytes of old records in the sealed segments at which they are merged
+     */
+    public final static long DEFAULT_MERGE_THRESHOLD = 4 * 1024 * 1024;
+    /**
+     * The start of the name of every segment file. The segment number follows it.
+     */
+    private final static String _SEGMENT_FILE_PREFIX = "segment-";
+    /**
+     * The extension of every segment file
+     */
+    private final static String _SEGMENT_FILE_EXTENSION = ".pack";
+    /**
+     * The extension of a segment that is being written by a merge
+     */
+    private final static String _MERGING_FILE_EXTENSION = ".merging";
+    /**
+     * Set in the reserved header bytes of a segment written by a merge. Every segment numbered lower than it was part
+     *  of the merge and is out of date.
+     */
+    private final static short _MERGED_FLAG = 1;
+    /**
+     * The number of bits of a location that hold the offset in its segment. The segment number is kept above them.
+     */
+    private final static int _OFFSET_BITS = 40;
+    /**
+     * The number of bytes read for a record before its size is known. Most {@link Note notes} fit, so most reads are a
+     *  single read.
+     */
+    private final static int _READ_AHEAD = 512;
+    /**
+     * Runs merges in the background so they do not hold up the caller
+     */
+    private final static ExecutorService _mergeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        var thread = new Thread(runnable, "notes-segment-merge");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Single instance of {@link PackfileNoteDataService}
+     */
+    private static PackfileNoteDataService _instance;
+
+    /**
+     * The directory the segment files are stored in
+     */
+    protected final File _dataDir;
+    /**
+     * Pushes the segments written by this service to disk
+     */
+    private final FileSyncer _syncer = new FileSyncer();
+    /**
+     * The open segments in number order. The last one is the segment changes are appended to.
+     */
+    private final TreeMap<Integer, Segment> _segments = new TreeMap<>();
+    /**
+     * The location of the live record for each {@link Note} - see {@link PackfileNoteDataService#_location(int, long)}
+     */
+    private NoteOffsetIndex _index = new NoteOffsetIndex(0);
+    /**
+     * The size at which the newest segment is sealed
+     */
+    private long _segmentSize = DEFAULT_SEGMENT_SIZE;
+    /**
+     * The number of bytes of old records in the sealed segments at which they are merged
+     */
+    private long _mergeThreshold = DEFAULT_MERGE_THRESHOLD;
+    /**
+     * TRUE while a background merge is waiting to run or running
+     */
+    private final AtomicBoolean _mergeQueued = new AtomicBoolean(false);
+    /**
+     * Held for the duration of a merge so only one runs at a time
+     */
+    private final Object _mergeLock = new Object();
+    /**
+     * Changes when every {@link Note} is deleted, so a merge that started before knows to throw its work away
+     */
+    private int _generation = 0;
+    /**
+     * TRUE once the service has been closed
+     */
+    private boolean _closed = false;
+
+    /**
+     * A single segment file
+     */
+    private static final class Segment {
+        private final int _number;
+        private final File _file;
+        private final FileChannel _channel;
+        /**
+         * The length of the file - where the next record is appended
+         */
+        private long _length;
+        /**
+         * The number of bytes taken up by records that were replaced or deleted, and by tombstones
+         */
+        private long _garbage;
+
+        private Segment(int number, File file, FileChannel channel, long length) {
+            _number = number;
+            _file = file;
+            _channel = channel;
+            _length = length;
+        }
+    }
+
+    /**
+     * Create a new single instance of {@link PackfileNoteDataService}
+     * @param dataPath Absolute path to the directory where the segment files will be located
+     * @return {@link PackfileNoteDataService}
+     * @throws IllegalArgumentException Thrown when no dataPath is specified and no {@link PackfileNoteDataService#_instance} is available
+     */
+    public static PackfileNoteDataService getInstance(String dataPath) throws IllegalArgumentException {
+        if (dataPath != null) {
+            //When a dataPath is provided, generate a new instance
+            if (_instance != null) {
+                _instance.close();
+            }
+            _instance = new PackfileNoteDataService(dataPath);
+        }
+        if (_instance == null) {
+            //When no dataPath is specified and there is no current instance, we cannot continue.
+            throw new IllegalArgumentException("No instance available and no dataPath specified. Cannot proceed.");
+        }
+        return _instance;
+    }
+
+    /**
+     * Create a new instance of a {@link PackfileNoteDataService} pointing at a specific path
+     * @param dataPath Absolute path to the directory where the segment files will be located
+     * @exception RuntimeException thrown when the PackfileNoteDataService cannot be created
+     */
+    public PackfileNoteDataService(String dataPath) throws RuntimeException {
+        _dataDir = new File(dataPath);
+        try {
+            Files.createDirectories(_dataDir.toPath());
+            _open();
+        } catch (IOException | SecurityException exception) {
+            exception.printStackTrace();
+            System.out.printf("Error while creating/accessing new instance of PackfileNoteDataService. %s is not accessible.%n", _dataDir.getAbsolutePath());
+            throw new RuntimeException(String.format("Cannot access directory %s", _dataDir.getAbsolutePath()));
+        }
+    }
+
+    /**
+     * Get the size at which the newest segment is sealed and a new one started
+     * @return The segment size in bytes
+     */
+    public synchronized long getSegmentSize() {
+        return _segmentSize;
+    }
+
+    /**
+     * Set the size at which the newest segment is sealed and a new one started. Only sealed segments are merged, so
+     *  smaller segments let old records be dropped sooner.
+     * @param segmentSize The segment size in bytes
+     */
+    public synchronized void setSegmentSize(long segmentSize) {
+        if (segmentSize <= NoteBinaryFormat.HEADER_SIZE) {
+            throw new IllegalArgumentException("segmentSize must be larger than a segment header");
+        }
+        _segmentSize = segmentSize;
+    }
+
+    /**
+     * Get the number of bytes of old records in the sealed segments at which they are merged
+     * @return The merge threshold in bytes
+     */
+    public synchronized long getMergeThreshold() {
+        return _mergeThreshold;
+    }
+
+    /**
+     * Set the number of bytes of old records in the sealed segments at which they are merged. The segments are only
+     *  merged once old records also make up at least half of them.
+     * @param mergeThreshold The merge threshold in bytes
+     */
+    public synchronized void setMergeThreshold(long mergeThreshold) {
+        if (mergeThreshold <= 0) {
+            throw new IllegalArgumentException("mergeThreshold must be greater than 0");
+        }
+        _mergeThreshold = mergeThreshold;
+    }
+
+    /**
+     * Get the number of segment files
+     * @return The number of segments, including the one changes are appended to
+     */
+    public synchronized int getSegmentCount() {
+        return _segments.size();
+    }
+
+    @Override
+    public String createNote() {
+        return createNote("");
+    }
+
+    @Override
+    public String createNote(String content) {
+        return createNote(new Note(content));
+    }
+
+    @Override
+    public synchronized String createNote(Note note) {
+        //Create new note
+        var trueNote = new Note();
+        trueNote.copyValues(note);
+        //Append the note and point the index at it
+        if (!_appendNote(trueNote)) {
+            return null;
+        }
+        return trueNote.getId();
+    }
+
+    /**
+     * Create several {@link Note Notes} at once. The records are appended one after another and made durable with a
+     *  single sync.
+     * @param notes The {@link Note} data to save
+     * @return The ID of each new {@link Note}, in the order they were given. NULL for a {@link Note} that could not
+     *  be written.
+     */
+    @Override
+    public synchronized List<String> createNotes(Collection<Note> notes) {
+        NoteBatch.checkNotes(notes);
+        var ids = new ArrayList<String>(notes.size());
+        for (var note : notes) {
+            var trueNote = new Note();
+            trueNote.copyValues(note);
+            ids.add(_appendNote(trueNote, false) ? trueNote.getId() : null);
+        }
+        _syncNewestSegment();
+        return ids;
+    }
+
+    /**
+     * Add {@link Note notes} keeping their IDs, replacing any {@link Note} with the same ID. Used to move
+     *  {@link Note notes} from another data service, such as a {@link FileNoteDataService}.
+     * @param notes The {@link Note notes} to add
+     * @return The number of {@link Note notes} added
+     */
+    public synchronized int importNotes(List<Note> notes) {
+        if (notes == null) {
+            throw new IllegalArgumentException("notes cannot be null");
+        }
+        var imported = 0;
+        for (var note : notes) {
+            if (_appendNote(note, false)) {
+                imported++;
+            }
+        }
+        _syncNewestSegment();
+        return imported;
+    }
+
+    @Override
+    public synchronized List<Note> getAllNotes() {
+        //Read the records in segment and offset order so each file is read front to back
+        var locations = _index.sortedOffsets();
+        var notes = new ArrayList<Note>(locations.length);
+        for (var location : locations) {
+            var note = _readNote(location);
+            if (note != null) {
+                notes.add(note);
+            }
+        }
+        return notes;
+    }
+
+    /**
+     * Get a page of {@link Note Notes} in order of ID. The IDs on the page are found in the index's sorted copy of the
+     *  IDs, and only their records are read.
+     * @param cursor The cursor from {@link NotePage#getNextCursor()} of the previous page. NULL for the first page.
+     * @param limit The largest number of {@link Note Notes} on the page. Must be at least 1.
+     * @return A {@link NotePage}
+     */
+    @Override
+    public synchronized NotePage getNotes(String cursor, int limit) {
+        var after = NotePage.startAfter(cursor, limit);
+        //One ID more than fits on the page shows whether there is another page
+        var ids = _index.idsAfter(after == null ? null : UUID.fromString(after), Math.min(limit, _index.size()) + 1);
+        var notes = new ArrayList<Note>(Math.min(limit, ids.size()));
+        for (int i = 0; i < ids.size() && notes.size() < limit; i++) {
+            var note = _readNote(_index.get(ids.get(i)));
+            if (note != null) {
+                notes.add(note);
+            }
+        }
+        return new NotePage(notes, ids.size() > limit);
+    }
+
+    @Override
+    public synchronized int getNoteCount() {
+        return _index.size();
+    }
+
+    /**
+     * Describe every segment file. A merge changes it, even though the {@link Note notes} stay the same.
+     */
+    @Override
+    public synchronized String getFingerprint() {
+        return FileHelper.getFingerprint(_segments.values().stream().map(segment -> segment._file).toArray(File[]::new));
+    }
+
+    @Override
+    public synchronized Note getNoteById(String id) {
+        if (id == null || id.equals("")) {
+            throw new IllegalArgumentException("id cannot be blank");
+        }
+        var location = _index.get(_parseId(id));
+        if (location == NoteOffsetIndex.NOT_FOUND) {
+            throw new NoSuchElementException(String.format("Note with id %s not found", id));
+        }
+        return _readNote(location);
+    }
+
+    @Override
+    public synchronized Note updateNote(Note upNote) {
+        if (upNote == null) {
+            throw new IllegalArgumentException("upNote cannot be null");
+        }
+        //Get the currently saved note
+        var curNote = getNoteById(upNote.getId());
+        if (curNote == null) {
+            return null;
+        }
+        //copy the values from the updated note into the current note
+        curNote.copyValues(upNote);
+        if (!_appendNote(curNote)) {
+            System.out.printf("Failed to update note %s%n", upNote.getId());
+            return null;
+        }
+        return curNote;
+    }
+
+    /**
+     * Update several {@link Note Notes} at once. The records are appended one after another and made durable with a
+     *  single sync.
+     * @param notes The {@link Note Notes} to update
+     * @return The updated {@link Note Notes}, in the order they were given. NULL for a {@link Note} that does not
+     *  exist or could not be written.
+     */
+    @Override
+    public synchronized List<Note> updateNotes(Collection<Note> notes) {
+        NoteBatch.checkNotes(notes);
+        var updated = new ArrayList<Note>(notes.size());
+        for (var upNote : notes) {
+            Note curNote;
+            try {
+                curNote = getNoteById(upNote.getId());
+            } catch (NoSuchElementException e) {
+                curNote = null;
+            }
+            if (curNote != null) {
+                curNote.copyValues(upNote);
+                if (!_appendNote(curNote, false)) {
+                    System.out.printf("Failed to update note %s%n", upNote.getId());
+                    curNote = null;
+                }
+            }
+            updated.add(curNote);
+        }
+        _syncNewestSegment();
+        return updated;
+    }
+
+    @Override
+    public synchronized boolean deleteNoteById(String id) {
+        if (id == null || id.equals("")) {
+            throw new IllegalArgumentException("id cannot be blank");
+        }
+        return _deleteNote(_parseId(id), true);
+    }
+
+    /**
+     * Delete several {@link Note Notes} at once. The tombstones are appended one after another and made durable with
+     *  a single sync.
+     * @param ids The IDs of the {@link Note Notes} to delete
+     * @return For each ID, in the order they were given, TRUE if the note was deleted and FALSE if it wasn't
+     */
+    @Override
+    public synchronized List<Boolean> deleteNotesByIds(Collection<String> ids) {
+        NoteBatch.checkIds(ids);
+        var deleted = new ArrayList<Boolean>(ids.size());
+        for (var id : ids) {
+            try {
+                deleted.add(_deleteNote(_parseId(id), false));
+            } catch (NoSuchElementException e) {
+                deleted.add(false);
+            }
+        }
+        _syncNewestSegment();
+        return deleted;
+    }
+
+    @Override
+    public synchronized void deleteAllNotes() {
+        try {
+            //Drop every segment and start again with an empty one
+            var nextNumber = _segments.lastKey() + 1;
+            for (var segment : _segments.values()) {
+                _close(segment);
+                Files.deleteIfExists(segment._file.toPath());
+            }
+            _segments.clear();
+            _index = new NoteOffsetIndex(0);
+            _generation++;
+            _createSegment(nextNumber);
+            _syncer.syncDirectory(_dataDir);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.println("Error while deleting notes. They may still be in the segment files.");
+        }
+    }
+
+    /**
+     * Merge every sealed segment into one, dropping replaced and deleted records and tombstones. The merged segment
+     *  is written without holding up readers and writers, and swapped in once it is complete. Records that change
+     *  while the merge runs are left in the newest segment, where their new version was appended.
+     * @return TRUE if the segments were merged or there was nothing to merge, FALSE if the merge failed
+     */
+    public boolean merge() {
+        synchronized (_mergeLock) {
+            List<Segment> sealed;
+            int generation;
+            synchronized (this) {
+                if (_closed) {
+                    return false;
+                }
+                sealed = new ArrayList<>(_segments.headMap(_segments.lastKey()).values());
+                if (sealed.isEmpty() || (sealed.size() == 1 && sealed.get(0)._garbage == 0)) {
+                    return true;
+                }
+                generation = _generation;
+            }
+            //The merged segment takes the number of the newest sealed segment, so it still sorts before the newest segment
+            var target = sealed.get(sealed.size() - 1);
+            var mergingFile = new File(_dataDir, _SEGMENT_FILE_PREFIX + _formatNumber(target._number) + _MERGING_FILE_EXTENSION);
+            //Each copied record as {most significant ID bits, least significant ID bits, old location, new offset, size}
+            var copied = new ArrayList<long[]>();
+            long mergedLength;
+            try {
+                mergedLength = _writeMergedSegment(sealed, mergingFile, generation, copied);
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.out.println("Error while merging note segments. The unmerged segments are still in use.");
+                _deleteQuietly(mergingFile);
+                return false;
+            }
+            synchronized (this) {
+                if (_closed || _generation != generation) {
+                    //Every note was deleted while merging - the merged segment is out of date
+                    _deleteQuietly(mergingFile);
+                    return false;
+                }
+                try {
+                    for (var segment : sealed) {
+                        _close(segment);
+                        _segments.remove(segment._number);
+                    }
+                    //The merged segment is flagged as replacing every lower segment, so if the deletes below are
+                    //interrupted the next start deletes the rest instead of reading records its tombstones were hiding
+                    Files.move(mergingFile.toPath(), target._file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    _syncer.syncDirectory(_dataDir);
+                    for (var segment : sealed) {
+                        if (segment != target) {
+                            Files.deleteIfExists(segment._file.toPath());
+                        }
+                    }
+                    var channel = FileChannel.open(target._file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    var merged = new Segment(target._number, target._file, channel, mergedLength);
+                    _segments.put(merged._number, merged);
+                    for (var record : copied) {
+                        var id = new UUID(record[0], record[1]);
+                        if (_index.get(id) == record[2]) {
+                            _index.put(id, _location(merged._number, record[3]));
+                        } else {
+                            //The note changed while merging - the copy is already out of date
+                            merged._garbage += record[4];
+                        }
+                    }
+                    _syncer.syncDirectory(_dataDir);
+                    return true;
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    throw new RuntimeException(String.format("Cannot swap in merged segment %s", target._file.getAbsolutePath()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the {@link FileSyncer} that pushes the segments written by this service to disk. Set its
+     *  {@link FileSyncer.Durability} to choose how much recent work a crash can lose.
+     * @return A {@link FileSyncer}
+     */
+    public FileSyncer getFileSyncer() {
+        return _syncer;
+    }
+
+    /**
+     * Close every segment file, syncing any writes still waiting for a batched sync. The service cannot be used after
+     *  it is closed.
+     */
+    public synchronized void close() {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        _segments.values().forEach(this::_close);
+        _syncer.close();
+    }
+
+    /**
+     * Open every segment file in the data directory and build the index by walking their records. A directory with
+     *  no segments gets an empty one.
+     * @throws IOException Thrown when a segment cannot be opened or is not a binary notes file
+     */
+    private void _open() throws IOException {
+        var files = _dataDir.listFiles();
+        if (files != null) {
+            for (var file : files) {
+                var name = file.getName();
+                if (name.startsWith(_SEGMENT_FILE_PREFIX) && name.endsWith(_MERGING_FILE_EXTENSION)) {
+                    //A merge was interrupted - the segments it was merging are all still there
+                    _deleteQuietly(file);
+                } else if (name.startsWith(_SEGMENT_FILE_PREFIX) && name.endsWith(_SEGMENT_FILE_EXTENSION)) {
+                    var number = name.substring(_SEGMENT_FILE_PREFIX.length(), name.length() - _SEGMENT_FILE_EXTENSION.length());
+                    try {
+                        var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                        _segments.put(Integer.parseInt(number), new Segment(Integer.parseInt(number), file, channel, channel.size()));
+                    } catch (NumberFormatException exception) {
+                        System.out.printf("Ignoring unexpected segment file %s%n", file.getAbsolutePath());
+                    }
+                }
+            }
+        }
+        if (_segments.isEmpty()) {
+            _createSegment(1);
+            _syncer.syncDirectory(_dataDir);
+            return;
+        }
+        _deleteMergedSegments();
+        for (var segment : _segments.values()) {
+            _walk(segment, segment == _segments.lastEntry().getValue());
+        }
+    }
+
+    /**
+     * Delete the segments left behind by an interrupted merge - every segment numbered lower than the newest merged one
+     * @throws IOException Thrown when a segment cannot be read or deleted
+     */
+    private void _deleteMergedSegments() throws IOException {
+        Integer mergedNumber = null;
+        for (var segment : _segments.descendingMap().values()) {
+            var header = ByteBuffer.allocate(NoteBinaryFormat.HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (segment._channel.read(header, header.position()) < 0) {
+                    break;
+                }
+            }
+            if (!header.hasRemaining() && header.getShort(NoteBinaryFormat.MAGIC.length + 2) == _MERGED_FLAG) {
+                mergedNumber = segment._number;
+                break;
+            }
+        }
+        if (mergedNumber == null) {
+            return;
+        }
+        var replaced = new ArrayList<>(_segments.headMap(mergedNumber).values());
+        for (var segment : replaced) {
+            System.out.printf("Deleting segment %s left behind by an interrupted merge%n", segment._file.getAbsolutePath());
+            _close(segment);
+            _segments.remove(segment._number);
+            Files.deleteIfExists(segment._file.toPath());
+        }
+        if (!replaced.isEmpty()) {
+            _syncer.syncDirectory(_dataDir);
+        }
+    }
+
+    /**
+     * Add the records of a segment to the index. Record bodies are skipped, not decoded. A record cut short by an
+     *  interrupted write ends the walk, and is cut off the file if it is the newest segment.
+     * @param segment The segment to walk
+     * @param newest TRUE if changes are appended to the segment
+     * @throws IOException Thrown when the segment cannot be read or is not a binary notes file
+     */
+    private void _walk(Segment segment, boolean newest) throws IOException {
+        long offset = NoteBinaryFormat.HEADER_SIZE;
+        try (var input = new DataInputStream(FileHelper.openInputStream(segment._file))) {
+            var header = new byte[NoteBinaryFormat.HEADER_SIZE];
+            input.readFully(header);
+            NoteBinaryFormat.readHeader(ByteBuffer.wrap(header));
+            var prefix = new byte[NoteBinaryFormat.RECORD_PREFIX_SIZE];
+            while (offset + NoteBinaryFormat.RECORD_PREFIX_SIZE <= segment._length) {
+                input.readFully(prefix);
+                var buffer = ByteBuffer.wrap(prefix);
+                var size = NoteBinaryFormat.recordSize(buffer, 0);
+                if (size < NoteBinaryFormat.MIN_BODY_SIZE + NoteBinaryFormat.RECORD_OVERHEAD || offset + size > segment._length) {
+                    break;
+                }
+                var id = NoteBinaryFormat.readId(buffer, 0);
+                var location = _location(segment._number, offset);
+                long previous;
+                if (NoteBinaryFormat.isTombstone(buffer, 0)) {
+                    previous = _index.remove(id);
+                    segment._garbage += size;
+                } else {
+                    previous = _index.put(id, location);
+                }
+                if (previous != NoteOffsetIndex.NOT_FOUND) {
+                    _addGarbage(previous);
+                }
+                input.skipNBytes(size - NoteBinaryFormat.RECORD_PREFIX_SIZE);
+                offset += size;
+            }
+        } catch (EOFException exception) {
+            throw new IOException(String.format("%s is not a binary notes file", segment._file.getAbsolutePath()), exception);
+        }
+        if (offset < segment._length) {
+            System.out.printf("Ignoring %d damaged byte(s) at the end of %s.%n", segment._length - offset, segment._file.getAbsolutePath());
+            if (newest) {
+                segment._channel.truncate(offset);
+                segment._length = offset;
+            }
+        }
+    }
+
+    /**
+     * Write the live records of a group of segments to a new file, leaving out tombstones
+     * @param sealed The segments to merge, oldest first
+     * @param mergingFile The file to write
+     * @param generation The {@link PackfileNoteDataService#_generation} when the merge started
+     * @param copied Receives an entry for each copied record
+     * @return The length of the merged file
+     * @throws IOException Thrown when the segments cannot be read or the file cannot be written
+     */
+    private long _writeMergedSegment(List<Segment> sealed, File mergingFile, int generation, List<long[]> copied) throws IOException {
+        long position = NoteBinaryFormat.HEADER_SIZE;
+        try (var output = new BufferedOutputStream(Files.newOutputStream(mergingFile.toPath()), FileHelper.STREAM_BUFFER_SIZE)) {
+            var header = ByteBuffer.allocate(NoteBinaryFormat.HEADER_SIZE);
+            header.put(NoteBinaryFormat.MAGIC).putShort(NoteBinaryFormat.VERSION).putShort(_MERGED_FLAG).putInt(0);
+            output.write(header.array());
+            for (var segment : sealed) {
+                try (var input = new DataInputStream(FileHelper.openInputStream(segment._file))) {
+                    input.skipNBytes(NoteBinaryFormat.HEADER_SIZE);
+                    long offset = NoteBinaryFormat.HEADER_SIZE;
+                    while (offset + NoteBinaryFormat.RECORD_PREFIX_SIZE <= segment._length) {
+                        var size = input.readInt() + NoteBinaryFormat.RECORD_OVERHEAD;
+                        if (size < NoteBinaryFormat.MIN_BODY_SIZE + NoteBinaryFormat.RECORD_OVERHEAD || offset + size > segment._length) {
+                            break;
+                        }
+                        var record = ByteBuffer.allocate(size).putInt(size - NoteBinaryFormat.RECORD_OVERHEAD);
+                        input.readFully(record.array(), 4, size - 4);
+                        var id = NoteBinaryFormat.readId(record, 0);
+                        var location = _location(segment._number, offset);
+                        boolean live;
+                        synchronized (this) {
+                            live = _generation == generation && _index.get(id) == location;
+                        }
+                        //Tombstones are never live - every older segment is part of this merge, so there is nothing left for them to hide
+                        if (live) {
+                            output.write(record.array());
+                            copied.add(new long[] { id.getMostSignificantBits(), id.getLeastSignificantBits(), location, position, size });
+                            position += size;
+                        }
+                        offset += size;
+                    }
+                }
+            }
+        }
+        _syncer.sync(mergingFile);
+        return position;
+    }
+
+    /**
+     * Append a tombstone for a {@link Note} and drop it from the index
+     * @param uuid The ID of the {@link Note}
+     * @param sync TRUE to make the tombstone durable now, FALSE when the caller syncs after a batch
+     * @return TRUE if the {@link Note} was deleted, FALSE if it does not exist or the tombstone could not be written
+     */
+    private boolean _deleteNote(UUID uuid, boolean sync) {
+        var location = _index.get(uuid);
+        if (location == NoteOffsetIndex.NOT_FOUND) {
+            return false;
+        }
+        //The tombstone hides older records until a merge drops them all
+        var tombstoneLocation = _append(NoteBinaryFormat.encodeTombstone(uuid), sync);
+        if (tombstoneLocation == NoteOffsetIndex.NOT_FOUND) {
+            return false;
+        }
+        _index.remove(uuid);
+        _addGarbage(location);
+        _addGarbage(tombstoneLocation);
+        _rollIfNeeded();
+        return true;
+    }
+
+    /**
+     * Append a {@link Note} record, make it durable, and point the index at it
+     * @param note The {@link Note} to append
+     * @return TRUE if the record was written, FALSE if it wasn't
+     */
+    private boolean _appendNote(Note note) {
+        return _appendNote(note, true);
+    }
+
+    /**
+     * Append a {@link Note} record and point the index at it
+     * @param note The {@link Note} to append
+     * @param sync TRUE to make the record durable now, FALSE when the caller syncs after a batch
+     * @return TRUE if the record was written, FALSE if it wasn't
+     */
+    private boolean _appendNote(Note note, boolean sync) {
+        var location = _append(NoteBinaryFormat.encodeRecord(note), sync);
+        if (location == NoteOffsetIndex.NOT_FOUND) {
+            return false;
+        }
+        var previous = _index.put(_parseId(note.getId()), location);
+        if (previous != NoteOffsetIndex.NOT_FOUND) {
+            _addGarbage(previous);
+        }
+        _rollIfNeeded();
+        return true;
+    }
+
+    /**
+     * Append a complete record to the newest segment
+     * @param record The record
+     * @param sync TRUE to make the record durable now, FALSE when the caller syncs after a batch
+     * @return The location of the record. {@link NoteOffsetIndex#NOT_FOUND} if it could not be written.
+     */
+    private long _append(ByteBuffer record, boolean sync) {
+        var segment = _segments.lastEntry().getValue();
+        try {
+            var position = segment._length;
+            while (record.hasRemaining()) {
+                position += segment._channel.write(record, position);
+            }
+            if (sync) {
+                _syncer.sync(segment._channel, segment._file);
+            }
+            var location = _location(segment._number, segment._length);
+            segment._length = position;
+            return location;
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.printf("Cannot append to %s%n", segment._file.getAbsolutePath());
+            return NoteOffsetIndex.NOT_FOUND;
+        }
+    }
+
+    /**
+     * Make the records appended to the newest segment by a batch durable. Segments sealed during the batch were made
+     *  durable as they were sealed.
+     */
+    private void _syncNewestSegment() {
+        var segment = _segments.lastEntry().getValue();
+        _syncer.sync(segment._channel, segment._file);
+    }
+
+    /**
+     * Seal the newest segment and start a new one once it passes the {@link PackfileNoteDataService#_segmentSize}, then
+     *  queue a merge if the sealed segments have enough old records
+     */
+    private void _rollIfNeeded() {
+        var newest = _segments.lastEntry().getValue();
+        if (newest._length >= _segmentSize) {
+            //A batch may have appended to the segment without syncing it
+            _syncer.sync(newest._channel, newest._file);
+            try {
+                _createSegment(newest._number + 1);
+                _syncer.syncDirectory(_dataDir);
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.out.printf("Cannot start a new segment after %s. Notes are still appended to it.%n", newest._file.getAbsolutePath());
+            }
+        }
+        long garbage = 0;
+        long length = 0;
+        for (var segment : _segments.headMap(_segments.lastKey()).values()) {
+            garbage += segment._garbage;
+            length += segment._length;
+        }
+        if (garbage >= _mergeThreshold && garbage * 2 >= length && _mergeQueued.compareAndSet(false, true)) {
+            _mergeExecutor.execute(() -> {
+                try {
+                    merge();
+                } finally {
+                    _mergeQueued.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Create an empty segment and make it the newest
+     * @param number The number of the segment
+     * @throws IOException Thrown when the segment cannot be created
+     */
+    private void _createSegment(int number) throws IOException {
+        var file = new File(_dataDir, _SEGMENT_FILE_PREFIX + _formatNumber(number) + _SEGMENT_FILE_EXTENSION);
+        var channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        var header = ByteBuffer.allocate(NoteBinaryFormat.HEADER_SIZE);
+        header.put(NoteBinaryFormat.MAGIC).putShort(NoteBinaryFormat.VERSION).putShort((short) 0).putInt(0).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        _syncer.sync(channel, file);
+        _segments.put(number, new Segment(number, file, channel, NoteBinaryFormat.HEADER_SIZE));
+    }
+
+    /**
+     * Count the record at a location as garbage in its segment
+     * @param location The location of the record
+     */
+    private void _addGarbage(long location) {
+        var segment = _segments.get(_segmentNumber(location));
+        if (segment != null) {
+            segment._garbage += _readRecord(location).remaining();
+        }
+    }
+
+    /**
+     * Decode the {@link Note} in the record at a location
+     * @param location The location of the record
+     * @return A {@link Note}. NULL if the record is damaged.
+     */
+    private Note _readNote(long location) {
+        var note = NoteBinaryFormat.decodeRecord(_readRecord(location));
+        if (note == null) {
+            System.out.printf("Damaged note record at offset %d in segment %d%n", _offset(location), _segmentNumber(location));
+        }
+        return note;
+    }
+
+    /**
+     * Read the complete record at a location. The first read takes {@link PackfileNoteDataService#_READ_AHEAD} bytes,
+     *  so a second read is only needed for large records.
+     * @param location The location of the record
+     * @return A {@link ByteBuffer} holding just the record
+     */
+    private ByteBuffer _readRecord(long location) {
+        var segment = _segments.get(_segmentNumber(location));
+        var offset = _offset(location);
+        var buffer = _read(segment, offset, (int) Math.min(_READ_AHEAD, segment._length - offset));
+        var size = NoteBinaryFormat.recordSize(buffer, 0);
+        if (size <= buffer.remaining()) {
+            return buffer.limit(size);
+        }
+        return _read(segment, offset, size);
+    }
+
+    /**
+     * Read a range of a segment
+     * @param segment The segment to read
+     * @param offset The offset of the range
+     * @param length The length of the range
+     * @return A {@link ByteBuffer} holding the range, positioned at its start
+     */
+    private ByteBuffer _read(Segment segment, long offset, int length) {
+        var buffer = ByteBuffer.allocate(length);
+        try {
+            var position = offset;
+            while (buffer.hasRemaining()) {
+                var read = segment._channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException(String.format("Unexpected end of file at %d", position));
+                }
+                position += read;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new RuntimeException(String.format("Cannot read file %s", segment._file.getAbsolutePath()));
+        }
+        return buffer.flip();
+    }
+
+    private void _close(Segment segment) {
+        try {
+            segment._channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.printf("Cannot close %s%n", segment._file.getAbsolutePath());
+        }
+    }
+
+    private static void _deleteQuietly(File file) {
+        if (file.exists() && !file.delete()) {
+            System.out.printf("Cannot delete %s%n", file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Pack a segment number and an offset in the segment into a single location for the index
+     */
+    private static long _location(int segmentNumber, long offset) {
+        return ((long) segmentNumber << _OFFSET_BITS) | offset;
+    }
+
+    private static int _segmentNumber(long location) {
+        return (int) (location >>> _OFFSET_BITS);
+    }
+
+    private static long _offset(long location) {
+        return location & ((1L << _OFFSET_BITS) - 1);
+    }
+
+    /**
+     * Format a segment number so the files sort in number order
+     */
+    private static String _formatNumber(int number) {
+        return String.format("%08d", number);
+    }
+
+    /**
+     * Parse a {@link Note} ID. IDs that are not UUIDs cannot be in the segments.
+     * @param id The ID
+     * @return A {@link UUID}
+     * @throws NoSuchElementException Thrown when the ID is not a UUID
+     */
+    private static UUID _parseId(String id) {
+        try {
+            return UUID.fromString(id);
+        } catch (IllegalArgumentException exception) {
+            throw new NoSuchElementException(String.format("Note with id %s not found", id));
+        }
+    }
+}
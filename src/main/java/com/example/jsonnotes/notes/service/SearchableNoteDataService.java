@@ -0,0 +1,472 @@
+package com.example.jsonnotes.notes.service;
+
+import com.example.jsonnotes.notes.Note;
+import com.example.jsonnotes.util.FileHelper;
+import com.example.jsonnotes.util.FileSyncer;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A data service for {@link Note Notes} that adds full-text search to another {@link INoteDataService}. The words of
+ *  each {@link Note}'s content and summary are kept in an inverted index that is updated as {@link Note notes} are
+ *  created, updated, and deleted through this service, so a search reads only the index entries for its own words
+ *  instead of every {@link Note}.
+ * <p>
+ * The index is built from the wrapped service when this service is created. Given an index file, it is saved by
+ *  {@link SearchableNoteDataService#flush()} and {@link SearchableNoteDataService#close()} along with the
+ *  {@link INoteDataService#getFingerprint() fingerprint} of the wrapped service, and loaded on the next start instead of
+ *  being rebuilt if the fingerprint still matches. The saved index is also deleted as soon as a change is made through
+ *  this service. A service that has no fingerprint always has its index rebuilt.
+ * <p>
+ * Changes made to the wrapped service other than through this service are not indexed until the next start.
+ * <p>
+ * The service is as safe to use from many threads as the service it wraps. Changes to the same {@link Note} are made
+ *  and indexed one after another.
+ */
+public class SearchableNoteDataService implements INoteDataService, AutoCloseable {
+
+    /**
+     * The number of {@link Note notes} read at once while building the index
+     */
+    private final static int _BUILD_PAGE_SIZE = 1000;
+    /**
+     * The first bytes of a saved search index
+     */
+    private final static int _INDEX_MAGIC = 0x4A4E5349;
+    private final static int _LOCK_STRIPES = 256;
+
+    /**
+     * The service {@link Note notes} are read from and written to
+     */
+    private final INoteDataService _dataService;
+    /**
+     * The file the index is saved to. NULL if the index is only kept in memory.
+     */
+    private final File _indexFile;
+    /**
+     * Pushes the {@link SearchableNoteDataService#_indexFile} to disk
+     */
+    private final FileSyncer _syncer = new FileSyncer();
+    /**
+     * The search index. Guarded by itself.
+     */
+    private final NoteSearchIndex _index;
+    /**
+     * TRUE while the {@link SearchableNoteDataService#_indexFile} matches the index. Guarded by the index.
+     */
+    private boolean _saved;
+    /**
+     * The number of changes written to the wrapped service but not yet indexed. Guarded by the index.
+     */
+    private int _pendingChanges = 0;
+    private final Object[] _noteLocks = new Object[_LOCK_STRIPES];
+
+    /**
+     * Create a new instance of a {@link SearchableNoteDataService} that keeps its index in memory only
+     * @param dataService The {@link INoteDataService} to search
+     */
+    public SearchableNoteDataService(INoteDataService dataService) {
+        this(dataService, null);
+    }
+
+    /**
+     * Create a new instance of a {@link SearchableNoteDataService} that saves its index to a file
+     * @param dataService The {@link INoteDataService} to search
+     * @param indexFile The {@link File} the index is saved to and loaded from. NULL to keep the index in memory only.
+     */
+    public SearchableNoteDataService(INoteDataService dataService, File indexFile) {
+        if (dataService == null) {
+            throw new IllegalArgumentException("dataService cannot be null");
+        }
+        _dataService = dataService;
+        _indexFile = indexFile;
+        for (int i = 0; i < _noteLocks.length; i++) {
+            _noteLocks[i] = new Object();
+        }
+        var savedIndex = _readIndex();
+        _saved = savedIndex != null;
+        _index = _saved ? savedIndex : _buildIndex();
+    }
+
+    /**
+     * Get the {@link INoteDataService} this service searches
+     * @return The wrapped {@link INoteDataService}
+     */
+    public INoteDataService getDataService() {
+        return _dataService;
+    }
+
+    /**
+     * Get the {@link FileSyncer} that pushes the index file to disk. The wrapped service syncs its own files.
+     * @return A {@link FileSyncer}
+     */
+    public FileSyncer getFileSyncer() {
+        return _syncer;
+    }
+
+    /**
+     * Find the {@link Note notes} whose content or summary best match a query. Words are matched whole and without
+     *  regard to case, and are ranked by how often they appear in a {@link Note} and how rare they are across all
+     *  {@link Note notes}. A word in the summary counts for more than a word in the content.
+     * @param query The words to search for
+     * @param mode Whether a {@link Note} must contain all of the words or any of them
+     * @param limit The largest number of {@link Note notes} to return. Must be at least 1.
+     * @return The matching {@link Note notes}, best match first
+     */
+    public List<Note> search(String query, NoteSearchMode mode, int limit) {
+        if (query == null) {
+            throw new IllegalArgumentException("query cannot be null");
+        }
+        if (mode == null) {
+            throw new IllegalArgumentException("mode cannot be null");
+        }
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be at least 1");
+        }
+        List<String> ids;
+        synchronized (_index) {
+            ids = _index.search(query, mode, limit);
+        }
+        var notes = new ArrayList<Note>(ids.size());
+        for (var id : ids) {
+            try {
+                var note = _dataService.getNoteById(id);
+                if (note != null) {
+                    notes.add(note);
+                }
+            } catch (NoSuchElementException e) {
+                //Deleted since the search - leave it out
+            }
+        }
+        return notes;
+    }
+
+    /**
+     * Get the number of {@link Note notes} in the search index
+     * @return The number of indexed {@link Note notes}
+     */
+    public int getIndexedNoteCount() {
+        synchronized (_index) {
+            return _index.size();
+        }
+    }
+
+    /**
+     * Save the index to the index file, so the next start can load it instead of rebuilding it. Changes the wrapped
+     *  service keeps in memory should be written out first, or its fingerprint will not match on the next start.
+     * @return TRUE if the index was saved or is already saved, FALSE if it wasn't, there is no index file, the wrapped
+     *  service has no fingerprint, or changes are being made
+     */
+    public boolean flush() {
+        if (_indexFile == null) {
+            return false;
+        }
+        synchronized (_index) {
+            if (_saved) {
+                return true;
+            }
+            if (_pendingChanges > 0) {
+                //A change is written but not indexed - the fingerprint would already include it
+                return false;
+            }
+            var fingerprint = _dataService.getFingerprint();
+            if (fingerprint == null) {
+                return false;
+            }
+            var noteCount = _index.size();
+            _saved = FileHelper.replaceFileData(_indexFile, output -> {
+                var dataOutput = new DataOutputStream(output);
+                dataOutput.writeInt(_INDEX_MAGIC);
+                dataOutput.writeInt(noteCount);
+                var fingerprintBytes = fingerprint.getBytes(StandardCharsets.UTF_8);
+                dataOutput.writeInt(fingerprintBytes.length);
+                dataOutput.write(fingerprintBytes);
+                _index.write(dataOutput);
+                dataOutput.flush();
+            }, _syncer);
+            if (!_saved) {
+                System.out.printf("Cannot save note search index %s. It will be rebuilt on the next start.%n", _indexFile.getAbsolutePath());
+            }
+            return _saved;
+        }
+    }
+
+    /**
+     * Save the index to the index file, if there is one, and sync any writes still waiting for a batched sync
+     */
+    @Override
+    public void close() {
+        flush();
+        _syncer.close();
+    }
+
+    @Override
+    public String createNote() {
+        return createNote("");
+    }
+
+    @Override
+    public String createNote(String content) {
+        return createNote(new Note(content));
+    }
+
+    @Override
+    public String createNote(Note note) {
+        if (note == null) {
+            throw new IllegalArgumentException("note cannot be null");
+        }
+        _beginChange();
+        try {
+            var id = _dataService.createNote(note);
+            if (id != null) {
+                synchronized (_getNoteLock(id)) {
+                    _indexNote(id, note);
+                }
+            }
+            return id;
+        } finally {
+            _endChange();
+        }
+    }
+
+    @Override
+    public List<String> createNotes(Collection<Note> notes) {
+        NoteBatch.checkNotes(notes);
+        _beginChange();
+        try {
+            var noteList = new ArrayList<>(notes);
+            var ids = _dataService.createNotes(noteList);
+            synchronized (_index) {
+                for (int i = 0; i < ids.size(); i++) {
+                    if (ids.get(i) != null) {
+                        _index.put(ids.get(i), noteList.get(i).getContent(), noteList.get(i).getSummary());
+                    }
+                }
+            }
+            return ids;
+        } finally {
+            _endChange();
+        }
+    }
+
+    @Override
+    public List<Note> getAllNotes() {
+        return _dataService.getAllNotes();
+    }
+
+    @Override
+    public NotePage getNotes(String cursor, int limit) {
+        return _dataService.getNotes(cursor, limit);
+    }
+
+    @Override
+    public int getNoteCount() {
+        return _dataService.getNoteCount();
+    }
+
+    @Override
+    public String getFingerprint() {
+        return _dataService.getFingerprint();
+    }
+
+    @Override
+    public Note getNoteById(String id) {
+        return _dataService.getNoteById(id);
+    }
+
+    @Override
+    public Note updateNote(Note upNote) {
+        if (upNote == null) {
+            throw new IllegalArgumentException("upNote cannot be null");
+        }
+        var id = upNote.getId();
+        _beginChange();
+        try {
+            //Hold the lock from the write to the index update so the index ends with the last update made
+            synchronized (_getNoteLock(id)) {
+                var updated = _dataService.updateNote(upNote);
+                if (updated != null) {
+                    _indexNote(id, updated);
+                }
+                return updated;
+            }
+        } finally {
+            _endChange();
+        }
+    }
+
+    @Override
+    public List<Note> updateNotes(Collection<Note> notes) {
+        NoteBatch.checkNotes(notes);
+        _beginChange();
+        try {
+            var updated = _dataService.updateNotes(notes);
+            synchronized (_index) {
+                for (var note : updated) {
+                    if (note != null) {
+                        _index.put(note.getId(), note.getContent(), note.getSummary());
+                    }
+                }
+            }
+            return updated;
+        } finally {
+            _endChange();
+        }
+    }
+
+    @Override
+    public boolean deleteNoteById(String id) {
+        if (id == null || id.equals("")) {
+            throw new IllegalArgumentException("id cannot be blank");
+        }
+        _beginChange();
+        try {
+            synchronized (_getNoteLock(id)) {
+                var deleted = _dataService.deleteNoteById(id);
+                synchronized (_index) {
+                    _index.remove(id);
+                }
+                return deleted;
+            }
+        } finally {
+            _endChange();
+        }
+    }
+
+    @Override
+    public List<Boolean> deleteNotesByIds(Collection<String> ids) {
+        NoteBatch.checkIds(ids);
+        _beginChange();
+        try {
+            var idList = new ArrayList<>(ids);
+            var deleted = _dataService.deleteNotesByIds(idList);
+            synchronized (_index) {
+                idList.forEach(_index::remove);
+            }
+            return deleted;
+        } finally {
+            _endChange();
+        }
+    }
+
+    @Override
+    public void deleteAllNotes() {
+        _beginChange();
+        try {
+            _dataService.deleteAllNotes();
+            synchronized (_index) {
+                _index.clear();
+            }
+        } finally {
+            _endChange();
+        }
+    }
+
+    /**
+     * Index the words of every {@link Note} in the wrapped service, a page at a time
+     * @return A {@link NoteSearchIndex} of every {@link Note}
+     */
+    private NoteSearchIndex _buildIndex() {
+        var index = new NoteSearchIndex();
+        String cursor = null;
+        do {
+            var page = _dataService.getNotes(cursor, _BUILD_PAGE_SIZE);
+            for (var note : page.getNotes()) {
+                index.put(note.getId(), note.getContent(), note.getSummary());
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return index;
+    }
+
+    /**
+     * Load the saved index, if there is one and it was saved with the wrapped service's current fingerprint
+     * @return The saved {@link NoteSearchIndex}. NULL if it must be built.
+     */
+    private NoteSearchIndex _readIndex() {
+        if (_indexFile == null || !_indexFile.isFile()) {
+            return null;
+        }
+        var fingerprint = _dataService.getFingerprint();
+        if (fingerprint == null) {
+            return null;
+        }
+        try (var input = new DataInputStream(new BufferedInputStream(FileHelper.openInputStream(_indexFile), FileHelper.STREAM_BUFFER_SIZE))) {
+            if (input.readInt() != _INDEX_MAGIC || input.readInt() != _dataService.getNoteCount()) {
+                return null;
+            }
+            var fingerprintBytes = new byte[fingerprint.getBytes(StandardCharsets.UTF_8).length];
+            if (input.readInt() != fingerprintBytes.length) {
+                return null;
+            }
+            input.readFully(fingerprintBytes);
+            if (!fingerprint.equals(new String(fingerprintBytes, StandardCharsets.UTF_8))) {
+                System.out.printf("Note search index %s is out of date - rebuilding it.%n", _indexFile.getAbsolutePath());
+                return null;
+            }
+            return NoteSearchIndex.read(input);
+        } catch (IOException e) {
+            System.out.printf("Cannot read note search index %s - rebuilding it.%n", _indexFile.getAbsolutePath());
+            return null;
+        }
+    }
+
+    /**
+     * Start a change to the wrapped service. The saved index is deleted before the first change after it was saved, so
+     *  it cannot be loaded once it is out of date.
+     */
+    private void _beginChange() {
+        synchronized (_index) {
+            _pendingChanges++;
+            if (!_saved) {
+                return;
+            }
+            //The index must be saved again even if the file cannot be deleted - its fingerprint no longer matches
+            _saved = false;
+            if (_indexFile.exists() && !_indexFile.delete()) {
+                System.out.printf("Cannot delete out of date note search index %s%n", _indexFile.getAbsolutePath());
+                return;
+            }
+            _syncer.syncDirectory(_indexFile.getAbsoluteFile().getParentFile());
+        }
+    }
+
+    /**
+     * Finish a change to the wrapped service once it is indexed
+     */
+    private void _endChange() {
+        synchronized (_index) {
+            _pendingChanges--;
+        }
+    }
+
+    /**
+     * Index a {@link Note} under an ID
+     * @param id The ID the {@link Note} is saved under
+     * @param note The {@link Note} holding the content and summary to index
+     */
+    private void _indexNote(String id, Note note) {
+        synchronized (_index) {
+            _index.put(id, note.getContent(), note.getSummary());
+        }
+    }
+
+    /**
+     * Get the lock that orders the changes to a {@link Note} with their index updates
+     * @param id The ID of the {@link Note}
+     * @return The lock to synchronize on
+     */
+    private Object _getNoteLock(String id) {
+        var hash = id.hashCode();
+        return _noteLocks[(hash ^ (hash >>> 16)) & (_noteLocks.length - 1)];
+    }
+}
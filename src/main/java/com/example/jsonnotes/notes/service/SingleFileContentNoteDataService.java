@@ -1,11 +1,18 @@
 package com.example.jsonnotes.notes.service;
 
 import com.example.jsonnotes.notes.Note;
+import com.example.jsonnotes.util.FileHelper;
 import com.example.jsonnotes.util.NoteHelper;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Consumer;
 
 public class SingleFileContentNoteDataService extends SingleFileNoteDataService {
 
@@ -39,6 +46,15 @@ public class SingleFileContentNoteDataService extends SingleFileNoteDataService
         super(dataPath);
     }
 
+    /**
+     * Create a new instance of a {@link SingleFileContentNoteDataService} pointing at a specific path
+     * @param dataPath Absolute path to the directory where the {@link SingleFileNoteDataService#_notesFile} will be located
+     * @param journaled When TRUE, changes are appended to a journal instead of rewriting the whole file
+     */
+    public SingleFileContentNoteDataService(String dataPath, boolean journaled) throws RuntimeException {
+        super(dataPath, journaled);
+    }
+
     @Override
     protected List<Note> getNotesFromFileData(String fileData) {
         //Initialize a new list of Notes
@@ -52,6 +68,13 @@ public class SingleFileContentNoteDataService extends SingleFileNoteDataService
         return NoteHelper.getNotesFromDataString(fileData);
     }
 
+    @Override
+    protected void readNotes(InputStream input, Consumer<Note> noteConsumer) throws IOException {
+        //Decode a note at a time as the file streams in, instead of joining the whole file into one String first
+        var reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8), FileHelper.STREAM_BUFFER_SIZE);
+        NoteHelper.readNotesFromDataStream(reader, noteConsumer);
+    }
+
     @Override
     protected String getFileDataFromNotes(List<Note> notes) {
         //Initialize an empty data string
@@ -2,14 +2,34 @@ package com.example.jsonnotes.notes.service;
 
 import com.example.jsonnotes.notes.Note;
 import com.example.jsonnotes.util.FileHelper;
+import com.example.jsonnotes.util.FileSyncer;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
- * A data service for {@link Note Notes} that stores all data in a single {@link File}
+ * A data service for {@link Note Notes} that stores all data in a single {@link File}. The file may be GZIP compressed -
+ *  compressed files are recognized by their magic bytes when read, so compressed and uncompressed stores are both
+ *  loaded without any configuration. Content repeated across {@link Note notes} may be stored once next to the file -
+ *  see {@link SingleFileNoteDataService#setDeduplicated(boolean)}.
  */
 public abstract class SingleFileNoteDataService implements INoteDataService {
 
@@ -17,35 +37,381 @@ public abstract class SingleFileNoteDataService implements INoteDataService {
      * The name of the file that contains {@link Note notes}
      */
     protected final static String _NOTES_FILE_NAME = "notes.txt";
+    /**
+     * The default journal size, in bytes, at which the journal is folded back into the {@link SingleFileNoteDataService#_notesFile}
+     */
+    public final static long DEFAULT_COMPACTION_THRESHOLD = 1024 * 1024;
+    /**
+     * The default longest time, in milliseconds, a change waits in memory when write-behind is on
+     */
+    public final static long DEFAULT_WRITE_BEHIND_DELAY_MILLIS = 1000;
+    /**
+     * The default number of pending changes that triggers a write-behind flush without waiting for the delay
+     */
+    public final static int DEFAULT_WRITE_BEHIND_MAX_CHANGES = 1000;
+    /**
+     * Runs journal compactions in the background so they do not hold up the caller
+     */
+    private final static ExecutorService _compactionExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        var thread = new Thread(runnable, "notes-journal-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * Runs delayed write-behind flushes for every {@link SingleFileNoteDataService}
+     */
+    private final static ScheduledExecutorService _flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "notes-write-behind");
+        thread.setDaemon(true);
+        return thread;
+    });
     /**
      * The file that contains the {@link Note notes}
      */
     protected final File _notesFile;
     /**
-     * A collection of the notes managed by this service. {@link Note} data is supplied from this collection when read.
+     * Pushes the files written by this service to disk
+     */
+    private final FileSyncer _syncer = new FileSyncer();
+    /**
+     * The journal that changes are appended to when the service is journaled
+     */
+    protected final NoteJournal _journal;
+    /**
+     * The file a journal is moved to while it is being folded into the {@link SingleFileNoteDataService#_notesFile}
+     */
+    private final File _compactingJournalFile;
+    /**
+     * When TRUE, changes are appended to the {@link SingleFileNoteDataService#_journal} instead of rewriting the
+     *  {@link SingleFileNoteDataService#_notesFile}
+     */
+    private final boolean _journaled;
+    /**
+     * The journal size, in bytes, at which the journal is folded back into the {@link SingleFileNoteDataService#_notesFile}
+     */
+    private long _compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+    /**
+     * TRUE while a background compaction is waiting to run or running
+     */
+    private final AtomicBoolean _compactionQueued = new AtomicBoolean(false);
+    /**
+     * Held for the duration of a compaction so only one runs at a time
+     */
+    private final Object _compactionLock = new Object();
+    /**
+     * The longest time, in milliseconds, a change waits in memory before the {@link SingleFileNoteDataService#_notesFile}
+     *  is rewritten. 0 when write-behind is off and every change rewrites the file immediately.
+     */
+    private long _writeBehindDelayMillis = 0;
+    /**
+     * The number of pending changes that triggers a write-behind flush without waiting for the delay
+     */
+    private int _writeBehindMaxChanges = Integer.MAX_VALUE;
+    /**
+     * The number of changes made since the {@link SingleFileNoteDataService#_notesFile} was last written
+     */
+    private int _pendingChanges = 0;
+    /**
+     * The flush waiting to run. NULL when no flush is scheduled.
+     */
+    private ScheduledFuture<?> _scheduledFlush;
+    /**
+     * When TRUE, the {@link SingleFileNoteDataService#_notesFile} is written GZIP compressed. Set when a compressed file
+     *  is loaded, so a compressed store stays compressed.
+     */
+    private volatile boolean _compressed = false;
+    /**
+     * Stores long {@link Note} content once for every {@link Note} that has it
+     */
+    private final NoteBodyStore _bodies;
+    /**
+     * When TRUE, long content is written to the {@link SingleFileNoteDataService#_bodies} and the
+     *  {@link SingleFileNoteDataService#_notesFile} refers to it. Set when a file that refers to bodies is loaded.
+     */
+    private volatile boolean _deduplicated = false;
+    /**
+     * A collection of the notes managed by this service, in order of ID. {@link Note} data is supplied from this collection when read.
      * Updates to the {@link Note notes} in this collection will cause the {@link SingleFileNoteDataService#_notesFile} to be rewritten.
      */
-    protected Map<String, Note> _notes = new HashMap<>();
+    protected NavigableMap<String, Note> _notes = new TreeMap<>();
 
     /**
      * Create a new instance of a {@link SingleFileNoteDataService} pointing at a specific path
      * @exception RuntimeException thrown when the SingleFileNoteDataService cannot be created
      */
     SingleFileNoteDataService(String dataPath) throws RuntimeException {
-        _notesFile = Path.of(dataPath, _NOTES_FILE_NAME).toFile();
+        this(dataPath, false);
+    }
+
+    /**
+     * Create a new instance of a {@link SingleFileNoteDataService} pointing at a specific path
+     * @param dataPath Absolute path to the directory where the {@link SingleFileNoteDataService#_notesFile} will be located
+     * @param journaled When TRUE, changes are appended to a journal next to the {@link SingleFileNoteDataService#_notesFile}
+     *                  and folded back into it in the background. When FALSE, every change rewrites the file.
+     * @exception RuntimeException thrown when the SingleFileNoteDataService cannot be created
+     */
+    SingleFileNoteDataService(String dataPath, boolean journaled) throws RuntimeException {
+        this(dataPath, _NOTES_FILE_NAME, journaled);
+    }
+
+    /**
+     * Create a new instance of a {@link SingleFileNoteDataService} that keeps its {@link Note notes} in a file with a
+     *  specific name. The journal files are named after the notes file, so stores with different file names can share
+     *  a directory.
+     * @param dataPath Absolute path to the directory where the {@link SingleFileNoteDataService#_notesFile} will be located
+     * @param notesFileName The name of the {@link SingleFileNoteDataService#_notesFile}
+     * @param journaled When TRUE, changes are appended to a journal next to the {@link SingleFileNoteDataService#_notesFile}
+     *                  and folded back into it in the background. When FALSE, every change rewrites the file.
+     * @exception RuntimeException thrown when the SingleFileNoteDataService cannot be created
+     */
+    SingleFileNoteDataService(String dataPath, String notesFileName, boolean journaled) throws RuntimeException {
+        if (notesFileName == null || notesFileName.equals("")) {
+            throw new IllegalArgumentException("notesFileName cannot be blank");
+        }
+        //notes.txt keeps its journal in notes.journal, and moves it to notes.journal.compacting while compacting
+        var extensionIndex = notesFileName.lastIndexOf('.');
+        var baseName = extensionIndex > 0 ? notesFileName.substring(0, extensionIndex) : notesFileName;
+        _notesFile = Path.of(dataPath, notesFileName).toFile();
+        _journal = new NoteJournal(Path.of(dataPath, baseName + ".journal").toFile(), _syncer);
+        _compactingJournalFile = Path.of(dataPath, baseName + ".journal.compacting").toFile();
+        _bodies = new NoteBodyStore(Path.of(dataPath, baseName + ".bodies").toFile(), _syncer);
+        _journaled = journaled;
         try {
             if (!_notesFile.createNewFile()) {
                 //file already exists so we should try to load notes
                 _readNotesFromFile();
             } else {
                 //file was created - initialize an empty collection of notes
-                _notes = new HashMap<>();
+                _notes = new TreeMap<>();
             }
         } catch (IOException | SecurityException exception) {
             exception.printStackTrace();
             System.out.printf("Error while creating/accessing new instance of SingleFileNoteDataService. %s is not accessible./n", _notesFile.getAbsolutePath());
             throw new RuntimeException(String.format("Cannot access file %s/n", _notesFile.getAbsolutePath()));
         }
+        //Apply any changes that were journaled after the notes file was last written
+        var replayed = NoteJournal.replay(_compactingJournalFile, _notes) + NoteJournal.replay(_journal.getFile(), _notes);
+        if (_deduplicated) {
+            _countBodies();
+        }
+        if (replayed > 0 && !_journaled) {
+            //Without a journal, every write replaces the notes file - fold the journal in now so it is not replayed over newer data
+            compact();
+        } else {
+            _compactIfNeeded();
+        }
+    }
+
+    /**
+     * Check if changes are appended to a journal rather than rewriting the {@link SingleFileNoteDataService#_notesFile}
+     * @return TRUE if the service is journaled, FALSE if it isn't
+     */
+    public boolean isJournaled() {
+        return _journaled;
+    }
+
+    /**
+     * Get the {@link FileSyncer} that pushes the files written by this service to disk. Set its
+     *  {@link FileSyncer.Durability} to choose how much recent work a crash can lose.
+     * @return A {@link FileSyncer}
+     */
+    public FileSyncer getFileSyncer() {
+        return _syncer;
+    }
+
+    /**
+     * Get the journal size at which the journal is folded back into the {@link SingleFileNoteDataService#_notesFile}
+     * @return The compaction threshold in bytes
+     */
+    public long getCompactionThreshold() {
+        return _compactionThreshold;
+    }
+
+    /**
+     * Set the journal size at which the journal is folded back into the {@link SingleFileNoteDataService#_notesFile}
+     * @param compactionThreshold The compaction threshold in bytes
+     */
+    public void setCompactionThreshold(long compactionThreshold) {
+        if (compactionThreshold <= 0) {
+            throw new IllegalArgumentException("compactionThreshold must be greater than 0");
+        }
+        _compactionThreshold = compactionThreshold;
+    }
+
+    /**
+     * Check if the {@link SingleFileNoteDataService#_notesFile} is written GZIP compressed
+     * @return TRUE if the file is compressed, FALSE if it isn't
+     */
+    public boolean isCompressed() {
+        return _compressed;
+    }
+
+    /**
+     * Turn GZIP compression of the {@link SingleFileNoteDataService#_notesFile} on or off. The file is rewritten in the
+     *  new form straight away. The journal of a journaled service is never compressed - it is folded into the file by
+     *  the rewrite.
+     * @param compressed TRUE to compress the file, FALSE to write it uncompressed
+     * @return TRUE if the file was rewritten or already had the requested form, FALSE if it could not be rewritten
+     */
+    public boolean setCompressed(boolean compressed) {
+        if (_compressed == compressed) {
+            return true;
+        }
+        _compressed = compressed;
+        if (_journaled) {
+            return compact();
+        }
+        synchronized (this) {
+            //Rewrite through a flush so any write-behind changes go out with it
+            _pendingChanges++;
+            return flush();
+        }
+    }
+
+    /**
+     * Check if content repeated across {@link Note notes} is stored once
+     * @return TRUE if long content is stored once and the {@link SingleFileNoteDataService#_notesFile} refers to it
+     */
+    public boolean isDeduplicated() {
+        return _deduplicated;
+    }
+
+    /**
+     * Turn deduplication of {@link Note} content on or off. With deduplication on, content of at least
+     *  {@link NoteBodyStore#MIN_BODY_LENGTH} characters is stored once in a {@code .bodies} directory named after the
+     *  {@link SingleFileNoteDataService#_notesFile}, keyed by its SHA-256 hash, and the file holds only the hash. Every
+     *  {@link Note} in memory with the same content shares a single String, so both disk and heap use grow with the
+     *  distinct content rather than the number of {@link Note notes}. Each body counts the {@link Note notes} that refer
+     *  to it and is deleted once none do and the file no longer refers to it.
+     * <p>
+     * The file is rewritten in the new form straight away. The journal of a journaled service always holds content in
+     *  full - it is folded into the file by the rewrite.
+     * @param deduplicated TRUE to store repeated content once, FALSE to write content in full
+     * @return TRUE if the file was rewritten or already had the requested form, FALSE if it could not be rewritten
+     */
+    public boolean setDeduplicated(boolean deduplicated) {
+        synchronized (this) {
+            if (_deduplicated == deduplicated) {
+                return true;
+            }
+            _deduplicated = deduplicated;
+            _countBodies();
+        }
+        if (_journaled) {
+            return compact();
+        }
+        synchronized (this) {
+            //Rewrite through a flush so any write-behind changes go out with it
+            _pendingChanges++;
+            return flush();
+        }
+    }
+
+    /**
+     * Check if changes are held in memory and written to the {@link SingleFileNoteDataService#_notesFile} in batches
+     * @return TRUE if write-behind is on, FALSE if every change rewrites the file
+     */
+    public synchronized boolean isWriteBehind() {
+        return _writeBehindDelayMillis > 0;
+    }
+
+    /**
+     * Get the longest time a change waits in memory before the {@link SingleFileNoteDataService#_notesFile} is rewritten
+     * @return The delay in milliseconds. 0 when write-behind is off.
+     */
+    public synchronized long getWriteBehindDelayMillis() {
+        return _writeBehindDelayMillis;
+    }
+
+    /**
+     * Get the number of pending changes that triggers a write-behind flush without waiting for the delay
+     * @return The maximum number of pending changes
+     */
+    public synchronized int getWriteBehindMaxChanges() {
+        return _writeBehindMaxChanges;
+    }
+
+    /**
+     * Turn write-behind on or off. With write-behind on, changes update the in-memory {@link Note notes} immediately and
+     *  a background flush rewrites the {@link SingleFileNoteDataService#_notesFile} once for all the changes made since
+     *  the last write. A change is written no later than {@code maxDelayMillis} after it is made, or sooner once
+     *  {@code maxPendingChanges} changes are waiting. Changes that have not been flushed are lost if the process exits
+     *  without calling {@link SingleFileNoteDataService#flush()}.
+     * <p>
+     * Write-behind only applies when the service is not journaled - journaled changes are already cheap to write.
+     * @param maxDelayMillis The longest time a change may wait before it is written. 0 turns write-behind off and
+     *                       flushes any pending changes.
+     * @param maxPendingChanges The number of pending changes that triggers a flush without waiting for the delay
+     */
+    public void setWriteBehind(long maxDelayMillis, int maxPendingChanges) {
+        if (maxDelayMillis < 0) {
+            throw new IllegalArgumentException("maxDelayMillis cannot be negative");
+        }
+        if (maxPendingChanges < 1) {
+            throw new IllegalArgumentException("maxPendingChanges must be at least 1");
+        }
+        if (maxDelayMillis > 0 && _journaled) {
+            throw new IllegalStateException("Write-behind cannot be used with a journaled service");
+        }
+        synchronized (this) {
+            _writeBehindDelayMillis = maxDelayMillis;
+            _writeBehindMaxChanges = maxPendingChanges;
+            if (maxDelayMillis > 0) {
+                return;
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Write any changes that are waiting for a write-behind flush to the {@link SingleFileNoteDataService#_notesFile}
+     *  now. Call before the process exits so no changes are lost.
+     * @return TRUE if there was nothing to write or the file was written, FALSE if the file could not be written
+     */
+    public synchronized boolean flush() {
+        if (_scheduledFlush != null) {
+            _scheduledFlush.cancel(false);
+            _scheduledFlush = null;
+        }
+        if (_pendingChanges == 0) {
+            return true;
+        }
+        var changes = _pendingChanges;
+        _pendingChanges = 0;
+        if (!_writeNotesToFile()) {
+            //Keep the changes pending so the next flush tries again
+            _pendingChanges += changes;
+            _scheduleFlush();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Fold the journal into the {@link SingleFileNoteDataService#_notesFile}. The journal is moved aside, a snapshot of
+     *  all {@link Note notes} is written, and then the moved journal is deleted. Changes made while the snapshot is being
+     *  written go to a new journal.
+     * @return TRUE if the snapshot was written, FALSE if it wasn't
+     */
+    public boolean compact() {
+        synchronized (_compactionLock) {
+            List<Note> snapshot;
+            synchronized (this) {
+                if (!_journal.roll(_compactingJournalFile)) {
+                    return false;
+                }
+                //Copy the notes - updates modify the cached instances in place
+                snapshot = _notes.values().stream().map(Note::duplicate).toList();
+            }
+            if (!_writeNotesToFile(snapshot)) {
+                //Keep the moved journal - it is replayed on the next load and folded in by the next compaction
+                return false;
+            }
+            if (_compactingJournalFile.exists() && !_compactingJournalFile.delete()) {
+                System.out.printf("Cannot delete compacted journal %s.%n", _compactingJournalFile.getAbsolutePath());
+            }
+            return true;
+        }
     }
 
     @Override
@@ -54,38 +420,75 @@ public abstract class SingleFileNoteDataService implements INoteDataService {
     }
 
     @Override
-    public String createNote(String content) {
+    public synchronized String createNote(String content) {
         //Create new note
         var note = new Note(content);
+        _acquireBody(note);
         //Store note in cache
         _notes.put(note.getId(), note);
-        //Rewrite notes file
-        _writeNotesToFile();
+        //Persist the new note
+        _persistPut(note);
         //Return ID of new note
         return note.getId();
     }
 
     @Override
-    public String createNote(Note note) {
+    public synchronized String createNote(Note note) {
         //Create new note
         var trueNote = new Note();
         trueNote.copyValues(note);
+        _acquireBody(trueNote);
         //Store note in cache
         _notes.put(trueNote.getId(), trueNote);
-        //Rewrite notes file
-        _writeNotesToFile();
+        //Persist the new note
+        _persistPut(trueNote);
         //Return ID of new note
         return trueNote.getId();
     }
 
+    /**
+     * Create several {@link Note Notes} at once. The whole batch is persisted together - one journal append, or one
+     *  rewrite of the {@link SingleFileNoteDataService#_notesFile} - however many {@link Note Notes} it holds.
+     * @param notes The {@link Note} data to save
+     * @return The ID of each new {@link Note}, in the order they were given. All NULL if the batch could not be written.
+     */
+    @Override
+    public synchronized List<String> createNotes(Collection<Note> notes) {
+        NoteBatch.checkNotes(notes);
+        var created = new ArrayList<Note>(notes.size());
+        for (var note : notes) {
+            var trueNote = new Note();
+            trueNote.copyValues(note);
+            _acquireBody(trueNote);
+            _notes.put(trueNote.getId(), trueNote);
+            created.add(trueNote);
+        }
+        if (!_persistPuts(created)) {
+            //The notes are in memory, but the file may not hold them
+            return Collections.nCopies(created.size(), null);
+        }
+        return created.stream().map(Note::getId).toList();
+    }
+
     @Override
-    public List<Note> getAllNotes() {
+    public synchronized List<Note> getAllNotes() {
         //There is no need to check the file. The cache SHOULD be accurate for reads
         return _notes.values().stream().toList();
     }
 
     @Override
-    public Note getNoteById(String id) {
+    public synchronized NotePage getNotes(String cursor, int limit) {
+        var after = NotePage.startAfter(cursor, limit);
+        var notes = new ArrayList<Note>(Math.min(limit, 1024));
+        var remaining = (after == null ? _notes : _notes.tailMap(after, false)).values().iterator();
+        while (notes.size() < limit && remaining.hasNext()) {
+            notes.add(remaining.next());
+        }
+        return new NotePage(notes, remaining.hasNext());
+    }
+
+    @Override
+    public synchronized Note getNoteById(String id) {
         if (id == null || id.equals("")) {
             throw new IllegalArgumentException("id cannot be blank");
         }
@@ -97,7 +500,7 @@ public abstract class SingleFileNoteDataService implements INoteDataService {
     }
 
     @Override
-    public int getNoteCount() {
+    public synchronized int getNoteCount() {
         //There is no need to check the file. The cache SHOULD be accurate for reads
         if (_notes == null) {
             return 0;
@@ -105,55 +508,190 @@ public abstract class SingleFileNoteDataService implements INoteDataService {
         return _notes.size();
     }
 
+    /**
+     * Describe the notes file and the journal. Changes still waiting to be written behind are not part of it until they
+     *  are written.
+     */
+    @Override
+    public synchronized String getFingerprint() {
+        return FileHelper.getFingerprint(_notesFile, _journal.getFile(), _compactingJournalFile);
+    }
+
     @Override
-    public Note updateNote(Note upNote) {
+    public synchronized Note updateNote(Note upNote) {
         if (upNote == null) {
             throw new IllegalArgumentException("upNote cannot be null");
         }
         //Get the currently saved note
         var curNote = getNoteById(upNote.getId());
+        var previousContent = curNote.getContent();
         //copy the values from the updated note into the current note
         curNote.copyValues(upNote);
+        _acquireBody(curNote);
+        _releaseBody(previousContent);
         //Save the current note to cache
         _notes.put(upNote.getId(), curNote);
-        //Rewrite notes file
-        _writeNotesToFile();
+        //Persist the updated note
+        _persistPut(curNote);
         return curNote;
     }
 
+    /**
+     * Update several {@link Note Notes} at once. The whole batch is persisted together - one journal append, or one
+     *  rewrite of the {@link SingleFileNoteDataService#_notesFile}.
+     * @param notes The {@link Note Notes} to update
+     * @return The updated {@link Note Notes}, in the order they were given. NULL for a {@link Note} that does not exist,
+     *  and all NULL if the batch could not be written.
+     */
+    @Override
+    public synchronized List<Note> updateNotes(Collection<Note> notes) {
+        NoteBatch.checkNotes(notes);
+        var updated = new ArrayList<Note>(notes.size());
+        var changed = new ArrayList<Note>(notes.size());
+        for (var upNote : notes) {
+            var curNote = _notes.get(upNote.getId());
+            if (curNote == null) {
+                updated.add(null);
+                continue;
+            }
+            var previousContent = curNote.getContent();
+            curNote.copyValues(upNote);
+            _acquireBody(curNote);
+            _releaseBody(previousContent);
+            updated.add(curNote);
+            changed.add(curNote);
+        }
+        if (!changed.isEmpty() && !_persistPuts(changed)) {
+            //The changes are in memory, but the file may not hold them
+            Collections.fill(updated, null);
+        }
+        return updated;
+    }
+
     @Override
-    public boolean deleteNoteById(String id) {
+    public synchronized boolean deleteNoteById(String id) {
         if (id == null || id.equals("")) {
             throw new IllegalArgumentException("id cannot be blank");
         }
         //Remove the note from the cache
-        _notes.remove(id);
+        var removed = _notes.remove(id);
+        if (removed != null) {
+            _releaseBody(removed.getContent());
+        }
+        if (_journaled) {
+            //Record the deletion in the journal
+            var written = _journal.appendDelete(id);
+            _compactIfNeeded();
+            return written;
+        }
         //Rewrite the notes file
-        return _writeNotesToFile();
+        return _persistSnapshot();
     }
 
+    /**
+     * Delete several {@link Note Notes} at once. The whole batch is persisted together - one journal append, or one
+     *  rewrite of the {@link SingleFileNoteDataService#_notesFile}.
+     * @param ids The IDs of the {@link Note Notes} to delete
+     * @return For each ID, in the order they were given, TRUE if the note was deleted and FALSE if it wasn't
+     */
     @Override
-    public void deleteAllNotes() {
+    public synchronized List<Boolean> deleteNotesByIds(Collection<String> ids) {
+        NoteBatch.checkIds(ids);
+        var removedIds = new ArrayList<String>(ids.size());
+        var removed = new ArrayList<Boolean>(ids.size());
+        for (var id : ids) {
+            var note = _notes.remove(id);
+            if (note != null) {
+                _releaseBody(note.getContent());
+                removedIds.add(id);
+            }
+            removed.add(note != null);
+        }
+        if (removedIds.isEmpty()) {
+            return removed;
+        }
+        boolean written;
+        if (_journaled) {
+            written = _journal.appendDeletes(removedIds);
+            _compactIfNeeded();
+        } else {
+            written = _persistSnapshot(removedIds.size());
+        }
+        if (!written) {
+            //The notes are gone from memory, but the file may still hold them
+            Collections.fill(removed, false);
+        }
+        return removed;
+    }
+
+    @Override
+    public synchronized void deleteAllNotes() {
+        if (_journaled) {
+            //A single journal record clears everything - the next compaction empties the notes file
+            if (!_journal.appendClear()) {
+                System.out.println("Error while deleting notes. They may still be in memory.");
+            }
+            _notes = new TreeMap<>();
+            _bodies.recount(List.of());
+            _compactIfNeeded();
+            return;
+        }
+        if (isWriteBehind()) {
+            //The next flush writes an empty file
+            _notes = new TreeMap<>();
+            _bodies.recount(List.of());
+            _persistSnapshot();
+            return;
+        }
         //The easiest way to delete all the notes saved  to file is to replace the file data with nothing
-        if (!FileHelper.replaceFileData(_notesFile, "")) {
+        if (!FileHelper.replaceFileData(_notesFile, "", _syncer)) {
             System.out.println("Error while deleting notes. They may still be in memory.");
+        } else {
+            _bodies.recount(List.of());
+            _deleteUnreferencedBodies(Set.of());
         }
         //Clear the cache
-        _notes = new HashMap<>();
+        _notes = new TreeMap<>();
     }
 
     /**
      * Load all {@link Note Notes} from the configured {@link SingleFileNoteDataService#_notesFile}
+     * @throws IOException Thrown when the file cannot be read
      */
-    private void _readNotesFromFile() {
-        var noteMap = new HashMap<String, Note>();
-        var notes = getNotesFromFileData(FileHelper.getFileAsString(_notesFile));
-        for (var note : notes) {
-            noteMap.put(note.getId(), note);
+    private void _readNotesFromFile() throws IOException {
+        var noteMap = new TreeMap<String, Note>();
+        if (_notesFile.length() > 0) {
+            try (var input = _openNotesFile()) {
+                readNotes(input, note -> {
+                    _resolveBody(note);
+                    noteMap.put(note.getId(), note);
+                });
+            }
         }
         _notes = noteMap;
     }
 
+    /**
+     * Open the {@link SingleFileNoteDataService#_notesFile} for reading. A GZIP compressed file is recognized by its
+     *  magic bytes and decompressed as it is read.
+     * @return A stream of the uncompressed file data. The caller is responsible for closing it.
+     * @throws IOException Thrown when the file cannot be opened
+     */
+    private InputStream _openNotesFile() throws IOException {
+        var input = FileHelper.openInputStream(_notesFile);
+        try {
+            //GZIP_MAGIC is stored little-endian - peek at the first two bytes and put them back
+            input.mark(2);
+            var magic = input.read() | (input.read() << 8);
+            input.reset();
+            _compressed = magic == GZIPInputStream.GZIP_MAGIC;
+            return _compressed ? new GZIPInputStream(input, FileHelper.STREAM_BUFFER_SIZE) : input;
+        } catch (IOException exception) {
+            input.close();
+            throw exception;
+        }
+    }
+
     /**
      * Convert String data from the {@link SingleFileNoteDataService#_notesFile} to a collection of {@link Note notes}
      * @param fileData A String describing a {@link List} of {@link Note notes}
@@ -168,16 +706,269 @@ public abstract class SingleFileNoteDataService implements INoteDataService {
      */
     protected abstract String getFileDataFromNotes(List<Note> notes);
 
+    /**
+     * Read {@link Note notes} from a stream of {@link SingleFileNoteDataService#_notesFile} data, handing each one to a
+     *  consumer. The default implementation reads all the data into a String and converts it with
+     *  {@link SingleFileNoteDataService#getNotesFromFileData(String)}. Formats that can be decoded incrementally should
+     *  override this so the file is never held in memory as a whole.
+     * @param input A stream of the file data
+     * @param noteConsumer Receives each {@link Note}
+     * @throws IOException Thrown when the data cannot be read
+     */
+    protected void readNotes(InputStream input, Consumer<Note> noteConsumer) throws IOException {
+        var reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        //Line breaks are dropped, matching FileHelper.getFileAsString
+        var fileData = reader.lines().collect(Collectors.joining());
+        getNotesFromFileData(fileData).forEach(noteConsumer);
+    }
+
+    /**
+     * Write {@link Note notes} to a stream that replaces the {@link SingleFileNoteDataService#_notesFile} data. The
+     *  default implementation converts the {@link Note notes} with {@link SingleFileNoteDataService#getFileDataFromNotes(List)}.
+     *  Formats that can be encoded incrementally should override this so the file is never held in memory as a whole.
+     * @param output The stream to write the file data to
+     * @param notes The {@link Note notes} to write
+     * @throws IOException Thrown when the data cannot be written
+     */
+    protected void writeNotes(OutputStream output, List<Note> notes) throws IOException {
+        output.write(getFileDataFromNotes(notes).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Persist a created or updated {@link Note}. Appends to the journal when the service is journaled, otherwise
+     *  rewrites the {@link SingleFileNoteDataService#_notesFile}.
+     * @param note The {@link Note} that changed
+     * @return TRUE if the change was persisted. FALSE if it was not
+     */
+    private boolean _persistPut(Note note) {
+        if (!_journaled) {
+            return _persistSnapshot();
+        }
+        var written = _journal.appendPut(note);
+        _compactIfNeeded();
+        return written;
+    }
+
+    /**
+     * Persist a batch of created or updated {@link Note notes} together. Appends a single batch to the journal when the
+     *  service is journaled, otherwise rewrites the {@link SingleFileNoteDataService#_notesFile} once.
+     * @param notes The {@link Note notes} that changed
+     * @return TRUE if the changes were persisted. FALSE if they were not
+     */
+    private boolean _persistPuts(List<Note> notes) {
+        if (!_journaled) {
+            return _persistSnapshot(notes.size());
+        }
+        var written = _journal.appendPuts(notes);
+        _compactIfNeeded();
+        return written;
+    }
+
+    /**
+     * Persist the current {@link Note notes} when the service is not journaled. Rewrites the
+     *  {@link SingleFileNoteDataService#_notesFile} immediately, or counts the change towards the next flush when
+     *  write-behind is on.
+     * @return TRUE if the change was written or is waiting for a flush. FALSE if the file could not be written
+     */
+    private boolean _persistSnapshot() {
+        return _persistSnapshot(1);
+    }
+
+    /**
+     * Persist the current {@link Note notes} after one or more changes when the service is not journaled
+     * @param changes The number of {@link Note notes} that changed, counted towards the write-behind limit
+     * @return TRUE if the changes were written or are waiting for a flush. FALSE if the file could not be written
+     */
+    private boolean _persistSnapshot(int changes) {
+        if (_writeBehindDelayMillis == 0) {
+            return _writeNotesToFile();
+        }
+        _pendingChanges += changes;
+        if (_pendingChanges >= _writeBehindMaxChanges) {
+            //Enough changes are waiting - flush in the background without waiting for the delay
+            if (_scheduledFlush != null) {
+                _scheduledFlush.cancel(false);
+            }
+            _scheduledFlush = _flushExecutor.schedule(this::flush, 0, TimeUnit.MILLISECONDS);
+        } else {
+            _scheduleFlush();
+        }
+        return true;
+    }
+
+    /**
+     * Schedule a write-behind flush after the delay, unless one is already scheduled. A flush that is already scheduled
+     *  is never pushed back, so no change waits longer than the delay.
+     */
+    private void _scheduleFlush() {
+        if (_scheduledFlush == null && _writeBehindDelayMillis > 0) {
+            _scheduledFlush = _flushExecutor.schedule(this::flush, _writeBehindDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Queue a background compaction if the journal has grown past the {@link SingleFileNoteDataService#_compactionThreshold}
+     *  and no compaction is already queued.
+     */
+    private void _compactIfNeeded() {
+        if (_journal.size() < _compactionThreshold || !_compactionQueued.compareAndSet(false, true)) {
+            return;
+        }
+        _compactionExecutor.execute(() -> {
+            try {
+                compact();
+            } finally {
+                _compactionQueued.set(false);
+            }
+        });
+    }
+
     /**
      * Write all notes to the {@link SingleFileNoteDataService#_notesFile}.
      * @return TRUE if the file was written successfully. FALSE if it was not
      */
     private boolean _writeNotesToFile() {
-        var fileData = getFileDataFromNotes(_notes.values().stream().toList());
-        if (!FileHelper.replaceFileData(_notesFile, fileData)) {
+        return _writeNotesToFile(_notes.values().stream().toList());
+    }
+
+    /**
+     * Write a collection of notes to the {@link SingleFileNoteDataService#_notesFile}, replacing its contents.
+     * @param notes The {@link Note notes} to write
+     * @return TRUE if the file was written successfully. FALSE if it was not
+     */
+    private boolean _writeNotesToFile(List<Note> notes) {
+        var compressed = _compressed;
+        var references = new HashSet<String>();
+        var storedNotes = _deduplicated ? _referenceBodies(notes, references) : notes;
+        if (!FileHelper.replaceFileData(_notesFile, output -> _writeNotes(output, storedNotes, compressed), _syncer)) {
             System.out.println("Error while rewriting notes file. WARNING - The file may no longer match the cache.");
             return false;
         }
+        _deleteUnreferencedBodies(references);
         return true;
     }
+
+    /**
+     * Replace the content of {@link Note notes} with a reference to its stored body wherever it has one
+     * @param notes The {@link Note notes} about to be written
+     * @param references Receives every reference used
+     * @return The {@link Note notes} to write. Copies are made of the {@link Note notes} that refer to a body.
+     */
+    private List<Note> _referenceBodies(List<Note> notes, Set<String> references) {
+        var storedNotes = new ArrayList<Note>(notes.size());
+        for (var note : notes) {
+            var reference = _bodies.getReference(note.getContent());
+            if (reference == null) {
+                storedNotes.add(note);
+                continue;
+            }
+            var storedNote = note.duplicate();
+            storedNote.setContent(reference);
+            storedNotes.add(storedNote);
+            references.add(reference);
+        }
+        return storedNotes;
+    }
+
+    /**
+     * Delete the bodies no {@link Note} refers to once the {@link SingleFileNoteDataService#_notesFile} has been written
+     * @param written The references in the file that was just written. Their bodies are kept even if no {@link Note}
+     *                refers to them any more, until the next write.
+     */
+    private void _deleteUnreferencedBodies(Set<String> written) {
+        var unreferenced = _bodies.getUnreferenced();
+        unreferenced.removeAll(written);
+        if (!unreferenced.isEmpty()) {
+            _bodies.deleteUnreferenced(unreferenced);
+        }
+    }
+
+    /**
+     * Replace a reference to a stored body in a loaded {@link Note} with the content of the body
+     * @param note A {@link Note} read from the {@link SingleFileNoteDataService#_notesFile}
+     */
+    private void _resolveBody(Note note) {
+        if (!NoteBodyStore.isReference(note.getContent())) {
+            return;
+        }
+        //The file was written with deduplication on - keep it on
+        _deduplicated = true;
+        try {
+            note.setContent(_bodies.resolve(note.getContent()));
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.printf("Cannot read the content of note %s%n", note.getId());
+        }
+    }
+
+    /**
+     * Count a {@link Note} as a reference to the body holding its content, storing the body if needed, and share the
+     *  body's String with the {@link Note}. Does nothing when deduplication is off or the content is too short.
+     * @param note A {@link Note} that is about to be stored
+     */
+    private void _acquireBody(Note note) {
+        if (!_deduplicated || !NoteBodyStore.isStorable(note.getContent())) {
+            return;
+        }
+        try {
+            _bodies.acquire(note.getContent());
+            note.setContent(_bodies.share(note.getContent()));
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.printf("Cannot store the content of note %s. It will be written in full.%n", note.getId());
+        }
+    }
+
+    /**
+     * Stop counting a {@link Note} as a reference to the body holding its old content
+     * @param content The content the {@link Note} had
+     */
+    private void _releaseBody(String content) {
+        var reference = _bodies.getReference(content);
+        if (reference != null) {
+            _bodies.release(reference);
+        }
+    }
+
+    /**
+     * Count the references to every body again from the {@link Note notes} in memory. Every reference is dropped when
+     *  deduplication is off.
+     */
+    private void _countBodies() {
+        _bodies.recount(List.of());
+        if (!_deduplicated) {
+            return;
+        }
+        for (var note : _notes.values()) {
+            _acquireBody(note);
+        }
+    }
+
+    /**
+     * Write {@link Note notes} to the stream that replaces the {@link SingleFileNoteDataService#_notesFile} data,
+     *  compressing them as they are written if needed
+     * @param output The stream to write the file data to
+     * @param notes The {@link Note notes} to write
+     * @param compressed When TRUE, the data is GZIP compressed
+     * @throws IOException Thrown when the data cannot be written
+     */
+    private void _writeNotes(OutputStream output, List<Note> notes, boolean compressed) throws IOException {
+        if (!compressed) {
+            writeNotes(output, notes);
+            return;
+        }
+        if (notes.isEmpty()) {
+            //An empty file is read as no notes - there is nothing worth compressing
+            return;
+        }
+        var gzip = new GZIPOutputStream(output, FileHelper.STREAM_BUFFER_SIZE) {
+            {
+                //Every change rewrites the file - the default level takes about 4x as long for files about a quarter smaller
+                def.setLevel(Deflater.BEST_SPEED);
+            }
+        };
+        writeNotes(gzip, notes);
+        //Write the GZIP trailer without closing the stream - the stream is owned by the caller
+        gzip.finish();
+    }
 }
@@ -36,6 +36,16 @@ public class TextNoteDataService extends FileNoteDataService {
         super(dataPath);
     }
 
+    /**
+     * Create a new instance of a {@link TextNoteDataService} pointing at a specific path
+     * @param dataPath Absolute path to the directory where {@link Note notes} are stored
+     * @param readConcurrency The maximum number of {@link Note} files read at the same time when getting all
+     *                        {@link Note notes}. 1 reads the files one after another.
+     */
+    public TextNoteDataService(String dataPath, int readConcurrency) {
+        super(dataPath, readConcurrency);
+    }
+
     @Override
     protected Note getNoteFromFileData(String fileData) {
         return new Note(fileData);
@@ -1,17 +1,86 @@
 package com.example.jsonnotes.util;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.Scanner;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Helper class for interacting with files.
  */
 public class FileHelper {
 
+    /**
+     * The size of the buffers used when streaming data to and from files
+     */
+    public static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Writes data to an {@link OutputStream}. Used to stream data into a file without holding all of it in memory.
+     */
+    @FunctionalInterface
+    public interface StreamWriter {
+        /**
+         * Write data to a stream. The stream is flushed and closed by the caller.
+         * @param output The {@link OutputStream} to write to
+         * @throws IOException Thrown when the data cannot be written
+         */
+        void write(OutputStream output) throws IOException;
+    }
+
+    /**
+     * How {@link FileHelper#replaceFileData(File, StreamWriter)} replaces the data in an existing file
+     */
+    public enum ReplaceMode {
+        /**
+         * Write the new data to a temporary file in the same directory, then rename it over the original. Readers
+         *  always see either the old or the new file, never a missing or partly written one.
+         */
+        ATOMIC_RENAME,
+        /**
+         * Move the original to a backup file, write the new data, then delete the backup. For filesystems that cannot
+         *  rename a file over another atomically.
+         */
+        BACKUP
+    }
+
+    /**
+     * The way existing files are replaced
+     */
+    private static volatile ReplaceMode _replaceMode = ReplaceMode.ATOMIC_RENAME;
+    /**
+     * Get the way {@link FileHelper#replaceFileData(File, StreamWriter)} replaces existing files
+     * @return A {@link ReplaceMode}
+     */
+    public static ReplaceMode getReplaceMode() {
+        return _replaceMode;
+    }
+
+    /**
+     * Set the way {@link FileHelper#replaceFileData(File, StreamWriter)} replaces existing files
+     * @param replaceMode A {@link ReplaceMode}
+     */
+    public static void setReplaceMode(ReplaceMode replaceMode) {
+        if (replaceMode == null) {
+            throw new IllegalArgumentException("replaceMode cannot be null");
+        }
+        _replaceMode = replaceMode;
+    }
+
     /**
      * Create a blank file
      * @param file The {@link File} to create
@@ -57,6 +126,17 @@ public class FileHelper {
      * @return TRUE if the file is created, FALSE if it is not.
      */
     public static boolean createFile(File file, String data) {
+        return createFile(file, data, null);
+    }
+
+    /**
+     * Create a file, write a string of data to it, and make it durable
+     * @param file The {@link File} to create
+     * @param data The string of data to write to the file
+     * @param syncer The {@link FileSyncer} that pushes the file to disk. NULL leaves flushing to the operating system.
+     * @return TRUE if the file is created, FALSE if it is not.
+     */
+    public static boolean createFile(File file, String data, FileSyncer syncer) {
         if (file == null) {
             throw new IllegalArgumentException("file cannot be null");
         }
@@ -70,11 +150,14 @@ public class FileHelper {
             var writer = new FileWriter(file.getAbsolutePath());
             writer.write(data);
             writer.close();
+            if (syncer != null) {
+                syncer.sync(file);
+            }
             return true;
         } catch (IOException e) {
             //Cannot write to file
             e.printStackTrace();
-            System.out.printf("Cannot write to file %s", file.getAbsolutePath());
+            System.out.printf("Cannot write to file %s%n", file.getAbsolutePath());
             return false;
         }
     }
@@ -106,12 +189,107 @@ public class FileHelper {
      * @return TRUE if the file was rewritten, FALSE if it wasn't
      */
     public static boolean replaceFileData(File file, String data) {
+        return replaceFileData(file, data, null);
+    }
+
+    /**
+     * Replace all the data in a file and make the new data durable
+     * @param file The {@link File} to replace the data in
+     * @param data The new data to write to the file
+     * @param syncer The {@link FileSyncer} that pushes the file to disk. NULL leaves flushing to the operating system.
+     * @return TRUE if the file was rewritten, FALSE if it wasn't
+     */
+    public static boolean replaceFileData(File file, String data, FileSyncer syncer) {
         if (file == null) {
             throw new IllegalArgumentException("file cannot be null");
         }
         if (data == null) {
             throw new IllegalArgumentException("data cannot be null");
         }
+        return replaceFileData(file, output -> output.write(data.getBytes(StandardCharsets.UTF_8)), syncer);
+    }
+
+    /**
+     * Replace all the data in a file by streaming new data into it, using the current {@link ReplaceMode}. When the
+     *  filesystem turns out not to support atomic renames, the file is written again in {@link ReplaceMode#BACKUP}
+     *  mode, so the writer may be called twice.
+     * @param file The {@link File} to replace the data in
+     * @param writer Writes the new data to the file
+     * @return TRUE if the file was rewritten, FALSE if it wasn't
+     */
+    public static boolean replaceFileData(File file, StreamWriter writer) {
+        return replaceFileData(file, writer, null);
+    }
+
+    /**
+     * Replace all the data in a file by streaming new data into it, and make the new data durable. See
+     *  {@link FileHelper#replaceFileData(File, StreamWriter)}.
+     * @param file The {@link File} to replace the data in
+     * @param writer Writes the new data to the file
+     * @param syncer The {@link FileSyncer} that pushes the file to disk. NULL leaves flushing to the operating system.
+     * @return TRUE if the file was rewritten, FALSE if it wasn't
+     */
+    public static boolean replaceFileData(File file, StreamWriter writer, FileSyncer syncer) {
+        if (file == null) {
+            throw new IllegalArgumentException("file cannot be null");
+        }
+        if (writer == null) {
+            throw new IllegalArgumentException("writer cannot be null");
+        }
+        if (_replaceMode == ReplaceMode.ATOMIC_RENAME) {
+            return _replaceByRename(file, writer, syncer);
+        }
+        return _replaceWithBackup(file, writer, syncer);
+    }
+
+    /**
+     * Replace all the data in a file by writing a temporary file and renaming it over the original
+     * @param file The {@link File} to replace the data in
+     * @param writer Writes the new data to the file
+     * @param syncer The {@link FileSyncer} that pushes the file to disk. May be NULL.
+     * @return TRUE if the file was rewritten, FALSE if it wasn't
+     */
+    private static boolean _replaceByRename(File file, StreamWriter writer, FileSyncer syncer) {
+        //The temporary file must be in the same directory - a rename cannot cross filesystems
+        var tempFile = new File(file.getAbsoluteFile().getParentFile(), String.format("%s.%08x.tmp", file.getName(), ThreadLocalRandom.current().nextInt()));
+        if (!_writeFile(tempFile, writer, syncer)) {
+            _deleteTempFile(tempFile);
+            return false;
+        }
+        try {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            _syncReplacedFile(file, syncer);
+            return true;
+        } catch (AtomicMoveNotSupportedException e) {
+            System.out.printf("Cannot rename %s atomically - replacing it in backup mode%n", file.getAbsolutePath());
+            _deleteTempFile(tempFile);
+            return _replaceWithBackup(file, writer, syncer);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.out.printf("Cannot move %s to %s%n", tempFile.getAbsolutePath(), file.getAbsolutePath());
+            _deleteTempFile(tempFile);
+            return false;
+        }
+    }
+
+    /**
+     * Delete a temporary file left behind by a failed write
+     * @param tempFile The temporary {@link File}
+     */
+    private static void _deleteTempFile(File tempFile) {
+        if (tempFile.exists() && !tempFile.delete()) {
+            System.out.printf("Cannot delete temporary file %s%n", tempFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Replace all the data in a file, keeping a backup copy of the original until the new data is written
+     * @param file The {@link File} to replace the data in
+     * @param writer Writes the new data to the file
+     * @param syncer The {@link FileSyncer} that pushes the file to disk. May be NULL.
+     * @return TRUE if the file was rewritten, FALSE if it wasn't
+     */
+    private static boolean _replaceWithBackup(File file, StreamWriter writer, FileSyncer syncer) {
         //Define a backup file
         var backupFile = new File(String.format("%s.bak", file.getAbsolutePath()));
         if (file.exists()) {
@@ -133,7 +311,7 @@ public class FileHelper {
             }
         }
         //Write the file
-        if (!createFile(file, data)) {
+        if (!_writeFile(file, writer, syncer)) {
             //Cannot create the file - try restoring from backup?
             if (!file.exists() && backupFile.exists()) {
                 //Backup file exists and file does not exist - restore
@@ -153,9 +331,78 @@ public class FileHelper {
         if (backupFile.exists() && !backupFile.delete()) {
             System.out.printf("Cannot delete backup file %s.%n", backupFile.getAbsolutePath());
         }
+        _syncReplacedFile(file, syncer);
         return true;
     }
 
+    /**
+     * Describe a group of files by their names, lengths, and last modified times. The description changes whenever
+     *  one of the files is written, created, or deleted, so it can be saved with data derived from the files and
+     *  compared later to tell if that data is out of date.
+     * @param files The {@link File Files} to describe. Files that do not exist are described as missing.
+     * @return The description of the files, or NULL if one of them cannot be read
+     */
+    public static String getFingerprint(File... files) {
+        if (files == null) {
+            throw new IllegalArgumentException("files cannot be null");
+        }
+        var fingerprint = new StringBuilder();
+        for (var file : files) {
+            fingerprint.append(file.getName()).append(':');
+            if (!file.exists()) {
+                fingerprint.append("missing;");
+                continue;
+            }
+            try {
+                var modified = Files.getLastModifiedTime(file.toPath()).to(TimeUnit.NANOSECONDS);
+                fingerprint.append(Files.size(file.toPath())).append(':').append(modified).append(';');
+            } catch (IOException e) {
+                System.out.printf("Cannot read the size and time of %s%n", file.getAbsolutePath());
+                return null;
+            }
+        }
+        return fingerprint.toString();
+    }
+
+    /**
+     * Open a buffered stream for reading a file through a {@link FileChannel}
+     * @param file The {@link File} to read
+     * @return An {@link InputStream}. The caller is responsible for closing it.
+     * @throws IOException Thrown when the file cannot be opened
+     */
+    public static InputStream openInputStream(File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file cannot be null");
+        }
+        var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        return new BufferedInputStream(Channels.newInputStream(channel), STREAM_BUFFER_SIZE);
+    }
+
+    /**
+     * Create a file if it does not exist and stream data into it through a {@link FileChannel}, replacing any existing data
+     * @param file The {@link File} to write
+     * @param writer Writes the data to the file
+     * @param syncer The {@link FileSyncer} that decides if the data is forced to disk. May be NULL.
+     * @return TRUE if the file was written, FALSE if it wasn't
+     */
+    private static boolean _writeFile(File file, StreamWriter writer, FileSyncer syncer) {
+        try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             var output = new BufferedOutputStream(Channels.newOutputStream(channel), STREAM_BUFFER_SIZE)) {
+            writer.write(output);
+            output.flush();
+            if (syncer != null && syncer.forcesReplacedData()) {
+                //The data must be on disk before the file is renamed into place, or a crash could leave it empty
+                channel.force(false);
+            }
+            return true;
+        } catch (IOException e) {
+            //Cannot write to file
+            e.printStackTrace();
+            System.out.printf("Cannot write to file %s%n", file.getAbsolutePath());
+            return false;
+        }
+    }
+
     /**
      * Get the data from a file as a string
      * @param file The {@link File} to get data from
@@ -182,4 +429,18 @@ public class FileHelper {
             //Could rethrow exception instead of returning null - indicating that this is a non-recoverable error.
         }
     }
+
+    /**
+     * Make a file written by {@link FileHelper#_writeFile(File, StreamWriter, FileSyncer)} durable. Unless the mode is
+     *  {@link FileSyncer.Durability#NONE} the data was already forced while the file was open, so only the directory
+     *  entry is left.
+     * @param file The {@link File} that was written
+     * @param syncer The {@link FileSyncer} that pushes the file to disk. May be NULL.
+     */
+    private static void _syncReplacedFile(File file, FileSyncer syncer) {
+        var parent = file.getAbsoluteFile().getParentFile();
+        if (syncer != null && parent != null) {
+            syncer.syncDirectory(parent);
+        }
+    }
 }
@@ -0,0 +1,266 @@
+package com.example.jsonnotes.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes the files written by one data service to the storage device according to that service's {@link Durability}.
+ *  Each file-backed service owns its own syncer, so services in the same process can make different tradeoffs.
+ */
+public class FileSyncer {
+
+    /**
+     * How hard written files are pushed to the storage device
+     */
+    public enum Durability {
+        /**
+         * Leave flushing to the operating system. Fastest, but a crash or power loss can drop recent writes, and can
+         *  leave a replaced file empty or partly written.
+         */
+        NONE,
+        /**
+         * Per-write data, batched metadata. Data appended to an open file and the entries of changed directories are
+         *  forced together on a timer, so a crash can drop the appends and renames of the last interval. A replaced
+         *  file is written whole to a temporary file and renamed over the original, and that rename would be
+         *  reordered ahead of unforced data - so the data of each replaced file is still forced before the rename,
+         *  and a replaced file is left with its old data, never empty or partly written.
+         */
+        BATCHED,
+        /**
+         * Force every file and its parent directory to disk before the write returns. Nothing that was reported as
+         *  written is lost, at the cost of waiting for the device on every write.
+         */
+        PER_WRITE
+    }
+
+    /**
+     * The default time between syncs in {@link Durability#BATCHED} mode
+     */
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 1000;
+
+    /**
+     * How hard written files are pushed to disk
+     */
+    private volatile Durability _durability = Durability.NONE;
+    /**
+     * The time between syncs in {@link Durability#BATCHED} mode
+     */
+    private long _syncIntervalMillis = DEFAULT_SYNC_INTERVAL_MILLIS;
+    /**
+     * Files and directories written since the last batched sync
+     */
+    private final Set<Path> _pendingSyncs = ConcurrentHashMap.newKeySet();
+    /**
+     * Runs the batched syncs. NULL unless {@link Durability#BATCHED} mode is in use.
+     */
+    private ScheduledExecutorService _syncExecutor;
+
+    /**
+     * Get how hard written files are pushed to disk
+     * @return A {@link Durability}
+     */
+    public Durability getDurability() {
+        return _durability;
+    }
+
+    /**
+     * Set how hard written files are pushed to disk. Writes that are still waiting for a batched sync are synced
+     *  before the new setting takes effect.
+     * @param durability A {@link Durability}
+     */
+    public synchronized void setDurability(Durability durability) {
+        if (durability == null) {
+            throw new IllegalArgumentException("durability cannot be null");
+        }
+        _durability = durability;
+        _restartSyncExecutor();
+    }
+
+    /**
+     * Get the time between syncs in {@link Durability#BATCHED} mode
+     * @return The interval in milliseconds
+     */
+    public synchronized long getSyncIntervalMillis() {
+        return _syncIntervalMillis;
+    }
+
+    /**
+     * Set the time between syncs in {@link Durability#BATCHED} mode. This is the most recent work a crash can lose.
+     * @param syncIntervalMillis The interval in milliseconds
+     */
+    public synchronized void setSyncIntervalMillis(long syncIntervalMillis) {
+        if (syncIntervalMillis < 1) {
+            throw new IllegalArgumentException("syncIntervalMillis must be at least 1");
+        }
+        _syncIntervalMillis = syncIntervalMillis;
+        _restartSyncExecutor();
+    }
+
+    /**
+     * Make a written file durable, along with its entry in the parent directory
+     * @param file The {@link File} that was written
+     */
+    public void sync(File file) {
+        if (file == null) {
+            throw new IllegalArgumentException("file cannot be null");
+        }
+        switch (_durability) {
+            case PER_WRITE -> {
+                _force(file.toPath());
+                _force(_getParentPath(file));
+            }
+            case BATCHED -> {
+                _queueSync(file.toPath());
+                _queueSync(_getParentPath(file));
+            }
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Make data appended through an open {@link FileChannel} durable
+     * @param channel The open {@link FileChannel} the data was written through
+     * @param file The {@link File} the channel writes to
+     */
+    public void sync(FileChannel channel, File file) {
+        if (channel == null) {
+            throw new IllegalArgumentException("channel cannot be null");
+        }
+        if (file == null) {
+            throw new IllegalArgumentException("file cannot be null");
+        }
+        switch (_durability) {
+            case PER_WRITE -> {
+                try {
+                    channel.force(false);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    System.out.printf("Cannot sync %s%n", file.getAbsolutePath());
+                }
+            }
+            case BATCHED -> _queueSync(file.toPath());
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Make the entries of a directory durable. Called after files are created, renamed, or deleted.
+     * @param directory The directory that changed
+     */
+    public void syncDirectory(File directory) {
+        if (directory == null) {
+            throw new IllegalArgumentException("directory cannot be null");
+        }
+        switch (_durability) {
+            case PER_WRITE -> _force(directory.toPath());
+            case BATCHED -> _queueSync(directory.toPath());
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Force every file and directory waiting for a batched sync to disk now. Called before shutting down so the
+     *  writes of the last interval are not left to the operating system.
+     */
+    public void syncPending() {
+        if (_pendingSyncs.isEmpty()) {
+            return;
+        }
+        var paths = new ArrayList<>(_pendingSyncs);
+        _pendingSyncs.removeAll(paths);
+        //Files before directories, so a directory entry never becomes durable ahead of the data it points to
+        paths.sort((first, second) -> Boolean.compare(Files.isDirectory(first), Files.isDirectory(second)));
+        for (var path : paths) {
+            _force(path);
+        }
+    }
+
+    /**
+     * Stop the batched sync timer and sync anything still waiting. The syncer can still be used afterwards, but
+     *  batched writes wait for the next call to {@link FileSyncer#syncPending()} or to a setter.
+     */
+    public synchronized void close() {
+        if (_syncExecutor != null) {
+            _syncExecutor.shutdown();
+            _syncExecutor = null;
+        }
+        syncPending();
+    }
+
+    /**
+     * Check if the data of a file must be forced before it is renamed over another one
+     * @return TRUE unless the mode is {@link Durability#NONE}
+     */
+    boolean forcesReplacedData() {
+        return _durability != Durability.NONE;
+    }
+
+    /**
+     * Add a file or directory to the next batched sync
+     * @param path The {@link Path} to sync
+     */
+    private void _queueSync(Path path) {
+        if (path != null) {
+            _pendingSyncs.add(path.toAbsolutePath());
+        }
+    }
+
+    /**
+     * Force a file or directory to disk. Directories cannot be opened on every platform - failures to sync a
+     *  directory are ignored.
+     * @param path The {@link Path} to sync
+     */
+    private static void _force(Path path) {
+        if (path == null) {
+            return;
+        }
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            if (!Files.isDirectory(path) && Files.exists(path)) {
+                e.printStackTrace();
+                System.out.printf("Cannot sync %s%n", path.toAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * Get the directory containing a file
+     * @param file The {@link File}
+     * @return A {@link Path}. NULL if the file has no parent.
+     */
+    private static Path _getParentPath(File file) {
+        var parent = file.getAbsoluteFile().getParentFile();
+        return parent == null ? null : parent.toPath();
+    }
+
+    /**
+     * Stop the batched sync timer, syncing anything still waiting, and start a new one if
+     *  {@link Durability#BATCHED} mode is in use
+     */
+    private void _restartSyncExecutor() {
+        close();
+        if (_durability != Durability.BATCHED) {
+            return;
+        }
+        _syncExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "file-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        _syncExecutor.scheduleWithFixedDelay(this::syncPending, _syncIntervalMillis, _syncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+}
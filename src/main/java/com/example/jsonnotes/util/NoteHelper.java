@@ -2,10 +2,13 @@ package com.example.jsonnotes.util;
 
 import com.example.jsonnotes.notes.Note;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * Utility class used to make interacting with {@link Note Notes} easier.
@@ -143,4 +146,92 @@ public class NoteHelper {
         }
         return notes;
     }
+
+    /**
+     * Read {@link Note Notes} from a stream of ID\u2043CONTENT pairs separated by the \u221E (Infinity) character, a
+     *  {@link Note} at a time, so the whole string is never held in memory. Line breaks are dropped.
+     * <p>
+     * Unlike {@link NoteHelper#getNotesFromDataString(String)}, this reads what the text store writes:
+     * <ul>
+     *     <li>The separators are matched both as the characters themselves and as the escaped text written by
+     *     {@link NoteHelper#getNotesDataStringFromList(List)}.</li>
+     *     <li>An empty stream holds no {@link Note Notes}, since a store with no {@link Note Notes} is written as an
+     *     empty string.</li>
+     * </ul>
+     * @param reader The {@link Reader} to read from
+     * @param noteConsumer Receives each {@link Note}
+     * @throws IOException Thrown when the stream cannot be read
+     * @throws IllegalArgumentException Thrown when a pair has no \u2043 splitter
+     */
+    public static void readNotesFromDataStream(Reader reader, Consumer<Note> noteConsumer) throws IOException {
+        if (reader == null) {
+            throw new IllegalArgumentException("reader cannot be null");
+        }
+        if (noteConsumer == null) {
+            throw new IllegalArgumentException("noteConsumer cannot be null");
+        }
+        var field = new StringBuilder();
+        String id = null;
+        var buffer = new char[8192];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                var next = buffer[i];
+                if (next == '\n' || next == '\r') {
+                    continue;
+                }
+                field.append(next);
+                if (next != '\u2043' && next != '\u221E' && next != '3' && next != 'E') {
+                    //Cannot end a separator in either form
+                    continue;
+                }
+                if (id == null && _removeSeparator(field, '\u2043', "\\u2043")) {
+                    id = field.toString();
+                    field.setLength(0);
+                } else if (_removeSeparator(field, '\u221E', "\\u221E")) {
+                    noteConsumer.accept(_getNoteFromFields(id, field));
+                    id = null;
+                    field.setLength(0);
+                }
+            }
+        }
+        if (id != null || field.length() > 0) {
+            noteConsumer.accept(_getNoteFromFields(id, field));
+        }
+    }
+
+    /**
+     * Remove a separator from the end of a field, if the field ends with it
+     * @param field The field read so far
+     * @param separator The separator character
+     * @param escapedSeparator The separator as escaped text
+     * @return TRUE if the separator was removed, FALSE if the field does not end with it
+     */
+    private static boolean _removeSeparator(StringBuilder field, char separator, String escapedSeparator) {
+        var length = field.length();
+        if (field.charAt(length - 1) == separator) {
+            field.setLength(length - 1);
+            return true;
+        }
+        var start = length - escapedSeparator.length();
+        if (start >= 0 && field.indexOf(escapedSeparator, start) == start) {
+            field.setLength(start);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Create a {@link Note} from the fields of an ID\u2043CONTENT pair
+     * @param id The ID. NULL if the pair had no splitter.
+     * @param content The content
+     * @return A {@link Note}
+     * @throws IllegalArgumentException Thrown when the pair had no splitter
+     */
+    private static Note _getNoteFromFields(String id, CharSequence content) {
+        if (id == null) {
+            throw new IllegalArgumentException("idContentPair does not contain the appropriate splitter character \\u2043 and may be an invalid ID\\u2043CONTENT string");
+        }
+        return new Note(UUID.fromString(id), content.toString());
+    }
 }
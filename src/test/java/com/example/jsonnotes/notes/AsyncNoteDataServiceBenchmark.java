@@ -0,0 +1,77 @@
+package com.example.jsonnotes.notes;
+
+import com.example.jsonnotes.notes.service.AsyncNoteDataService;
+import com.example.jsonnotes.notes.service.JsonNoteDataService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmarks for {@link AsyncNoteDataService} over a {@link JsonNoteDataService}. Run with the "benchmark" Gradle task.
+ */
+@Tag("benchmark")
+@DisplayName("AsyncNoteDataService benchmarks")
+class AsyncNoteDataServiceBenchmark {
+
+    private static final int _NOTE_COUNT = 10_000;
+    private static final int _ROUNDS = 3;
+
+    private static File _dataDir;
+    private static List<String> _noteIds;
+
+    @BeforeAll
+    static void setUp() {
+        _dataDir = TestDataHelper.createTestDataDir("async-benchmark");
+        var dataService = new JsonNoteDataService(_dataDir.getAbsolutePath());
+        System.out.printf("Creating %d note(s)%n", _NOTE_COUNT);
+        _noteIds = new ArrayList<>(_NOTE_COUNT);
+        for (int i = 0; i < _NOTE_COUNT; i++) {
+            _noteIds.add(dataService.createNote(new Note(String.format("Benchmark note %d content", i), String.format("Note %d", i))));
+        }
+    }
+
+    @AfterAll
+    static void tearDown() {
+        TestDataHelper.deleteTestDataDir(_dataDir);
+    }
+
+    @DisplayName("getNoteById - 10k blocking reads vs 10k requests in flight")
+    @Test
+    void independentReads() throws InterruptedException, ExecutionException {
+        var dataService = new JsonNoteDataService(_dataDir.getAbsolutePath());
+        var blocking = Double.MAX_VALUE;
+        for (int round = 0; round < _ROUNDS; round++) {
+            var start = System.nanoTime();
+            for (var noteId : _noteIds) {
+                assertNotNull(dataService.getNoteById(noteId));
+            }
+            blocking = Math.min(blocking, (System.nanoTime() - start) / 1_000_000.0);
+        }
+        System.out.printf("blocking        : %7.1f ms%n", blocking);
+        for (var concurrency : new int[] { 1, 4, AsyncNoteDataService.DEFAULT_CONCURRENCY, 64 }) {
+            try (var asyncService = new AsyncNoteDataService(dataService, concurrency)) {
+                var async = Double.MAX_VALUE;
+                for (int round = 0; round < _ROUNDS; round++) {
+                    var start = System.nanoTime();
+                    var reads = new ArrayList<CompletableFuture<Note>>(_NOTE_COUNT);
+                    for (var noteId : _noteIds) {
+                        reads.add(asyncService.getNoteById(noteId));
+                    }
+                    CompletableFuture.allOf(reads.toArray(new CompletableFuture<?>[0])).get();
+                    async = Math.min(async, (System.nanoTime() - start) / 1_000_000.0);
+                }
+                System.out.printf("concurrency %3d : %7.1f ms (%.2fx blocking)%n", concurrency, async, blocking / async);
+            }
+        }
+    }
+}
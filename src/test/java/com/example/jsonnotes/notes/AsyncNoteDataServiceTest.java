@@ -0,0 +1,96 @@
+package com.example.jsonnotes.notes;
+
+import com.example.jsonnotes.notes.service.AsyncNoteDataService;
+import com.example.jsonnotes.notes.service.CacheNoteDataService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("AsyncNoteDataService tests")
+class AsyncNoteDataServiceTest {
+
+    @DisplayName("Requests complete with the results of the wrapped service")
+    @Test
+    void requests() throws InterruptedException, ExecutionException {
+        try (var dataService = new AsyncNoteDataService(new CacheNoteDataService())) {
+            var note = new Note("original", "summary");
+            var created = dataService.createNote(note);
+            //The note is copied when the request is made
+            note.setContent("changed after the request");
+            var noteId = created.get();
+            assertEquals("original", dataService.getNoteById(noteId).get().getContent());
+            System.out.println("Chaining an update after a read");
+            var updated = dataService.getNoteById(noteId)
+                    .thenCompose(curNote -> dataService.updateNote(new Note(UUID.fromString(curNote.getId()), curNote.getContent() + " updated")))
+                    .get();
+            assertEquals("original updated", updated.getContent());
+            assertEquals(1, dataService.getNoteCount().get());
+            assertEquals(1, dataService.getAllNotes().get().size());
+            assertTrue(dataService.deleteNoteById(noteId).get());
+            dataService.deleteAllNotes().get();
+            assertEquals(0, dataService.getNoteCount().get());
+        }
+    }
+
+    @DisplayName("Failures complete the request exceptionally")
+    @Test
+    void failures() {
+        try (var dataService = new AsyncNoteDataService(new CacheNoteDataService())) {
+            var missing = dataService.getNoteById(UUID.randomUUID().toString());
+            var exception = assertThrows(ExecutionException.class, missing::get);
+            assertInstanceOf(NoSuchElementException.class, exception.getCause());
+            exception = assertThrows(ExecutionException.class, () -> dataService.getNoteById("").get());
+            assertInstanceOf(IllegalArgumentException.class, exception.getCause());
+            assertTrue(dataService.updateNote(null).isCompletedExceptionally());
+        }
+    }
+
+    @DisplayName("Many requests are in flight at once")
+    @Test
+    void manyRequests() throws InterruptedException, ExecutionException {
+        var executor = Executors.newFixedThreadPool(4);
+        try (var dataService = new AsyncNoteDataService(new CacheNoteDataService(), executor)) {
+            var creates = new ArrayList<CompletableFuture<String>>();
+            for (int i = 0; i < 1000; i++) {
+                creates.add(dataService.createNote(String.format("note %d", i)));
+            }
+            CompletableFuture.allOf(creates.toArray(new CompletableFuture<?>[0])).get();
+            var reads = new ArrayList<CompletableFuture<Note>>();
+            for (var create : creates) {
+                reads.add(dataService.getNoteById(create.get()));
+            }
+            for (int i = 0; i < reads.size(); i++) {
+                assertEquals(String.format("note %d", i), reads.get(i).get().getContent());
+            }
+            System.out.println("Closing the service");
+        }
+        //An executor supplied by the caller is left running
+        assertFalse(executor.isShutdown());
+        executor.shutdown();
+    }
+
+    @DisplayName("A concurrency of 1 runs the requests in order")
+    @Test
+    void ordered() throws InterruptedException, ExecutionException {
+        try (var dataService = new AsyncNoteDataService(new CacheNoteDataService(), 1)) {
+            var noteId = dataService.createNote("0").get();
+            var updates = new ArrayList<CompletableFuture<Note>>();
+            for (int i = 1; i <= 100; i++) {
+                updates.add(dataService.updateNote(new Note(UUID.fromString(noteId), String.valueOf(i))));
+            }
+            var read = dataService.getNoteById(noteId);
+            assertEquals("100", read.get().getContent());
+            for (var update : updates) {
+                assertTrue(update.isDone());
+            }
+        }
+    }
+}
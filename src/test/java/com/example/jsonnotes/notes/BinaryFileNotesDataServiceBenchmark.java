@@ -0,0 +1,74 @@
+package com.example.jsonnotes.notes;
+
+import com.example.jsonnotes.notes.service.BinaryFileNotesDataService;
+import com.example.jsonnotes.notes.service.JsonFileNotesDataService;
+import com.example.jsonnotes.notes.service.SingleFileNoteDataService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Load and save benchmarks for {@link BinaryFileNotesDataService} against {@link JsonFileNotesDataService}. Run with
+ *  the "benchmark" Gradle task.
+ */
+@Tag("benchmark")
+@DisplayName("BinaryFileNotesDataService benchmarks")
+class BinaryFileNotesDataServiceBenchmark {
+
+    private static final int _NOTE_COUNT = 20000;
+    private static final int _ROUNDS = 5;
+
+    private File _dataDir;
+
+    @BeforeEach
+    void setUp() {
+        _dataDir = TestDataHelper.createTestDataDir("binary-benchmark");
+    }
+
+    @AfterEach
+    void tearDown() {
+        TestDataHelper.deleteTestDataDir(_dataDir);
+    }
+
+    @DisplayName("Load and save - JSON vs binary")
+    @Test
+    void loadAndSave() {
+        _benchmark("json", JsonFileNotesDataService::new, new File(_dataDir, "notes.txt"));
+        _benchmark("binary", BinaryFileNotesDataService::new, new File(_dataDir, "notes.dat"));
+    }
+
+    /**
+     * Time saving and loading {@link BinaryFileNotesDataServiceBenchmark#_NOTE_COUNT} notes, keeping the best of several rounds
+     * @param name The name printed with the results
+     * @param factory Creates the data service for a directory
+     * @param notesFile The file the data service writes
+     */
+    private void _benchmark(String name, Function<String, SingleFileNoteDataService> factory, File notesFile) {
+        var dataService = factory.apply(_dataDir.getAbsolutePath());
+        dataService.setWriteBehind(SingleFileNoteDataService.DEFAULT_WRITE_BEHIND_DELAY_MILLIS, Integer.MAX_VALUE);
+        for (int i = 0; i < _NOTE_COUNT; i++) {
+            dataService.createNote(new Note(String.format("Benchmark note %d content with some more text in it", i), String.format("Note %d", i)));
+        }
+        var bestSave = Double.MAX_VALUE;
+        var bestLoad = Double.MAX_VALUE;
+        for (int round = 0; round < _ROUNDS; round++) {
+            //Touch a note so the flush has something to write
+            dataService.updateNote(dataService.getAllNotes().get(0));
+            var start = System.nanoTime();
+            assertTrue(dataService.flush());
+            bestSave = Math.min(bestSave, (System.nanoTime() - start) / 1_000_000.0);
+            start = System.nanoTime();
+            var loaded = factory.apply(_dataDir.getAbsolutePath());
+            bestLoad = Math.min(bestLoad, (System.nanoTime() - start) / 1_000_000.0);
+            assertEquals(_NOTE_COUNT, loaded.getNoteCount());
+        }
+        System.out.printf("%-6s: save %7.1f ms, load %7.1f ms, %,d bytes%n", name, bestSave, bestLoad, notesFile.length());
+    }
+}
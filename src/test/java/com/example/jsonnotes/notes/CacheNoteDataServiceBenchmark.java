@@ -0,0 +1,126 @@
+package com.example.jsonnotes.notes;
+
+import com.example.jsonnotes.notes.service.CacheNoteDataService;
+import com.example.jsonnotes.notes.service.INoteDataService;
+import com.example.jsonnotes.notes.service.NotePage;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Benchmarks for {@link CacheNoteDataService} used from many threads. Run with the "benchmark" Gradle task.
+ */
+@Tag("benchmark")
+@DisplayName("CacheNoteDataService benchmarks")
+class CacheNoteDataServiceBenchmark {
+
+    private static final int _NOTE_COUNT = 10_000;
+    private static final int _OPERATIONS_PER_THREAD = 500_000;
+
+    /**
+     * A {@link CacheNoteDataService} behind a single lock, the simplest way to make a service safe for many threads
+     */
+    private static class GlobalLockNoteDataService implements INoteDataService {
+        private final CacheNoteDataService _dataService = new CacheNoteDataService();
+
+        @Override
+        public synchronized String createNote() { return _dataService.createNote(); }
+
+        @Override
+        public synchronized String createNote(String content) { return _dataService.createNote(content); }
+
+        @Override
+        public synchronized String createNote(Note note) { return _dataService.createNote(note); }
+
+        @Override
+        public synchronized List<Note> getAllNotes() { return _dataService.getAllNotes(); }
+
+        @Override
+        public synchronized NotePage getNotes(String cursor, int limit) { return _dataService.getNotes(cursor, limit); }
+
+        @Override
+        public synchronized int getNoteCount() { return _dataService.getNoteCount(); }
+
+        @Override
+        public synchronized Note getNoteById(String id) { return _dataService.getNoteById(id); }
+
+        @Override
+        public synchronized Note updateNote(Note note) { return _dataService.updateNote(note); }
+
+        @Override
+        public synchronized boolean deleteNoteById(String id) { return _dataService.deleteNoteById(id); }
+
+        @Override
+        public synchronized void deleteAllNotes() { _dataService.deleteAllNotes(); }
+    }
+
+    @DisplayName("Mixed reads and writes - 1 to N threads")
+    @Test
+    void threadScaling() throws InterruptedException, ExecutionException, BrokenBarrierException {
+        var maxThreads = Math.max(8, Runtime.getRuntime().availableProcessors() * 2);
+        System.out.println("89% reads, 1% counts, 8% updates, 2% creates and deletes");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            var globalLock = _measure(GlobalLockNoteDataService::new, threads);
+            var concurrent = _measure(CacheNoteDataService::new, threads);
+            System.out.printf("%2d thread(s): global lock %,12.0f ops/s, concurrent %,12.0f ops/s (%.1fx)%n",
+                    threads, globalLock, concurrent, concurrent / globalLock);
+        }
+    }
+
+    /**
+     * Run the mixed workload on a new service from a number of threads at once
+     * @return The operations per second across all threads
+     */
+    private static double _measure(Supplier<INoteDataService> factory, int threads) throws InterruptedException, ExecutionException, BrokenBarrierException {
+        var dataService = factory.get();
+        var noteIds = new String[_NOTE_COUNT];
+        for (int i = 0; i < _NOTE_COUNT; i++) {
+            noteIds[i] = dataService.createNote(String.format("Benchmark note %d", i));
+        }
+        var executor = Executors.newFixedThreadPool(threads);
+        var barrier = new CyclicBarrier(threads + 1);
+        try {
+            var tasks = new ArrayList<Future<?>>();
+            for (int thread = 0; thread < threads; thread++) {
+                tasks.add(executor.submit(() -> {
+                    var random = ThreadLocalRandom.current();
+                    barrier.await();
+                    for (int i = 0; i < _OPERATIONS_PER_THREAD; i++) {
+                        var operation = random.nextInt(100);
+                        var noteId = noteIds[random.nextInt(_NOTE_COUNT)];
+                        if (operation < 89) {
+                            dataService.getNoteById(noteId);
+                        } else if (operation < 90) {
+                            dataService.getNoteCount();
+                        } else if (operation < 98) {
+                            dataService.updateNote(new Note(UUID.fromString(noteId), "updated"));
+                        } else {
+                            dataService.deleteNoteById(dataService.createNote("temporary"));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            barrier.await();
+            var start = System.nanoTime();
+            for (var task : tasks) {
+                task.get();
+            }
+            var seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+            return threads * (double) _OPERATIONS_PER_THREAD / seconds;
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
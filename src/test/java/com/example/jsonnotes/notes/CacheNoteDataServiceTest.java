@@ -0,0 +1,77 @@
+package com.example.jsonnotes.notes;
+
+import com.example.jsonnotes.notes.service.CacheNoteDataService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("CacheNoteDataService tests")
+class CacheNoteDataServiceTest {
+
+    private static final int _THREADS = 8;
+    private static final int _OPERATIONS = 2000;
+
+    @DisplayName("Notes are created, updated, and listed from many threads at once")
+    @Test
+    void concurrentChanges() throws InterruptedException, ExecutionException {
+        var dataService = new CacheNoteDataService();
+        var sharedId = dataService.createNote(new Note("shared 0", "shared 0"));
+        var executor = Executors.newFixedThreadPool(_THREADS);
+        try {
+            var tasks = new ArrayList<Future<?>>();
+            for (int thread = 0; thread < _THREADS; thread++) {
+                var threadNumber = thread;
+                tasks.add(executor.submit(() -> {
+                    for (int i = 0; i < _OPERATIONS; i++) {
+                        var noteId = dataService.createNote(String.format("thread %d note %d", threadNumber, i));
+                        //Content and summary are always written together
+                        var value = String.format("shared %d-%d", threadNumber, i);
+                        var upNote = new Note(UUID.fromString(sharedId), value);
+                        upNote.setSummary(value);
+                        dataService.updateNote(upNote);
+                        var shared = dataService.getNoteById(sharedId);
+                        assertEquals(shared.getContent(), shared.getSummary());
+                        if (i % 2 == 1) {
+                            assertTrue(dataService.deleteNoteById(noteId));
+                        }
+                        if (i % 100 == 0) {
+                            assertTrue(dataService.getAllNotes().size() > 0);
+                        }
+                    }
+                }));
+            }
+            for (var task : tasks) {
+                task.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        System.out.printf("%d note(s) left after %d operations%n", dataService.getNoteCount(), _THREADS * _OPERATIONS);
+        assertEquals(1 + _THREADS * _OPERATIONS / 2, dataService.getNoteCount());
+        assertEquals(dataService.getNoteCount(), dataService.getAllNotes().size());
+    }
+
+    @DisplayName("The single instance is shared by every thread")
+    @Test
+    void singleInstance() throws InterruptedException, ExecutionException {
+        var executor = Executors.newFixedThreadPool(_THREADS);
+        try {
+            var instances = new ArrayList<Future<CacheNoteDataService>>();
+            for (int i = 0; i < _THREADS; i++) {
+                instances.add(executor.submit(CacheNoteDataService::getInstance));
+            }
+            for (var instance : instances) {
+                assertSame(CacheNoteDataService.getInstance(), instance.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
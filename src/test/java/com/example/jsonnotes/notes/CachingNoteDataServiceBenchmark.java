@@ -0,0 +1,115 @@
+package com.example.jsonnotes.notes;
+
+import com.example.jsonnotes.notes.service.CachingNoteDataService;
+import com.example.jsonnotes.notes.service.INoteDataService;
+import com.example.jsonnotes.notes.service.JsonNoteDataService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmarks for {@link CachingNoteDataService} over a {@link JsonNoteDataService}. Run with the "benchmark" Gradle task.
+ */
+@Tag("benchmark")
+@DisplayName("CachingNoteDataService benchmarks")
+class CachingNoteDataServiceBenchmark {
+
+    private static final int _NOTE_COUNT = 5000;
+    private static final int _READ_COUNT = 100_000;
+    private static final int _CACHE_SIZE = 250;
+
+    private static File _dataDir;
+    private static List<String> _noteIds;
+
+    @BeforeAll
+    static void setUp() {
+        _dataDir = TestDataHelper.createTestDataDir("caching-benchmark");
+        var dataService = new JsonNoteDataService(_dataDir.getAbsolutePath());
+        System.out.printf("Creating %d note(s)%n", _NOTE_COUNT);
+        _noteIds = new ArrayList<>(_NOTE_COUNT);
+        for (int i = 0; i < _NOTE_COUNT; i++) {
+            _noteIds.add(dataService.createNote(new Note(String.format("Benchmark note %d content", i), String.format("Note %d", i))));
+        }
+    }
+
+    @AfterAll
+    static void tearDown() {
+        TestDataHelper.deleteTestDataDir(_dataDir);
+    }
+
+    @DisplayName("getNoteById - skewed reads mixed with scans, uncached vs cached")
+    @Test
+    void skewedReads() {
+        var trace = _createTrace();
+        var uncached = _timeReads(new JsonNoteDataService(_dataDir.getAbsolutePath()), trace);
+        System.out.printf("uncached      : %,9.0f reads/s%n", _READ_COUNT / (uncached / 1000));
+        var cachingService = new CachingNoteDataService(new JsonNoteDataService(_dataDir.getAbsolutePath()), _CACHE_SIZE);
+        var cached = _timeReads(cachingService, trace);
+        System.out.printf("W-TinyLFU %4d: %,9.0f reads/s (%.1fx), hit rate %.1f%%, %,d evictions%n", _CACHE_SIZE,
+                _READ_COUNT / (cached / 1000), uncached / cached, cachingService.getHitRate() * 100, cachingService.getEvictionCount());
+        System.out.printf("LRU       %4d:               hit rate %.1f%% on the same reads%n", _CACHE_SIZE, _simulateLru(trace) * 100);
+    }
+
+    /**
+     * Build a list of reads where a few notes are read most of the time, interrupted by scans of notes read once
+     */
+    private static List<String> _createTrace() {
+        var random = new Random(42);
+        var trace = new ArrayList<String>(_READ_COUNT);
+        var scanPosition = 0;
+        while (trace.size() < _READ_COUNT) {
+            if (random.nextInt(2000) == 0) {
+                //A scan of 200 notes, such as a search that reads every match once - about a tenth of all reads
+                for (int i = 0; i < 200 && trace.size() < _READ_COUNT; i++) {
+                    trace.add(_noteIds.get(scanPosition++ % _NOTE_COUNT));
+                }
+            } else {
+                //Zipf-like - the lower the rank, the more often the note is read
+                var rank = (int) Math.floor(Math.pow(_NOTE_COUNT, random.nextDouble())) - 1;
+                trace.add(_noteIds.get(rank));
+            }
+        }
+        return trace;
+    }
+
+    private static double _timeReads(INoteDataService dataService, List<String> trace) {
+        var start = System.nanoTime();
+        for (var noteId : trace) {
+            assertNotNull(dataService.getNoteById(noteId));
+        }
+        return (System.nanoTime() - start) / 1_000_000.0;
+    }
+
+    /**
+     * Replay the reads through a plain LRU cache of the same size
+     * @return The hit rate from 0 to 1
+     */
+    private static double _simulateLru(List<String> trace) {
+        var lru = new LinkedHashMap<String, Boolean>(_CACHE_SIZE * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > _CACHE_SIZE;
+            }
+        };
+        var hits = 0;
+        for (var noteId : trace) {
+            if (lru.get(noteId) != null) {
+                hits++;
+            } else {
+                lru.put(noteId, Boolean.TRUE);
+            }
+        }
+        return (double) hits / trace.size();
+    }
+}
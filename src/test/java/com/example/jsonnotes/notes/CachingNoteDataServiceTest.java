@@ -0,0 +1,186 @@
+package com.example.jsonnotes.notes;
+
+import com.example.jsonnotes.notes.service.CacheNoteDataService;
+import com.example.jsonnotes.notes.service.CachingNoteDataService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("CachingNoteDataService tests")
+class CachingNoteDataServiceTest {
+
+    /**
+     * An in-memory data service that counts the reads that reach it, and runs a hook after each update is written
+     */
+    private static class CountingNoteDataService extends CacheNoteDataService {
+        private int _reads = 0;
+        private Runnable _afterUpdate = () -> { };
+
+        @Override
+        public Note updateNote(Note upNote) {
+            var updated = super.updateNote(upNote);
+            _afterUpdate.run();
+            return updated;
+        }
+
+        @Override
+        public Note getNoteById(String id) {
+            _reads++;
+            return super.getNoteById(id);
+        }
+    }
+
+    private CountingNoteDataService _backingService;
+
+    @BeforeEach
+    void setUp() {
+        _backingService = new CountingNoteDataService();
+    }
+
+    @DisplayName("Repeated reads are served from the cache")
+    @Test
+    void readThrough() {
+        var dataService = new CachingNoteDataService(_backingService, 10);
+        var noteId = dataService.createNote(new Note("cached", "summary"));
+        for (int i = 0; i < 5; i++) {
+            assertEquals("cached", dataService.getNoteById(noteId).getContent());
+        }
+        assertEquals(1, _backingService._reads);
+        assertEquals(4, dataService.getHitCount());
+        assertEquals(1, dataService.getMissCount());
+        assertEquals(0.8, dataService.getHitRate(), 0.001);
+        System.out.println("Changing the returned copy");
+        dataService.getNoteById(noteId).setContent("changed in place");
+        assertEquals("cached", dataService.getNoteById(noteId).getContent());
+        assertThrows(NoSuchElementException.class, () -> dataService.getNoteById(UUID.randomUUID().toString()));
+    }
+
+    @DisplayName("Updates and deletes are written through the cache")
+    @Test
+    void writeThrough() {
+        var dataService = new CachingNoteDataService(_backingService, 10);
+        var noteId = dataService.createNote("original");
+        dataService.getNoteById(noteId);
+        dataService.updateNote(new Note(UUID.fromString(noteId), "updated"));
+        assertEquals("updated", dataService.getNoteById(noteId).getContent());
+        assertEquals("updated", _backingService.getNoteById(noteId).getContent());
+        assertTrue(dataService.deleteNoteById(noteId));
+        assertThrows(NoSuchElementException.class, () -> dataService.getNoteById(noteId));
+        assertEquals(0, dataService.getCachedNoteCount());
+    }
+
+    @DisplayName("An update is cached without reading the note again")
+    @Test
+    void updateIsCached() {
+        var dataService = new CachingNoteDataService(_backingService, 10);
+        var noteId = dataService.createNote("original");
+        dataService.getNoteById(noteId);
+        dataService.updateNote(new Note(UUID.fromString(noteId), "updated"));
+        var reads = _backingService._reads;
+        assertEquals("updated", dataService.getNoteById(noteId).getContent());
+        System.out.println("Checking to make sure the updated note was served from the cache");
+        assertEquals(reads, _backingService._reads);
+    }
+
+    @DisplayName("Changing a returned note changes neither the cache nor the wrapped service")
+    @Test
+    void returnedNotesAreCopies() {
+        var dataService = new CachingNoteDataService(_backingService, 10);
+        var noteId = dataService.createNote("original");
+        System.out.println("Changing the note returned by a miss");
+        dataService.getNoteById(noteId).setContent("changed");
+        assertEquals("original", _backingService.getNoteById(noteId).getContent());
+        System.out.println("Changing the note returned by a hit");
+        dataService.getNoteById(noteId).setContent("changed");
+        assertEquals("original", dataService.getNoteById(noteId).getContent());
+    }
+
+    @DisplayName("Hits from many threads are all counted")
+    @Test
+    void concurrentHits() throws InterruptedException {
+        var dataService = new CachingNoteDataService(_backingService, 100);
+        var noteIds = new ArrayList<String>();
+        for (int i = 0; i < 50; i++) {
+            noteIds.add(dataService.createNote(String.format("note %d", i)));
+        }
+        noteIds.forEach(dataService::getNoteById);
+        var threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            var thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    assertNotNull(dataService.getNoteById(noteIds.get(i % noteIds.size())));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (var thread : threads) {
+            thread.join();
+        }
+        assertEquals(50, dataService.getMissCount());
+        assertEquals(40_000, dataService.getHitCount());
+        assertEquals(50, dataService.getCachedNoteCount());
+    }
+
+    @DisplayName("An update that finishes last does not leave an older version in the cache")
+    @Test
+    void overlappingUpdates() {
+        var dataService = new CachingNoteDataService(_backingService, 10);
+        var noteId = dataService.createNote("original");
+        dataService.getNoteById(noteId);
+        //The second update is written and finishes while the first is between its write and its cache update
+        _backingService._afterUpdate = () -> {
+            _backingService._afterUpdate = () -> { };
+            dataService.updateNote(new Note(UUID.fromString(noteId), "second"));
+        };
+        dataService.updateNote(new Note(UUID.fromString(noteId), "first"));
+        assertEquals("second", _backingService.getNoteById(noteId).getContent());
+        assertEquals("second", dataService.getNoteById(noteId).getContent());
+    }
+
+    @DisplayName("Frequently read notes survive a scan of notes read once")
+    @Test
+    void scanResistance() {
+        var dataService = new CachingNoteDataService(_backingService, 100);
+        var hotIds = new ArrayList<String>();
+        for (int i = 0; i < 50; i++) {
+            hotIds.add(dataService.createNote(String.format("hot %d", i)));
+        }
+        for (int round = 0; round < 5; round++) {
+            hotIds.forEach(dataService::getNoteById);
+        }
+        System.out.println("Scanning cold notes");
+        for (int i = 0; i < 1000; i++) {
+            dataService.getNoteById(dataService.createNote(String.format("cold %d", i)));
+        }
+        assertTrue(dataService.getCachedNoteCount() <= 100);
+        assertTrue(dataService.getEvictionCount() >= 950);
+        var reads = _backingService._reads;
+        hotIds.forEach(dataService::getNoteById);
+        System.out.printf("%d of %d hot notes were read from the backing service after the scan%n", _backingService._reads - reads, hotIds.size());
+        assertTrue(_backingService._reads - reads < 5);
+    }
+
+    @DisplayName("The cache stays within its byte weight")
+    @Test
+    void byteWeight() {
+        var maxBytes = 64 * 1024L;
+        var dataService = new CachingNoteDataService(_backingService, maxBytes, CachingNoteDataService::estimateSize);
+        for (int i = 0; i < 200; i++) {
+            dataService.getNoteById(dataService.createNote("x".repeat(1000)));
+            assertTrue(dataService.getCachedWeight() <= maxBytes);
+        }
+        assertTrue(dataService.getCachedNoteCount() < 200);
+        System.out.println("Reading a note larger than the cache");
+        var largeId = dataService.createNote("x".repeat(100_000));
+        dataService.getNoteById(largeId);
+        dataService.getNoteById(largeId);
+        assertEquals(2, _backingService._reads - 200);
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.jsonnotes.notes;
+
+import com.example.jsonnotes.notes.service.INoteDataService;
+import com.example.jsonnotes.notes.service.JsonFileNotesDataService;
+import com.example.jsonnotes.notes.service.JsonNoteDataService;
+import com.example.jsonnotes.util.FileSyncer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.function.BiFunction;
+
+/**
+ * Throughput and latency of writes at each {@link FileSyncer.Durability} level. Run with the "benchmark" Gradle task.
+ */
+@Tag("benchmark")
+@DisplayName("Durability benchmarks")
+class DurabilityBenchmark {
+
+    private static final int _WRITES = 500;
+
+    private File _dataDir;
+
+    @BeforeEach
+    void setUp() {
+        _dataDir = TestDataHelper.createTestDataDir("durability");
+    }
+
+    @AfterEach
+    void tearDown() {
+        TestDataHelper.deleteTestDataDir(_dataDir);
+    }
+
+    @DisplayName("File per note - createNote")
+    @Test
+    void filePerNote() {
+        //Every note file is replaced whole, so its data is forced before the rename even in BATCHED mode
+        _benchmark("file per note", "per-write data, batched metadata", (dataPath, durability) -> {
+            var dataService = new JsonNoteDataService(dataPath);
+            dataService.getFileSyncer().setDurability(durability);
+            return dataService;
+        });
+    }
+
+    @DisplayName("Journaled single file - createNote")
+    @Test
+    void journaledSingleFile() {
+        _benchmark("journaled single file", "batched data and metadata", (dataPath, durability) -> {
+            var dataService = new JsonFileNotesDataService(dataPath, true);
+            dataService.getFileSyncer().setDurability(durability);
+            return dataService;
+        });
+    }
+
+    /**
+     * Time {@link INoteDataService#createNote(String)} at every durability level, each against an empty directory
+     * @param name The name printed with the results
+     * @param batched What {@link FileSyncer.Durability#BATCHED} defers for this service, printed with its results
+     * @param factory Creates the data service for a directory with a durability level
+     */
+    private void _benchmark(String name, String batched, BiFunction<String, FileSyncer.Durability, INoteDataService> factory) {
+        //Warm up so the first durability level is not measured against a cold JIT
+        var warmUp = factory.apply(_dataDir.getAbsolutePath(), FileSyncer.Durability.NONE);
+        for (int i = 0; i < _WRITES; i++) {
+            warmUp.createNote("Warm up");
+        }
+        for (var durability : FileSyncer.Durability.values()) {
+            TestDataHelper.deleteTestDataFiles(_dataDir);
+            var dataService = factory.apply(_dataDir.getAbsolutePath(), durability);
+            var latencies = new long[_WRITES];
+            var start = System.nanoTime();
+            for (int i = 0; i < _WRITES; i++) {
+                var writeStart = System.nanoTime();
+                dataService.createNote(String.format("Benchmark note %d content", i));
+                latencies[i] = System.nanoTime() - writeStart;
+            }
+            var elapsed = System.nanoTime() - start;
+            Arrays.sort(latencies);
+            var level = durability == FileSyncer.Durability.BATCHED ? String.format("%s (%s)", durability, batched) : durability.toString();
+            System.out.printf("%-22s %-44s: %8.0f writes/s, p50 %7.3f ms, p99 %7.3f ms%n", name, level,
+                    _WRITES / (elapsed / 1_000_000_000.0),
+                    latencies[_WRITES / 2] / 1_000_000.0,
+                    latencies[_WRITES * 99 / 100] / 1_000_000.0);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.jsonnotes.notes;
+
+import com.example.jsonnotes.notes.service.FileNoteDataService;
+import com.example.jsonnotes.notes.service.JsonNoteDataService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmarks for {@link FileNoteDataService}. Run with the "benchmark" Gradle task.
+ */
+@Tag("benchmark")
+@DisplayName("FileNoteDataService benchmarks")
+class FileNoteDataServiceBenchmark {
+
+    private static final int _NOTE_COUNT = 5000;
+    private static final int _ROUNDS = 5;
+    private static final int _UPDATES_PER_THREAD = 500;
+
+    private static File _dataDir;
+    private static List<String> _noteIds;
+
+    @BeforeAll
+    static void setUp() {
+        _dataDir = TestDataHelper.createTestDataDir("benchmark");
+        var dataService = new JsonNoteDataService(_dataDir.getAbsolutePath());
+        System.out.printf("Creating %d note(s)%n", _NOTE_COUNT);
+        _noteIds = new ArrayList<>(_NOTE_COUNT);
+        for (int i = 0; i < _NOTE_COUNT; i++) {
+            _noteIds.add(dataService.createNote(new Note(String.format("Benchmark note %d content", i), String.format("Note %d", i))));
+        }
+    }
+
+    @AfterAll
+    static void tearDown() {
+        TestDataHelper.deleteTestDataDir(_dataDir);
+    }
+
+    @DisplayName("getAllNotes - sequential vs parallel reads")
+    @Test
+    void getAllNotes() {
+        var sequential = _timeGetAllNotes(new JsonNoteDataService(_dataDir.getAbsolutePath()));
+        System.out.printf("sequential        : %6.1f ms%n", sequential);
+        for (var readConcurrency : new int[] { 2, 4, 8, 16, 32 }) {
+            var parallel = _timeGetAllNotes(new JsonNoteDataService(_dataDir.getAbsolutePath(), readConcurrency));
+            System.out.printf("readConcurrency %2d: %6.1f ms (%.2fx sequential)%n", readConcurrency, parallel, sequential / parallel);
+        }
+    }
+
+    @DisplayName("Bulk import - createNote one at a time vs createNotes")
+    @Test
+    void batchImport() {
+        var batchDir = TestDataHelper.createTestDataDir("benchmark-batch");
+        var notes = new ArrayList<Note>(_NOTE_COUNT);
+        for (int i = 0; i < _NOTE_COUNT; i++) {
+            notes.add(new Note(String.format("Benchmark note %d content", i), String.format("Note %d", i)));
+        }
+        var single = Double.MAX_VALUE;
+        var batches = new double[] { Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE };
+        var readConcurrencies = new int[] { 1, 4, 16 };
+        //Alternate the ways of importing so each one sees the same state of the file system
+        for (int round = 0; round < _ROUNDS; round++) {
+            var dataService = new JsonNoteDataService(batchDir.getAbsolutePath());
+            dataService.deleteAllNotes();
+            var start = System.nanoTime();
+            for (var note : notes) {
+                assertNotNull(dataService.createNote(note));
+            }
+            single = Math.min(single, (System.nanoTime() - start) / 1_000_000.0);
+            for (int i = 0; i < readConcurrencies.length; i++) {
+                dataService = new JsonNoteDataService(batchDir.getAbsolutePath(), readConcurrencies[i]);
+                dataService.deleteAllNotes();
+                start = System.nanoTime();
+                var ids = dataService.createNotes(notes);
+                batches[i] = Math.min(batches[i], (System.nanoTime() - start) / 1_000_000.0);
+                assertFalse(ids.contains(null));
+            }
+        }
+        System.out.printf("one at a time       : %7.1f ms%n", single);
+        for (int i = 0; i < readConcurrencies.length; i++) {
+            System.out.printf("batch, %2d thread(s): %7.1f ms (%.2fx one at a time)%n", readConcurrencies[i], batches[i], single / batches[i]);
+        }
+        var dataService = new JsonNoteDataService(batchDir.getAbsolutePath());
+        assertEquals(_NOTE_COUNT, dataService.getNoteCount());
+        TestDataHelper.deleteTestDataDir(batchDir);
+    }
+
+    @DisplayName("getNotes - one page vs every note")
+    @Test
+    void firstPage() {
+        var dataService = new JsonNoteDataService(_dataDir.getAbsolutePath());
+        var all = _timeGetAllNotes(dataService);
+        var first = Double.MAX_VALUE;
+        var middle = Double.MAX_VALUE;
+        var middleCursor = dataService.getNotes(null, _NOTE_COUNT / 2).getNextCursor();
+        for (int round = 0; round < _ROUNDS; round++) {
+            var start = System.nanoTime();
+            assertEquals(50, dataService.getNotes(null, 50).getNotes().size());
+            first = Math.min(first, (System.nanoTime() - start) / 1_000_000.0);
+            start = System.nanoTime();
+            assertEquals(50, dataService.getNotes(middleCursor, 50).getNotes().size());
+            middle = Math.min(middle, (System.nanoTime() - start) / 1_000_000.0);
+        }
+        System.out.printf("getAllNotes (%d notes): %6.1f ms%n", _NOTE_COUNT, all);
+        System.out.printf("first page of 50      : %6.1f ms%n", first);
+        System.out.printf("middle page of 50     : %6.1f ms%n", middle);
+    }
+
+    @DisplayName("updateNote and getNoteById - 1 to N threads, spread out vs one hot note")
+    @Test
+    void threadScaling() throws InterruptedException, ExecutionException, BrokenBarrierException {
+        var maxThreads = Math.max(8, Runtime.getRuntime().availableProcessors() * 2);
+        var dataService = new JsonNoteDataService(_dataDir.getAbsolutePath());
+        System.out.println("50% reads, 50% updates");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            var spread = _measureUpdates(dataService, threads, false);
+            var hot = _measureUpdates(dataService, threads, true);
+            System.out.printf("%2d thread(s): spread out %,9.0f ops/s, one hot note %,9.0f ops/s%n", threads, spread, hot);
+        }
+    }
+
+    /**
+     * Read and update {@link Note notes} from a number of threads at once
+     * @param hot TRUE to have every thread change the same {@link Note}
+     * @return The operations per second across all threads
+     */
+    private static double _measureUpdates(FileNoteDataService dataService, int threads, boolean hot) throws InterruptedException, ExecutionException, BrokenBarrierException {
+        var executor = Executors.newFixedThreadPool(threads);
+        var barrier = new CyclicBarrier(threads + 1);
+        try {
+            var tasks = new ArrayList<Future<?>>();
+            for (int thread = 0; thread < threads; thread++) {
+                tasks.add(executor.submit(() -> {
+                    var random = ThreadLocalRandom.current();
+                    barrier.await();
+                    for (int i = 0; i < _UPDATES_PER_THREAD; i++) {
+                        var noteId = _noteIds.get(hot ? 0 : random.nextInt(_NOTE_COUNT));
+                        if (random.nextBoolean()) {
+                            assertNotNull(dataService.getNoteById(noteId));
+                        } else {
+                            assertNotNull(dataService.updateNote(new Note(UUID.fromString(noteId), String.format("Updated %d", i))));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            barrier.await();
+            var start = System.nanoTime();
+            for (var task : tasks) {
+                task.get();
+            }
+            var seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+            return threads * (double) _UPDATES_PER_THREAD / seconds;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Time {@link FileNoteDataService#getAllNotes()}, keeping the best of several rounds
+     * @param dataService The data service to time
+     * @return The best time in milliseconds
+     */
+    private static double _timeGetAllNotes(FileNoteDataService dataService) {
+        var best = Double.MAX_VALUE;
+        for (int round = 0; round < _ROUNDS; round++) {
+            var start = System.nanoTime();
+            var notes = dataService.getAllNotes();
+            var elapsed = (System.nanoTime() - start) / 1_000_000.0;
+            assertEquals(_NOTE_COUNT, notes.size());
+            best = Math.min(best, elapsed);
+        }
+        return best;
+    }
+}
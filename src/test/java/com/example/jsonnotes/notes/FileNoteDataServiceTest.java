@@ -0,0 +1,308 @@
+package com.example.jsonnotes.notes;
+
+import com.example.jsonnotes.notes.service.JsonNoteDataService;
+import com.example.jsonnotes.notes.service.NoteFileLayout;
+import com.example.jsonnotes.notes.service.TextNoteDataService;
+import com.example.jsonnotes.util.FileHelper;
+import com.example.jsonnotes.util.FileSyncer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("FileNoteDataService tests")
+class FileNoteDataServiceTest {
+
+    private File _dataDir;
+
+    @BeforeEach
+    void setUp() {
+        _dataDir = TestDataHelper.createTestDataDir("file-per-note");
+    }
+
+    @AfterEach
+    void tearDown() {
+        TestDataHelper.deleteTestDataDir(_dataDir);
+    }
+
+    @DisplayName("Note IDs are loaded from the manifest")
+    @Test
+    void loadFromManifest() {
+        var dataService = new TextNoteDataService(_dataDir.getAbsolutePath());
+        var keptId = dataService.createNote("kept");
+        var deletedId = dataService.createNote("deleted");
+        assertTrue(dataService.deleteNoteById(deletedId));
+        System.out.println("Checking to make sure the manifest was written");
+        assertTrue(new File(_dataDir, ".note-ids").exists());
+        System.out.println("Reloading the store");
+        var reloaded = new TextNoteDataService(_dataDir.getAbsolutePath());
+        assertEquals(1, reloaded.getNoteCount());
+        assertEquals("kept", reloaded.getNoteById(keptId).getContent());
+    }
+
+    @DisplayName("Durability is set for each service")
+    @Test
+    void durabilityPerService() {
+        var batched = new TextNoteDataService(_dataDir.getAbsolutePath());
+        var unsynced = new TextNoteDataService(_dataDir.getAbsolutePath());
+        try {
+            batched.getFileSyncer().setDurability(FileSyncer.Durability.BATCHED);
+            System.out.println("Checking to make sure the other service keeps its own durability");
+            assertEquals(FileSyncer.Durability.BATCHED, batched.getFileSyncer().getDurability());
+            assertEquals(FileSyncer.Durability.NONE, unsynced.getFileSyncer().getDurability());
+            var id = batched.createNote("batched");
+            batched.getFileSyncer().syncPending();
+            assertEquals("batched", new TextNoteDataService(_dataDir.getAbsolutePath()).getNoteById(id).getContent());
+        } finally {
+            batched.getFileSyncer().close();
+        }
+    }
+
+    @DisplayName("A stale manifest falls back to scanning the directory")
+    @Test
+    void staleManifest() throws IOException {
+        var dataService = new TextNoteDataService(_dataDir.getAbsolutePath());
+        dataService.createNote("known");
+        System.out.println("Adding a note file without the data service");
+        var externalId = UUID.randomUUID().toString();
+        assertTrue(FileHelper.createFile(new File(_dataDir, externalId + ".txt"), "external"));
+        //Make sure the manifest is older than the directory regardless of timestamp resolution
+        var directoryTime = Files.getLastModifiedTime(_dataDir.toPath()).toMillis();
+        Files.setLastModifiedTime(new File(_dataDir, ".note-ids").toPath(), FileTime.fromMillis(directoryTime - 1000));
+        System.out.println("Reloading the store");
+        var reloaded = new TextNoteDataService(_dataDir.getAbsolutePath());
+        assertEquals(2, reloaded.getNoteCount());
+        assertEquals("external", reloaded.getNoteById(externalId).getContent());
+    }
+
+    @DisplayName("Changes interrupted by a crash are checked against the shard directories")
+    @Test
+    void interruptedChanges() throws IOException {
+        var dataService = new TextNoteDataService(_dataDir.getAbsolutePath());
+        dataService.setLayout(NoteFileLayout.SHARDED);
+        var keptId = dataService.createNote("kept");
+        var keptFile = new File(_dataDir, String.format("%s/%s/%s.txt", keptId.substring(0, 2), keptId.substring(2, 4), keptId));
+        assertEquals(1, new TextNoteDataService(_dataDir.getAbsolutePath()).getNoteCount());
+        System.out.println("Recording two notes without finishing them, as a crash would");
+        //Both IDs share the kept note's shard, so writing them leaves the data directory unchanged
+        var writtenId = keptId.substring(0, 4) + UUID.randomUUID().toString().substring(4);
+        var lostId = keptId.substring(0, 4) + UUID.randomUUID().toString().substring(4);
+        Files.copy(keptFile.toPath(), new File(keptFile.getParentFile(), writtenId + ".txt").toPath());
+        Files.writeString(new File(_dataDir, ".note-ids").toPath(), String.format("+%s%n+%s%n", writtenId, lostId), StandardOpenOption.APPEND);
+        System.out.println("Reloading the store");
+        var reloaded = new TextNoteDataService(_dataDir.getAbsolutePath());
+        assertEquals(2, reloaded.getNoteCount());
+        assertEquals("kept", reloaded.getNoteById(writtenId).getContent());
+        assertThrows(NoSuchElementException.class, () -> reloaded.getNoteById(lostId));
+        assertEquals(2, new TextNoteDataService(_dataDir.getAbsolutePath()).getNoteCount());
+    }
+
+    @DisplayName("Notes are readable in both layouts while migrating")
+    @Test
+    void migrateLayout() {
+        var dataService = new TextNoteDataService(_dataDir.getAbsolutePath());
+        var flatId = dataService.createNote("flat");
+        System.out.println("Switching to the sharded layout");
+        dataService.setLayout(NoteFileLayout.SHARDED);
+        var shardedId = dataService.createNote("sharded");
+        assertTrue(new File(_dataDir, String.format("%s/%s/%s.txt", shardedId.substring(0, 2), shardedId.substring(2, 4), shardedId)).exists());
+        assertEquals("flat", dataService.getNoteById(flatId).getContent());
+        System.out.println("Migrating the flat note");
+        assertEquals(1, dataService.migrateLayout());
+        assertFalse(new File(_dataDir, flatId + ".txt").exists());
+        System.out.println("Reloading the store without the manifest");
+        assertTrue(new File(_dataDir, ".note-ids").delete());
+        var reloaded = new TextNoteDataService(_dataDir.getAbsolutePath());
+        assertEquals(2, reloaded.getNoteCount());
+        assertEquals("flat", reloaded.getNoteById(flatId).getContent());
+        System.out.println("Migrating back to the flat layout");
+        assertEquals(2, reloaded.migrateLayout());
+        assertEquals("sharded", reloaded.getNoteById(shardedId).getContent());
+        assertTrue(reloaded.deleteNoteById(flatId));
+        assertEquals(1, new TextNoteDataService(_dataDir.getAbsolutePath()).getNoteCount());
+    }
+
+    @DisplayName("Notes are compressed with a trained dictionary")
+    @Test
+    void dictionaryCompression() throws IOException {
+        var dataService = new JsonNoteDataService(_dataDir.getAbsolutePath());
+        for (int i = 0; i < 50; i++) {
+            dataService.createNote(new Note(String.format("Meeting notes %d - review the project budget with the team", i), "Meeting " + i));
+        }
+        var plainId = dataService.createNote(new Note("plain", "plain summary"));
+        var plainSize = new File(_dataDir, plainId + ".txt").length();
+        System.out.println("Turning on compression");
+        dataService.setCompressed(true);
+        assertTrue(new File(_dataDir, ".note-dictionary.1").exists());
+        var compressedId = dataService.createNote(new Note("plain", "plain summary"));
+        var compressedFile = new File(_dataDir, compressedId + ".txt");
+        assertEquals((byte) 0xFF, Files.readAllBytes(compressedFile.toPath())[0]);
+        System.out.printf("Plain note %d bytes, compressed note %d bytes%n", plainSize, compressedFile.length());
+        assertTrue(compressedFile.length() < plainSize);
+        assertEquals("plain summary", dataService.getNoteById(compressedId).getSummary());
+        System.out.println("Retraining and reloading the store");
+        assertEquals(2, dataService.trainDictionary(10));
+        var reloaded = new JsonNoteDataService(_dataDir.getAbsolutePath());
+        assertFalse(reloaded.isCompressed());
+        reloaded.setCompressed(true);
+        assertFalse(new File(_dataDir, ".note-dictionary.3").exists());
+        assertEquals("plain summary", reloaded.getNoteById(compressedId).getSummary());
+        assertEquals("plain", reloaded.getNoteById(plainId).getContent());
+        assertEquals(52, reloaded.recompressNotes());
+        assertEquals(0, reloaded.recompressNotes());
+        System.out.println("Turning off compression");
+        reloaded.setCompressed(false);
+        assertEquals(52, reloaded.recompressNotes());
+        assertEquals('{', Files.readAllBytes(compressedFile.toPath())[0]);
+        assertEquals(52, new JsonNoteDataService(_dataDir.getAbsolutePath()).getAllNotes().size());
+    }
+
+    @DisplayName("A compressed note with a damaged length is skipped")
+    @Test
+    void damagedCompressedLength() throws IOException {
+        var dataService = new JsonNoteDataService(_dataDir.getAbsolutePath());
+        for (int i = 0; i < 10; i++) {
+            dataService.createNote(new Note(String.format("Meeting notes %d - review the project budget with the team", i), "Meeting " + i));
+        }
+        dataService.setCompressed(true);
+        var damagedId = dataService.createNote(new Note("damaged", "damaged summary"));
+        var keptId = dataService.createNote(new Note("kept", "kept summary"));
+        System.out.println("Claiming the compressed note inflates to almost 2GiB");
+        try (var file = new RandomAccessFile(new File(_dataDir, damagedId + ".txt"), "rw")) {
+            file.seek(4);
+            file.writeInt(Integer.MAX_VALUE - 8);
+        }
+        var reloaded = new JsonNoteDataService(_dataDir.getAbsolutePath());
+        var notes = reloaded.getAllNotes();
+        assertEquals(11, notes.size());
+        assertTrue(notes.stream().noneMatch(note -> note.getId().equals(damagedId)));
+        assertEquals("kept summary", reloaded.getNoteById(keptId).getSummary());
+    }
+
+    @DisplayName("Repeated content is stored once and deleted with its last note")
+    @Test
+    void deduplication() throws IOException {
+        var dataService = new JsonNoteDataService(_dataDir.getAbsolutePath());
+        var sharedContent = "Quarterly report - ".repeat(20);
+        var inlineId = dataService.createNote(new Note(sharedContent, "inline"));
+        System.out.println("Turning on deduplication");
+        dataService.setDeduplicated(true);
+        var firstId = dataService.createNote(new Note(sharedContent, "first"));
+        var secondId = dataService.createNote(new Note(sharedContent, "second"));
+        var shortId = dataService.createNote(new Note("short", "short"));
+        var bodiesDir = new File(_dataDir, ".bodies");
+        assertEquals(1, bodiesDir.list().length);
+        assertTrue(new File(_dataDir, firstId + ".txt").length() < new File(_dataDir, inlineId + ".txt").length());
+        assertSame(dataService.getNoteById(firstId).getContent(), dataService.getNoteById(secondId).getContent());
+        assertEquals(1, dataService.deduplicateNotes());
+        assertEquals(0, dataService.deduplicateNotes());
+        System.out.println("Reloading the store");
+        var reloaded = new JsonNoteDataService(_dataDir.getAbsolutePath());
+        assertTrue(reloaded.isDeduplicated());
+        assertEquals(sharedContent, reloaded.getNoteById(inlineId).getContent());
+        assertEquals("short", reloaded.getNoteById(shortId).getContent());
+        System.out.println("Releasing the shared body");
+        reloaded.updateNote(new Note(UUID.fromString(firstId), "changed"));
+        assertTrue(reloaded.deleteNoteById(secondId));
+        assertEquals(1, bodiesDir.list().length);
+        assertTrue(reloaded.deleteNoteById(inlineId));
+        assertEquals(0, bodiesDir.list().length);
+        System.out.println("Turning off deduplication");
+        var otherContent = "Weekly summary - ".repeat(20);
+        var otherId = reloaded.createNote(new Note(otherContent, "other"));
+        assertEquals(1, bodiesDir.list().length);
+        reloaded.setDeduplicated(false);
+        assertEquals(1, reloaded.deduplicateNotes());
+        assertEquals(0, bodiesDir.list().length);
+        assertEquals(otherContent, new JsonNoteDataService(_dataDir.getAbsolutePath()).getNoteById(otherId).getContent());
+    }
+
+    @DisplayName("Notes can be changed from many threads at once")
+    @Test
+    void concurrentChanges() throws InterruptedException, ExecutionException {
+        var threads = 8;
+        var operations = 40;
+        var dataService = new JsonNoteDataService(_dataDir.getAbsolutePath(), 4);
+        var sharedId = dataService.createNote(new Note("shared 0", "shared 0"));
+        var executor = Executors.newFixedThreadPool(threads);
+        try {
+            var tasks = new ArrayList<Future<?>>();
+            for (int thread = 0; thread < threads; thread++) {
+                var threadNumber = thread;
+                tasks.add(executor.submit(() -> {
+                    for (int i = 0; i < operations; i++) {
+                        var noteId = dataService.createNote(String.format("thread %d note %d", threadNumber, i));
+                        assertNotNull(noteId);
+                        //Content and summary are always written together
+                        var value = String.format("shared %d-%d", threadNumber, i);
+                        var upNote = new Note(UUID.fromString(sharedId), value);
+                        upNote.setSummary(value);
+                        assertNotNull(dataService.updateNote(upNote));
+                        var shared = dataService.getNoteById(sharedId);
+                        assertEquals(shared.getContent(), shared.getSummary());
+                        if (i % 2 == 1) {
+                            assertTrue(dataService.deleteNoteById(noteId));
+                        }
+                        if (i % 10 == 0) {
+                            assertTrue(dataService.getAllNotes().size() > 0);
+                        }
+                    }
+                }));
+            }
+            for (var task : tasks) {
+                task.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        System.out.printf("%d note(s) left after %d operations%n", dataService.getNoteCount(), threads * operations);
+        assertEquals(1 + threads * operations / 2, dataService.getNoteCount());
+        assertEquals(dataService.getNoteCount(), dataService.getAllNotes().size());
+        System.out.println("Reloading the store");
+        assertEquals(dataService.getNoteCount(), new JsonNoteDataService(_dataDir.getAbsolutePath()).getAllNotes().size());
+    }
+
+    @DisplayName("A batch is written in parallel and recorded in the manifest")
+    @Test
+    void parallelBatch() {
+        var numNotes = 50;
+        var dataService = new JsonNoteDataService(_dataDir.getAbsolutePath(), 4);
+        var notes = new ArrayList<Note>();
+        for (int i = 0; i < numNotes; i++) {
+            notes.add(new Note(String.format("note %d", i)));
+        }
+        System.out.printf("Creating %d note(s) in one batch%n", numNotes);
+        var ids = dataService.createNotes(notes);
+        assertFalse(ids.contains(null));
+        var upNotes = new ArrayList<Note>();
+        for (int i = 0; i < numNotes; i += 2) {
+            upNotes.add(new Note(UUID.fromString(ids.get(i)), String.format("updated %d", i)));
+        }
+        assertFalse(dataService.updateNotes(upNotes).contains(null));
+        var deleted = dataService.deleteNotesByIds(ids.subList(0, 10));
+        assertFalse(deleted.contains(false));
+        assertEquals(numNotes - 10, dataService.getNoteCount());
+        System.out.println("Reloading the store from the manifest");
+        var manifestFile = new File(_dataDir, ".note-ids");
+        assertTrue(manifestFile.lastModified() >= _dataDir.lastModified());
+        var reloaded = new JsonNoteDataService(_dataDir.getAbsolutePath());
+        assertEquals(numNotes - 10, reloaded.getNoteCount());
+        assertEquals("updated 10", reloaded.getNoteById(ids.get(10)).getContent());
+        assertEquals("note 11", reloaded.getNoteById(ids.get(11)).getContent());
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.jsonnotes.notes;
+
+import com.example.jsonnotes.notes.service.BinaryFileNotesDataService;
+import com.example.jsonnotes.notes.service.INoteDataService;
+import com.example.jsonnotes.notes.service.MappedBinaryNotesDataService;
+import com.example.jsonnotes.notes.service.SingleFileNoteDataService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Startup benchmarks for {@link MappedBinaryNotesDataService} against {@link BinaryFileNotesDataService}. Run with the
+ *  "benchmark" Gradle task.
+ */
+@Tag("benchmark")
+@DisplayName("MappedBinaryNotesDataService benchmarks")
+class MappedBinaryNotesDataServiceBenchmark {
+
+    private static final int _NOTE_COUNT = 200000;
+
+    private File _dataDir;
+
+    @BeforeEach
+    void setUp() {
+        _dataDir = TestDataHelper.createTestDataDir("mapped-benchmark");
+    }
+
+    @AfterEach
+    void tearDown() {
+        TestDataHelper.deleteTestDataDir(_dataDir);
+    }
+
+    @DisplayName("Startup time and retained heap - loaded vs mapped")
+    @Test
+    void startup() {
+        var dataService = new BinaryFileNotesDataService(_dataDir.getAbsolutePath());
+        dataService.setWriteBehind(SingleFileNoteDataService.DEFAULT_WRITE_BEHIND_DELAY_MILLIS, Integer.MAX_VALUE);
+        for (int i = 0; i < _NOTE_COUNT; i++) {
+            dataService.createNote(new Note(String.format("Benchmark note %d content with a few more words to give it some weight", i), String.format("Note %d", i)));
+        }
+        assertTrue(dataService.flush());
+        var someId = dataService.getAllNotes().get(_NOTE_COUNT / 2).getId();
+        dataService = null;
+        System.out.printf("%,d notes, %,d bytes%n", _NOTE_COUNT, new File(_dataDir, "notes.dat").length());
+        _measure("loaded", () -> new BinaryFileNotesDataService(_dataDir.getAbsolutePath()), someId);
+        //The first mapped start walks the file and saves the index, the second one loads the saved index
+        _measure("mapped, no index", () -> new MappedBinaryNotesDataService(_dataDir.getAbsolutePath()), someId);
+        _measure("mapped, saved index", () -> new MappedBinaryNotesDataService(_dataDir.getAbsolutePath()), someId);
+    }
+
+    /**
+     * Time opening a store and reading one note, and measure the heap the open store holds on to
+     * @param name The name printed with the results
+     * @param factory Opens the store
+     * @param noteId The ID of the note to read
+     */
+    private static void _measure(String name, Supplier<INoteDataService> factory, String noteId) {
+        var before = _usedHeap();
+        var start = System.nanoTime();
+        var dataService = factory.get();
+        var note = dataService.getNoteById(noteId);
+        var elapsed = (System.nanoTime() - start) / 1_000_000.0;
+        var retained = _usedHeap() - before;
+        assertNotNull(note);
+        assertEquals(_NOTE_COUNT, dataService.getNoteCount());
+        System.out.printf("%-20s: open + one read %8.1f ms, retained heap %,7d KiB%n", name, elapsed, retained / 1024);
+        if (dataService instanceof MappedBinaryNotesDataService mapped) {
+            mapped.close();
+        }
+    }
+
+    private static long _usedHeap() {
+        var runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.jsonnotes.notes;
+
+import com.example.jsonnotes.notes.service.BinaryFileNotesDataService;
+import com.example.jsonnotes.notes.service.MappedBinaryNotesDataService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("MappedBinaryNotesDataService tests")
+class MappedBinaryNotesDataServiceTest {
+
+    private File _dataDir;
+    private MappedBinaryNotesDataService _dataService;
+
+    @BeforeEach
+    void setUp() {
+        _dataDir = TestDataHelper.createTestDataDir("mapped");
+        _dataService = new MappedBinaryNotesDataService(_dataDir.getAbsolutePath());
+    }
+
+    @AfterEach
+    void tearDown() {
+        _dataService.close();
+        TestDataHelper.deleteTestDataDir(_dataDir);
+    }
+
+    @DisplayName("Changes are appended and survive a reload")
+    @Test
+    void reload() {
+        var keptId = _dataService.createNote("kept");
+        var deletedId = _dataService.createNote("deleted");
+        var updatedId = _dataService.createNote("original");
+        _dataService.updateNote(new Note(UUID.fromString(updatedId), "updated"));
+        assertTrue(_dataService.deleteNoteById(deletedId));
+        assertFalse(_dataService.deleteNoteById(deletedId));
+        System.out.println("Reloading from the saved index");
+        _dataService.close();
+        _dataService = new MappedBinaryNotesDataService(_dataDir.getAbsolutePath());
+        _assertReloaded(keptId, deletedId, updatedId);
+        System.out.println("Reloading without the saved index");
+        _dataService.close();
+        assertTrue(new File(_dataDir, "notes.dat.idx").delete());
+        _dataService = new MappedBinaryNotesDataService(_dataDir.getAbsolutePath());
+        _assertReloaded(keptId, deletedId, updatedId);
+    }
+
+    @DisplayName("Batches are appended and survive a reload")
+    @Test
+    void batch() {
+        var ids = _dataService.createNotes(List.of(new Note("kept"), new Note("deleted"), new Note("original")));
+        assertFalse(ids.contains(null));
+        var updated = _dataService.updateNotes(List.of(new Note(UUID.fromString(ids.get(2)), "updated"), new Note(UUID.randomUUID(), "missing")));
+        assertNotNull(updated.get(0));
+        assertNull(updated.get(1));
+        assertEquals(List.of(true, false), _dataService.deleteNotesByIds(List.of(ids.get(1), ids.get(1))));
+        System.out.println("Reloading without the saved index");
+        _dataService.close();
+        assertTrue(new File(_dataDir, "notes.dat.idx").delete());
+        _dataService = new MappedBinaryNotesDataService(_dataDir.getAbsolutePath());
+        _assertReloaded(ids.get(0), ids.get(1), ids.get(2));
+    }
+
+    @DisplayName("An index older than the file is rebuilt")
+    @Test
+    void staleIndex() {
+        var savedId = _dataService.createNote("saved");
+        assertTrue(_dataService.flush());
+        var appendedId = _dataService.createNote("appended");
+        System.out.println("Reloading without saving the index");
+        var reloaded = new MappedBinaryNotesDataService(_dataDir.getAbsolutePath());
+        assertEquals(2, reloaded.getNoteCount());
+        assertEquals("saved", reloaded.getNoteById(savedId).getContent());
+        assertEquals("appended", reloaded.getNoteById(appendedId).getContent());
+        reloaded.close();
+    }
+
+    @DisplayName("Compaction drops replaced records")
+    @Test
+    void compaction() {
+        var noteId = _dataService.createNote("version 0");
+        for (int i = 1; i <= 10; i++) {
+            _dataService.updateNote(new Note(UUID.fromString(noteId), String.format("version %d", i)));
+        }
+        var notesFile = new File(_dataDir, "notes.dat");
+        var uncompacted = notesFile.length();
+        System.out.println("Compacting the file");
+        assertTrue(_dataService.compact());
+        assertTrue(notesFile.length() < uncompacted);
+        assertEquals("version 10", _dataService.getNoteById(noteId).getContent());
+        System.out.println("Reading the compacted file with the binary data service");
+        var binary = new BinaryFileNotesDataService(_dataDir.getAbsolutePath());
+        assertEquals(1, binary.getNoteCount());
+        assertEquals("version 10", binary.getNoteById(noteId).getContent());
+    }
+
+    @DisplayName("Deleting all notes empties the file")
+    @Test
+    void deleteAllNotes() {
+        _dataService.createNote("first");
+        _dataService.createNote("second");
+        _dataService.deleteAllNotes();
+        assertEquals(0, _dataService.getNoteCount());
+        var createdId = _dataService.createNote("after");
+        assertEquals(1, _dataService.getAllNotes().size());
+        assertEquals("after", _dataService.getNoteById(createdId).getContent());
+    }
+
+    @DisplayName("Pages of notes are found through the index in order of ID")
+    @Test
+    void pages() {
+        var noteIds = new TreeSet<String>();
+        for (int i = 0; i < 200; i++) {
+            noteIds.add(_dataService.createNote(String.format("note %d", i)));
+        }
+        System.out.println("Reading the notes 30 at a time");
+        var returnedIds = new ArrayList<String>();
+        String cursor = null;
+        do {
+            var page = _dataService.getNotes(cursor, 30);
+            page.getNotes().forEach(note -> returnedIds.add(note.getId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        //IDs starting with 8 to f sort after the others, as Strings do
+        assertEquals(new ArrayList<>(noteIds), returnedIds);
+    }
+
+    @DisplayName("Pages stay in order of ID while notes are created and deleted between them")
+    @Test
+    void pagesAfterChanges() {
+        var noteIds = new TreeSet<String>();
+        for (int i = 0; i < 300; i++) {
+            noteIds.add(_dataService.createNote(String.format("note %d", i)));
+        }
+        assertEquals(new ArrayList<>(noteIds).subList(0, 30), _firstPageIds());
+        System.out.println("Creating and deleting notes between pages");
+        var random = new Random(42);
+        for (int i = 0; i < 3000; i++) {
+            noteIds.add(_dataService.createNote(String.format("added %d", i)));
+            if (i % 3 == 0) {
+                var deletedId = new ArrayList<>(noteIds).get(random.nextInt(noteIds.size()));
+                assertTrue(_dataService.deleteNoteById(deletedId));
+                noteIds.remove(deletedId);
+            }
+            if (i % 500 == 0) {
+                assertEquals(new ArrayList<>(noteIds).subList(0, 30), _firstPageIds());
+            }
+        }
+        System.out.println("Reading every note 50 at a time");
+        var returnedIds = new ArrayList<String>();
+        String cursor = null;
+        do {
+            var page = _dataService.getNotes(cursor, 50);
+            page.getNotes().forEach(note -> returnedIds.add(note.getId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        assertEquals(new ArrayList<>(noteIds), returnedIds);
+    }
+
+    /**
+     * Get the IDs of the first 30 notes
+     */
+    private List<String> _firstPageIds() {
+        return _dataService.getNotes(null, 30).getNotes().stream().map(Note::getId).toList();
+    }
+
+    private void _assertReloaded(String keptId, String deletedId, String updatedId) {
+        assertEquals(2, _dataService.getNoteCount());
+        assertEquals("kept", _dataService.getNoteById(keptId).getContent());
+        assertEquals("updated", _dataService.getNoteById(updatedId).getContent());
+        assertThrows(NoSuchElementException.class, () -> _dataService.getNoteById(deletedId));
+    }
+}
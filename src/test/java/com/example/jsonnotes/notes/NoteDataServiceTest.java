@@ -1,17 +1,26 @@
 package com.example.jsonnotes.notes;
 
+import com.example.jsonnotes.notes.service.BinaryFileNotesDataService;
 import com.example.jsonnotes.notes.service.CacheNoteDataService;
 import com.example.jsonnotes.notes.service.INoteDataService;
+import com.example.jsonnotes.notes.service.JsonNoteDataService;
+import com.example.jsonnotes.notes.service.SearchableNoteDataService;
 import com.example.jsonnotes.notes.service.TextNoteDataService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
-import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.Flow;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -19,6 +28,18 @@ import static org.junit.jupiter.api.Assertions.*;
 @DisplayName("INoteDataService tests")
 class NoteDataServiceTest {
 
+    private static final String _TEST_DATA_NAME = "note-data-service";
+
+    @BeforeAll
+    static void setUp() {
+        TestDataHelper.createTestDataDir(_TEST_DATA_NAME);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        TestDataHelper.deleteTestDataDir(TestDataHelper.getTestDataDir(_TEST_DATA_NAME));
+    }
+
     @Order(1)
     @DisplayName("Create new data service")
     @ParameterizedTest(name = "{index} ==> A new instance of {0} is created")
@@ -80,6 +101,91 @@ class NoteDataServiceTest {
         dataService.deleteAllNotes();
     }
 
+    @DisplayName("Get Notes a page at a time - INoteDataService.getNotes(String, int)")
+    @ParameterizedTest(name = "{index} ==> {0} returns every note once across pages")
+    @MethodSource("dataServiceProvider")
+    void getNotes(INoteDataService dataService) {
+        //Create notes
+        var numNotes = 7;
+        System.out.printf("Creating %d note(s)%n", numNotes);
+        var noteIds = new TreeSet<String>();
+        for (int i = 0; i < numNotes; i++) {
+            noteIds.add(dataService.createNote(String.format("note %d", i)));
+        }
+        System.out.println("Reading the notes 3 at a time");
+        var first = dataService.getNotes(null, 3);
+        assertEquals(3, first.getNotes().size());
+        assertTrue(first.hasMore());
+        //A note past the first page is deleted and one is created while paging
+        var deletedId = noteIds.last();
+        assertTrue(dataService.deleteNoteById(deletedId));
+        noteIds.remove(deletedId);
+        var returnedIds = new ArrayList<String>();
+        first.getNotes().forEach(note -> returnedIds.add(note.getId()));
+        var page = first;
+        while (page.hasMore()) {
+            page = dataService.getNotes(page.getNextCursor(), 3);
+            assertTrue(page.getNotes().size() <= 3);
+            page.getNotes().forEach(note -> returnedIds.add(note.getId()));
+        }
+        assertNull(page.getNextCursor());
+        System.out.printf("Found %d note(s)%n", returnedIds.size());
+        assertEquals(new ArrayList<>(noteIds), returnedIds);
+        assertEquals(noteIds.size(), dataService.getNotes(null, 100).getNotes().size());
+        assertThrows(IllegalArgumentException.class, () -> dataService.getNotes(null, 0));
+        assertThrows(IllegalArgumentException.class, () -> dataService.getNotes("not a cursor", 3));
+        //Cleanup
+        dataService.deleteAllNotes();
+        assertTrue(dataService.getNotes(null, 3).getNotes().isEmpty());
+    }
+
+    @DisplayName("Stream Notes - INoteDataService.getNotePublisher()")
+    @ParameterizedTest(name = "{index} ==> {0} publishes every note as it is requested")
+    @MethodSource("dataServiceProvider")
+    void getNotePublisher(INoteDataService dataService) {
+        //Create notes
+        var numNotes = 5;
+        System.out.printf("Creating %d note(s)%n", numNotes);
+        var noteIds = new TreeSet<String>();
+        for (int i = 0; i < numNotes; i++) {
+            noteIds.add(dataService.createNote(String.format("note %d", i)));
+        }
+        System.out.println("Requesting the notes 2 at a time");
+        var received = new ArrayList<String>();
+        var completed = new boolean[1];
+        var subscription = new Flow.Subscription[1];
+        dataService.getNotePublisher().subscribe(new Flow.Subscriber<Note>() {
+            @Override
+            public void onSubscribe(Flow.Subscription newSubscription) {
+                subscription[0] = newSubscription;
+            }
+
+            @Override
+            public void onNext(Note note) {
+                received.add(note.getId());
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                fail(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed[0] = true;
+            }
+        });
+        assertTrue(received.isEmpty());
+        for (int requested = 2; !completed[0]; requested += 2) {
+            subscription[0].request(2);
+            assertTrue(received.size() <= requested);
+        }
+        System.out.printf("Received %d note(s)%n", received.size());
+        assertEquals(new ArrayList<>(noteIds), received);
+        //Cleanup
+        dataService.deleteAllNotes();
+    }
+
     @DisplayName("Get Note by ID - INoteDataService.getNoteById(String)")
     @ParameterizedTest(name = "{index} ==> {0} returns a note with the requested ID")
     @MethodSource("dataServiceProvider")
@@ -148,6 +254,45 @@ class NoteDataServiceTest {
         dataService.deleteAllNotes();
     }
 
+    @DisplayName("Batch changes - INoteDataService.createNotes, updateNotes and deleteNotesByIds")
+    @ParameterizedTest(name = "{index} ==> {0} applies a batch and returns a result for each item")
+    @MethodSource("dataServiceProvider")
+    void batchChanges(INoteDataService dataService) {
+        var numNotes = 10;
+        var notes = new ArrayList<Note>();
+        for (int i = 0; i < numNotes; i++) {
+            notes.add(new Note(String.format("content %d", i), String.format("summary %d", i)));
+        }
+        System.out.printf("Creating %d note(s) in one batch%n", numNotes);
+        var ids = dataService.createNotes(notes);
+        assertEquals(numNotes, ids.size());
+        assertEquals(numNotes, new TreeSet<>(ids).size());
+        assertEquals(numNotes, dataService.getNoteCount());
+        assertEquals("content 3", dataService.getNoteById(ids.get(3)).getContent());
+        System.out.println("Updating notes in one batch, including one that does not exist");
+        var missingId = UUID.randomUUID().toString();
+        var updated = dataService.updateNotes(List.of(
+                new Note(UUID.fromString(ids.get(0)), "updated 0"),
+                new Note(UUID.fromString(missingId), "missing"),
+                new Note(UUID.fromString(ids.get(5)), "updated 5")));
+        assertEquals(3, updated.size());
+        assertEquals("updated 0", updated.get(0).getContent());
+        assertNull(updated.get(1));
+        assertEquals("updated 5", dataService.getNoteById(ids.get(5)).getContent());
+        System.out.println("Deleting notes in one batch, including one that does not exist");
+        var deleted = dataService.deleteNotesByIds(List.of(ids.get(1), missingId, ids.get(2)));
+        assertEquals(List.of(true, false, true), deleted);
+        assertEquals(numNotes - 2, dataService.getNoteCount());
+        assertThrows(NoSuchElementException.class, () -> dataService.getNoteById(ids.get(1)));
+        System.out.println("Checking to make sure bad batches change nothing");
+        assertThrows(IllegalArgumentException.class, () -> dataService.createNotes(null));
+        assertThrows(IllegalArgumentException.class, () -> dataService.createNotes(Arrays.asList(new Note("kept out"), null)));
+        assertThrows(IllegalArgumentException.class, () -> dataService.deleteNotesByIds(Arrays.asList(ids.get(0), "")));
+        assertEquals(numNotes - 2, dataService.getNoteCount());
+        //Cleanup
+        dataService.deleteAllNotes();
+    }
+
     @DisplayName("Delete all Note - INoteDataService.deleteAllNotes()")
     @ParameterizedTest(name = "{index} ==> {0} deletes all notes")
     @MethodSource("dataServiceProvider")
@@ -173,7 +318,10 @@ class NoteDataServiceTest {
     static Stream<Arguments> dataServiceProvider() {
         return Stream.of(
                 Arguments.arguments(new CacheNoteDataService()),
-                Arguments.arguments(new TextNoteDataService(_getTestDataPath()))
+                Arguments.arguments(new TextNoteDataService(_getTestDataPath())),
+                Arguments.arguments(new JsonNoteDataService(_getTestDataPath(), 4)),
+                Arguments.arguments(new BinaryFileNotesDataService(_getTestDataPath())),
+                Arguments.arguments(new SearchableNoteDataService(new CacheNoteDataService()))
         );
     }
 
@@ -182,8 +330,6 @@ class NoteDataServiceTest {
      * @return A string representing a fully qualified path to test data
      */
     private static String _getTestDataPath() {
-        //All test data is stored in a directory called "test-data"
-        var currentRelativePath = Paths.get("").toAbsolutePath().resolve("test-data").normalize();
-        return currentRelativePath.toString();
+        return TestDataHelper.getTestDataDir(_TEST_DATA_NAME).getAbsolutePath();
     }
 }
\ No newline at end of file
@@ -0,0 +1,104 @@
+package com.example.jsonnotes.notes;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("NoteJson tests")
+public class NoteJsonTest {
+
+    @DisplayName("Note JSON matches reflective Gson output")
+    @Test
+    void noteMatchesGson() {
+        var note = new Note("quotes \" and <html> & line\nbreaks", "summary");
+        System.out.println("Comparing hand-written and reflective output");
+        assertEquals(new Gson().toJson(note), NoteJson.toJson(note));
+        note.setSummary(null);
+        assertEquals(new Gson().toJson(note), NoteJson.toJson(note));
+    }
+
+    @DisplayName("Note JSON round trip")
+    @Test
+    void noteRoundTrip() {
+        var note = new Note("content", "summary");
+        var copy = NoteJson.fromJson(NoteJson.toJson(note));
+        assertNotNull(copy);
+        assertEquals(note.getId(), copy.getId());
+        assertEquals(note.getContent(), copy.getContent());
+        assertEquals(note.getSummary(), copy.getSummary());
+    }
+
+    @DisplayName("Notes file round trip")
+    @Test
+    void notesFileRoundTrip() {
+        var note = new Note("content", "summary");
+        var notesFile = new JsonNotesFile();
+        notesFile.setNotes(List.of(note));
+        var json = NoteJson.getGson().toJson(notesFile);
+        System.out.printf("Notes file JSON: %s%n", json);
+        var readFile = NoteJson.getGson().fromJson(json, JsonNotesFile.class);
+        assertEquals(JsonNotesFile.CURRENT_VERSION, readFile.getVersion());
+        assertEquals(1, readFile.getNotes().size());
+        assertEquals(note.getContent(), readFile.getNotes().get(0).getContent());
+    }
+
+    @DisplayName("Lazy notes file matches eager read")
+    @Test
+    void lazyNotesFile() {
+        var notes = new ArrayList<Note>();
+        for (int i = 0; i < 20; i++) {
+            var note = new Note(String.format("content %d with \"quotes\", {braces} and [brackets]", i), "summary " + i);
+            notes.add(note);
+        }
+        var notesFile = new JsonNotesFile();
+        notesFile.setNotes(notes);
+        var json = NoteJson.getGson().toJson(notesFile);
+        var eager = NoteJson.getGson().fromJson(json, JsonNotesFile.class);
+        var lazy = JsonNotesFile.readLazily(json, 4);
+        System.out.println("Comparing lazy and eager reads");
+        assertTrue(lazy.isLazy());
+        assertEquals(JsonNotesFile.CURRENT_VERSION, lazy.getVersion());
+        assertEquals(eager.getWriteDate(), lazy.getWriteDate());
+        assertEquals(notes.size(), lazy.getNoteCount());
+        assertEquals(eager.getNoteIds(), lazy.getNoteIds());
+        for (var note : notes) {
+            var read = lazy.getNoteById(note.getId());
+            assertEquals(note.getContent(), read.getContent());
+            assertEquals(note.getSummary(), read.getSummary());
+        }
+        assertNull(lazy.getNoteById("missing"));
+        var count = 0;
+        for (var note : lazy.iterateNotes()) {
+            assertEquals(eager.getNoteById(note.getId()).getContent(), note.getContent());
+            count++;
+        }
+        assertEquals(notes.size(), count);
+        assertEquals(notes.size(), lazy.getNotes().size());
+        //Setting notes replaces the lazily read ones
+        lazy.setNotes(List.of(notes.get(0)));
+        assertFalse(lazy.isLazy());
+        assertEquals(1, lazy.getNoteCount());
+    }
+
+    @DisplayName("Lazy legacy notes file")
+    @Test
+    void lazyLegacyNotesFile() {
+        var note = new Note("legacy content", "legacy summary");
+        var noteJson = new Gson().toJson(NoteJson.toJson(note));
+        var json = String.format("{\"noteJsonStrings\":{\"%s\":%s,\"empty\":null},\"writeDate\":\"not a date\"}",
+                note.getId(), noteJson);
+        System.out.printf("Legacy notes file JSON: %s%n", json);
+        var lazy = JsonNotesFile.readLazily(json);
+        assertEquals(JsonNotesFile.LEGACY_VERSION, lazy.getVersion());
+        assertNull(lazy.getWriteDate());
+        assertEquals(1, lazy.getNoteCount());
+        assertEquals(note.getContent(), lazy.getNoteById(note.getId()).getContent());
+        assertThrows(JsonParseException.class, () -> JsonNotesFile.readLazily("{\"notes\":{"));
+    }
+}
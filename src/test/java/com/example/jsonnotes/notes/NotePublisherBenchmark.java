@@ -0,0 +1,100 @@
+package com.example.jsonnotes.notes;
+
+import com.example.jsonnotes.notes.service.MappedBinaryNotesDataService;
+import com.example.jsonnotes.notes.service.NotePublisher;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.concurrent.Flow;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmarks for {@link NotePublisher} over a {@link MappedBinaryNotesDataService}. Run with the "benchmark" Gradle task.
+ */
+@Tag("benchmark")
+@DisplayName("NotePublisher benchmarks")
+class NotePublisherBenchmark {
+
+    private static final int _NOTE_COUNT = 20_000;
+    private static final int _CONTENT_LENGTH = 2000;
+    private static final int _SAMPLE_EVERY = 2000;
+
+    private static File _dataDir;
+    private static MappedBinaryNotesDataService _dataService;
+
+    @BeforeAll
+    static void setUp() {
+        _dataDir = TestDataHelper.createTestDataDir("publisher-benchmark");
+        _dataService = new MappedBinaryNotesDataService(_dataDir.getAbsolutePath());
+        System.out.printf("Creating %d note(s) of %d characters%n", _NOTE_COUNT, _CONTENT_LENGTH);
+        var content = "x".repeat(_CONTENT_LENGTH - 10);
+        for (int i = 0; i < _NOTE_COUNT; i++) {
+            _dataService.createNote(new Note(String.format("%s %9d", content, i), String.format("Note %d", i)));
+        }
+    }
+
+    @AfterAll
+    static void tearDown() {
+        _dataService.close();
+        TestDataHelper.deleteTestDataDir(_dataDir);
+    }
+
+    @DisplayName("Every note - heap held by getAllNotes vs a subscriber")
+    @Test
+    void heap() {
+        var baseline = _usedHeap();
+        var notes = _dataService.getAllNotes();
+        var allNotesHeap = _usedHeap() - baseline;
+        assertEquals(_NOTE_COUNT, notes.size());
+        notes = null;
+        baseline = _usedHeap();
+        var peak = new long[1];
+        var received = new int[1];
+        var start = System.nanoTime();
+        _dataService.getNotePublisher().subscribe(new Flow.Subscriber<Note>() {
+            private Flow.Subscription _subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                _subscription = subscription;
+                _subscription.request(1);
+            }
+
+            @Override
+            public void onNext(Note note) {
+                if (++received[0] % _SAMPLE_EVERY == 0) {
+                    peak[0] = Math.max(peak[0], _usedHeap());
+                }
+                _subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                fail(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        var elapsed = (System.nanoTime() - start) / 1_000_000.0;
+        assertEquals(_NOTE_COUNT, received[0]);
+        System.out.printf("getAllNotes holds   : %,7d KB%n", allNotesHeap / 1024);
+        System.out.printf("subscriber peak     : %,7d KB above the baseline (%d samples, %.0f ms with sampling)%n",
+                Math.max(0, peak[0] - baseline) / 1024, _NOTE_COUNT / _SAMPLE_EVERY, elapsed);
+    }
+
+    /**
+     * Get the heap in use after a garbage collection
+     */
+    private static long _usedHeap() {
+        var runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.jsonnotes.notes;
+
+import com.example.jsonnotes.notes.service.CacheNoteDataService;
+import com.example.jsonnotes.notes.service.NotePage;
+import com.example.jsonnotes.notes.service.NotePublisher;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("NotePublisher tests")
+class NotePublisherTest {
+
+    /**
+     * An in-memory data service that records the size of each page read from it
+     */
+    private static class CountingNoteDataService extends CacheNoteDataService {
+        private final List<Integer> _pageSizes = new ArrayList<>();
+
+        @Override
+        public NotePage getNotes(String cursor, int limit) {
+            _pageSizes.add(limit);
+            return super.getNotes(cursor, limit);
+        }
+    }
+
+    /**
+     * Records every signal, and optionally requests another note from each {@link Flow.Subscriber#onNext(Object)}
+     */
+    private static class RecordingSubscriber implements Flow.Subscriber<Note> {
+        private final boolean _requestFromOnNext;
+        private final List<Note> _notes = new ArrayList<>();
+        private Flow.Subscription _subscription;
+        private Throwable _error;
+        private boolean _completed = false;
+        private int _depth = 0;
+        private int _maxDepth = 0;
+
+        private RecordingSubscriber(boolean requestFromOnNext) {
+            _requestFromOnNext = requestFromOnNext;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            _subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Note note) {
+            _notes.add(note);
+            _maxDepth = Math.max(_maxDepth, ++_depth);
+            if (_requestFromOnNext) {
+                _subscription.request(1);
+            }
+            _depth--;
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            _error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            _completed = true;
+        }
+    }
+
+    private CountingNoteDataService _dataService;
+
+    @BeforeEach
+    void setUp() {
+        _dataService = new CountingNoteDataService();
+        for (int i = 0; i < 1000; i++) {
+            _dataService.createNote(String.format("note %d", i));
+        }
+    }
+
+    @DisplayName("Pages are read only as notes are requested")
+    @Test
+    void demand() {
+        var subscriber = new RecordingSubscriber(false);
+        new NotePublisher(_dataService, 50).subscribe(subscriber);
+        assertTrue(_dataService._pageSizes.isEmpty());
+        subscriber._subscription.request(10);
+        assertEquals(10, subscriber._notes.size());
+        assertEquals(List.of(10), _dataService._pageSizes);
+        System.out.println("Requesting the rest");
+        subscriber._subscription.request(Long.MAX_VALUE);
+        assertEquals(1000, subscriber._notes.size());
+        assertTrue(subscriber._completed);
+        assertTrue(_dataService._pageSizes.stream().allMatch(pageSize -> pageSize <= 50));
+    }
+
+    @DisplayName("Requests made while a note is delivered do not grow the stack")
+    @Test
+    void requestFromOnNext() {
+        var subscriber = new RecordingSubscriber(true);
+        new NotePublisher(_dataService).subscribe(subscriber);
+        subscriber._subscription.request(1);
+        assertEquals(1000, subscriber._notes.size());
+        assertEquals(1, subscriber._maxDepth);
+        assertTrue(subscriber._completed);
+    }
+
+    @DisplayName("A cancelled subscription delivers nothing more")
+    @Test
+    void cancel() {
+        var subscriber = new RecordingSubscriber(false);
+        new NotePublisher(_dataService, 50).subscribe(subscriber);
+        subscriber._subscription.request(3);
+        subscriber._subscription.cancel();
+        subscriber._subscription.request(10);
+        assertEquals(3, subscriber._notes.size());
+        assertFalse(subscriber._completed);
+        assertNull(subscriber._error);
+        assertEquals(1, _dataService._pageSizes.size());
+    }
+
+    @DisplayName("Invalid requests and failed reads end the subscription with an error")
+    @Test
+    void errors() {
+        var subscriber = new RecordingSubscriber(false);
+        new NotePublisher(_dataService).subscribe(subscriber);
+        subscriber._subscription.request(0);
+        assertInstanceOf(IllegalArgumentException.class, subscriber._error);
+        System.out.println("Failing a read");
+        var failing = new CacheNoteDataService() {
+            @Override
+            public NotePage getNotes(String cursor, int limit) {
+                throw new IllegalStateException("read failed");
+            }
+        };
+        var failed = new RecordingSubscriber(false);
+        failing.getNotePublisher().subscribe(failed);
+        failed._subscription.request(1);
+        assertInstanceOf(IllegalStateException.class, failed._error);
+        assertThrows(NullPointerException.class, () -> new NotePublisher(_dataService).subscribe(null));
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.jsonnotes.notes;
+
+import com.example.jsonnotes.notes.service.INoteDataService;
+import com.example.jsonnotes.notes.service.JsonNoteDataService;
+import com.example.jsonnotes.notes.service.PackfileNoteDataService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmarks for {@link PackfileNoteDataService} against {@link JsonNoteDataService} with small {@link Note notes}.
+ *  Run with the "benchmark" Gradle task.
+ */
+@Tag("benchmark")
+@DisplayName("PackfileNoteDataService benchmarks")
+class PackfileNoteDataServiceBenchmark {
+
+    private static final int _NOTE_COUNT = 5000;
+    /**
+     * The allocation unit assumed when estimating disk usage
+     */
+    private static final long _BLOCK_SIZE = 4096;
+
+    private File _dataDir;
+
+    @BeforeEach
+    void setUp() {
+        _dataDir = TestDataHelper.createTestDataDir("packfile-benchmark");
+    }
+
+    @AfterEach
+    void tearDown() {
+        TestDataHelper.deleteTestDataDir(_dataDir);
+    }
+
+    @DisplayName("Small notes - one file per note vs packfile segments")
+    @Test
+    void smallNotes() {
+        _benchmark("file-per-note", JsonNoteDataService::new);
+        TestDataHelper.deleteTestDataFiles(_dataDir);
+        _benchmark("packfile", PackfileNoteDataService::new);
+    }
+
+    /**
+     * Time creating, reading by ID, and reading all of {@link PackfileNoteDataServiceBenchmark#_NOTE_COUNT} small notes
+     * @param name The name printed with the results
+     * @param factory Creates the data service for a directory
+     */
+    private void _benchmark(String name, Function<String, INoteDataService> factory) {
+        var dataService = factory.apply(_dataDir.getAbsolutePath());
+        var noteIds = new ArrayList<String>(_NOTE_COUNT);
+        var start = System.nanoTime();
+        for (int i = 0; i < _NOTE_COUNT; i++) {
+            noteIds.add(dataService.createNote(new Note(String.format("Short note %d", i), "Short")));
+        }
+        var create = (System.nanoTime() - start) / 1_000_000.0;
+        Collections.shuffle(noteIds);
+        start = System.nanoTime();
+        for (var noteId : noteIds) {
+            assertNotNull(dataService.getNoteById(noteId));
+        }
+        var readById = (System.nanoTime() - start) / 1_000_000.0;
+        start = System.nanoTime();
+        assertEquals(_NOTE_COUNT, dataService.getAllNotes().size());
+        var readAll = (System.nanoTime() - start) / 1_000_000.0;
+        var usage = _getUsage(_dataDir);
+        System.out.printf("%-13s: create %,8.0f notes/s, read by ID %,8.0f notes/s, read all %7.1f ms, %,d files, ~%,d bytes on disk%n",
+                name, _NOTE_COUNT / (create / 1000), _NOTE_COUNT / (readById / 1000), readAll, usage[0], usage[1]);
+        if (dataService instanceof PackfileNoteDataService packfileService) {
+            packfileService.close();
+        }
+    }
+
+    /**
+     * Count the files under a directory and estimate the space they take up, rounding each file up to whole blocks
+     * @return The number of files and the estimated bytes
+     */
+    private static long[] _getUsage(File directory) {
+        var usage = new long[2];
+        var files = directory.listFiles();
+        if (files == null) {
+            return usage;
+        }
+        for (var file : files) {
+            if (file.isDirectory()) {
+                var nested = _getUsage(file);
+                usage[0] += nested[0];
+                usage[1] += nested[1];
+            } else {
+                usage[0]++;
+                usage[1] += Math.max(1, (file.length() + _BLOCK_SIZE - 1) / _BLOCK_SIZE) * _BLOCK_SIZE;
+            }
+        }
+        return usage;
+    }
+}
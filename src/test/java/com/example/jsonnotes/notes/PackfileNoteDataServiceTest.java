@@ -0,0 +1,212 @@
+package com.example.jsonnotes.notes;
+
+import com.example.jsonnotes.notes.service.JsonNoteDataService;
+import com.example.jsonnotes.notes.service.PackfileNoteDataService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("PackfileNoteDataService tests")
+class PackfileNoteDataServiceTest {
+
+    private File _dataDir;
+    private PackfileNoteDataService _dataService;
+
+    @BeforeEach
+    void setUp() {
+        _dataDir = TestDataHelper.createTestDataDir("packfile");
+        _dataService = new PackfileNoteDataService(_dataDir.getAbsolutePath());
+    }
+
+    @AfterEach
+    void tearDown() {
+        _dataService.close();
+        TestDataHelper.deleteTestDataDir(_dataDir);
+    }
+
+    @DisplayName("Changes are appended across segments and survive a reload")
+    @Test
+    void reload() {
+        _dataService.setSegmentSize(256);
+        var keptId = _dataService.createNote("kept");
+        var deletedId = _dataService.createNote("deleted");
+        var updatedId = _dataService.createNote("original");
+        for (int i = 0; i < 20; i++) {
+            _dataService.createNote(String.format("filler %d", i));
+        }
+        _dataService.updateNote(new Note(UUID.fromString(updatedId), "updated"));
+        assertTrue(_dataService.deleteNoteById(deletedId));
+        assertFalse(_dataService.deleteNoteById(deletedId));
+        assertTrue(_dataService.getSegmentCount() > 1);
+        System.out.println("Reloading the segments");
+        _dataService.close();
+        _dataService = new PackfileNoteDataService(_dataDir.getAbsolutePath());
+        assertEquals(22, _dataService.getNoteCount());
+        assertEquals("kept", _dataService.getNoteById(keptId).getContent());
+        assertEquals("updated", _dataService.getNoteById(updatedId).getContent());
+        assertThrows(NoSuchElementException.class, () -> _dataService.getNoteById(deletedId));
+        assertEquals(22, _dataService.getAllNotes().size());
+    }
+
+    @DisplayName("Batches are appended across segments and survive a reload")
+    @Test
+    void batch() {
+        _dataService.setSegmentSize(256);
+        var notes = new ArrayList<Note>();
+        for (int i = 0; i < 20; i++) {
+            notes.add(new Note(String.format("note %d", i)));
+        }
+        var ids = _dataService.createNotes(notes);
+        assertFalse(ids.contains(null));
+        assertTrue(_dataService.getSegmentCount() > 1);
+        var updated = _dataService.updateNotes(List.of(new Note(UUID.fromString(ids.get(0)), "updated"), new Note(UUID.randomUUID(), "missing")));
+        assertNotNull(updated.get(0));
+        assertNull(updated.get(1));
+        assertEquals(List.of(true, false), _dataService.deleteNotesByIds(List.of(ids.get(1), "not-an-id")));
+        System.out.println("Reloading the segments");
+        _dataService.close();
+        _dataService = new PackfileNoteDataService(_dataDir.getAbsolutePath());
+        assertEquals(19, _dataService.getNoteCount());
+        assertEquals("updated", _dataService.getNoteById(ids.get(0)).getContent());
+        assertThrows(NoSuchElementException.class, () -> _dataService.getNoteById(ids.get(1)));
+    }
+
+    @DisplayName("Merging drops replaced records and tombstones")
+    @Test
+    void merge() {
+        _dataService.setSegmentSize(512);
+        var noteId = _dataService.createNote("version 0");
+        var deletedId = _dataService.createNote("deleted");
+        for (int i = 1; i <= 50; i++) {
+            _dataService.updateNote(new Note(UUID.fromString(noteId), String.format("version %d", i)));
+        }
+        assertTrue(_dataService.deleteNoteById(deletedId));
+        _dataService.createNote("seal the last segment with some more content in it to pass the segment size");
+        var segments = _dataService.getSegmentCount();
+        var unmerged = _getSegmentBytes();
+        System.out.println("Merging the sealed segments");
+        assertTrue(_dataService.merge());
+        assertTrue(_dataService.getSegmentCount() < segments);
+        assertTrue(_getSegmentBytes() < unmerged);
+        assertEquals("version 50", _dataService.getNoteById(noteId).getContent());
+        assertEquals(2, _dataService.getNoteCount());
+        System.out.println("Reloading the merged segments");
+        _dataService.close();
+        _dataService = new PackfileNoteDataService(_dataDir.getAbsolutePath());
+        assertEquals(2, _dataService.getNoteCount());
+        assertEquals("version 50", _dataService.getNoteById(noteId).getContent());
+        assertThrows(NoSuchElementException.class, () -> _dataService.getNoteById(deletedId));
+    }
+
+    @DisplayName("A segment left behind by an interrupted merge does not bring deleted notes back")
+    @Test
+    void interruptedMerge() throws IOException {
+        _dataService.setSegmentSize(256);
+        var deletedId = _dataService.createNote("doomed");
+        var keptId = _dataService.createNote("kept");
+        for (int i = 0; i < 20; i++) {
+            _dataService.createNote(String.format("filler %d", i));
+        }
+        assertTrue(_dataService.deleteNoteById(deletedId));
+        _dataService.createNote("seal the last segment with some more content in it to pass the segment size");
+        var firstSegment = new File(_dataDir, "segment-00000001.pack").toPath();
+        var unmergedSegment = Files.readAllBytes(firstSegment);
+        System.out.println("Merging the sealed segments");
+        assertTrue(_dataService.merge());
+        assertFalse(Files.exists(firstSegment));
+        _dataService.close();
+        System.out.println("Putting back a segment the merge replaced, as if it stopped before deleting it");
+        Files.write(firstSegment, unmergedSegment);
+        _dataService = new PackfileNoteDataService(_dataDir.getAbsolutePath());
+        assertFalse(Files.exists(firstSegment));
+        assertThrows(NoSuchElementException.class, () -> _dataService.getNoteById(deletedId));
+        assertEquals("kept", _dataService.getNoteById(keptId).getContent());
+        assertEquals(22, _dataService.getNoteCount());
+    }
+
+    @DisplayName("A record cut short at the end of the newest segment is dropped")
+    @Test
+    void damagedTail() throws IOException {
+        var keptId = _dataService.createNote("kept");
+        _dataService.createNote("cut short");
+        _dataService.close();
+        var segmentFile = new File(_dataDir, "segment-00000001.pack");
+        try (var file = new RandomAccessFile(segmentFile, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+        _dataService = new PackfileNoteDataService(_dataDir.getAbsolutePath());
+        assertEquals(1, _dataService.getNoteCount());
+        assertEquals("kept", _dataService.getNoteById(keptId).getContent());
+        var appendedId = _dataService.createNote("appended");
+        _dataService.close();
+        _dataService = new PackfileNoteDataService(_dataDir.getAbsolutePath());
+        assertEquals("appended", _dataService.getNoteById(appendedId).getContent());
+    }
+
+    @DisplayName("Notes move to and from the file-per-note layout with their IDs")
+    @Test
+    void importAndExport() {
+        var fileDir = new File(_dataDir, "files");
+        var fileService = new JsonNoteDataService(fileDir.getAbsolutePath());
+        var notes = new ArrayList<Note>();
+        for (int i = 0; i < 5; i++) {
+            var noteId = fileService.createNote(new Note(String.format("content %d", i), String.format("summary %d", i)));
+            notes.add(fileService.getNoteById(noteId));
+        }
+        System.out.println("Importing from note files");
+        assertEquals(5, _dataService.importNotes(fileService.getAllNotes()));
+        for (var note : notes) {
+            assertEquals(note.getSummary(), _dataService.getNoteById(note.getId()).getSummary());
+        }
+        System.out.println("Exporting to note files");
+        _dataService.updateNote(new Note(UUID.fromString(notes.get(0).getId()), "changed"));
+        _dataService.deleteAllNotes();
+        fileService.deleteAllNotes();
+        _dataService.importNotes(notes);
+        assertEquals(5, fileService.importNotes(_dataService.getAllNotes()));
+        var reloaded = new JsonNoteDataService(fileDir.getAbsolutePath());
+        assertEquals(5, reloaded.getNoteCount());
+        assertEquals("content 0", reloaded.getNoteById(notes.get(0).getId()).getContent());
+    }
+
+    private long _getSegmentBytes() {
+        var total = 0L;
+        var files = _dataDir.listFiles((dir, name) -> name.endsWith(".pack"));
+        for (var file : files) {
+            total += file.length();
+        }
+        return total;
+    }
+
+    @DisplayName("Pages of notes are found through the index in order of ID")
+    @Test
+    void pages() {
+        var noteIds = new TreeSet<String>();
+        for (int i = 0; i < 200; i++) {
+            noteIds.add(_dataService.createNote(String.format("note %d", i)));
+        }
+        System.out.println("Reading the notes 30 at a time");
+        var returnedIds = new ArrayList<String>();
+        String cursor = null;
+        do {
+            var page = _dataService.getNotes(cursor, 30);
+            page.getNotes().forEach(note -> returnedIds.add(note.getId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        //IDs starting with 8 to f sort after the others, as Strings do
+        assertEquals(new ArrayList<>(noteIds), returnedIds);
+    }
+}
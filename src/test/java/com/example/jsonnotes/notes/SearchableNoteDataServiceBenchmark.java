@@ -0,0 +1,122 @@
+package com.example.jsonnotes.notes;
+
+import com.example.jsonnotes.notes.service.MappedBinaryNotesDataService;
+import com.example.jsonnotes.notes.service.NoteSearchMode;
+import com.example.jsonnotes.notes.service.SearchableNoteDataService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmarks for {@link SearchableNoteDataService} over a {@link MappedBinaryNotesDataService}. Run with the "benchmark"
+ *  Gradle task.
+ */
+@Tag("benchmark")
+@DisplayName("SearchableNoteDataService benchmarks")
+class SearchableNoteDataServiceBenchmark {
+
+    private static final int _NOTE_COUNT = 1_000_000;
+    private static final int _WORDS_PER_NOTE = 12;
+    private static final int _VOCABULARY_SIZE = 50_000;
+    private static final int _ROUNDS = 20;
+
+    private static File _dataDir;
+    private static File _indexFile;
+    private static MappedBinaryNotesDataService _backingService;
+    private static SearchableNoteDataService _dataService;
+    private static double _buildMillis;
+
+    @BeforeAll
+    static void setUp() {
+        _dataDir = TestDataHelper.createTestDataDir("search-benchmark");
+        _indexFile = new File(_dataDir, "notes.search");
+        System.out.printf("Creating %,d note(s) of %d words%n", _NOTE_COUNT, _WORDS_PER_NOTE);
+        //Word ranks follow a Zipf distribution like real prose - "w1" is in most notes, "w40000" in a handful
+        var cumulative = new double[_VOCABULARY_SIZE];
+        var total = 0.0;
+        for (int i = 0; i < _VOCABULARY_SIZE; i++) {
+            total += 1.0 / (i + 1);
+            cumulative[i] = total;
+        }
+        var random = new Random(42);
+        _backingService = new MappedBinaryNotesDataService(_dataDir.getAbsolutePath());
+        var batch = new ArrayList<Note>();
+        for (int i = 0; i < _NOTE_COUNT; i++) {
+            var content = new StringBuilder();
+            for (int word = 0; word < _WORDS_PER_NOTE; word++) {
+                var rank = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+                content.append('w').append((rank < 0 ? -rank - 1 : rank) + 1).append(' ');
+            }
+            batch.add(new Note(content.toString(), String.format("Note %d", i)));
+            if (batch.size() == 10_000) {
+                _backingService.createNotes(batch);
+                batch.clear();
+            }
+        }
+        var start = System.nanoTime();
+        _dataService = new SearchableNoteDataService(_backingService, _indexFile);
+        _buildMillis = (System.nanoTime() - start) / 1_000_000.0;
+    }
+
+    @AfterAll
+    static void tearDown() {
+        _backingService.close();
+        TestDataHelper.deleteTestDataDir(_dataDir);
+    }
+
+    @DisplayName("Queries - inverted index vs scanning every note")
+    @Test
+    void queries() {
+        System.out.printf("index build          : %8.1f ms for %,d notes%n", _buildMillis, _dataService.getIndexedNoteCount());
+        _timeQuery("rare AND rare      ", "w20000 w30000", NoteSearchMode.ALL);
+        _timeQuery("common AND rare    ", "w1 w5000", NoteSearchMode.ALL);
+        _timeQuery("common AND common  ", "w1 w2", NoteSearchMode.ALL);
+        _timeQuery("rare OR rare       ", "w20000 w30000", NoteSearchMode.ANY);
+        _timeQuery("common OR common   ", "w1 w2", NoteSearchMode.ANY);
+        var start = System.nanoTime();
+        var scanned = _dataService.getAllNotes().stream()
+                .filter(note -> note.getContent().contains(" w5000 ") || note.getContent().startsWith("w5000 "))
+                .count();
+        var scanMillis = (System.nanoTime() - start) / 1_000_000.0;
+        System.out.printf("scan for one word    : %8.1f ms (%d matches)%n", scanMillis, scanned);
+    }
+
+    @DisplayName("Start up - rebuilding the index vs loading the saved index")
+    @Test
+    void savedIndex() {
+        var start = System.nanoTime();
+        assertTrue(_dataService.flush());
+        var saveMillis = (System.nanoTime() - start) / 1_000_000.0;
+        start = System.nanoTime();
+        var loaded = new SearchableNoteDataService(_backingService, _indexFile);
+        var loadMillis = (System.nanoTime() - start) / 1_000_000.0;
+        assertEquals(_NOTE_COUNT, loaded.getIndexedNoteCount());
+        System.out.printf("save %8.1f ms (%,d KB), load %8.1f ms, rebuild %8.1f ms%n",
+                saveMillis, _indexFile.length() / 1024, loadMillis, _buildMillis);
+    }
+
+    /**
+     * Print the best time of a query over {@link SearchableNoteDataServiceBenchmark#_ROUNDS} rounds
+     */
+    private static void _timeQuery(String label, String query, NoteSearchMode mode) {
+        Supplier<Integer> search = () -> _dataService.search(query, mode, 10).size();
+        var best = Double.MAX_VALUE;
+        var found = 0;
+        for (int round = 0; round < _ROUNDS; round++) {
+            var start = System.nanoTime();
+            found = search.get();
+            best = Math.min(best, (System.nanoTime() - start) / 1_000_000.0);
+        }
+        System.out.printf("%s  : %8.3f ms (%d results)%n", label, best, found);
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.jsonnotes.notes;
+
+import com.example.jsonnotes.notes.service.JsonFileNotesDataService;
+import com.example.jsonnotes.notes.service.NotePage;
+import com.example.jsonnotes.notes.service.NoteSearchMode;
+import com.example.jsonnotes.notes.service.SearchableNoteDataService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("SearchableNoteDataService tests")
+class SearchableNoteDataServiceTest {
+
+    /**
+     * A single file data service that counts the pages read from it
+     */
+    private static class CountingNoteDataService extends JsonFileNotesDataService {
+        private int _pages = 0;
+
+        private CountingNoteDataService(String dataPath) {
+            super(dataPath);
+        }
+
+        @Override
+        public NotePage getNotes(String cursor, int limit) {
+            _pages++;
+            return super.getNotes(cursor, limit);
+        }
+    }
+
+    private File _dataDir;
+    private File _indexFile;
+    private CountingNoteDataService _backingService;
+    private SearchableNoteDataService _dataService;
+
+    @BeforeEach
+    void setUp() {
+        _dataDir = TestDataHelper.createTestDataDir("search");
+        _indexFile = new File(_dataDir, "notes.search");
+        _backingService = new CountingNoteDataService(_dataDir.getAbsolutePath());
+        _dataService = new SearchableNoteDataService(_backingService, _indexFile);
+    }
+
+    @AfterEach
+    void tearDown() {
+        TestDataHelper.deleteTestDataDir(_dataDir);
+    }
+
+    @DisplayName("All and any queries rank the matching notes")
+    @Test
+    void search() {
+        var groceries = _dataService.createNote(new Note("Buy milk, eggs and bread", "Groceries"));
+        var meeting = _dataService.createNote(new Note("Discuss the budget. Milk the budget for all it is worth", "Budget meeting"));
+        var other = _dataService.createNote(new Note("Nothing to see here", "Other"));
+        System.out.println("Searching for every word");
+        assertEquals(List.of(groceries), _ids(_dataService.search("MILK eggs", NoteSearchMode.ALL, 10)));
+        assertEquals(List.of(), _dataService.search("milk unknown", NoteSearchMode.ALL, 10));
+        System.out.println("Searching for any word");
+        var any = _ids(_dataService.search("budget eggs", NoteSearchMode.ANY, 10));
+        assertEquals(List.of(meeting, groceries), any);
+        assertEquals(List.of(meeting), _ids(_dataService.search("budget eggs", NoteSearchMode.ANY, 1)));
+        assertEquals(List.of(other), _ids(_dataService.search("unknown, nothing!", NoteSearchMode.ANY, 10)));
+        assertEquals(List.of(), _dataService.search("   ", NoteSearchMode.ANY, 10));
+        System.out.println("Checking to make sure a word in the summary counts for more");
+        var summarized = _dataService.createNote(new Note("eggs", "Eggs"));
+        assertEquals(summarized, _ids(_dataService.search("eggs", NoteSearchMode.ANY, 10)).get(0));
+        assertThrows(IllegalArgumentException.class, () -> _dataService.search(null, NoteSearchMode.ANY, 10));
+        assertThrows(IllegalArgumentException.class, () -> _dataService.search("milk", null, 10));
+        assertThrows(IllegalArgumentException.class, () -> _dataService.search("milk", NoteSearchMode.ANY, 0));
+    }
+
+    @DisplayName("Changes made through the service are indexed")
+    @Test
+    void changes() {
+        var noteId = _dataService.createNote("old words");
+        _dataService.updateNote(new Note(UUID.fromString(noteId), "new words"));
+        assertEquals(List.of(), _dataService.search("old", NoteSearchMode.ANY, 10));
+        assertEquals(List.of(noteId), _ids(_dataService.search("new", NoteSearchMode.ANY, 10)));
+        assertTrue(_dataService.deleteNoteById(noteId));
+        assertEquals(List.of(), _dataService.search("words", NoteSearchMode.ANY, 10));
+        System.out.println("Changing notes in batches");
+        var ids = _dataService.createNotes(List.of(new Note("red apple"), new Note("green apple"), new Note("red car")));
+        assertEquals(2, _dataService.search("red", NoteSearchMode.ANY, 10).size());
+        _dataService.updateNotes(List.of(new Note(UUID.fromString(ids.get(2)), "blue car")));
+        _dataService.deleteNotesByIds(List.of(ids.get(1)));
+        assertEquals(List.of(ids.get(0)), _ids(_dataService.search("apple", NoteSearchMode.ANY, 10)));
+        assertEquals(List.of(ids.get(2)), _ids(_dataService.search("blue car", NoteSearchMode.ALL, 10)));
+        _dataService.deleteAllNotes();
+        assertEquals(0, _dataService.getIndexedNoteCount());
+    }
+
+    @DisplayName("Repeated updates keep the results right as the index compacts")
+    @Test
+    void compaction() {
+        var ids = new ArrayList<String>();
+        for (int i = 0; i < 100; i++) {
+            ids.add(_dataService.createNote(String.format("note %d round r0", i)));
+        }
+        for (int round = 1; round <= 30; round++) {
+            for (int i = 0; i < ids.size(); i++) {
+                _dataService.updateNote(new Note(UUID.fromString(ids.get(i)), String.format("note %d round r%d", i, round)));
+            }
+        }
+        assertEquals(100, _dataService.getIndexedNoteCount());
+        assertEquals(100, _dataService.search("round r30", NoteSearchMode.ALL, 1000).size());
+        assertEquals(List.of(), _dataService.search("r29", NoteSearchMode.ANY, 1000));
+        assertEquals(List.of(ids.get(42)), _ids(_dataService.search("note 42", NoteSearchMode.ALL, 1)));
+    }
+
+    @DisplayName("A saved index is loaded instead of rebuilt, until a change is made")
+    @Test
+    void savedIndex() {
+        var keptId = _dataService.createNote(new Note("kept content", "kept"));
+        for (int i = 0; i < 10; i++) {
+            _dataService.createNote(String.format("filler %d", i));
+        }
+        _dataService.close();
+        assertTrue(_indexFile.exists());
+        System.out.println("Reloading from the saved index");
+        _backingService._pages = 0;
+        var reloaded = new SearchableNoteDataService(_backingService, _indexFile);
+        assertEquals(0, _backingService._pages);
+        assertEquals(11, reloaded.getIndexedNoteCount());
+        assertEquals(List.of(keptId), _ids(reloaded.search("kept", NoteSearchMode.ALL, 10)));
+        System.out.println("Checking to make sure a change made without the search service is found on the next start");
+        assertTrue(reloaded.flush());
+        _backingService.updateNote(new Note(UUID.fromString(keptId), "replaced words"));
+        _backingService._pages = 0;
+        var changedBehind = new SearchableNoteDataService(_backingService, _indexFile);
+        assertTrue(_backingService._pages > 0);
+        assertEquals(List.of(), changedBehind.search("content", NoteSearchMode.ANY, 10));
+        assertEquals(List.of(keptId), _ids(changedBehind.search("replaced", NoteSearchMode.ANY, 10)));
+        System.out.println("Checking to make sure a change deletes the saved index");
+        var addedId = reloaded.createNote("added content");
+        assertFalse(_indexFile.exists());
+        var rebuilt = new SearchableNoteDataService(_backingService, _indexFile);
+        assertTrue(_backingService._pages > 0);
+        assertEquals(List.of(addedId), _ids(rebuilt.search("added", NoteSearchMode.ANY, 10)));
+        System.out.println("Checking to make sure an index for other notes is rebuilt");
+        assertTrue(rebuilt.flush());
+        _backingService.deleteNoteById(keptId);
+        _backingService._pages = 0;
+        var outOfDate = new SearchableNoteDataService(_backingService, _indexFile);
+        assertTrue(_backingService._pages > 0);
+        assertEquals(List.of(), outOfDate.search("kept", NoteSearchMode.ANY, 10));
+    }
+
+    private static List<String> _ids(List<Note> notes) {
+        return notes.stream().map(Note::getId).toList();
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.jsonnotes.notes;
+
+import com.example.jsonnotes.notes.service.BinaryFileNotesDataService;
+import com.example.jsonnotes.notes.service.JsonFileNotesDataService;
+import com.example.jsonnotes.notes.service.SingleFileContentNoteDataService;
+import com.example.jsonnotes.notes.service.SingleFileNoteDataService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Benchmarks for {@link SingleFileNoteDataService}. Run with the "benchmark" Gradle task.
+ */
+@Tag("benchmark")
+@DisplayName("SingleFileNoteDataService benchmarks")
+class SingleFileNoteDataServiceBenchmark {
+
+    private static final int _NOTE_COUNT = 1000;
+    private static final int _CORPUS_NOTE_COUNT = 20000;
+    private static final int _ROUNDS = 5;
+    private static final String[] _WORDS = { "meeting", "notes", "project", "the", "and", "review", "deadline", "team",
+            "update", "draft", "budget", "follow", "up", "with", "client", "on", "friday", "agenda", "action", "items" };
+
+    private File _dataDir;
+
+    @BeforeEach
+    void setUp() {
+        _dataDir = TestDataHelper.createTestDataDir("single-file-benchmark");
+    }
+
+    @AfterEach
+    void tearDown() {
+        TestDataHelper.deleteTestDataDir(_dataDir);
+    }
+
+    @DisplayName("Bulk import - immediate rewrites vs write-behind")
+    @Test
+    void bulkImport() {
+        var immediate = _timeImport(0, 1);
+        System.out.printf("immediate              : %8.1f ms%n", immediate);
+        for (var maxPendingChanges : new int[] { 10, 100, 1000 }) {
+            var writeBehind = _timeImport(SingleFileNoteDataService.DEFAULT_WRITE_BEHIND_DELAY_MILLIS, maxPendingChanges);
+            System.out.printf("write-behind, batch %4d: %8.1f ms (%.1fx immediate)%n", maxPendingChanges, writeBehind, immediate / writeBehind);
+        }
+    }
+
+    @DisplayName("Bulk import - createNote one at a time vs createNotes")
+    @Test
+    void batchImport() {
+        for (var noteCount : new int[] { 500, 1000, 2000 }) {
+            var single = _timeSingleImport(noteCount);
+            var batch = _timeBatchImport(noteCount, false);
+            var journaled = _timeBatchImport(noteCount, true);
+            System.out.printf("%4d notes: one at a time %8.1f ms, batch %6.1f ms (%.0fx), journaled batch %6.1f ms%n",
+                    noteCount, single, batch, single / batch, journaled);
+        }
+    }
+
+    @DisplayName("Load and save - uncompressed vs GZIP")
+    @Test
+    void compression() {
+        var random = new Random(42);
+        //Prose drawn from a small vocabulary compresses well, like real notes - random text is close to the worst case
+        IntFunction<String> prose = i -> {
+            var content = new StringBuilder();
+            for (int word = 0; word < 40; word++) {
+                content.append(_WORDS[random.nextInt(_WORDS.length)]).append(' ');
+            }
+            return content.toString();
+        };
+        IntFunction<String> randomText = i -> {
+            var content = new StringBuilder();
+            for (int c = 0; c < 240; c++) {
+                content.append((char) (' ' + random.nextInt(95)));
+            }
+            return content.toString();
+        };
+        for (var compressed : new boolean[] { false, true }) {
+            _benchmarkCorpus("json", "prose", JsonFileNotesDataService::new, "notes.txt", prose, compressed);
+            _benchmarkCorpus("json", "random", JsonFileNotesDataService::new, "notes.txt", randomText, compressed);
+            _benchmarkCorpus("binary", "prose", BinaryFileNotesDataService::new, "notes.dat", prose, compressed);
+            _benchmarkCorpus("binary", "random", BinaryFileNotesDataService::new, "notes.dat", randomText, compressed);
+            _benchmarkCorpus("text", "prose", SingleFileContentNoteDataService::new, "notes.txt", prose, compressed);
+            _benchmarkCorpus("text", "random", SingleFileContentNoteDataService::new, "notes.txt", randomText, compressed);
+        }
+    }
+
+    /**
+     * Time saving and loading a corpus of {@link SingleFileNoteDataServiceBenchmark#_CORPUS_NOTE_COUNT} notes, keeping
+     *  the best of several rounds
+     * @param format The name of the file format printed with the results
+     * @param corpus The name of the corpus printed with the results
+     * @param factory Creates the data service for a directory
+     * @param notesFileName The name of the file the data service writes
+     * @param content Creates the content of each note
+     * @param compressed When TRUE, the file is GZIP compressed
+     */
+    private void _benchmarkCorpus(String format, String corpus, Function<String, SingleFileNoteDataService> factory,
+                                  String notesFileName, IntFunction<String> content, boolean compressed) {
+        TestDataHelper.deleteTestDataFiles(_dataDir);
+        var dataService = factory.apply(_dataDir.getAbsolutePath());
+        dataService.setWriteBehind(SingleFileNoteDataService.DEFAULT_WRITE_BEHIND_DELAY_MILLIS, Integer.MAX_VALUE);
+        assertTrue(dataService.setCompressed(compressed));
+        for (int i = 0; i < _CORPUS_NOTE_COUNT; i++) {
+            dataService.createNote(new Note(content.apply(i), String.format("Note %d", i)));
+        }
+        var bestSave = Double.MAX_VALUE;
+        var bestLoad = Double.MAX_VALUE;
+        for (int round = 0; round < _ROUNDS; round++) {
+            //Touch a note so the flush has something to write
+            dataService.updateNote(dataService.getAllNotes().get(0));
+            var start = System.nanoTime();
+            assertTrue(dataService.flush());
+            bestSave = Math.min(bestSave, (System.nanoTime() - start) / 1_000_000.0);
+            start = System.nanoTime();
+            var loaded = factory.apply(_dataDir.getAbsolutePath());
+            bestLoad = Math.min(bestLoad, (System.nanoTime() - start) / 1_000_000.0);
+            assertEquals(_CORPUS_NOTE_COUNT, loaded.getNoteCount());
+            assertEquals(compressed, loaded.isCompressed());
+        }
+        System.out.printf("%-6s %-6s %-4s: save %7.1f ms, load %7.1f ms, %,11d bytes%n", format, corpus,
+                compressed ? "gzip" : "none", bestSave, bestLoad, new File(_dataDir, notesFileName).length());
+    }
+
+    /**
+     * Time creating {@link SingleFileNoteDataServiceBenchmark#_NOTE_COUNT} notes in an empty store, including the final flush
+     * @param maxDelayMillis The write-behind delay. 0 rewrites the file on every change.
+     * @param maxPendingChanges The write-behind batch size
+     * @return The time in milliseconds
+     */
+    private double _timeImport(long maxDelayMillis, int maxPendingChanges) {
+        TestDataHelper.deleteTestDataFiles(_dataDir);
+        var dataService = new JsonFileNotesDataService(_dataDir.getAbsolutePath());
+        dataService.setWriteBehind(maxDelayMillis, maxPendingChanges);
+        var start = System.nanoTime();
+        for (int i = 0; i < _NOTE_COUNT; i++) {
+            dataService.createNote(new Note(String.format("Benchmark note %d content", i), String.format("Note %d", i)));
+        }
+        assertTrue(dataService.flush());
+        var elapsed = (System.nanoTime() - start) / 1_000_000.0;
+        assertEquals(_NOTE_COUNT, new JsonFileNotesDataService(_dataDir.getAbsolutePath()).getNoteCount());
+        return elapsed;
+    }
+
+    /**
+     * Time creating notes one at a time in an empty store that rewrites its file on every change
+     * @param noteCount The number of notes to create
+     * @return The time in milliseconds
+     */
+    private double _timeSingleImport(int noteCount) {
+        TestDataHelper.deleteTestDataFiles(_dataDir);
+        var dataService = new JsonFileNotesDataService(_dataDir.getAbsolutePath());
+        var start = System.nanoTime();
+        for (int i = 0; i < noteCount; i++) {
+            dataService.createNote(new Note(String.format("Benchmark note %d content", i), String.format("Note %d", i)));
+        }
+        var elapsed = (System.nanoTime() - start) / 1_000_000.0;
+        assertEquals(noteCount, new JsonFileNotesDataService(_dataDir.getAbsolutePath()).getNoteCount());
+        return elapsed;
+    }
+
+    /**
+     * Time creating notes with a single call to {@link SingleFileNoteDataService#createNotes(java.util.Collection)} in
+     *  an empty store
+     * @param noteCount The number of notes to create
+     * @param journaled When TRUE, the batch is appended to the journal instead of rewriting the file
+     * @return The time in milliseconds
+     */
+    private double _timeBatchImport(int noteCount, boolean journaled) {
+        TestDataHelper.deleteTestDataFiles(_dataDir);
+        var dataService = new JsonFileNotesDataService(_dataDir.getAbsolutePath(), journaled);
+        var notes = new ArrayList<Note>(noteCount);
+        for (int i = 0; i < noteCount; i++) {
+            notes.add(new Note(String.format("Benchmark note %d content", i), String.format("Note %d", i)));
+        }
+        var start = System.nanoTime();
+        var ids = dataService.createNotes(notes);
+        var elapsed = (System.nanoTime() - start) / 1_000_000.0;
+        assertFalse(ids.contains(null));
+        assertEquals(noteCount, new JsonFileNotesDataService(_dataDir.getAbsolutePath(), journaled).getNoteCount());
+        return elapsed;
+    }
+}
@@ -0,0 +1,348 @@
+package com.example.jsonnotes.notes;
+
+import com.example.jsonnotes.notes.service.BinaryFileNotesDataService;
+import com.example.jsonnotes.notes.service.JsonFileNotesDataService;
+import com.example.jsonnotes.notes.service.SingleFileContentNoteDataService;
+import com.example.jsonnotes.util.FileHelper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("SingleFileNoteDataService tests")
+class SingleFileNoteDataServiceTest {
+
+    private File _dataDir;
+
+    @BeforeEach
+    void setUp() {
+        _dataDir = TestDataHelper.createTestDataDir("single-file");
+    }
+
+    @AfterEach
+    void tearDown() {
+        TestDataHelper.deleteTestDataDir(_dataDir);
+    }
+
+    @DisplayName("Journaled changes are replayed when the store is reloaded")
+    @Test
+    void journalReplay() {
+        var dataService = new JsonFileNotesDataService(_dataDir.getAbsolutePath(), true);
+        System.out.println("Creating notes");
+        var keptId = dataService.createNote("kept");
+        var deletedId = dataService.createNote("deleted");
+        var updatedId = dataService.createNote("original");
+        dataService.updateNote(new Note(UUID.fromString(updatedId), "updated"));
+        dataService.deleteNoteById(deletedId);
+        System.out.println("Checking to make sure the changes went to the journal");
+        assertTrue(new File(_dataDir, "notes.journal").length() > 0);
+        assertEquals(0, new File(_dataDir, "notes.txt").length());
+        System.out.println("Reloading the store");
+        var reloaded = new JsonFileNotesDataService(_dataDir.getAbsolutePath(), true);
+        assertEquals(2, reloaded.getNoteCount());
+        assertEquals("kept", reloaded.getNoteById(keptId).getContent());
+        assertEquals("updated", reloaded.getNoteById(updatedId).getContent());
+    }
+
+    @DisplayName("A partly written record at the end of the journal is cut off")
+    @Test
+    void tornJournalRecord() throws IOException {
+        var dataService = new JsonFileNotesDataService(_dataDir.getAbsolutePath(), true);
+        var keptId = dataService.createNote("kept");
+        var journalFile = new File(_dataDir, "notes.journal");
+        var journalSize = journalFile.length();
+        System.out.println("Appending half of a record to the journal");
+        Files.write(journalFile.toPath(), "{\"op\":\"put\",\"note\":{\"id\"".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        var reloaded = new JsonFileNotesDataService(_dataDir.getAbsolutePath(), true);
+        assertEquals(1, reloaded.getNoteCount());
+        System.out.println("Checking to make sure the partly written record was cut off");
+        assertEquals(journalSize, journalFile.length());
+        var addedId = reloaded.createNote("added");
+        System.out.println("Reloading the store after another change");
+        var again = new JsonFileNotesDataService(_dataDir.getAbsolutePath(), true);
+        assertEquals(2, again.getNoteCount());
+        assertEquals("kept", again.getNoteById(keptId).getContent());
+        assertEquals("added", again.getNoteById(addedId).getContent());
+    }
+
+    @DisplayName("An unreadable record followed by more records fails the load")
+    @Test
+    void damagedJournalRecord() throws IOException {
+        var dataService = new JsonFileNotesDataService(_dataDir.getAbsolutePath(), true);
+        dataService.createNote("first");
+        var journalFile = new File(_dataDir, "notes.journal");
+        System.out.println("Appending an unreadable record to the journal");
+        Files.write(journalFile.toPath(), "not a record\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        dataService.createNote("second");
+        var journalSize = journalFile.length();
+        assertThrows(RuntimeException.class, () -> new JsonFileNotesDataService(_dataDir.getAbsolutePath(), true));
+        System.out.println("Checking to make sure the journal was left alone");
+        assertEquals(journalSize, journalFile.length());
+    }
+
+    @DisplayName("A batch is journaled together and replayed when the store is reloaded")
+    @Test
+    void journaledBatch() {
+        var dataService = new JsonFileNotesDataService(_dataDir.getAbsolutePath(), true);
+        System.out.println("Creating notes in one batch");
+        var ids = dataService.createNotes(List.of(new Note("kept"), new Note("deleted"), new Note("original")));
+        var journalFile = new File(_dataDir, "notes.journal");
+        var journalSize = journalFile.length();
+        assertTrue(journalSize > 0);
+        dataService.updateNotes(List.of(new Note(UUID.fromString(ids.get(2)), "updated")));
+        assertEquals(List.of(true, false), dataService.deleteNotesByIds(List.of(ids.get(1), ids.get(1))));
+        assertTrue(journalFile.length() > journalSize);
+        assertEquals(0, new File(_dataDir, "notes.txt").length());
+        System.out.println("Reloading the store");
+        var reloaded = new JsonFileNotesDataService(_dataDir.getAbsolutePath(), true);
+        assertEquals(2, reloaded.getNoteCount());
+        assertEquals("kept", reloaded.getNoteById(ids.get(0)).getContent());
+        assertEquals("updated", reloaded.getNoteById(ids.get(2)).getContent());
+    }
+
+    @DisplayName("A batch that cannot be written is reported as failed")
+    @Test
+    void failedBatch() {
+        var dataService = new JsonFileNotesDataService(_dataDir.getAbsolutePath());
+        var noteId = dataService.createNote("original");
+        System.out.println("Putting a directory where the notes file goes so it cannot be replaced");
+        var notesFile = new File(_dataDir, "notes.txt");
+        assertTrue(notesFile.delete());
+        assertTrue(new File(notesFile, "blocker").mkdirs());
+        var ids = dataService.createNotes(List.of(new Note("first"), new Note("second")));
+        assertEquals(Arrays.asList(null, null), ids);
+        var updated = dataService.updateNotes(List.of(new Note(UUID.fromString(noteId), "updated")));
+        assertEquals(Collections.singletonList(null), updated);
+    }
+
+    @DisplayName("Compaction folds the journal into the notes file")
+    @Test
+    void compaction() {
+        var dataService = new JsonFileNotesDataService(_dataDir.getAbsolutePath(), true);
+        var noteId = dataService.createNote("compacted");
+        System.out.println("Compacting the journal");
+        assertTrue(dataService.compact());
+        System.out.println("Checking to make sure the journal was folded into the notes file");
+        assertFalse(new File(_dataDir, "notes.journal").exists());
+        assertFalse(new File(_dataDir, "notes.journal.compacting").exists());
+        assertTrue(new File(_dataDir, "notes.txt").length() > 0);
+        System.out.println("Reloading the store without a journal");
+        var reloaded = new JsonFileNotesDataService(_dataDir.getAbsolutePath());
+        assertEquals("compacted", reloaded.getNoteById(noteId).getContent());
+    }
+
+    @DisplayName("Opening a journaled store without a journal folds the journal in")
+    @Test
+    void foldJournalWhenNotJournaled() {
+        var dataService = new JsonFileNotesDataService(_dataDir.getAbsolutePath(), true);
+        var noteId = dataService.createNote("folded");
+        System.out.println("Reloading the store without a journal");
+        var reloaded = new JsonFileNotesDataService(_dataDir.getAbsolutePath());
+        assertEquals("folded", reloaded.getNoteById(noteId).getContent());
+        assertFalse(new File(_dataDir, "notes.journal").exists());
+    }
+
+    @DisplayName("Write-behind holds changes until they are flushed")
+    @Test
+    void writeBehind() {
+        var dataService = new JsonFileNotesDataService(_dataDir.getAbsolutePath());
+        dataService.setWriteBehind(60_000, 1000);
+        System.out.println("Creating notes with write-behind on");
+        var firstId = dataService.createNote("first");
+        dataService.createNote("second");
+        assertEquals(2, dataService.getNoteCount());
+        assertEquals(0, new File(_dataDir, "notes.txt").length());
+        System.out.println("Flushing the pending changes");
+        assertTrue(dataService.flush());
+        var reloaded = new JsonFileNotesDataService(_dataDir.getAbsolutePath());
+        assertEquals(2, reloaded.getNoteCount());
+        assertEquals("first", reloaded.getNoteById(firstId).getContent());
+        System.out.println("Turning write-behind off flushes pending changes");
+        dataService.deleteNoteById(firstId);
+        dataService.setWriteBehind(0, 1);
+        assertFalse(dataService.isWriteBehind());
+        assertEquals(1, new JsonFileNotesDataService(_dataDir.getAbsolutePath()).getNoteCount());
+    }
+
+    @DisplayName("Write-behind flushes on its own once enough changes are pending")
+    @Test
+    void writeBehindMaxChanges() throws InterruptedException {
+        var dataService = new JsonFileNotesDataService(_dataDir.getAbsolutePath());
+        dataService.setWriteBehind(60_000, 3);
+        for (int i = 0; i < 3; i++) {
+            dataService.createNote(String.format("note %d", i));
+        }
+        System.out.println("Waiting for the background flush");
+        var notesFile = new File(_dataDir, "notes.txt");
+        for (int i = 0; i < 100 && notesFile.length() == 0; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(3, new JsonFileNotesDataService(_dataDir.getAbsolutePath()).getNoteCount());
+    }
+
+    @DisplayName("Binary notes files round trip")
+    @Test
+    void binaryRoundTrip() {
+        var dataService = new BinaryFileNotesDataService(_dataDir.getAbsolutePath());
+        var note = new Note("content with \u00fcnicode \u2043 and\nline breaks", null);
+        var noteId = dataService.createNote(note);
+        var summaryId = dataService.createNote(new Note("content", "summary"));
+        System.out.println("Reloading the binary file");
+        var reloaded = new BinaryFileNotesDataService(_dataDir.getAbsolutePath());
+        assertEquals(2, reloaded.getNoteCount());
+        assertEquals(note.getContent(), reloaded.getNoteById(noteId).getContent());
+        assertNull(reloaded.getNoteById(noteId).getSummary());
+        assertEquals("summary", reloaded.getNoteById(summaryId).getSummary());
+    }
+
+    @DisplayName("Damaged binary records are skipped")
+    @Test
+    void binaryChecksum() throws IOException {
+        var dataService = new BinaryFileNotesDataService(_dataDir.getAbsolutePath());
+        var damagedId = dataService.createNote("damaged");
+        var keptId = dataService.createNote("kept");
+        var notesFile = new File(_dataDir, "notes.dat");
+        System.out.println("Corrupting the content of one record");
+        var fileData = Files.readAllBytes(notesFile.toPath());
+        var offset = new String(fileData, StandardCharsets.ISO_8859_1).indexOf("damaged");
+        assertTrue(offset > 0);
+        try (var file = new RandomAccessFile(notesFile, "rw")) {
+            file.seek(offset);
+            file.write('D');
+        }
+        var reloaded = new BinaryFileNotesDataService(_dataDir.getAbsolutePath());
+        assertEquals(1, reloaded.getNoteCount());
+        assertEquals("kept", reloaded.getNoteById(keptId).getContent());
+        assertThrows(NoSuchElementException.class, () -> reloaded.getNoteById(damagedId));
+    }
+
+    @DisplayName("A binary record cut short at the end of the file is dropped")
+    @Test
+    void binaryCutShort() throws IOException {
+        var dataService = new BinaryFileNotesDataService(_dataDir.getAbsolutePath());
+        var ids = List.of(dataService.createNote("first"), dataService.createNote("second"));
+        try (var file = new RandomAccessFile(new File(_dataDir, "notes.dat"), "rw")) {
+            file.setLength(file.length() - 3);
+        }
+        var reloaded = new BinaryFileNotesDataService(_dataDir.getAbsolutePath());
+        //Records are written in order of ID - whichever comes first survives
+        assertEquals(1, reloaded.getNoteCount());
+        assertTrue(ids.contains(reloaded.getAllNotes().get(0).getId()));
+    }
+
+    @DisplayName("Text notes files are read back, compressed or not")
+    @Test
+    void textNotesFile() {
+        var dataService = new SingleFileContentNoteDataService(_dataDir.getAbsolutePath());
+        var firstId = dataService.createNote("first note");
+        var secondId = dataService.createNote("second note");
+        for (var compressed : new boolean[] { false, true }) {
+            System.out.printf("Reloading the text file, compressed: %b%n", compressed);
+            assertTrue(dataService.setCompressed(compressed));
+            var reloaded = new SingleFileContentNoteDataService(_dataDir.getAbsolutePath());
+            assertEquals(2, reloaded.getNoteCount());
+            assertEquals("first note", reloaded.getNoteById(firstId).getContent());
+            assertEquals("second note", reloaded.getNoteById(secondId).getContent());
+            assertEquals(compressed, reloaded.isCompressed());
+        }
+    }
+
+    @DisplayName("Legacy JSON notes files are read and upgraded on the next write")
+    @Test
+    void legacyJsonNotesFile() {
+        var noteId = UUID.randomUUID().toString();
+        var legacyData = String.format("{\"notes\":{\"%1$s\":\"{\\\"id\\\":\\\"%1$s\\\",\\\"content\\\":\\\"legacy\\\",\\\"summary\\\":\\\"old\\\"}\",\"null entry\":null},\"writeDate\":\"2021-12-02T01:28:50EST\"}", noteId);
+        var notesFile = new File(_dataDir, "notes.txt");
+        assertTrue(FileHelper.createFile(notesFile, legacyData));
+        System.out.println("Loading the legacy file");
+        var dataService = new JsonFileNotesDataService(_dataDir.getAbsolutePath());
+        assertEquals(1, dataService.getNoteCount());
+        assertEquals("legacy", dataService.getNoteById(noteId).getContent());
+        assertEquals("old", dataService.getNoteById(noteId).getSummary());
+        System.out.println("Writing the file in the current format");
+        dataService.createNote("current");
+        var fileData = FileHelper.getFileAsString(notesFile);
+        assertTrue(fileData.contains("\"version\":2"));
+        assertFalse(fileData.contains("\\\""));
+        assertFalse(fileData.contains("null entry"));
+        System.out.println("Reloading the upgraded file");
+        var reloaded = new JsonFileNotesDataService(_dataDir.getAbsolutePath());
+        assertEquals(2, reloaded.getNoteCount());
+        assertEquals("old", reloaded.getNoteById(noteId).getSummary());
+    }
+
+    @DisplayName("Compressed notes files are detected and stay compressed")
+    @Test
+    void compressedNotesFile() throws IOException {
+        var dataService = new JsonFileNotesDataService(_dataDir.getAbsolutePath());
+        var noteId = dataService.createNote(new Note("compressed content", "compressed summary"));
+        var notesFile = new File(_dataDir, "notes.txt");
+        System.out.println("Compressing the notes file");
+        assertTrue(dataService.setCompressed(true));
+        var fileData = Files.readAllBytes(notesFile.toPath());
+        assertEquals((byte) 0x1f, fileData[0]);
+        assertEquals((byte) 0x8b, fileData[1]);
+        System.out.println("Reloading the compressed file");
+        var reloaded = new JsonFileNotesDataService(_dataDir.getAbsolutePath());
+        assertTrue(reloaded.isCompressed());
+        assertEquals("compressed summary", reloaded.getNoteById(noteId).getSummary());
+        reloaded.createNote("another");
+        assertEquals(2, new JsonFileNotesDataService(_dataDir.getAbsolutePath()).getNoteCount());
+        System.out.println("Decompressing the notes file");
+        assertTrue(reloaded.setCompressed(false));
+        assertEquals('{', Files.readAllBytes(notesFile.toPath())[0]);
+        var uncompressed = new JsonFileNotesDataService(_dataDir.getAbsolutePath());
+        assertFalse(uncompressed.isCompressed());
+        assertEquals(2, uncompressed.getNoteCount());
+        System.out.println("Compressing a binary notes file");
+        var binaryService = new BinaryFileNotesDataService(_dataDir.getAbsolutePath(), true);
+        binaryService.createNote("binary");
+        assertTrue(binaryService.setCompressed(true));
+        var binaryReloaded = new BinaryFileNotesDataService(_dataDir.getAbsolutePath());
+        assertTrue(binaryReloaded.isCompressed());
+        assertEquals(1, binaryReloaded.getNoteCount());
+    }
+
+    @DisplayName("Repeated content is stored once next to the notes file")
+    @Test
+    void deduplicatedNotesFile() {
+        var dataService = new JsonFileNotesDataService(_dataDir.getAbsolutePath());
+        var sharedContent = "Quarterly report - ".repeat(20);
+        var firstId = dataService.createNote(new Note(sharedContent, "first"));
+        var notesFile = new File(_dataDir, "notes.txt");
+        var fullSize = notesFile.length();
+        System.out.println("Turning on deduplication");
+        assertTrue(dataService.setDeduplicated(true));
+        var secondId = dataService.createNote(new Note(new String(sharedContent.toCharArray()), "second"));
+        var bodiesDir = new File(_dataDir, "notes.bodies");
+        assertEquals(1, bodiesDir.list().length);
+        assertTrue(notesFile.length() < fullSize * 2);
+        assertSame(dataService.getNoteById(firstId).getContent(), dataService.getNoteById(secondId).getContent());
+        System.out.println("Reloading the deduplicated file");
+        var reloaded = new JsonFileNotesDataService(_dataDir.getAbsolutePath(), true);
+        assertTrue(reloaded.isDeduplicated());
+        assertEquals(sharedContent, reloaded.getNoteById(firstId).getContent());
+        assertSame(reloaded.getNoteById(firstId).getContent(), reloaded.getNoteById(secondId).getContent());
+        System.out.println("Releasing the shared body");
+        reloaded.deleteNoteById(firstId);
+        reloaded.updateNote(new Note(UUID.fromString(secondId), "changed"));
+        assertEquals(1, bodiesDir.list().length);
+        assertTrue(reloaded.compact());
+        assertEquals(0, bodiesDir.list().length);
+        assertEquals("changed", new JsonFileNotesDataService(_dataDir.getAbsolutePath()).getNoteById(secondId).getContent());
+    }
+}
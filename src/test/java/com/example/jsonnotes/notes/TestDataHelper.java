@@ -0,0 +1,68 @@
+package com.example.jsonnotes.notes;
+
+import java.io.File;
+import java.nio.file.Paths;
+
+/**
+ * Creates and removes the directories under "test-data" that the tests and benchmarks write their notes to
+ */
+final class TestDataHelper {
+
+    private TestDataHelper() {
+    }
+
+    /**
+     * Get a directory under "test-data". The directory is not created.
+     * @param name The name of the directory
+     * @return The directory, as a fully qualified path
+     */
+    static File getTestDataDir(String name) {
+        //All test data is stored in a directory called "test-data"
+        var currentRelativePath = Paths.get("").toAbsolutePath().resolve("test-data").resolve(name).normalize();
+        return currentRelativePath.toFile();
+    }
+
+    /**
+     * Create an empty directory under "test-data", deleting whatever a previous run left in it
+     * @param name The name of the directory
+     * @return The directory, as a fully qualified path
+     */
+    static File createTestDataDir(String name) {
+        var dataDir = getTestDataDir(name);
+        deleteTestDataDir(dataDir);
+        if (dataDir.mkdirs()) {
+            System.out.printf("Created test directory %s%n", dataDir.getAbsolutePath());
+        }
+        return dataDir;
+    }
+
+    /**
+     * Delete a directory and everything in it, including the files that deleting all the notes leaves behind
+     * @param directory The directory to delete
+     */
+    static void deleteTestDataDir(File directory) {
+        deleteTestDataFiles(directory);
+        if (directory.exists() && !directory.delete()) {
+            System.out.printf("Failed to delete %s%n", directory.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Delete everything in a directory, leaving the directory itself in place
+     * @param directory The directory to empty
+     */
+    static void deleteTestDataFiles(File directory) {
+        var files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (var file : files) {
+            if (file.isDirectory()) {
+                deleteTestDataFiles(file);
+            }
+            if (!file.delete()) {
+                System.out.printf("Failed to delete %s%n", file.getAbsolutePath());
+            }
+        }
+    }
+}
@@ -6,6 +6,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.util.Scanner;
 import java.util.UUID;
@@ -120,6 +121,61 @@ class FileHelperTest {
         System.out.printf("Backup file %s does not exist%n", backupFile.getAbsolutePath());
     }
 
+    @DisplayName("Replace the data in a file from a stream")
+    @Test
+    void replaceFileDataFromStream() throws IOException {
+        System.out.println("Testing FileHelper.replaceFileData(File, StreamWriter)");
+        String _replacementData = UUID.randomUUID().toString();
+        assertTrue(FileHelper.replaceFileData(_testFile, output -> output.write(_replacementData.getBytes(StandardCharsets.UTF_8))));
+        System.out.println("replaceFileData() reports success");
+        //Test file data is accurate when read back through a stream
+        try (var input = FileHelper.openInputStream(_testFile)) {
+            var fileData = new String(input.readAllBytes(), StandardCharsets.UTF_8);
+            assertEquals(_replacementData, fileData);
+            System.out.printf("File content %s matches %s%n", fileData, _replacementData);
+        }
+    }
+
+    @DisplayName("Replace the data in a file in each replace mode")
+    @Test
+    void replaceFileDataModes() {
+        var directory = _testFile.getAbsoluteFile().getParentFile();
+        try {
+            for (var replaceMode : FileHelper.ReplaceMode.values()) {
+                System.out.printf("Testing FileHelper.replaceFileData(File, String) in %s mode%n", replaceMode);
+                FileHelper.setReplaceMode(replaceMode);
+                assertTrue(FileHelper.replaceFileData(_testFile, _testData));
+                String _replacementData = UUID.randomUUID().toString();
+                assertTrue(FileHelper.replaceFileData(_testFile, _replacementData));
+                assertEquals(_replacementData, FileHelper.getFileAsString(_testFile));
+                System.out.println("Checking that no temporary or backup files were left behind");
+                var leftovers = directory.list((dir, name) -> name.startsWith(_testFile.getName() + "."));
+                assertNotNull(leftovers);
+                assertEquals(0, leftovers.length);
+            }
+        } finally {
+            FileHelper.setReplaceMode(FileHelper.ReplaceMode.ATOMIC_RENAME);
+        }
+    }
+
+    @DisplayName("Replace the data in a file at each durability level")
+    @Test
+    void replaceFileDataDurability() {
+        var syncer = new FileSyncer();
+        try {
+            for (var durability : FileSyncer.Durability.values()) {
+                System.out.printf("Testing FileHelper.replaceFileData(File, String, FileSyncer) with %s durability%n", durability);
+                syncer.setDurability(durability);
+                String _replacementData = UUID.randomUUID().toString();
+                assertTrue(FileHelper.replaceFileData(_testFile, _replacementData, syncer));
+                assertEquals(_replacementData, FileHelper.getFileAsString(_testFile));
+                syncer.syncPending();
+            }
+        } finally {
+            syncer.close();
+        }
+    }
+
     @DisplayName("Get file data as a string")
     @Test
     void getFileAsString() {
@@ -0,0 +1,71 @@
+package com.example.jsonnotes.util;
+
+import com.example.jsonnotes.notes.Note;
+import org.junit.jupiter.api.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("NoteHelper util tests")
+class NoteHelperTest {
+
+    @DisplayName("Get notes from a data string")
+    @Test
+    void getNotesFromDataString() {
+        System.out.println("Testing NoteHelper.getNotesFromDataString(String)");
+        var firstId = UUID.randomUUID().toString();
+        var secondId = UUID.randomUUID().toString();
+        var notes = NoteHelper.getNotesFromDataString(String.format("%s\u2043first\u221E%s\u2043second", firstId, secondId));
+        assertEquals(2, notes.size());
+        assertEquals(firstId, notes.get(0).getId());
+        assertEquals("first", notes.get(0).getContent());
+        assertEquals(secondId, notes.get(1).getId());
+        assertEquals("second", notes.get(1).getContent());
+    }
+
+    @DisplayName("Get notes from an empty data string")
+    @Test
+    void getNotesFromEmptyDataString() {
+        System.out.println("Testing NoteHelper.getNotesFromDataString(String) with an empty string");
+        assertThrows(IllegalArgumentException.class, () -> NoteHelper.getNotesFromDataString(""));
+    }
+
+    @DisplayName("Read notes from a stream with either form of separator")
+    @Test
+    void readNotesFromDataStream() throws IOException {
+        var firstId = UUID.randomUUID().toString();
+        var secondId = UUID.randomUUID().toString();
+        var written = NoteHelper.getNotesDataStringFromList(List.of(new Note(UUID.fromString(firstId), "first"), new Note(UUID.fromString(secondId), "second")));
+        for (var data : List.of(written, String.format("%s\u2043first\u221E%s\u2043second", firstId, secondId))) {
+            System.out.printf("Testing NoteHelper.readNotesFromDataStream(Reader, Consumer) with %s%n", data);
+            var notes = new ArrayList<Note>();
+            NoteHelper.readNotesFromDataStream(new StringReader(data), notes::add);
+            assertEquals(2, notes.size());
+            assertEquals(firstId, notes.get(0).getId());
+            assertEquals("first", notes.get(0).getContent());
+            assertEquals(secondId, notes.get(1).getId());
+            assertEquals("second", notes.get(1).getContent());
+        }
+    }
+
+    @DisplayName("Read notes from an empty stream")
+    @Test
+    void readNotesFromEmptyDataStream() throws IOException {
+        System.out.println("Testing NoteHelper.readNotesFromDataStream(Reader, Consumer) with an empty stream");
+        var notes = new ArrayList<Note>();
+        NoteHelper.readNotesFromDataStream(new StringReader(""), notes::add);
+        assertTrue(notes.isEmpty());
+    }
+
+    @DisplayName("Read a note without a splitter from a stream")
+    @Test
+    void readNotesFromDataStreamWithoutSplitter() {
+        System.out.println("Testing NoteHelper.readNotesFromDataStream(Reader, Consumer) with a pair that has no splitter");
+        assertThrows(IllegalArgumentException.class, () -> NoteHelper.readNotesFromDataStream(new StringReader(UUID.randomUUID().toString()), note -> { }));
+    }
+}